@@ -0,0 +1,300 @@
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The operator chains of {@link MyReactiveTest} and {@link ObservableBuilderTest}
+ * measured by {@code benchmarks.ObservableBuilderBenchmark}.
+ * <p>JMH only accepts benchmarks in a named package, which cannot see the
+ * default package of the samples, so the chains are defined here and the
+ * benchmark looks them up by name once per trial.</p>
+ * <p>The sources run on a {@link CurrentThreadScheduler} so the whole pipeline
+ * stays on the benchmark thread and the allocation figures of the GC
+ * profiler are complete. The timed samples (tick, buffer(time)) measure the
+ * wall clock rather than the operators and are not included.</p>
+ */
+public final class ObservableBuilderChains {
+	/** The synchronous scheduler for the sources. */
+	static final Scheduler CURRENT = new CurrentThreadScheduler();
+	/** Sums a window without boxing the running sum. */
+	static final Func1<Observable<Integer>, Observable<Long>> SUM_WINDOW = new Func1<Observable<Integer>, Observable<Long>>() {
+		@Override
+		public Observable<Long> invoke(Observable<Integer> window) {
+			return PrimitiveObservables.boxedLong(PrimitiveObservables.sumInt(PrimitiveObservables.toInt(window)));
+		}
+	};
+	/** Utility class. */
+	private ObservableBuilderChains() {
+		// utility class
+	}
+	/**
+	 * @param n the element count
+	 * @return the 0..n-1 source
+	 */
+	static ObservableBuilder<Integer> range(int n) {
+		return ObservableBuilder.range(0, n, CURRENT);
+	}
+	/**
+	 * Creates the chains, each running over the given number of elements.
+	 * @param consume receives the results
+	 * @return the chains by name
+	 */
+	public static Map<String, Action1E<Integer, Exception>> chains(final Action1<Object> consume) {
+		final IntObserver intSink = new IntObserver() {
+			@Override
+			public void next(int value) {
+				consume.invoke(value);
+			}
+
+			@Override
+			public void error(Throwable ex) {
+				ex.printStackTrace();
+			}
+
+			@Override
+			public void finish() {
+			}
+		};
+		Map<String, Action1E<Integer, Exception>> chains = new LinkedHashMap<String, Action1E<Integer, Exception>>();
+		// MyReactiveTest.testChain (without the sleep)
+		chains.put("selectManyInvokeInvoke", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.selectMany(new Func1<Integer, Observable<? extends Integer>>() {
+					@Override
+					public Observable<? extends Integer> invoke(Integer param1) {
+						return Reactive.singleton(param1, CURRENT);
+					}
+				})
+				.invoke(consume)
+				.invoke(consume)
+				, consume);
+			}
+		});
+
+		// MyReactiveTest.testAppendIndexToArray1
+		chains.put("bufferAllSelectManyIndex", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.buffer(n)
+				.selectMany(new Func1<List<Integer>, Observable<? extends SimpleEntry<Integer, Integer>>>() {
+					@Override
+					public Observable<? extends SimpleEntry<Integer, Integer>> invoke(List<Integer> list) {
+						List<SimpleEntry<Integer, Integer>> indexed = new ArrayList<SimpleEntry<Integer, Integer>>();
+						for (int i = 0; i < list.size(); i++) {
+							indexed.add(new SimpleEntry<Integer, Integer>(i, list.get(i)));
+						}
+						return ObservableBuilder.from(indexed, CURRENT);
+					}
+				})
+				, consume);
+			}
+		});
+
+		// MyReactiveTest.testAppendIndexToArray2
+		chains.put("selectManySingletonIndex", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.selectMany(new Func1<Integer, Observable<? extends SimpleEntry<Integer, Integer>>>() {
+					private int i;
+
+					@Override
+					public Observable<? extends SimpleEntry<Integer, Integer>> invoke(Integer param1) {
+						return Reactive.singleton(new SimpleEntry<Integer, Integer>(i++, param1), CURRENT);
+					}
+				})
+				, consume);
+			}
+		});
+
+		// MyReactiveTest.testAppendIndexToArray3
+		chains.put("selectIndexed", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				ReactiveEx.selectIndexed(range(n), new IndexedFunc1<Integer, SimpleEntry<Long, Integer>>() {
+					@Override
+					public SimpleEntry<Long, Integer> invoke(long index, Integer param1) {
+						return new SimpleEntry<Long, Integer>(index, param1);
+					}
+				})
+				, consume);
+			}
+		});
+
+		// MyReactiveTest.testBuffer, ObservableBuilderTest.sample_25a_buffer_count
+		chains.put("buffer3SelectLast", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.buffer(3)
+				.select(new Func1<List<Integer>, Integer>() {
+					@Override
+					public Integer invoke(List<Integer> l) {
+						return l.get(l.size() - 1);
+					}
+				})
+				, consume);
+			}
+		});
+
+		// the same with recycled primitive chunks instead of a List per window
+		chains.put("bufferLongs3SelectLast", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				PrimitiveObservables.bufferLongs(PrimitiveObservables.range(0L, n, CURRENT), 3)
+				.select(new Func1<LongChunk, Long>() {
+					@Override
+					public Long invoke(LongChunk c) {
+						return c.last();
+					}
+				})
+				, consume);
+			}
+		});
+
+		// MyReactiveTest.testWindow
+		chains.put("window3SelectMany", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.window(3)
+				.selectMany(new Func1<Observable<Integer>, Observable<? extends Integer>>() {
+					@Override
+					public Observable<? extends Integer> invoke(Observable<Integer> o) {
+						return o;
+					}
+				})
+				, consume);
+			}
+		});
+
+		// per-window aggregation with a List per window
+		chains.put("buffer100SelectSum", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.buffer(100)
+				.select(new Func1<List<Integer>, Integer>() {
+					@Override
+					public Integer invoke(List<Integer> list) {
+						int sum = 0;
+						for (Integer v : list) {
+							sum += v;
+						}
+						return sum;
+					}
+				})
+				, consume);
+			}
+		});
+
+		// per-window aggregation with the windows streamed into the aggregate
+		chains.put("window100SelectManySum", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.window(100)
+				.selectMany(SUM_WINDOW)
+				, consume);
+			}
+		});
+
+		// the same with the windows of ReactiveEx.window
+		chains.put("reactiveExWindow100SelectManySum", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				ReactiveEx.window(range(n), 100, 100)
+				.selectMany(SUM_WINDOW)
+				, consume);
+			}
+		});
+
+		// ObservableBuilderTest.sample_34b_resumeAlways_resuming
+		chains.put("selectIndexSelect", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(
+				range(n)
+				.select(new Func2<Integer, Integer, SimpleEntry<Integer, Integer>>() {
+					@Override
+					public SimpleEntry<Integer, Integer> invoke(Integer i, Integer s) {
+						return new SimpleEntry<Integer, Integer>(i, s);
+					}
+				})
+				.select(new Func1<SimpleEntry<Integer, Integer>, Integer>() {
+					@Override
+					public Integer invoke(SimpleEntry<Integer, Integer> s) {
+						return s.getValue();
+					}
+				})
+				, consume);
+			}
+		});
+
+		// ObservableBuilderTest.sample_16_min_max_ave
+		chains.put("max", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(range(n).<Integer>max(), consume);
+			}
+		});
+
+		// ObservableBuilderTest.sample_16_min_max_ave
+		chains.put("min", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(range(n).<Integer>min(), consume);
+			}
+		});
+
+		// ObservableBuilderTest.sample_16_min_max_ave
+		chains.put("averageInt", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(range(n).averageInt(), consume);
+			}
+		});
+
+		// the maximum on a primitive stream
+		chains.put("intObservableMax", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				PrimitiveObservables.maxInt(PrimitiveObservables.range(0, n, CURRENT)).register(intSink);
+			}
+		});
+
+		// the statistics on a primitive stream
+		chains.put("intObservableStatistics", new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(final Integer n) throws Exception {
+				Reactive.run(PrimitiveObservables.statisticsInt(PrimitiveObservables.range(0, n, CURRENT)), consume);
+			}
+		});
+		return chains;
+	}
+}
@@ -0,0 +1,48 @@
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+
+/**
+ * The observeOn stages measured by {@code benchmarks.ObserveOnBenchmark}:
+ * {@code ObservableBuilder.observeOn} (a task per value on a single lane
+ * executor) and {@link ReactiveEx#observeOn} (lock-free ring buffer with
+ * batched draining).
+ * <p>JMH only accepts benchmarks in a named package, which cannot see the
+ * default package of {@link ReactiveEx}, so the stages are created here and
+ * looked up by the benchmark once per trial.</p>
+ */
+public final class ObserveOnStages {
+	/** Utility class. */
+	private ObserveOnStages() {
+		// utility class
+	}
+	/**
+	 * Creates a stage moving the values of its source to the pool.
+	 * @param name {@code ObservableBuilder} or {@code ReactiveEx}
+	 * @param pool the pool of the observer
+	 * @param capacity the buffer capacity of {@code ReactiveEx}
+	 * @param multiProducer true if the source emits from several threads
+	 * @return the stage
+	 */
+	public static Func1<Observable<Long>, Observable<Long>> stage(String name,
+			final Scheduler pool, final int capacity, final boolean multiProducer) {
+		if ("ObservableBuilder".equals(name)) {
+			return new Func1<Observable<Long>, Observable<Long>>() {
+				@Override
+				public Observable<Long> invoke(Observable<Long> source) {
+					return ObservableBuilder.from(source).observeOn(pool);
+				}
+			};
+		}
+		if ("ReactiveEx".equals(name)) {
+			return new Func1<Observable<Long>, Observable<Long>>() {
+				@Override
+				public Observable<Long> invoke(Observable<Long> source) {
+					return ReactiveEx.observeOn(source, pool, capacity, multiProducer);
+				}
+			};
+		}
+		throw new IllegalArgumentException("Unknown stage " + name);
+	}
+}
@@ -0,0 +1,99 @@
+package benchmarks;
+
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Action1E;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of the operator chains used by {@code MyReactiveTest} and
+ * {@code ObservableBuilderTest} on the bundled reactive4java jar, one
+ * benchmark per chain and element count.
+ * <p>JMH requires a named package, which cannot refer to the default package
+ * of the samples, so the chains are defined by {@code ObservableBuilderChains}
+ * and looked up by name once per trial.</p>
+ * <p>One operation runs the whole chain over {@code n} elements: the time
+ * per element is the average time divided by {@code n}, and
+ * {@code gc.alloc.rate.norm} of the GC profiler divided by {@code n} is the
+ * allocation per element.</p>
+ * <p>Usage: {@code mvn -B -Pjmh test-compile exec:exec -Djmh.args="ObservableBuilderBenchmark -prof gc -p n=1000"}</p>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObservableBuilderBenchmark {
+	/** The chain. */
+	@Param({
+		"selectManyInvokeInvoke",
+		"bufferAllSelectManyIndex",
+		"selectManySingletonIndex",
+		"selectIndexed",
+		"buffer3SelectLast",
+		"bufferLongs3SelectLast",
+		"window3SelectMany",
+		"buffer100SelectSum",
+		"window100SelectManySum",
+		"reactiveExWindow100SelectManySum",
+		"selectIndexSelect",
+		"max",
+		"min",
+		"averageInt",
+		"intObservableMax",
+		"intObservableStatistics"
+	})
+	String chain;
+	/** The element count. */
+	@Param({ "1", "1000", "1000000", "10000000" })
+	int n;
+	/** The chain to run. */
+	Action1E<Integer, Exception> run;
+
+	/**
+	 * Looks up the chain, its results go to the blackhole.
+	 * @param bh the blackhole
+	 * @throws Exception if the chains cannot be created
+	 */
+	@Setup
+	public void setup(final Blackhole bh) throws Exception {
+		Action1<Object> consume = new Action1<Object>() {
+			@Override
+			public void invoke(Object value) {
+				bh.consume(value);
+			}
+		};
+		Object chains = Class.forName("ObservableBuilderChains")
+				.getMethod("chains", Action1.class).invoke(null, consume);
+		// the declared return type of ObservableBuilderChains.chains, erased by the reflective call
+		@SuppressWarnings("unchecked")
+		Action1E<Integer, Exception> r = ((Map<String, Action1E<Integer, Exception>>)chains).get(chain);
+		if (r == null) {
+			throw new IllegalArgumentException("Unknown chain " + chain);
+		}
+		run = r;
+	}
+	/**
+	 * Runs the chain over n elements.
+	 * @throws Exception on error
+	 */
+	@Benchmark
+	public void chain() throws Exception {
+		run.invoke(n);
+	}
+}
@@ -0,0 +1,239 @@
+package benchmarks;
+
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the cross-thread hop of {@code ObservableBuilder.observeOn}
+ * and {@code ReactiveEx.observeOn}, the stages of {@code ObserveOnStages}.
+ * <p>{@link #transfer} moves {@link #VALUES} values from 1, 2, 4 or 8
+ * producer threads to the pool; it is normalized per value, so its score in
+ * ops/us is the throughput in millions of values per second.
+ * {@link #ping} sends one value through an idle stage and waits for it on
+ * the pool, its percentiles are the latency of a hop including the wake-up
+ * of the drain.</p>
+ * <p>Usage: {@code mvn -B -Pjmh test-compile exec:exec -Djmh.args="ObserveOnBenchmark -p capacity=1024"}</p>
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObserveOnBenchmark {
+	/** The values moved by one transfer. */
+	static final int VALUES = 1000000;
+
+	/**
+	 * Looks up a stage of {@code ObserveOnStages}.
+	 * @param name the stage name
+	 * @param pool the pool of the observer
+	 * @param capacity the buffer capacity
+	 * @param multiProducer true if the source emits from several threads
+	 * @return the stage
+	 * @throws Exception if the stage cannot be created
+	 */
+	static Func1<Observable<Long>, Observable<Long>> stage(String name, Scheduler pool,
+			int capacity, boolean multiProducer) throws Exception {
+		Object stage = Class.forName("ObserveOnStages")
+				.getMethod("stage", String.class, Scheduler.class, int.class, boolean.class)
+				.invoke(null, name, pool, capacity, multiProducer);
+		// the declared return type of ObserveOnStages.stage, erased by the reflective call
+		@SuppressWarnings("unchecked")
+		Func1<Observable<Long>, Observable<Long>> s = (Func1<Observable<Long>, Observable<Long>>)stage;
+		return s;
+	}
+
+	/** The stage and the producer threads of {@link ObserveOnBenchmark#transfer}. */
+	@State(Scope.Benchmark)
+	public static class Transfer {
+		/** The stage. */
+		@Param({ "ObservableBuilder", "ReactiveEx" })
+		String stage;
+		/** The producer threads. */
+		@Param({ "1", "2", "4", "8" })
+		int producers;
+		/** The buffer capacity of ReactiveEx. */
+		@Param({ "1024" })
+		int capacity;
+		/** The pool of the observer. */
+		DefaultScheduler pool;
+		/** The producer threads. */
+		ExecutorService producerPool;
+		/** The stage. */
+		Func1<Observable<Long>, Observable<Long>> hop;
+		/**
+		 * Creates the pools and the stage.
+		 * @throws Exception if the stage cannot be created
+		 */
+		@Setup
+		public void setup() throws Exception {
+			pool = new DefaultScheduler();
+			producerPool = Executors.newFixedThreadPool(producers);
+			hop = stage(stage, pool, capacity, producers > 1);
+		}
+		/** Stops the pools. */
+		@TearDown
+		public void tearDown() {
+			producerPool.shutdown();
+			pool.shutdown();
+		}
+	}
+
+	/** An idle stage registered once, for {@link ObserveOnBenchmark#ping}. */
+	@State(Scope.Benchmark)
+	public static class Ping {
+		/** The stage. */
+		@Param({ "ObservableBuilder", "ReactiveEx" })
+		String stage;
+		/** The buffer capacity of ReactiveEx. */
+		@Param({ "1024" })
+		int capacity;
+		/** The pool of the observer. */
+		DefaultScheduler pool;
+		/** The observer of the stage, the values are sent to it. */
+		Observer<? super Long> upstream;
+		/** The registration with the stage. */
+		Closeable registration;
+		/** The last value sent. */
+		long sent;
+		/** The last value received on the pool. */
+		volatile long received;
+		/**
+		 * Registers with the stage.
+		 * @throws Exception if the stage cannot be created
+		 */
+		@Setup
+		public void setup() throws Exception {
+			pool = new DefaultScheduler();
+			Observable<Long> source = new Observable<Long>() {
+				@Override
+				public Closeable register(Observer<? super Long> observer) {
+					upstream = observer;
+					return new Closeable() {
+						@Override
+						public void close() { }
+					};
+				}
+			};
+			registration = stage(stage, pool, capacity, false).invoke(source).register(new Observer<Long>() {
+				@Override
+				public void next(Long value) {
+					received = value;
+				}
+
+				@Override
+				public void error(Throwable ex) {
+					ex.printStackTrace();
+				}
+
+				@Override
+				public void finish() {
+				}
+			});
+		}
+		/** Closes the registration and stops the pool. */
+		@TearDown
+		public void tearDown() {
+			Closeables.close0(registration);
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Moves {@link #VALUES} values from the producer threads to the pool.
+	 * @param t the stage and the producers
+	 * @return the number of values received
+	 * @throws InterruptedException if interrupted
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@OperationsPerInvocation(VALUES)
+	public int transfer(final Transfer t) throws InterruptedException {
+		final int perProducer = VALUES / t.producers;
+		final CountDownLatch done = new CountDownLatch(1);
+		Observable<Long> source = new Observable<Long>() {
+			@Override
+			public Closeable register(final Observer<? super Long> observer) {
+				final AtomicInteger running = new AtomicInteger(t.producers);
+				for (int p = 0; p < t.producers; p++) {
+					t.producerPool.execute(new Runnable() {
+						@Override
+						public void run() {
+							for (long i = 0; i < perProducer; i++) {
+								observer.next(i);
+							}
+							if (running.decrementAndGet() == 0) {
+								observer.finish();
+							}
+						}
+					});
+				}
+				return new Closeable() {
+					@Override
+					public void close() { }
+				};
+			}
+		};
+		final int[] count = { 0 };
+		Closeable c = t.hop.invoke(source).register(new Observer<Long>() {
+			@Override
+			public void next(Long value) {
+				count[0]++;
+			}
+
+			@Override
+			public void error(Throwable ex) {
+				ex.printStackTrace();
+				done.countDown();
+			}
+
+			@Override
+			public void finish() {
+				done.countDown();
+			}
+		});
+		done.await();
+		Closeables.close0(c);
+		return count[0];
+	}
+	/**
+	 * Sends one value through the idle stage and waits until it arrives.
+	 * @param p the registered stage
+	 * @return the value
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long ping(Ping p) {
+		long v = ++p.sent;
+		p.upstream.next(v);
+		while (p.received != v) {
+			Thread.yield();
+		}
+		return v;
+	}
+}
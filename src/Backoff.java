@@ -0,0 +1,66 @@
+import hu.akarnokd.reactive4java.base.Func2;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An exponential backoff policy with jitter and a budget of attempts, the
+ * delay selector of {@link ReactiveEx#resumeWithBackoff}.
+ * <p>The delay before the n-th attempt (starting from 1) is
+ * {@code initialDelay * multiplier^(n - 1)}, capped at {@code maxDelay},
+ * minus a random part of at most {@code jitter} times the delay, so that
+ * sources failing together do not retry together.</p>
+ */
+public final class Backoff implements Func2<Integer, Throwable, Long> {
+	/** The random source of the jitter. */
+	static final Random RANDOM = new Random();
+	/** The delay before the first attempt in nanoseconds. */
+	final long initialDelay;
+	/** The maximum delay in nanoseconds. */
+	final long maxDelay;
+	/** The growth of the delay per attempt. */
+	final double multiplier;
+	/** The maximum fraction of the delay removed randomly. */
+	final double jitter;
+	/** The maximum number of attempts. */
+	final int maxAttempts;
+	/**
+	 * Constructor.
+	 * @param initialDelay the delay before the first attempt
+	 * @param maxDelay the maximum delay
+	 * @param unit the time unit of the delays
+	 * @param multiplier the growth of the delay per attempt, at least 1
+	 * @param jitter the maximum fraction of the delay removed randomly, between 0 and 1
+	 * @param maxAttempts the maximum number of attempts
+	 */
+	public Backoff(long initialDelay, long maxDelay, TimeUnit unit,
+			double multiplier, double jitter, int maxAttempts) {
+		if (multiplier < 1) {
+			throw new IllegalArgumentException("multiplier < 1");
+		}
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("jitter not in [0, 1]");
+		}
+		this.initialDelay = unit.toNanos(initialDelay);
+		this.maxDelay = unit.toNanos(maxDelay);
+		this.multiplier = multiplier;
+		this.jitter = jitter;
+		this.maxAttempts = maxAttempts;
+	}
+	/**
+	 * @param attempt the attempt, starting from 1
+	 * @param ex the error of the previous attempt
+	 * @return the delay before the attempt in nanoseconds, or -1 if the attempts are used up
+	 */
+	@Override
+	public Long invoke(Integer attempt, Throwable ex) {
+		if (attempt > maxAttempts) {
+			return -1L;
+		}
+		double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt - 1));
+		if (jitter > 0) {
+			delay -= delay * jitter * RANDOM.nextDouble();
+		}
+		return (long)delay;
+	}
+}
@@ -0,0 +1,196 @@
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adapters between the push based {@link Observable} and the
+ * demand-driven {@link FlowObservable}.
+ * <p>A push source cannot be slowed down by itself, so
+ * {@link #from(Observable, int, OverflowStrategy)} buffers its values in a
+ * bounded buffer and applies the {@link OverflowStrategy} once the buffer is
+ * full; the memory used per registration is bounded by the capacity.
+ * An error from the source is delivered without waiting for the demand
+ * and discards the buffered values.</p>
+ */
+public final class Backpressure {
+	/** Utility class. */
+	private Backpressure() {
+		// utility class
+	}
+	/**
+	 * Wraps a push source into a bounded buffer relaying the values on demand.
+	 * @param <T> the element type
+	 * @param source the push source
+	 * @param capacity the buffer capacity
+	 * @param strategy what to do when the buffer is full
+	 * @return the demand-driven observable
+	 */
+	public static <T> FlowObservable<T> from(
+			final Observable<? extends T> source,
+			final int capacity,
+			final OverflowStrategy strategy) {
+		return from(source, capacity, strategy, null);
+	}
+	/**
+	 * Wraps a push source into a bounded buffer relaying the values on demand.
+	 * @param <T> the element type
+	 * @param source the push source
+	 * @param capacity the buffer capacity
+	 * @param strategy what to do when the buffer is full
+	 * @param onDrop receives the values dropped by the DROP and LATEST strategies
+	 * (or by an interrupted BLOCK), may be null
+	 * @return the demand-driven observable
+	 */
+	public static <T> FlowObservable<T> from(
+			final Observable<? extends T> source,
+			final int capacity,
+			final OverflowStrategy strategy,
+			final Action1<? super T> onDrop) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity <= 0");
+		}
+		if (strategy == null) {
+			throw new IllegalArgumentException("strategy is null");
+		}
+		return new FlowObservable<T>() {
+			@Override
+			public Closeable register(FlowObserver<? super T> observer) {
+				return new BufferedFlow<T>(observer, capacity, strategy, onDrop).registerWith(source);
+			}
+		};
+	}
+	/**
+	 * Creates a demand-driven observable of the iterable values.
+	 * <p>The values are pulled from the iterator on the thread calling
+	 * {@code request()}, so nothing is buffered.</p>
+	 * @param <T> the element type
+	 * @param source the source of values
+	 * @return the demand-driven observable
+	 */
+	public static <T> FlowObservable<T> from(final Iterable<? extends T> source) {
+		return new FlowObservable<T>() {
+			@Override
+			public Closeable register(final FlowObserver<? super T> observer) {
+				final Iterator<? extends T> it = source.iterator();
+				final AtomicLong requested = new AtomicLong();
+				final AtomicInteger wip = new AtomicInteger();
+				final Subscription s = new Subscription() {
+					/** The downstream cancelled or the iterator completed. */
+					volatile boolean done;
+					@Override
+					public void request(long n) {
+						if (n <= 0) {
+							cancel();
+							observer.error(new IllegalArgumentException("n <= 0: " + n));
+							return;
+						}
+						for (;;) {
+							long r = requested.get();
+							long u = r + n < 0 ? Long.MAX_VALUE : r + n;
+							if (requested.compareAndSet(r, u)) {
+								break;
+							}
+						}
+						if (wip.getAndIncrement() != 0) {
+							return;
+						}
+						int missed = 1;
+						for (;;) {
+							long r = requested.get();
+							long e = 0;
+							try {
+								while (e != r && !done) {
+									if (!it.hasNext()) {
+										done = true;
+										observer.finish();
+										return;
+									}
+									observer.next(it.next());
+									e++;
+								}
+							} catch (Throwable ex) {
+								done = true;
+								observer.error(ex);
+								return;
+							}
+							if (r != Long.MAX_VALUE) {
+								requested.addAndGet(-e);
+							}
+							missed = wip.addAndGet(-missed);
+							if (missed == 0 || done) {
+								break;
+							}
+						}
+					}
+					@Override
+					public void cancel() {
+						done = true;
+					}
+				};
+				observer.onSubscribe(s);
+				return new Closeable() {
+					@Override
+					public void close() {
+						s.cancel();
+					}
+				};
+			}
+		};
+	}
+	/**
+	 * Converts a demand-driven source back to a push observable by
+	 * requesting the values in batches.
+	 * @param <T> the element type
+	 * @param source the demand-driven source
+	 * @param batchSize the number of values requested at once
+	 * @return the push observable
+	 */
+	public static <T> ObservableBuilder<T> toObservable(
+			final FlowObservable<? extends T> source,
+			final int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize <= 0");
+		}
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(final Observer<? super T> observer) {
+				return source.register(new FlowObserver<T>() {
+					/** The subscription. */
+					Subscription subscription;
+					/** The values received from the current batch. */
+					int received;
+					@Override
+					public void onSubscribe(Subscription s) {
+						subscription = s;
+						s.request(batchSize);
+					}
+
+					@Override
+					public void next(T value) {
+						observer.next(value);
+						if (++received == batchSize) {
+							received = 0;
+							subscription.request(batchSize);
+						}
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+}
@@ -0,0 +1,210 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+
+public class BackpressureTest {
+	/** バッファの容量 */
+	static final int CAPACITY = 16;
+	/** 要求の回数 */
+	static final int REQUESTS = 200;
+
+	/**
+	 * 別スレッドで全速力で値を発行する Observable
+	 */
+	static final class FastProducer implements Observable<Integer> {
+		/** 発行し終えた値の数 */
+		final AtomicInteger produced = new AtomicInteger();
+		@Override
+		public Closeable register(final Observer<? super Integer> observer) {
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int i = 0;
+					while (!Thread.currentThread().isInterrupted() && i < 1000000) {
+						observer.next(i++);
+						produced.incrementAndGet();
+					}
+					observer.finish();
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+			return new Closeable() {
+				@Override
+				public void close() {
+					t.interrupt();
+				}
+			};
+		}
+	}
+
+	/**
+	 * 受信側の記録
+	 */
+	static final class SlowConsumer implements FlowObserver<Integer> {
+		/** 受け取った値の数 */
+		final AtomicInteger delivered = new AtomicInteger();
+		/** 受け取ったエラー */
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		/** 購読 */
+		volatile Subscription subscription;
+		@Override
+		public void onSubscribe(Subscription s) {
+			subscription = s;
+		}
+
+		@Override
+		public void next(Integer value) {
+			delivered.incrementAndGet();
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			error.set(ex);
+		}
+
+		@Override
+		public void finish() {
+		}
+		/**
+		 * 1ms 毎に 1 件ずつ要求する
+		 * @return 要求した数
+		 * @throws InterruptedException if interrupted
+		 */
+		int consume() throws InterruptedException {
+			int requested = 0;
+			for (int i = 0; i < REQUESTS && error.get() == null; i++) {
+				subscription.request(1);
+				requested++;
+				Thread.sleep(1);
+			}
+			return requested;
+		}
+	}
+
+	/**
+	 * 速い生産者・遅い消費者で、各戦略ともバッファが容量を超えないこと
+	 */
+	@Test
+	public void testDropAndLatest() throws Exception {
+		for (OverflowStrategy strategy : Arrays.asList(OverflowStrategy.DROP, OverflowStrategy.LATEST)) {
+			FastProducer producer = new FastProducer();
+			SlowConsumer consumer = new SlowConsumer();
+			final AtomicInteger dropped = new AtomicInteger();
+
+			Closeable c = Backpressure.from(producer, CAPACITY, strategy, new Action1<Integer>() {
+				@Override
+				public void invoke(Integer value) {
+					dropped.incrementAndGet();
+				}
+			}).register(consumer);
+			int requested = consumer.consume();
+			c.close();
+
+			int delivered = consumer.delivered.get();
+			// 要求した以上には届かない
+			assertTrue(strategy + ": " + delivered, delivered <= requested);
+			assertTrue(strategy + ": " + delivered, delivered > 0);
+			// 届かず捨てられもしなかった値はバッファ内の分 (+ 処理中の 1 件) だけ
+			int buffered = producer.produced.get() - delivered - dropped.get();
+			assertTrue(strategy + ": " + buffered, buffered <= CAPACITY + 1);
+			assertNull(consumer.error.get());
+		}
+	}
+
+	/**
+	 * ERROR 戦略では溢れた時点でエラーになり、生産者が止まる
+	 */
+	@Test
+	public void testError() throws InterruptedException {
+		FastProducer producer = new FastProducer();
+		SlowConsumer consumer = new SlowConsumer();
+
+		Backpressure.from(producer, CAPACITY, OverflowStrategy.ERROR).register(consumer);
+		consumer.consume();
+
+		assertTrue(consumer.error.get() instanceof IllegalStateException);
+		assertTrue(consumer.delivered.get() <= CAPACITY);
+	}
+
+	/**
+	 * BLOCK 戦略では生産者が消費者を待つので値は失われない
+	 */
+	@Test
+	public void testBlock() throws Exception {
+		FastProducer producer = new FastProducer();
+		SlowConsumer consumer = new SlowConsumer();
+
+		Closeable c = Backpressure.from(producer, CAPACITY, OverflowStrategy.BLOCK).register(consumer);
+		int requested = consumer.consume();
+		int delivered = consumer.delivered.get();
+		int produced = producer.produced.get();
+		c.close();
+
+		assertEquals(requested, delivered);
+		assertTrue(produced + " > " + delivered, produced <= delivered + CAPACITY + 1);
+		assertNull(consumer.error.get());
+	}
+
+	/**
+	 * Iterable からは要求された分だけ取り出す
+	 */
+	@Test
+	public void testIterable() {
+		final List<Object> actual = new ArrayList<Object>();
+		final AtomicReference<Subscription> s = new AtomicReference<Subscription>();
+		Backpressure.from(Arrays.asList(1, 2, 3)).register(new FlowObserver<Integer>() {
+			@Override
+			public void onSubscribe(Subscription subscription) {
+				s.set(subscription);
+			}
+
+			@Override
+			public void next(Integer value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+
+		assertTrue(actual.isEmpty());
+		s.get().request(2);
+		assertEquals(Arrays.<Object>asList(1, 2), actual);
+		s.get().request(5);
+		assertEquals(Arrays.<Object>asList(1, 2, 3, "finish!"), actual);
+	}
+
+	/**
+	 * toObservable でまとめて要求しながら push に戻す
+	 */
+	@Test
+	public void testToObservable() {
+		final List<Object> actual = new ArrayList<Object>();
+		Backpressure.toObservable(Backpressure.from(Arrays.asList(1, 2, 3, 4, 5)), 2)
+		.register(new Observer<Integer>() {
+			@Override
+			public void next(Integer value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+
+		assertEquals(Arrays.<Object>asList(1, 2, 3, 4, 5, "finish!"), actual);
+	}
+}
@@ -0,0 +1,127 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing each value to a local file in its own
+ * {@code FileChannel.write} with writing the batches of
+ * {@link ReactiveEx#batch(Observable, int, long, Func1, long, TimeUnit, Scheduler)}
+ * in one write each, for 100 byte records.
+ * <p>Usage: {@code java BatchingBenchmark [sizes...]}</p>
+ */
+public class BatchingBenchmark {
+	/** The record size. */
+	static final int RECORD = 100;
+	/** The maximum batch size in bytes. */
+	static final int MAX_BYTES = 64 * 1024;
+	/** The size estimator of the records. */
+	static final Func1<byte[], Integer> SIZER = new Func1<byte[], Integer>() {
+		@Override
+		public Integer invoke(byte[] param1) {
+			return param1.length;
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = args.length > 0 ? Benchmark.sizes(args) : new int[] { 1000, 100000 };
+		final DefaultScheduler sourcePool = new DefaultScheduler();
+		final DefaultScheduler pool = new DefaultScheduler();
+		File file = File.createTempFile("batching", ".dat");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		final FileChannel channel = raf.getChannel();
+		final byte[] record = new byte[RECORD];
+		for (int i = 0; i < record.length; i++) {
+			record[i] = (byte)('a' + i % 26);
+		}
+		record[RECORD - 1] = '\n';
+		final Func1<Integer, byte[]> toRecord = new Func1<Integer, byte[]>() {
+			@Override
+			public byte[] invoke(Integer param1) {
+				return record;
+			}
+		};
+
+		Benchmark.header();
+		Benchmark.run("write per element", sizes, new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				channel.truncate(0);
+				channel.position(0);
+				Reactive.run(Reactive.select(Reactive.range(0, n, sourcePool), toRecord), new Writer<byte[]>() {
+					@Override
+					void write(byte[] value) throws IOException {
+						channel.write(ByteBuffer.wrap(value));
+					}
+				});
+			}
+		});
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BYTES);
+		Benchmark.run("batch(1024, 64K, 5ms)", sizes, new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				channel.truncate(0);
+				channel.position(0);
+				Observable<byte[]> source = Reactive.select(Reactive.range(0, n, sourcePool), toRecord);
+				Reactive.run(ReactiveEx.batch(source, 1024, MAX_BYTES, SIZER, 5, TimeUnit.MILLISECONDS, pool),
+						new Writer<List<byte[]>>() {
+					@Override
+					void write(List<byte[]> value) throws IOException {
+						buffer.clear();
+						for (byte[] b : value) {
+							buffer.put(b);
+						}
+						buffer.flip();
+						while (buffer.hasRemaining()) {
+							channel.write(buffer);
+						}
+					}
+				});
+			}
+		});
+		channel.close();
+		raf.close();
+		sourcePool.shutdown();
+		pool.shutdown();
+	}
+	/**
+	 * An observer writing the values.
+	 * @param <T> the value type
+	 */
+	abstract static class Writer<T> implements Observer<T> {
+		/**
+		 * Writes a value.
+		 * @param value the value
+		 * @throws IOException on error
+		 */
+		abstract void write(T value) throws IOException;
+		@Override
+		public void next(T value) {
+			try {
+				write(value);
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			ex.printStackTrace();
+		}
+
+		@Override
+		public void finish() {
+		}
+	}
+}
@@ -0,0 +1,309 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registration of
+ * {@link ReactiveEx#batch(Observable, int, long, Func1, long, TimeUnit, Scheduler)}:
+ * collects the source values into batches, flushed by count, by estimated
+ * size or by linger time, whichever comes first. A value which would push
+ * the estimated size over the limit starts the next batch, unless it is the
+ * first value of its batch.
+ * <p>Two lists are used in turn: while the downstream consumes one batch on
+ * the pool, the source fills the other. A batch which fills up while the
+ * previous one is still being consumed makes the source thread wait, and a
+ * batch whose linger time expires meanwhile is handed over as soon as the
+ * consumer returns. The list of a batch is cleared and reused once
+ * {@code next()} of the downstream returns.</p>
+ * @param <T> the element type
+ */
+final class BatchingObserver<T> implements Observer<T>, Runnable, Closeable {
+	/** The downstream. */
+	final Observer<? super List<T>> observer;
+	/** The maximum number of values in a batch. */
+	final int maxItems;
+	/** The maximum estimated size of a batch. */
+	final long maxBytes;
+	/** The size estimator, null if the size is not limited. */
+	final Func1<? super T, Integer> sizer;
+	/** The linger time in nanoseconds, or 0 for no time limit. */
+	final long linger;
+	/** The pool running the consumer and the linger timers. */
+	final Scheduler pool;
+	/** The lock guarding the state. */
+	final Lock lock = new ReentrantLock();
+	/** Signalled when the consumer returns the list it consumed. */
+	final Condition released = lock.newCondition();
+	/** The batch being filled. */
+	List<T> filling;
+	/** The estimated size of the batch being filled. */
+	long bytes;
+	/** The free list, null while the consumer has it. */
+	List<T> spare;
+	/** The batch handed to the consumer task. */
+	List<T> ready;
+	/** The number of batches handed over, identifies the linger timer. */
+	long generation;
+	/** The linger time of the batch being filled expired while the consumer was busy. */
+	boolean flushPending;
+	/** The linger timer of the batch being filled. */
+	Closeable timer;
+	/** The source terminated. */
+	boolean done;
+	/** The source error. */
+	Throwable error;
+	/** The downstream was terminated or closed. */
+	boolean terminated;
+	/** The source registration. */
+	Closeable source;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param maxItems the maximum number of values in a batch
+	 * @param maxBytes the maximum estimated size of a batch
+	 * @param sizer the size estimator, null if the size is not limited
+	 * @param linger the linger time, 0 for no time limit
+	 * @param unit the time unit
+	 * @param pool the pool running the consumer and the linger timers
+	 */
+	BatchingObserver(Observer<? super List<T>> observer, int maxItems,
+			long maxBytes, Func1<? super T, Integer> sizer,
+			long linger, TimeUnit unit, Scheduler pool) {
+		this.observer = observer;
+		this.maxItems = maxItems;
+		this.maxBytes = maxBytes;
+		this.sizer = sizer;
+		this.linger = unit.toNanos(linger);
+		this.pool = pool;
+		this.filling = new ArrayList<T>(Math.min(maxItems, 1024));
+		this.spare = new ArrayList<T>(Math.min(maxItems, 1024));
+	}
+	/**
+	 * Registers with the source.
+	 * @param src the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> src) {
+		Closeable c = src.register(this);
+		lock.lock();
+		try {
+			if (terminated || done) {
+				// closed, or the source failed or terminated before register returned
+				Closeables.close0(c);
+			} else {
+				source = c;
+			}
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+	@Override
+	public void next(T value) {
+		int size = 0;
+		if (sizer != null) {
+			try {
+				size = sizer.invoke(value);
+			} catch (Throwable ex) {
+				closeSource();
+				terminate(ex);
+				return;
+			}
+		}
+		lock.lock();
+		try {
+			if (done || terminated) {
+				return;
+			}
+			if (!filling.isEmpty() && bytes + size > maxBytes && !flush()) {
+				return;
+			}
+			filling.add(value);
+			bytes += size;
+			if (filling.size() == 1 && linger > 0) {
+				timer = pool.schedule(new Linger(generation), linger, TimeUnit.NANOSECONDS);
+			}
+			if (filling.size() >= maxItems || bytes >= maxBytes) {
+				flush();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Waits for the spare list and hands the batch being filled over, lock held.
+	 * @return false if closed meanwhile
+	 */
+	boolean flush() {
+		while (spare == null && !terminated) {
+			released.awaitUninterruptibly();
+		}
+		if (terminated) {
+			return false;
+		}
+		handOff();
+		return true;
+	}
+	@Override
+	public void error(Throwable ex) {
+		terminate(ex);
+	}
+	@Override
+	public void finish() {
+		terminate(null);
+	}
+	/**
+	 * Terminates the source side and the downstream once the last batch was
+	 * consumed; an error drops the batch being filled.
+	 * @param ex the error or null
+	 */
+	void terminate(Throwable ex) {
+		boolean now = false;
+		lock.lock();
+		try {
+			if (done || terminated) {
+				return;
+			}
+			done = true;
+			error = ex;
+			if (ex != null) {
+				filling.clear();
+			}
+			if (spare != null) {
+				if (filling.isEmpty()) {
+					Closeables.close0(timer);
+					terminated = true;
+					now = true;
+				} else {
+					handOff();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (now) {
+			signalTerminal();
+		}
+	}
+	/** Signals the terminal event to the downstream, nothing is in flight. */
+	void signalTerminal() {
+		if (error != null) {
+			observer.error(error);
+		} else {
+			observer.finish();
+		}
+	}
+	/** Hands the batch being filled to the consumer and swaps in the spare list, lock held. */
+	void handOff() {
+		Closeables.close0(timer);
+		timer = null;
+		ready = filling;
+		filling = spare;
+		spare = null;
+		bytes = 0;
+		flushPending = false;
+		generation++;
+		pool.schedule(this);
+	}
+	@Override
+	public void run() {
+		List<T> batch;
+		lock.lock();
+		try {
+			batch = ready;
+			ready = null;
+		} finally {
+			lock.unlock();
+		}
+		try {
+			observer.next(batch);
+		} catch (Throwable ex) {
+			close();
+			observer.error(ex);
+			return;
+		}
+		boolean now = false;
+		lock.lock();
+		try {
+			batch.clear();
+			spare = batch;
+			released.signalAll();
+			if (terminated) {
+				return;
+			}
+			if (!filling.isEmpty() && (flushPending || done)) {
+				handOff();
+			} else if (done) {
+				terminated = true;
+				now = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (now) {
+			signalTerminal();
+		}
+	}
+	/** Closes the source registration, which keeps emitting after a failure of this stage otherwise. */
+	void closeSource() {
+		Closeable c;
+		lock.lock();
+		try {
+			c = source;
+			source = null;
+		} finally {
+			lock.unlock();
+		}
+		Closeables.close0(c);
+	}
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			terminated = true;
+			released.signalAll();
+			Closeables.close0(timer);
+			Closeables.close0(source);
+		} finally {
+			lock.unlock();
+		}
+	}
+	/** The linger timer of a batch. */
+	final class Linger implements Runnable {
+		/** The generation of the batch. */
+		final long gen;
+		/**
+		 * Constructor.
+		 * @param gen the generation of the batch
+		 */
+		Linger(long gen) {
+			this.gen = gen;
+		}
+		@Override
+		public void run() {
+			lock.lock();
+			try {
+				if (gen != generation || terminated || filling.isEmpty()) {
+					return;
+				}
+				if (spare != null) {
+					handOff();
+				} else {
+					flushPending = true;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class BatchingObserverTest {
+	/** 仮想時間のスケジューラ */
+	final TestScheduler scheduler = new TestScheduler();
+	/** 受け取ったバッチ (コピー) */
+	final List<Object> actual = new ArrayList<Object>();
+	/** バッチをコピーして actual に溜める */
+	final Observer<List<?>> collector = new Observer<List<?>>() {
+		@Override
+		public void next(List<?> value) { actual.add(new ArrayList<Object>(value)); }
+
+		@Override
+		public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+		@Override
+		public void finish() { actual.add("finish!"); }
+	};
+
+	/**
+	 * 件数で区切られ、finish の前に残りが流れる
+	 */
+	@Test
+	public void testMaxItems() {
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		ReactiveEx.batch(source, 3, Long.MAX_VALUE, null, 0, TimeUnit.SECONDS, scheduler).register(collector);
+
+		source.next(1);
+		source.next(2);
+		scheduler.triggerActions();
+		assertEquals(Arrays.<Object>asList(), actual);
+		source.next(3);
+		scheduler.triggerActions();
+		assertEquals(Arrays.<Object>asList(Arrays.asList(1, 2, 3)), actual);
+
+		// 前のバッチの処理中に次のバッチを溜める
+		source.next(4);
+		source.next(5);
+		source.next(6);
+		source.next(7);
+		source.finish();
+		assertEquals(1, actual.size());
+		scheduler.triggerActions();
+		assertEquals(Arrays.<Object>asList(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6), Arrays.asList(7), "finish!"), actual);
+	}
+
+	/**
+	 * 最初の値から linger 経過で流れる
+	 */
+	@Test
+	public void testLinger() {
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		ReactiveEx.batch(source, 100, Long.MAX_VALUE, null, 1, TimeUnit.SECONDS, scheduler).register(collector);
+
+		scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+		source.next(1);
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		source.next(2);
+		scheduler.advanceTimeBy(499, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(), actual);
+		scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(Arrays.asList(1, 2)), actual);
+
+		source.next(3);
+		source.finish();
+		scheduler.triggerActions();
+		assertEquals(Arrays.<Object>asList(Arrays.asList(1, 2), Arrays.asList(3), "finish!"), actual);
+		assertEquals(0, scheduler.pendingCount());
+	}
+
+	/**
+	 * 見積もりサイズで区切られ、エラーでは溜めかけのバッチは捨てられる
+	 */
+	@Test
+	public void testMaxBytes() {
+		MulticastObserver<String> source = new MulticastObserver<String>();
+		ReactiveEx.batch(source, 100, 10, new Func1<String, Integer>() {
+			@Override
+			public Integer invoke(String param1) { return param1.length(); }
+		}, 0, TimeUnit.SECONDS, scheduler).register(collector);
+
+		source.next("aaaa");
+		source.next("bbbb");
+		source.next("cc");
+		source.next("d");
+		scheduler.triggerActions();
+		source.error(new RuntimeException("boom"));
+		scheduler.triggerActions();
+		assertEquals(Arrays.<Object>asList(Arrays.asList("aaaa", "bbbb", "cc"), "error:boom"), actual);
+	}
+
+	/**
+	 * サイズの見積もりが失敗したらソースの登録を解除してからエラーを通知する
+	 */
+	@Test
+	public void testSizerError() {
+		MulticastObserver<String> source = new MulticastObserver<String>();
+		ReactiveEx.batch(source, 100, 10, new Func1<String, Integer>() {
+			@Override
+			public Integer invoke(String param1) { return param1.isEmpty() ? null : param1.length(); }
+		}, 0, TimeUnit.SECONDS, scheduler).register(collector);
+
+		source.next("aaaa");
+		assertEquals(1, source.observerCount());
+		source.next("");
+		assertEquals(0, source.observerCount());
+		source.next("bbbb");
+		scheduler.triggerActions();
+		assertEquals(1, actual.size());
+		assertTrue(actual.get(0).toString().startsWith("error:"));
+	}
+
+	/**
+	 * 別スレッドの遅いコンシューマでも値は順に漏れなく届く
+	 * (ソースはコンシューマを待つので、別のプールで動かす)
+	 */
+	@Test
+	public void testSlowConsumer() throws Exception {
+		DefaultScheduler sourcePool = new DefaultScheduler();
+		DefaultScheduler pool = new DefaultScheduler();
+		final List<Integer> values = new ArrayList<Integer>();
+		final int[] batches = { 0 };
+		Reactive.run(ReactiveEx.batch(Reactive.range(0, 20000, sourcePool), 100, Long.MAX_VALUE, null,
+				1, TimeUnit.MILLISECONDS, pool), new Observer<List<Integer>>() {
+			@Override
+			public void next(List<Integer> value) {
+				assertTrue(value.size() <= 100);
+				values.addAll(value);
+				batches[0]++;
+				if (batches[0] % 20 == 0) {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+				}
+			}
+
+			@Override
+			public void error(Throwable ex) { fail(ex.toString()); }
+
+			@Override
+			public void finish() { }
+		});
+		sourcePool.shutdown();
+		pool.shutdown();
+
+		assertEquals(20000, values.size());
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(i, values.get(i).intValue());
+		}
+	}
+}
@@ -0,0 +1,211 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small micro benchmark harness for the samples.
+ * <p>The operator chains of the samples are measured with JMH by the Maven
+ * build ({@code jmh/}); the {@code main()} benchmarks of {@code src/} use this
+ * harness, so they run from Eclipse without the JMH dependency. It follows
+ * the JMH throughput mode: each case is run for a number of warmup and
+ * measurement iterations per element count, and it reports ops/s,
+ * ns/element, the per-operation latency percentiles, the bytes allocated
+ * per element and the GC activity (similar to the JMH GC profiler).</p>
+ * <p>The allocation figures come from {@code com.sun.management.ThreadMXBean}
+ * and cover the benchmark thread only: pipelines which hop to another
+ * thread under-report them.</p>
+ * <p>Iteration counts can be changed with the {@code bench.warmup},
+ * {@code bench.iterations} and {@code bench.time} (milliseconds per iteration)
+ * system properties.</p>
+ */
+public final class Benchmark {
+	/** The default element counts, from a single element up to 10M. */
+	public static final int[] DEFAULT_SIZES = { 1, 1000, 1000000, 10000000 };
+	/** The number of warmup iterations. */
+	static final int WARMUP = Integer.getInteger("bench.warmup", 3);
+	/** The number of measured iterations. */
+	static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+	/** The minimum duration of one iteration in milliseconds. */
+	static final long ITERATION_TIME = Long.getLong("bench.time", 500L);
+	/** The maximum number of latency samples kept per case. */
+	static final int MAX_SAMPLES = 1 << 16;
+	/** The thread bean. */
+	static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	/** The HotSpot specific allocation counter, if available. */
+	static final Method ALLOCATED_BYTES = allocatedBytesMethod();
+	/** Utility class. */
+	private Benchmark() {
+		// utility class
+	}
+	/**
+	 * Parses the element counts from the command line arguments.
+	 * @param args the arguments, if empty, the {@link #DEFAULT_SIZES} are used
+	 * @return the element counts
+	 */
+	public static int[] sizes(String[] args) {
+		if (args.length == 0) {
+			return DEFAULT_SIZES.clone();
+		}
+		int[] result = new int[args.length];
+		for (int i = 0; i < args.length; i++) {
+			result[i] = Integer.parseInt(args[i]);
+		}
+		return result;
+	}
+	/** Prints the report header. */
+	public static void header() {
+		System.out.printf("%-40s %10s %14s %12s %12s %12s %12s %8s %8s%n",
+				"Benchmark", "elements", "ops/s", "ns/elem", "p50 us/op", "p99 us/op", "B/elem", "gc", "gc ms");
+	}
+	/**
+	 * Runs the body for each element count and prints one report line each.
+	 * @param name the benchmark name
+	 * @param sizes the element counts
+	 * @param body the body, receives the element count
+	 * @throws Exception if the body throws
+	 */
+	public static void run(String name, int[] sizes,
+			Action1E<Integer, ? extends Exception> body) throws Exception {
+		for (int n : sizes) {
+			run(name, n, body);
+		}
+	}
+	/**
+	 * Runs the body with the given element count and prints the report line.
+	 * @param name the benchmark name
+	 * @param n the element count
+	 * @param body the body, receives the element count
+	 * @throws Exception if the body throws
+	 */
+	public static void run(String name, int n,
+			Action1E<Integer, ? extends Exception> body) throws Exception {
+		Integer count = n;
+		for (int i = 0; i < WARMUP; i++) {
+			iteration(body, count, null);
+		}
+		long[] samples = new long[MAX_SAMPLES];
+		int[] sampleCount = new int[1];
+		long ops = 0;
+		long time = 0;
+		long allocated = allocatedBytes();
+		long gcCount = gcCount();
+		long gcTime = gcTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			long t0 = System.nanoTime();
+			ops += iteration(body, count, new Object[] { samples, sampleCount });
+			time += System.nanoTime() - t0;
+		}
+		allocated = allocatedBytes() - allocated;
+		gcCount = gcCount() - gcCount;
+		gcTime = gcTime() - gcTime;
+
+		long[] sorted = Arrays.copyOf(samples, sampleCount[0]);
+		Arrays.sort(sorted);
+		double elements = (double)ops * n;
+		System.out.printf("%-40s %10d %14.1f %12.2f %12.2f %12.2f %12.2f %8d %8d%n",
+				name, n,
+				ops * 1e9 / time,
+				elements > 0 ? time / elements : 0d,
+				percentile(sorted, 0.50) / 1000d,
+				percentile(sorted, 0.99) / 1000d,
+				allocated >= 0 && elements > 0 ? allocated / elements : Double.NaN,
+				gcCount, gcTime);
+	}
+	/**
+	 * Runs the body repeatedly until the iteration time elapses.
+	 * @param body the body
+	 * @param n the element count
+	 * @param sampling the {samples, count} pair or null if no samples should be recorded
+	 * @return the number of operations performed
+	 * @throws Exception if the body throws
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static long iteration(Action1E body, Integer n, Object[] sampling) throws Exception {
+		long end = System.nanoTime() + ITERATION_TIME * 1000000L;
+		long ops = 0;
+		long now;
+		do {
+			long t0 = System.nanoTime();
+			body.invoke(n);
+			now = System.nanoTime();
+			ops++;
+			if (sampling != null) {
+				long[] samples = (long[])sampling[0];
+				int[] count = (int[])sampling[1];
+				if (count[0] < samples.length) {
+					samples[count[0]++] = now - t0;
+				}
+			}
+		} while (now < end);
+		return ops;
+	}
+	/**
+	 * Returns the given percentile of a sorted sample array.
+	 * @param sorted the sorted samples
+	 * @param p the percentile between 0 and 1
+	 * @return the value or 0 if there are no samples
+	 */
+	static long percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int)(sorted.length * p))];
+	}
+	/** @return the method for the thread allocation counter or null if not supported */
+	static Method allocatedBytesMethod() {
+		try {
+			Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+			if (c.isInstance(THREADS)) {
+				return c.getMethod("getThreadAllocatedBytes", long.class);
+			}
+		} catch (ClassNotFoundException ex) {
+			// not HotSpot
+		} catch (NoSuchMethodException ex) {
+			// too old
+		}
+		return null;
+	}
+	/** @return the bytes allocated by the current thread so far or -1 if not supported */
+	public static long allocatedBytes() {
+		if (ALLOCATED_BYTES != null) {
+			try {
+				return (Long)ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+			} catch (Exception ex) {
+				// ignored
+			}
+		}
+		return -1;
+	}
+	/** @return the total number of collections so far */
+	static long gcCount() {
+		long result = 0;
+		List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+		for (GarbageCollectorMXBean gc : gcs) {
+			result += Math.max(0, gc.getCollectionCount());
+		}
+		return result;
+	}
+	/** @return the total collection time in milliseconds so far */
+	static long gcTime() {
+		long result = 0;
+		List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+		for (GarbageCollectorMXBean gc : gcs) {
+			result += Math.max(0, gc.getCollectionTime());
+		}
+		return result;
+	}
+	/**
+	 * Prevents dead code elimination of a benchmark result.
+	 * @param value the value to consume
+	 */
+	public static void consume(Object value) {
+		if (value != null && value.hashCode() == System.identityHashCode(Benchmark.class)) {
+			System.out.print("");
+		}
+	}
+}
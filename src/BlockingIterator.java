@@ -0,0 +1,278 @@
+import hu.akarnokd.reactive4java.base.CloseableIterator;
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The iterator of {@link ReactiveEx#toIterable(Observable, int)}: hands the
+ * values of a push source to a pulling consumer through a bounded,
+ * lock-free queue of {@code prefetch} values.
+ * <p>Unlike {@code Reactive.toIterable}, which queues every value in an
+ * unbounded {@code LinkedBlockingQueue}, a source running ahead of the
+ * consumer is parked once the queue is full, so at most {@code prefetch}
+ * values are kept per iterator. The parked source is resumed only after the
+ * consumer has taken three quarters of the queue, so a fast source and a
+ * slow consumer exchange a wake-up per batch instead of per value; the
+ * consumer is woken only when it waits for a value.</p>
+ * <p>The source must emit on another thread than the consumer: a source
+ * which emits synchronously on the thread creating the iterator may emit up
+ * to {@code prefetch} values, and fails the iterator with an
+ * {@code IllegalStateException} beyond that instead of blocking forever.
+ * An error of the source is thrown by {@code hasNext()} once the values
+ * before it have been taken, wrapped into a {@code RuntimeException} unless
+ * it is one, as by {@code Reactive.toIterable}.</p>
+ * <p>{@link #drainTo(Collection, int)} takes the available values in one
+ * call, e.g. to fill the batches of a splitting consumer. On Java 8 the
+ * iterator can back a {@code Stream} by
+ * {@code StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED), parallel)},
+ * whose spliterator splits off growing arrays of values for the parallel
+ * workers while this iterator stays on one thread.</p>
+ * <p>The iterator itself is used by one consumer thread at a time;
+ * {@link #close()} may be called from any thread.</p>
+ * @param <T> the element type
+ */
+public final class BlockingIterator<T> implements CloseableIterator<T> {
+	/** The end of the values, in {@link #next}. */
+	static final Object COMPLETE = new Object();
+	/** The queue of values, nulls wrapped. */
+	final SimpleQueue<Object> queue;
+	/** The number of values taken between two resumptions of the source. */
+	final int limit;
+	/** The observer registered with the source. */
+	final Observer<T> producer = new Observer<T>() {
+		@Override
+		public void next(T value) {
+			offer(value);
+		}
+		@Override
+		public void error(Throwable ex) {
+			terminate(ex);
+		}
+		@Override
+		public void finish() {
+			terminate(null);
+		}
+	};
+	/** The next value taken from the queue, COMPLETE at the end, null if none, consumer only. */
+	Object next;
+	/** The values taken since the source was last resumed, consumer only. */
+	int taken;
+	/** The values offered, source only. */
+	long offered;
+	/** The number of values offered, written after each value. */
+	volatile long produced;
+	/** The number of values taken, written once per {@code limit} values. */
+	volatile long consumed;
+	/** The source thread waiting for room in the queue, null if none or already woken. */
+	final AtomicReference<Thread> producerWaiter = new AtomicReference<Thread>();
+	/** The consumer thread waiting for a value, null if none or already woken. */
+	final AtomicReference<Thread> consumerWaiter = new AtomicReference<Thread>();
+	/** The thread registering with the source, null after the registration. */
+	volatile Thread registering;
+	/** The termination error, written before done. */
+	Throwable error;
+	/** The source terminated. */
+	volatile boolean done;
+	/** The iterator was closed. */
+	volatile boolean cancelled;
+	/** The source registration. */
+	volatile Closeable upstream;
+	/**
+	 * Constructor.
+	 * @param prefetch the queue capacity, rounded up to a power of two
+	 */
+	BlockingIterator(int prefetch) {
+		this.queue = new SpscArrayQueue<Object>(prefetch);
+		this.limit = Math.max(1, prefetch - (prefetch >> 2));
+	}
+	/**
+	 * Registers with the source.
+	 * @param source the source
+	 * @return this
+	 */
+	BlockingIterator<T> registerWith(Observable<? extends T> source) {
+		registering = Thread.currentThread();
+		try {
+			Closeable c = source.register(producer);
+			upstream = c;
+			if (cancelled || done) {
+				Closeables.close0(c);
+			}
+		} finally {
+			registering = null;
+		}
+		return this;
+	}
+	/**
+	 * Queues a value, parks the source while the queue is full.
+	 * @param value the value
+	 */
+	void offer(T value) {
+		if (done || cancelled) {
+			return;
+		}
+		Object v = BufferedFlow.wrap(value);
+		if (!queue.offer(v)) {
+			Thread t = Thread.currentThread();
+			if (t == registering) {
+				terminate(new IllegalStateException("The source emitted more than the prefetch on the consumer thread"));
+				return;
+			}
+			for (;;) {
+				producerWaiter.set(t);
+				// reading consumed makes the slots freed before it visible
+				if (consumed >= 0 && queue.offer(v)) {
+					break;
+				}
+				if (cancelled) {
+					producerWaiter.lazySet(null);
+					return;
+				}
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					producerWaiter.lazySet(null);
+					t.interrupt();
+					terminate(new InterruptedException());
+					Closeables.close0(upstream);
+					return;
+				}
+			}
+			producerWaiter.lazySet(null);
+		}
+		// the volatile write orders the value before reading the waiter
+		produced = ++offered;
+		wake(consumerWaiter);
+	}
+	/**
+	 * Terminates the source side.
+	 * @param ex the error, null for completion
+	 */
+	void terminate(Throwable ex) {
+		if (done) {
+			return;
+		}
+		error = ex;
+		done = true;
+		wake(consumerWaiter);
+	}
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = take();
+		}
+		return next != COMPLETE;
+	}
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object v = next;
+		next = null;
+		return BufferedFlow.<T>unwrap(v);
+	}
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	/**
+	 * Takes the next value and the values already in the queue, up to max,
+	 * waiting only for the first one.
+	 * @param collection the collection receiving the values
+	 * @param max the maximum number of values to take
+	 * @return the number of values taken, 0 at the end of the values
+	 */
+	public int drainTo(Collection<? super T> collection, int max) {
+		if (max <= 0 || !hasNext()) {
+			return 0;
+		}
+		collection.add(next());
+		int n = 1;
+		while (n < max && !cancelled) {
+			Object v = queue.poll();
+			if (v == null) {
+				break;
+			}
+			taken();
+			collection.add(BufferedFlow.<T>unwrap(v));
+			n++;
+		}
+		return n;
+	}
+	/**
+	 * Takes the next value from the queue, waits if it is empty.
+	 * @return the value, or COMPLETE at the end
+	 */
+	Object take() {
+		for (;;) {
+			if (cancelled) {
+				return COMPLETE;
+			}
+			boolean d = done;
+			Object v = queue.poll();
+			if (v != null) {
+				taken();
+				return v;
+			}
+			if (d) {
+				Throwable ex = error;
+				if (ex != null) {
+					next = COMPLETE;
+					if (ex instanceof RuntimeException) {
+						throw (RuntimeException)ex;
+					}
+					throw new RuntimeException(ex);
+				}
+				return COMPLETE;
+			}
+			Thread t = Thread.currentThread();
+			consumerWaiter.set(t);
+			// reading produced makes the values offered before it visible
+			if (produced >= 0 && queue.isEmpty() && !done && !cancelled) {
+				LockSupport.park(this);
+			}
+			consumerWaiter.lazySet(null);
+			if (Thread.interrupted()) {
+				t.interrupt();
+				close();
+				throw new RuntimeException(new InterruptedException());
+			}
+		}
+	}
+	/** Counts a value taken and resumes the source once per {@code limit} values. */
+	void taken() {
+		if (++taken == limit) {
+			taken = 0;
+			// the volatile write publishes the freed slots before reading the waiter
+			consumed += limit;
+			wake(producerWaiter);
+		}
+	}
+	/**
+	 * Unparks the waiting thread, once per wait.
+	 * @param waiter the waiter
+	 */
+	static void wake(AtomicReference<Thread> waiter) {
+		if (waiter.get() != null) {
+			Thread w = waiter.getAndSet(null);
+			if (w != null) {
+				LockSupport.unpark(w);
+			}
+		}
+	}
+	@Override
+	public void close() {
+		if (!cancelled) {
+			cancelled = true;
+			Closeables.close0(upstream);
+			wake(producerWaiter);
+			wake(consumerWaiter);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.CloseableIterator;
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compares the consumer throughput of {@code Reactive.toIterable} (an
+ * unbounded {@code LinkedBlockingQueue} of {@code Option}s) and
+ * {@link ReactiveEx#toIterable(Observable, int)} at several prefetch
+ * sizes, iterating value by value and, for the latter, in batches by
+ * {@link BlockingIterator#drainTo}.
+ * <p>The values are emitted by {@code Reactive.range} on a pool thread and
+ * taken on the main thread; the allocation columns are the consumer's.
+ * The second table is the heap retained by an iterator whose consumer
+ * stopped after the first value while the source emitted the rest, i.e.
+ * the heap released by closing it: all the values for the unbounded queue,
+ * the prefetch for the bounded one.</p>
+ * <p>Usage: {@code java BlockingIteratorBenchmark [values [prefetch...]]}.</p>
+ */
+public class BlockingIteratorBenchmark {
+	/** The pool emitting the values. */
+	static final DefaultScheduler POOL = new DefaultScheduler();
+	/** Creates an iterator over a source. */
+	interface Bridge {
+		/**
+		 * @param source the source
+		 * @return the iterator
+		 */
+		CloseableIterator<Integer> invoke(Observable<Integer> source);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int values = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int[] prefetches = { 16, 128, 1024 };
+		if (args.length > 1) {
+			prefetches = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				prefetches[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		List<String> names = new ArrayList<String>();
+		List<Bridge> bridges = new ArrayList<Bridge>();
+		names.add("Reactive.toIterable");
+		bridges.add(new Bridge() {
+			@Override
+			public CloseableIterator<Integer> invoke(Observable<Integer> source) {
+				return Reactive.toIterable(source).iterator();
+			}
+		});
+		for (final int p : prefetches) {
+			names.add("toIterable(" + p + ")");
+			bridges.add(new Bridge() {
+				@Override
+				public CloseableIterator<Integer> invoke(Observable<Integer> source) {
+					return ReactiveEx.toBlockingIterator(source, p);
+				}
+			});
+		}
+
+		Benchmark.header();
+		for (int i = 0; i < bridges.size(); i++) {
+			final Bridge bridge = bridges.get(i);
+			Benchmark.run(names.get(i), values, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					Iterator<Integer> it = bridge.invoke(Reactive.range(0, n, POOL));
+					int last = 0;
+					while (it.hasNext()) {
+						last = it.next();
+					}
+					Benchmark.consume(last);
+				}
+			});
+		}
+		for (final int p : prefetches) {
+			Benchmark.run("toIterable(" + p + ") + drainTo", values, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					BlockingIterator<Integer> it = ReactiveEx.toBlockingIterator(Reactive.range(0, n, POOL), p);
+					List<Integer> batch = new ArrayList<Integer>(p);
+					int last = 0;
+					while (it.drainTo(batch, p) > 0) {
+						last = batch.get(batch.size() - 1);
+						batch.clear();
+					}
+					Benchmark.consume(last);
+				}
+			});
+		}
+
+		System.out.println();
+		System.out.printf("%-40s %10s %14s%n", "Retained, stalled consumer", "values", "MB");
+		for (int i = 0; i < bridges.size(); i++) {
+			retained(names.get(i), values, bridges.get(i));
+		}
+		POOL.shutdown();
+	}
+	/**
+	 * Prints the heap retained by an iterator which took one value while
+	 * the source emitted the rest.
+	 * @param name the bridge name
+	 * @param values the number of values
+	 * @param bridge the bridge
+	 * @throws InterruptedException if interrupted
+	 */
+	static void retained(String name, int values, Bridge bridge) throws InterruptedException {
+		CloseableIterator<Integer> it = bridge.invoke(Reactive.range(0, values, POOL));
+		Benchmark.consume(it.next());
+		// let the source run until it finishes or parks
+		Thread.sleep(2000);
+		long stalled = GroupByBenchmark.usedHeap();
+		Closeables.close0(it);
+		it = null;
+		Thread.sleep(100);
+		long bytes = stalled - GroupByBenchmark.usedHeap();
+		System.out.printf("%-40s %10d %14.1f%n", name, values, bytes / 1048576d);
+	}
+}
@@ -0,0 +1,174 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class BlockingIteratorTest {
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+
+	/**
+	 * 別スレッドで 0 から count - 1 までを発行し、最後にエラーかどうかを選べる Observable
+	 */
+	static final class ThreadSource implements Observable<Integer> {
+		/** 値の数 */
+		final int count;
+		/** 最後に発行するエラー、null なら完了 */
+		final Throwable error;
+		/** next() から戻った値の数 */
+		final AtomicInteger emitted = new AtomicInteger();
+		/** 発行スレッド */
+		Thread thread;
+		/** 登録が閉じられた */
+		volatile boolean closed;
+		/**
+		 * コンストラクタ
+		 * @param count 値の数
+		 * @param error 最後に発行するエラー、null なら完了
+		 */
+		ThreadSource(int count, Throwable error) {
+			this.count = count;
+			this.error = error;
+		}
+		@Override
+		public Closeable register(final Observer<? super Integer> observer) {
+			thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < count && !closed; i++) {
+						observer.next(i);
+						emitted.incrementAndGet();
+					}
+					if (error != null) {
+						observer.error(error);
+					} else {
+						observer.finish();
+					}
+				}
+			});
+			thread.start();
+			return new Closeable() {
+				@Override
+				public void close() {
+					closed = true;
+				}
+			};
+		}
+	}
+
+	/**
+	 * 別スレッドの値はすべて順に取り出せる
+	 */
+	@Test
+	public void testValues() {
+		List<Integer> values = new ArrayList<Integer>();
+		for (Integer v : ReactiveEx.toIterable(new ThreadSource(100000, null), 16)) {
+			values.add(v);
+		}
+		assertEquals(100000, values.size());
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(i, values.get(i).intValue());
+		}
+	}
+
+	/**
+	 * 消費されないと発行側は prefetch 個を渡したところで待ち、消費した分だけ進む
+	 */
+	@Test
+	public void testBackpressure() throws Exception {
+		ThreadSource source = new ThreadSource(1000, null);
+		BlockingIterator<Integer> it = ReactiveEx.toBlockingIterator(source, 16);
+		Thread.sleep(200);
+		assertEquals(16, source.emitted.get());
+		assertEquals(Thread.State.WAITING, source.thread.getState());
+
+		// 4 分の 3 を取り出すまで発行側は再開しない
+		for (int i = 0; i < 11; i++) {
+			assertEquals(i, it.next().intValue());
+		}
+		Thread.sleep(100);
+		assertEquals(16, source.emitted.get());
+		assertEquals(11, it.next().intValue());
+		Thread.sleep(200);
+		assertEquals(28, source.emitted.get());
+
+		it.close();
+		source.thread.join(5000);
+		assertFalse(source.thread.isAlive());
+		assertFalse(it.hasNext());
+	}
+
+	/**
+	 * エラーはそれまでの値を取り出した後で投げられ、その後は値がない
+	 */
+	@Test
+	public void testError() {
+		BlockingIterator<Integer> it = ReactiveEx.toBlockingIterator(new ThreadSource(3, new IOException()), 2);
+		assertEquals(0, it.next().intValue());
+		assertEquals(1, it.next().intValue());
+		assertEquals(2, it.next().intValue());
+		try {
+			it.hasNext();
+			fail("should have thrown");
+		} catch (RuntimeException ex) {
+			assertTrue(ex.getCause() instanceof IOException);
+		}
+		assertFalse(it.hasNext());
+	}
+
+	/**
+	 * 同じスレッドで発行するソースは prefetch 個までなら取り出せ、超えると例外になる
+	 */
+	@Test
+	public void testSynchronousSource() {
+		List<Integer> values = new ArrayList<Integer>();
+		for (Integer v : ReactiveEx.toIterable(Reactive.range(0, 5, current), 8)) {
+			values.add(v);
+		}
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), values);
+
+		BlockingIterator<Integer> it = ReactiveEx.toBlockingIterator(Reactive.range(0, 5, current), 4);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, it.next().intValue());
+		}
+		try {
+			it.hasNext();
+			fail("should have thrown");
+		} catch (IllegalStateException ex) {
+			// 期待どおり
+		}
+	}
+
+	/**
+	 * drainTo は最初の値だけを待ち、キューにある値をまとめて取り出す
+	 */
+	@Test
+	public void testDrainTo() throws Exception {
+		ThreadSource source = new ThreadSource(100, null);
+		BlockingIterator<Integer> it = ReactiveEx.toBlockingIterator(source, 32);
+		Thread.sleep(200);
+		List<Integer> values = new ArrayList<Integer>();
+		assertEquals(10, it.drainTo(values, 10));
+		assertEquals(22, it.drainTo(values, 22));
+		int n;
+		while ((n = it.drainTo(values, 7)) > 0) {
+			assertTrue(n <= 7);
+		}
+		assertEquals(100, values.size());
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(i, values.get(i).intValue());
+		}
+	}
+}
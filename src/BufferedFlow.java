@@ -0,0 +1,265 @@
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registration of {@link Backpressure#from(Observable, int, OverflowStrategy, Action1)}:
+ * buffers the values of a push source into a bounded buffer and relays
+ * them as the downstream requests them.
+ * <p>The values are delivered by whichever thread finds demand and buffered
+ * values (the producer in {@code next()} or the consumer in {@code request()}),
+ * but never by two threads at once.</p>
+ * @param <T> the element type
+ */
+final class BufferedFlow<T> implements Observer<T>, Subscription, Closeable {
+	/** Marks a null value in the buffer. */
+	static final Object NULL = new Object();
+	/** The downstream. */
+	final FlowObserver<? super T> observer;
+	/** The buffer capacity. */
+	final int capacity;
+	/** The overflow strategy. */
+	final OverflowStrategy strategy;
+	/** Receives the dropped values, may be null. */
+	final Action1<? super T> onDrop;
+	/** The lock guarding the buffer and the demand. */
+	final Lock lock = new ReentrantLock();
+	/** Signalled when the buffer has room, BLOCK strategy. */
+	final Condition notFull = lock.newCondition();
+	/** The buffer. */
+	final ArrayDeque<Object> queue;
+	/** Serializes the delivery. */
+	final AtomicInteger wip = new AtomicInteger();
+	/** The outstanding demand. */
+	long requested;
+	/** The source terminated. */
+	boolean done;
+	/** The termination error. */
+	Throwable error;
+	/** The terminal event was delivered. */
+	boolean terminated;
+	/** The downstream cancelled. */
+	volatile boolean cancelled;
+	/** The buffer overflowed with the ERROR strategy. */
+	volatile boolean overflow;
+	/** The source registration. */
+	volatile Closeable upstream;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param capacity the buffer capacity
+	 * @param strategy the overflow strategy
+	 * @param onDrop receives the dropped values, may be null
+	 */
+	BufferedFlow(FlowObserver<? super T> observer, int capacity,
+			OverflowStrategy strategy, Action1<? super T> onDrop) {
+		this.observer = observer;
+		this.capacity = capacity;
+		this.strategy = strategy;
+		this.onDrop = onDrop;
+		this.queue = new ArrayDeque<Object>(Math.min(capacity, 1024));
+	}
+	/**
+	 * Hands the subscription to the downstream, then registers with the source.
+	 * @param source the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> source) {
+		observer.onSubscribe(this);
+		if (!cancelled) {
+			upstream = source.register(this);
+			if (cancelled || overflow) {
+				Closeables.close0(upstream);
+			}
+		}
+		return this;
+	}
+	@Override
+	public void next(T value) {
+		Object dropped = null;
+		lock.lock();
+		try {
+			if (done || cancelled) {
+				return;
+			}
+			if (queue.size() >= capacity) {
+				switch (strategy) {
+				case DROP:
+					dropped = wrap(value);
+					break;
+				case LATEST:
+					dropped = queue.poll();
+					queue.offer(wrap(value));
+					break;
+				case ERROR:
+					done = true;
+					error = new IllegalStateException("Buffer overflow, capacity " + capacity);
+					overflow = true;
+					break;
+				default:
+					while (queue.size() >= capacity && !cancelled) {
+						try {
+							notFull.await();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							break;
+						}
+					}
+					if (cancelled) {
+						return;
+					}
+					if (queue.size() >= capacity) {
+						dropped = wrap(value);
+					} else {
+						queue.offer(wrap(value));
+					}
+				}
+			} else {
+				queue.offer(wrap(value));
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (dropped != null && onDrop != null) {
+			onDrop.invoke(BufferedFlow.<T>unwrap(dropped));
+		}
+		if (overflow) {
+			Closeables.close0(upstream);
+		}
+		drain();
+	}
+	@Override
+	public void error(Throwable ex) {
+		lock.lock();
+		try {
+			if (done) {
+				return;
+			}
+			done = true;
+			error = ex;
+		} finally {
+			lock.unlock();
+		}
+		drain();
+	}
+	@Override
+	public void finish() {
+		lock.lock();
+		try {
+			done = true;
+		} finally {
+			lock.unlock();
+		}
+		drain();
+	}
+	@Override
+	public void request(long n) {
+		if (n <= 0) {
+			error(new IllegalArgumentException("n <= 0: " + n));
+			return;
+		}
+		lock.lock();
+		try {
+			requested += n;
+			if (requested < 0) {
+				requested = Long.MAX_VALUE;
+			}
+		} finally {
+			lock.unlock();
+		}
+		drain();
+	}
+	@Override
+	public void cancel() {
+		if (cancelled) {
+			return;
+		}
+		cancelled = true;
+		Closeables.close0(upstream);
+		lock.lock();
+		try {
+			queue.clear();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void close() {
+		cancel();
+	}
+	/** Delivers the buffered values while there is demand. */
+	void drain() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		for (;;) {
+			for (;;) {
+				if (cancelled || terminated) {
+					break;
+				}
+				Object v = null;
+				boolean finished = false;
+				Throwable ex = null;
+				lock.lock();
+				try {
+					if (requested > 0 && !queue.isEmpty()) {
+						v = queue.poll();
+						if (requested != Long.MAX_VALUE) {
+							requested--;
+						}
+						notFull.signal();
+					} else if (done && (queue.isEmpty() || error != null)) {
+						finished = true;
+						ex = error;
+						terminated = true;
+						queue.clear();
+					}
+				} finally {
+					lock.unlock();
+				}
+				if (v != null) {
+					observer.next(BufferedFlow.<T>unwrap(v));
+				} else {
+					if (finished) {
+						if (ex != null) {
+							observer.error(ex);
+						} else {
+							observer.finish();
+						}
+					}
+					break;
+				}
+			}
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				break;
+			}
+		}
+	}
+	/**
+	 * @param value the value
+	 * @return the value or the NULL marker
+	 */
+	static Object wrap(Object value) {
+		return value != null ? value : NULL;
+	}
+	/**
+	 * @param <T> the value type
+	 * @param value the buffered value
+	 * @return the value or null for the NULL marker
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T unwrap(Object value) {
+		return value != NULL ? (T)value : null;
+	}
+}
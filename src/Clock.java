@@ -0,0 +1,21 @@
+/**
+ * A source of the current time for the operators measuring elapsed time.
+ * <p>A {@code Scheduler} which keeps its own time, like
+ * {@link TestScheduler}, implements this interface. The operators which
+ * compare the time with their timers ({@code timeout},
+ * {@code generateTimed}) read it from their scheduler if it is a clock and
+ * from {@link #SYSTEM} otherwise, so they follow the virtual time.</p>
+ */
+public interface Clock {
+	/** The clock of {@link System#nanoTime()}. */
+	Clock SYSTEM = new Clock() {
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+	/**
+	 * @return the current time in nanoseconds, only the differences are meaningful
+	 */
+	long nanoTime();
+}
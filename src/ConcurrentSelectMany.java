@@ -0,0 +1,263 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registration of {@link ReactiveEx#selectManyOrdered} and
+ * {@link ReactiveEx#selectManyUnordered}: keeps up to
+ * {@code maxConcurrency} inner observables registered at once, each
+ * registered on the scheduler, and relays their values either in source order
+ * (values of later inners are buffered until the earlier inners finish)
+ * or as they arrive.
+ * @param <T> the source element type
+ * @param <U> the result element type
+ */
+final class ConcurrentSelectMany<T, U> implements Observer<T>, Closeable {
+	/** The downstream observer. */
+	final Observer<? super U> observer;
+	/** The selector of the inner observables. */
+	final Func1<? super T, ? extends Observable<? extends U>> selector;
+	/** The maximum number of active inners. */
+	final int maxConcurrency;
+	/** The pool where the inners are registered. */
+	final Scheduler pool;
+	/** Emit in source order? */
+	final boolean ordered;
+	/** The lock guarding the state and serializing the emissions. */
+	final Lock lock = new ReentrantLock();
+	/** The source values waiting for a free slot. */
+	final LinkedList<T> waiting = new LinkedList<T>();
+	/** The inners in source order which have not been fully emitted, ordered mode only. */
+	final LinkedList<Inner> queue = new LinkedList<Inner>();
+	/** The inners which have not finished yet. */
+	final Set<Inner> running = new LinkedHashSet<Inner>();
+	/** The source registration. */
+	Closeable source;
+	/** The source finished. */
+	boolean sourceDone;
+	/** The downstream was terminated or closed. */
+	boolean terminated;
+	/**
+	 * Constructor.
+	 * @param observer the downstream observer
+	 * @param selector the selector of the inner observables
+	 * @param maxConcurrency the maximum number of active inners
+	 * @param pool the pool where the inners are registered
+	 * @param ordered emit in source order?
+	 */
+	ConcurrentSelectMany(Observer<? super U> observer,
+			Func1<? super T, ? extends Observable<? extends U>> selector,
+			int maxConcurrency, Scheduler pool, boolean ordered) {
+		this.observer = observer;
+		this.selector = selector;
+		this.maxConcurrency = maxConcurrency;
+		this.pool = pool;
+		this.ordered = ordered;
+	}
+	/**
+	 * Registers with the source.
+	 * @param src the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> src) {
+		Closeable c = src.register(this);
+		lock.lock();
+		try {
+			if (terminated) {
+				Closeables.close0(c);
+			} else {
+				source = c;
+			}
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+	/** An inner observer. */
+	final class Inner implements Observer<U> {
+		/** The values waiting for the earlier inners, ordered mode only. */
+		final List<U> buffer = new ArrayList<U>();
+		/** The scheduled registration. */
+		Closeable task;
+		/** The inner registration. */
+		Closeable handle;
+		/** The inner finished. */
+		boolean done;
+		@Override
+		public void next(U value) {
+			lock.lock();
+			try {
+				if (terminated || done) {
+					return;
+				}
+				if (!ordered || queue.peek() == this) {
+					observer.next(value);
+				} else {
+					buffer.add(value);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			ConcurrentSelectMany.this.error(ex);
+		}
+
+		@Override
+		public void finish() {
+			lock.lock();
+			try {
+				if (terminated || done) {
+					return;
+				}
+				done = true;
+				running.remove(this);
+				Closeables.close0(handle);
+				if (ordered) {
+					drain();
+				}
+				while (!terminated && running.size() < maxConcurrency && !waiting.isEmpty()) {
+					subscribe(waiting.poll());
+				}
+				checkDone();
+			} finally {
+				lock.unlock();
+			}
+		}
+		/**
+		 * Stores the inner registration.
+		 * @param c the registration
+		 */
+		void setHandle(Closeable c) {
+			lock.lock();
+			try {
+				if (done || terminated) {
+					Closeables.close0(c);
+				} else {
+					handle = c;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	@Override
+	public void next(T value) {
+		lock.lock();
+		try {
+			if (terminated) {
+				return;
+			}
+			if (running.size() < maxConcurrency) {
+				subscribe(value);
+			} else {
+				waiting.add(value);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		lock.lock();
+		try {
+			if (!terminated) {
+				terminated = true;
+				observer.error(ex);
+				closeAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void finish() {
+		lock.lock();
+		try {
+			sourceDone = true;
+			checkDone();
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			terminated = true;
+			closeAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Creates and registers the inner for the value on the pool, lock held.
+	 * @param value the source value
+	 */
+	void subscribe(T value) {
+		final Observable<? extends U> o;
+		try {
+			o = selector.invoke(value);
+		} catch (Throwable ex) {
+			error(ex);
+			return;
+		}
+		final Inner inner = new Inner();
+		running.add(inner);
+		if (ordered) {
+			queue.add(inner);
+		}
+		inner.task = pool.schedule(new Runnable() {
+			@Override
+			public void run() {
+				inner.setHandle(o.register(inner));
+			}
+		});
+	}
+	/** Emits the buffered values of the finished head inners, lock held. */
+	void drain() {
+		Inner head;
+		while ((head = queue.peek()) != null) {
+			for (U u : head.buffer) {
+				observer.next(u);
+			}
+			head.buffer.clear();
+			if (!head.done) {
+				break;
+			}
+			queue.poll();
+		}
+	}
+	/** Finishes the downstream if everything is done, lock held. */
+	void checkDone() {
+		if (!terminated && sourceDone && running.isEmpty() && waiting.isEmpty() && queue.isEmpty()) {
+			terminated = true;
+			observer.finish();
+			closeAll();
+		}
+	}
+	/** Closes the source and the inners, lock held. */
+	void closeAll() {
+		Closeables.close0(source);
+		for (Inner inner : running) {
+			Closeables.close0(inner.task);
+			Closeables.close0(inner.handle);
+		}
+		running.clear();
+		waiting.clear();
+		queue.clear();
+	}
+}
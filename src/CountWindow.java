@@ -0,0 +1,72 @@
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.util.ArrayDeque;
+
+/**
+ * The registration of {@link ReactiveEx#window(Observable, int, int)}: opens a
+ * window every {@code skip} elements and closes it after {@code count}
+ * elements.
+ * <p>The elements are relayed to the open windows as they arrive, nothing is
+ * buffered. The source is expected to call the observer methods serially, so
+ * no locking is needed.</p>
+ * @param <T> the element type
+ */
+final class CountWindow<T> extends WindowOperator<T> {
+	/** The window size. */
+	final int count;
+	/** The distance of the window starts. */
+	final int skip;
+	/** The open windows, oldest first. */
+	final ArrayDeque<Window<T>> windows = new ArrayDeque<Window<T>>();
+	/** The index of the next element. */
+	long index;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param count the window size
+	 * @param skip the distance of the window starts
+	 */
+	CountWindow(Observer<? super Observable<T>> observer, int count, int skip) {
+		super(observer);
+		this.count = count;
+		this.skip = skip;
+	}
+	@Override
+	public void next(T value) {
+		if (index++ % skip == 0) {
+			Window<T> w = openWindow();
+			if (w != null) {
+				windows.add(w);
+			}
+		}
+		for (Window<T> w : windows) {
+			w.count++;
+			w.next(value);
+		}
+		Window<T> first = windows.peek();
+		if (first != null && first.count == count) {
+			windows.poll().finish();
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		for (Window<T> w : windows) {
+			w.error(ex);
+		}
+		windows.clear();
+		if (!closed) {
+			observer.error(ex);
+		}
+	}
+	@Override
+	public void finish() {
+		for (Window<T> w : windows) {
+			w.finish();
+		}
+		windows.clear();
+		if (!closed) {
+			observer.finish();
+		}
+	}
+}
@@ -0,0 +1,35 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link MetricsRegistry} keeping the stage metrics in memory.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+	/** The metrics by stage name. */
+	final ConcurrentMap<String, StageMetrics> stages = new ConcurrentHashMap<String, StageMetrics>();
+	@Override
+	public StageMetrics stage(String name) {
+		StageMetrics m = stages.get(name);
+		if (m == null) {
+			StageMetrics n = new StageMetrics(name);
+			m = stages.putIfAbsent(name, n);
+			if (m == null) {
+				m = n;
+				created(n);
+			}
+		}
+		return m;
+	}
+	@Override
+	public Collection<StageMetrics> stages() {
+		return Collections.unmodifiableCollection(stages.values());
+	}
+	/**
+	 * Called once for each new stage.
+	 * @param metrics the metrics of the stage
+	 */
+	protected void created(StageMetrics metrics) {
+	}
+}
@@ -0,0 +1,14 @@
+import java.io.Closeable;
+
+/**
+ * Observable of primitive double values.
+ * @see PrimitiveObservables
+ */
+public interface DoubleObservable {
+	/**
+	 * Registers an observer for the notification of doubles.
+	 * @param observer the observer
+	 * @return the way of deregister the observer from this provider
+	 */
+	Closeable register(DoubleObserver observer);
+}
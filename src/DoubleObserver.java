@@ -0,0 +1,19 @@
+/**
+ * Observer of primitive double values.
+ * <p>The same contract as {@code Observer<Double>} without boxing the values.</p>
+ * @see PrimitiveObservables
+ */
+public interface DoubleObserver {
+	/**
+	 * The next value is received.
+	 * @param value the next value
+	 */
+	void next(double value);
+	/**
+	 * An exception is received.
+	 * @param ex the exception
+	 */
+	void error(Throwable ex);
+	/** No more values to expect. */
+	void finish();
+}
@@ -0,0 +1,64 @@
+/**
+ * Single pass count, sum, min, max and average of double values.
+ * <p>Accumulating does not allocate. Before the first value, min is
+ * {@code Double.POSITIVE_INFINITY} and max is {@code Double.NEGATIVE_INFINITY}.</p>
+ */
+public final class DoubleStatistics {
+	/** The number of values. */
+	long count;
+	/** The sum of the values. */
+	double sum;
+	/** The smallest value. */
+	double min = Double.POSITIVE_INFINITY;
+	/** The largest value. */
+	double max = Double.NEGATIVE_INFINITY;
+	/**
+	 * Records a value.
+	 * @param value the value
+	 */
+	public void accept(double value) {
+		count++;
+		sum += value;
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+	/**
+	 * Merges the values recorded by the other instance into this one.
+	 * @param other the other statistics
+	 */
+	public void combine(DoubleStatistics other) {
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+	/** @return the number of values */
+	public long count() {
+		return count;
+	}
+	/** @return the sum of the values */
+	public double sum() {
+		return sum;
+	}
+	/** @return the smallest value */
+	public double min() {
+		return min;
+	}
+	/** @return the largest value */
+	public double max() {
+		return max;
+	}
+	/** @return the average of the values or 0 if there were none */
+	public double average() {
+		return count > 0 ? sum / count : 0d;
+	}
+	@Override
+	public String toString() {
+		return "DoubleStatistics{count=" + count + ", sum=" + sum + ", min=" + min
+				+ ", average=" + average() + ", max=" + max + "}";
+	}
+}
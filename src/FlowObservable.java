@@ -0,0 +1,15 @@
+import java.io.Closeable;
+
+/**
+ * An observable which sends values only on demand.
+ * @param <T> the element type
+ * @see Backpressure
+ */
+public interface FlowObservable<T> {
+	/**
+	 * Registers a demand-driven observer.
+	 * @param observer the observer
+	 * @return the way of deregister the observer, same as cancelling the subscription
+	 */
+	Closeable register(FlowObserver<? super T> observer);
+}
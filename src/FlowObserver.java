@@ -0,0 +1,16 @@
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+/**
+ * An observer which controls the rate of the values it receives.
+ * <p>The source calls {@link #onSubscribe(Subscription)} before anything else
+ * and calls {@code next()} only as many times as requested through the
+ * subscription. {@code error()} and {@code finish()} need no demand.</p>
+ * @param <T> the element type
+ */
+public interface FlowObserver<T> extends Observer<T> {
+	/**
+	 * Receives the subscription before any other event.
+	 * @param subscription the subscription to request values through
+	 */
+	void onSubscribe(Subscription subscription);
+}
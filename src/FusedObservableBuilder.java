@@ -0,0 +1,309 @@
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A builder of synchronous, stateless stages ({@code select}, {@code where},
+ * {@code invoke}, {@code take}, {@code skip}) over an {@code Iterable} or an
+ * integer range, which runs the whole chain as a single loop.
+ * <p>{@code ObservableBuilder} wraps every stage into its own observer and
+ * registration; here the stages are only recorded, and a registration runs
+ * one task on the scheduler which pulls the source values and passes each
+ * one through the stage array. {@code take} stops pulling the source as soon
+ * as its count is reached.</p>
+ * <p>Other operators are available through {@link #toBuilder()}, which ends
+ * the fusion.</p>
+ * @param <T> the element type
+ */
+public final class FusedObservableBuilder<T> implements Observable<T> {
+	/** The stage kinds. */
+	static final int SELECT = 0, WHERE = 1, INVOKE = 2, TAKE = 3, SKIP = 4;
+	/** A recorded stage. */
+	static final class Stage {
+		/** The kind. */
+		final int kind;
+		/** The selector of SELECT. */
+		final Func1<Object, Object> selector;
+		/** The predicate of WHERE. */
+		final Func1<Object, Boolean> predicate;
+		/** The action of INVOKE. */
+		final Action1<Object> action;
+		/** The count of TAKE and SKIP. */
+		final int count;
+		/**
+		 * Constructor.
+		 * @param kind the kind
+		 * @param selector the selector or null
+		 * @param predicate the predicate or null
+		 * @param action the action or null
+		 * @param count the count
+		 */
+		Stage(int kind, Func1<Object, Object> selector, Func1<Object, Boolean> predicate,
+				Action1<Object> action, int count) {
+			this.kind = kind;
+			this.selector = selector;
+			this.predicate = predicate;
+			this.action = action;
+			this.count = count;
+		}
+	}
+	/** The source iterable, null for a range. */
+	final Iterable<?> source;
+	/** The range start. */
+	final int start;
+	/** The range count. */
+	final int count;
+	/** The scheduler running the loop. */
+	final Scheduler pool;
+	/** The stages. */
+	final Stage[] stages;
+	/**
+	 * Constructor.
+	 * @param source the source iterable, null for a range
+	 * @param start the range start
+	 * @param count the range count
+	 * @param pool the scheduler running the loop
+	 * @param stages the stages
+	 */
+	FusedObservableBuilder(Iterable<?> source, int start, int count, Scheduler pool, Stage[] stages) {
+		this.source = source;
+		this.start = start;
+		this.count = count;
+		this.pool = pool;
+		this.stages = stages;
+	}
+	/**
+	 * Starts a fused chain over the iterable, run on the default scheduler.
+	 * @param <T> the element type
+	 * @param source the source
+	 * @return the builder
+	 */
+	public static <T> FusedObservableBuilder<T> from(Iterable<? extends T> source) {
+		return from(source, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Starts a fused chain over the iterable.
+	 * @param <T> the element type
+	 * @param source the source
+	 * @param pool the scheduler running the loop
+	 * @return the builder
+	 */
+	public static <T> FusedObservableBuilder<T> from(Iterable<? extends T> source, Scheduler pool) {
+		return new FusedObservableBuilder<T>(source, 0, 0, pool, new Stage[0]);
+	}
+	/**
+	 * Starts a fused chain over the integers start..start+count-1,
+	 * run on the default scheduler.
+	 * @param start the first value
+	 * @param count the number of values
+	 * @return the builder
+	 */
+	public static FusedObservableBuilder<Integer> range(int start, int count) {
+		return range(start, count, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Starts a fused chain over the integers start..start+count-1.
+	 * @param start the first value
+	 * @param count the number of values
+	 * @param pool the scheduler running the loop
+	 * @return the builder
+	 */
+	public static FusedObservableBuilder<Integer> range(int start, int count, Scheduler pool) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count < 0");
+		}
+		return new FusedObservableBuilder<Integer>(null, start, count, pool, new Stage[0]);
+	}
+	/**
+	 * @param <U> the new element type
+	 * @param stage the stage to append
+	 * @return a new builder with the stage appended
+	 */
+	<U> FusedObservableBuilder<U> add(Stage stage) {
+		Stage[] s = Arrays.copyOf(stages, stages.length + 1);
+		s[stages.length] = stage;
+		return new FusedObservableBuilder<U>(source, start, count, pool, s);
+	}
+	/**
+	 * Transforms the values.
+	 * @param <U> the result type
+	 * @param selector the selector
+	 * @return the builder
+	 */
+	@SuppressWarnings("unchecked")
+	public <U> FusedObservableBuilder<U> select(Func1<? super T, ? extends U> selector) {
+		return add(new Stage(SELECT, (Func1<Object, Object>)selector, null, null, 0));
+	}
+	/**
+	 * Filters the values.
+	 * @param predicate the predicate
+	 * @return the builder
+	 */
+	@SuppressWarnings("unchecked")
+	public FusedObservableBuilder<T> where(Func1<? super T, Boolean> predicate) {
+		return add(new Stage(WHERE, null, (Func1<Object, Boolean>)predicate, null, 0));
+	}
+	/**
+	 * Invokes an action for each value.
+	 * @param action the action
+	 * @return the builder
+	 */
+	@SuppressWarnings("unchecked")
+	public FusedObservableBuilder<T> invoke(Action1<? super T> action) {
+		return add(new Stage(INVOKE, null, null, (Action1<Object>)action, 0));
+	}
+	/**
+	 * Relays the first values only, then finishes.
+	 * @param n the number of values
+	 * @return the builder
+	 */
+	public FusedObservableBuilder<T> take(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n < 0");
+		}
+		return add(new Stage(TAKE, null, null, null, n));
+	}
+	/**
+	 * Skips the first values.
+	 * @param n the number of values
+	 * @return the builder
+	 */
+	public FusedObservableBuilder<T> skip(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("n < 0");
+		}
+		return add(new Stage(SKIP, null, null, null, n));
+	}
+	/**
+	 * Ends the fusion, the further operators are the regular ones.
+	 * @return the builder
+	 */
+	public ObservableBuilder<T> toBuilder() {
+		return ObservableBuilder.from(this);
+	}
+	@Override
+	public Closeable register(final Observer<? super T> observer) {
+		final Loop loop = new Loop(observer);
+		loop.task = pool.schedule(loop);
+		return loop;
+	}
+	/** The loop of one registration. */
+	final class Loop implements Runnable, Closeable {
+		/** The downstream. */
+		final Observer<? super T> observer;
+		/** The counters of the TAKE and SKIP stages. */
+		final int[] counters = new int[stages.length];
+		/** The registration was closed. */
+		volatile boolean cancelled;
+		/** The scheduled task. */
+		volatile Closeable task;
+		/**
+		 * Constructor.
+		 * @param observer the downstream
+		 */
+		Loop(Observer<? super T> observer) {
+			this.observer = observer;
+		}
+		@Override
+		public void run() {
+			try {
+				// a take(0) finishes without pulling anything
+				for (Stage s : stages) {
+					if (s.kind == TAKE && s.count == 0) {
+						observer.finish();
+						return;
+					}
+				}
+				if (source != null) {
+					Iterator<?> it = source.iterator();
+					while (!cancelled && it.hasNext()) {
+						if (!onNext(it.next())) {
+							return;
+						}
+					}
+				} else {
+					int end = start + count;
+					for (int i = start; i != end && !cancelled; i++) {
+						if (!onNext(i)) {
+							return;
+						}
+					}
+				}
+			} catch (Throwable ex) {
+				if (!cancelled) {
+					observer.error(ex);
+				}
+				return;
+			}
+			if (!cancelled) {
+				observer.finish();
+			}
+		}
+		/**
+		 * Passes a source value through the stages.
+		 * @param value the source value
+		 * @return false if a take stage finished the downstream
+		 */
+		@SuppressWarnings("unchecked")
+		boolean onNext(Object value) {
+			Object v = value;
+			boolean last = false;
+			Stage[] ss = stages;
+			for (int i = 0; i < ss.length; i++) {
+				Stage s = ss[i];
+				switch (s.kind) {
+				case SELECT:
+					v = s.selector.invoke(v);
+					break;
+				case WHERE:
+					if (!s.predicate.invoke(v)) {
+						return finishIf(last);
+					}
+					break;
+				case INVOKE:
+					s.action.invoke(v);
+					break;
+				case TAKE:
+					if (++counters[i] == s.count) {
+						last = true;
+					}
+					break;
+				default:
+					if (counters[i] < s.count) {
+						counters[i]++;
+						return finishIf(last);
+					}
+				}
+			}
+			observer.next((T)v);
+			return finishIf(last);
+		}
+		/**
+		 * Finishes the downstream after a take stage reached its count.
+		 * @param last the take stage reached its count
+		 * @return false if finished
+		 */
+		boolean finishIf(boolean last) {
+			if (last) {
+				cancelled = true;
+				observer.finish();
+				return false;
+			}
+			return true;
+		}
+		@Override
+		public void close() {
+			cancelled = true;
+			Closeables.close0(task);
+		}
+	}
+}
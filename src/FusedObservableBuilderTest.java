@@ -0,0 +1,129 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class FusedObservableBuilderTest {
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+	/** 2 倍する */
+	static final Func1<Integer, Integer> TWICE = new Func1<Integer, Integer>() {
+		@Override
+		public Integer invoke(Integer param1) {
+			return param1 * 2;
+		}
+	};
+	/** 3 の倍数以外 */
+	static final Func1<Integer, Boolean> NOT3 = new Func1<Integer, Boolean>() {
+		@Override
+		public Boolean invoke(Integer param1) {
+			return param1 % 3 != 0;
+		}
+	};
+
+	/**
+	 * 結果をリストに溜める
+	 * @param source ソース
+	 * @return 値と "finish!" または "error:..."
+	 */
+	static List<Object> collect(Observable<?> source) throws InterruptedException {
+		final List<Object> actual = new ArrayList<Object>();
+		Reactive.run(source, new Observer<Object>() {
+			@Override
+			public void next(Object value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+		return actual;
+	}
+
+	/**
+	 * ObservableBuilder と同じ結果になる
+	 */
+	@Test
+	public void testSameAsObservableBuilder() throws InterruptedException {
+		final List<Object> peeked1 = new ArrayList<Object>();
+		final List<Object> peeked2 = new ArrayList<Object>();
+
+		List<Object> expected = collect(ObservableBuilder.range(1, 20, current)
+				.skip(2).select(TWICE).where(NOT3).invoke(new Action1<Integer>() {
+					@Override
+					public void invoke(Integer value) { peeked1.add(value); }
+				}).take(5).select(TWICE));
+		List<Object> actual = collect(FusedObservableBuilder.range(1, 20, current)
+				.skip(2).select(TWICE).where(NOT3).invoke(new Action1<Integer>() {
+					@Override
+					public void invoke(Integer value) { peeked2.add(value); }
+				}).take(5).select(TWICE));
+
+		assertEquals(Arrays.<Object>asList(16, 20, 28, 32, 40, "finish!"), expected);
+		assertEquals(expected, actual);
+		// ObservableBuilder は take() の後も同期ソースを最後まで読む
+		assertEquals(peeked2, peeked1.subList(0, 5));
+		assertEquals(Arrays.<Object>asList(8, 10, 14, 16, 20), peeked2);
+	}
+
+	/**
+	 * take() に達したらソースをそれ以上読まない
+	 */
+	@Test
+	public void testTakeStopsPulling() throws InterruptedException {
+		final AtomicInteger pulled = new AtomicInteger();
+		Iterable<Integer> source = new Iterable<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return new Iterator<Integer>() {
+					@Override
+					public boolean hasNext() { return true; }
+
+					@Override
+					public Integer next() { return pulled.incrementAndGet(); }
+
+					@Override
+					public void remove() { throw new UnsupportedOperationException(); }
+				};
+			}
+		};
+		List<Object> actual = collect(FusedObservableBuilder.from(source, current).where(NOT3).take(3));
+
+		assertEquals(Arrays.<Object>asList(1, 2, 4, "finish!"), actual);
+		assertEquals(4, pulled.get());
+		assertEquals(Arrays.<Object>asList("finish!"), collect(FusedObservableBuilder.from(source, current).take(0)));
+	}
+
+	/**
+	 * ステージの例外は error() になり、toBuilder() で普通の演算子に続けられる
+	 */
+	@Test
+	public void testErrorAndToBuilder() throws InterruptedException {
+		List<Object> actual = collect(FusedObservableBuilder.from(Arrays.asList("1", "x", "3"), current)
+				.select(new Func1<String, Integer>() {
+					@Override
+					public Integer invoke(String param1) {
+						return Integer.parseInt(param1);
+					}
+				}));
+		assertEquals(Arrays.<Object>asList(1, "error:For input string: \"x\""), actual);
+
+		assertEquals(Arrays.<Object>asList(6, "finish!"),
+				collect(FusedObservableBuilder.range(1, 3, current).toBuilder().sumInt()));
+	}
+}
@@ -0,0 +1,79 @@
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+/**
+ * Runs the same 10-stage {@code select/where/invoke/skip/take} chain through
+ * {@link ObservableBuilder} and {@link FusedObservableBuilder}.
+ * <p>Usage: {@code java FusionBenchmark [elementCount...]}, 10M elements by default.</p>
+ */
+public class FusionBenchmark {
+	/** The synchronous scheduler for the sources. */
+	static final Scheduler CURRENT = new CurrentThreadScheduler();
+	/** Adds one, kept within the Integer cache so the stages do not allocate. */
+	static final Func1<Integer, Integer> INC = new Func1<Integer, Integer>() {
+		@Override
+		public Integer invoke(Integer param1) {
+			return (param1 + 1) & 127;
+		}
+	};
+	/** Multiplies by three, kept within the Integer cache. */
+	static final Func1<Integer, Integer> TIMES3 = new Func1<Integer, Integer>() {
+		@Override
+		public Integer invoke(Integer param1) {
+			return (param1 * 3) & 127;
+		}
+	};
+	/** Keeps all but every 16th value. */
+	static final Func1<Integer, Boolean> MOST = new Func1<Integer, Boolean>() {
+		@Override
+		public Boolean invoke(Integer param1) {
+			return (param1 & 15) != 0;
+		}
+	};
+	/** A side effect. */
+	static final Action1<Integer> PEEK = new Action1<Integer>() {
+		@Override
+		public void invoke(Integer value) {
+			Benchmark.consume(value);
+		}
+	};
+	/** The action consuming the results. */
+	static final Action1<Object> CONSUME = new Action1<Object>() {
+		@Override
+		public void invoke(Object value) {
+			Benchmark.consume(value);
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = args.length > 0 ? Benchmark.sizes(args) : new int[] { 10000000 };
+		Benchmark.header();
+
+		Benchmark.run("ObservableBuilder 10 stages", sizes, new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				Reactive.run(
+				ObservableBuilder.range(0, n, CURRENT)
+				.select(INC).where(MOST).invoke(PEEK).select(TIMES3).skip(1)
+				.select(INC).where(MOST).invoke(PEEK).select(TIMES3).take(n)
+				, CONSUME);
+			}
+		});
+
+		Benchmark.run("FusedObservableBuilder 10 stages", sizes, new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				Reactive.run(
+				FusedObservableBuilder.range(0, n, CURRENT)
+				.select(INC).where(MOST).invoke(PEEK).select(TIMES3).skip(1)
+				.select(INC).where(MOST).invoke(PEEK).select(TIMES3).take(n)
+				, CONSUME);
+			}
+		});
+	}
+}
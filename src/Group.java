@@ -0,0 +1,70 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.GroupedObservable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A group of a {@link GroupBy}: relays the elements of its key to the
+ * observers registered with it through a {@link MulticastObserver}, without
+ * storing them.
+ * <p>Like a {@link Window}, the group holds a reference on the source
+ * registration of its operator until it is completed or its last observer
+ * leaves.</p>
+ * @param <K> the key type
+ * @param <T> the element type
+ */
+final class Group<K, T> extends GroupTable.Entry<K> implements GroupedObservable<K, T> {
+	/** The registered observers. */
+	final MulticastObserver<T> subject = new MulticastObserver<T>();
+	/** The operator. */
+	final GroupBy<T, K> parent;
+	/** The reference on the source registration was released. */
+	final AtomicBoolean released = new AtomicBoolean();
+	/**
+	 * Constructor.
+	 * @param key the key
+	 * @param parent the operator
+	 */
+	Group(K key, GroupBy<T, K> parent) {
+		super(key);
+		this.parent = parent;
+	}
+	@Override
+	public K key() {
+		return key;
+	}
+	@Override
+	public Closeable register(Observer<? super T> observer) {
+		final Closeable c = subject.register(observer);
+		return new Closeable() {
+			@Override
+			public void close() {
+				Closeables.close0(c);
+				if (subject.observerCount() == 0) {
+					release();
+				}
+			}
+		};
+	}
+	/**
+	 * Closes the group with an error, after releasing the reference.
+	 * @param ex the error
+	 */
+	void error(Throwable ex) {
+		release();
+		subject.error(ex);
+	}
+	/** Completes the group, after releasing the reference. */
+	void finish() {
+		release();
+		subject.finish();
+	}
+	/** Releases the reference on the source registration once. */
+	void release() {
+		if (released.compareAndSet(false, true)) {
+			parent.release();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+import hu.akarnokd.reactive4java.base.Func0;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The registration of {@link ReactiveEx#groupAggregate}: folds the elements
+ * of each key into the accumulator of its group, and emits the key and the
+ * accumulator when the group is evicted or the source finishes.
+ * <p>The group entry is the accumulator holder, so an element costs a table
+ * lookup and the accumulator call, without any per-element wrapper.</p>
+ * @param <T> the element type
+ * @param <K> the key type
+ * @param <A> the accumulator type
+ */
+final class GroupAggregate<T, K, A> extends GroupByOperator<T, K, GroupAggregate.Accumulator<K, A>, Map.Entry<K, A>> {
+	/** The initial accumulator of a group. */
+	final Func0<? extends A> seed;
+	/** Folds an element into the accumulator. */
+	final Func2<? super A, ? super T, ? extends A> accumulator;
+	/**
+	 * The group entry holding the accumulator.
+	 * @param <K> the key type
+	 * @param <A> the accumulator type
+	 */
+	static final class Accumulator<K, A> extends GroupTable.Entry<K> {
+		/** The accumulator. */
+		A value;
+		/**
+		 * Constructor.
+		 * @param key the key
+		 * @param value the initial accumulator
+		 */
+		Accumulator(K key, A value) {
+			super(key);
+			this.value = value;
+		}
+	}
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param keySelector the key selector
+	 * @param seed the initial accumulator of a group
+	 * @param accumulator folds an element into the accumulator
+	 * @param maxGroups the maximum number of open groups
+	 * @param idle the idle time after which a group is evicted, 0 or less if never
+	 * @param unit the idle time unit
+	 * @param pool the pool of the sweeps
+	 */
+	GroupAggregate(Observer<? super Map.Entry<K, A>> observer, Func1<? super T, ? extends K> keySelector,
+			Func0<? extends A> seed, Func2<? super A, ? super T, ? extends A> accumulator,
+			int maxGroups, long idle, TimeUnit unit, Scheduler pool) {
+		super(observer, keySelector, maxGroups, idle, unit, pool);
+		this.seed = seed;
+		this.accumulator = accumulator;
+	}
+	@Override
+	Accumulator<K, A> open(K key) {
+		return new Accumulator<K, A>(key, seed.invoke());
+	}
+	@Override
+	void add(Accumulator<K, A> group, T value) {
+		group.value = accumulator.invoke(group.value, value);
+	}
+	@Override
+	void evicted(Accumulator<K, A> group) {
+		if (!closed) {
+			observer.next(new SimpleImmutableEntry<K, A>(group.key, group.value));
+		}
+	}
+	@Override
+	void failed(Accumulator<K, A> group, Throwable ex) {
+		// the partial result is dropped
+	}
+}
@@ -0,0 +1,56 @@
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.GroupedObservable;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The registration of
+ * {@link ReactiveEx#groupBy(Observable, Func1, int, long, TimeUnit, Scheduler)}:
+ * emits a {@link Group} for each key not open yet and relays the elements
+ * to it; an evicted group is completed, and a later element of its key
+ * opens a new group.
+ * <p>Once the downstream is closed, no new group is emitted and the elements
+ * of the keys without an open group are dropped.</p>
+ * @param <T> the element type
+ * @param <K> the key type
+ */
+final class GroupBy<T, K> extends GroupByOperator<T, K, Group<K, T>, GroupedObservable<K, T>> {
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param keySelector the key selector
+	 * @param maxGroups the maximum number of open groups
+	 * @param idle the idle time after which a group is evicted, 0 or less if never
+	 * @param unit the idle time unit
+	 * @param pool the pool of the sweeps
+	 */
+	GroupBy(Observer<? super GroupedObservable<K, T>> observer, Func1<? super T, ? extends K> keySelector,
+			int maxGroups, long idle, TimeUnit unit, Scheduler pool) {
+		super(observer, keySelector, maxGroups, idle, unit, pool);
+	}
+	@Override
+	Group<K, T> open(K key) {
+		if (closed) {
+			return null;
+		}
+		refs.incrementAndGet();
+		Group<K, T> g = new Group<K, T>(key, this);
+		observer.next(g);
+		return g;
+	}
+	@Override
+	void add(Group<K, T> group, T value) {
+		group.subject.next(value);
+	}
+	@Override
+	void evicted(Group<K, T> group) {
+		group.finish();
+	}
+	@Override
+	void failed(Group<K, T> group, Throwable ex) {
+		group.error(ex);
+	}
+}
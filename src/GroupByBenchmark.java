@@ -0,0 +1,208 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Func0;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.GroupedObservable;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the events per session over millions of distinct session IDs with
+ * {@code Reactive.groupBy}, {@link ReactiveEx#groupBy} and
+ * {@link ReactiveEx#groupAggregate}, unbounded and with at most
+ * {@code maxGroups} open groups.
+ * <p>The events of a session are consecutive, so the least recently used
+ * group is always a finished session. The first table reports the
+ * throughput, the second the heap retained once all events have been
+ * received but before the source finishes, i.e. the groups the operator
+ * keeps open.</p>
+ * <p>The unbounded cases keep every session open until the end, several
+ * hundred bytes each, so with 10M sessions they need a heap of several
+ * GB; the cases can be selected by a regular expression on their names.
+ * The open groups of {@code groupBy} survive for {@code maxGroups} events
+ * each, so with a small young generation they are copied by every minor
+ * collection; {@code -Xmn512m} keeps them out of the measurement.</p>
+ * <p>Usage: {@code java GroupByBenchmark [sessions [eventsPerSession [maxGroups [cases]]]]}.</p>
+ */
+public class GroupByBenchmark {
+	/** The synchronous scheduler for the sources. */
+	static final Scheduler CURRENT = new CurrentThreadScheduler();
+	/** The number of events per session. */
+	static int eventsPerSession;
+	/** The session ID of an event. */
+	static final Func1<Integer, Integer> SESSION = new Func1<Integer, Integer>() {
+		@Override
+		public Integer invoke(Integer param1) {
+			return param1 / eventsPerSession;
+		}
+	};
+	/** The counter of a session. */
+	static final Func0<long[]> SEED = new Func0<long[]>() {
+		@Override
+		public long[] invoke() {
+			return new long[1];
+		}
+	};
+	/** Counts an event. */
+	static final Func2<long[], Integer, long[]> COUNT = new Func2<long[], Integer, long[]>() {
+		@Override
+		public long[] invoke(long[] param1, Integer param2) {
+			param1[0]++;
+			return param1;
+		}
+	};
+	/** A stage of the benchmark. */
+	interface Stage {
+		/**
+		 * @param source the events
+		 * @return the per-session results
+		 */
+		Observable<?> invoke(Observable<Integer> source);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		eventsPerSession = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		final int maxGroups = args.length > 2 ? Integer.parseInt(args[2]) : 65536;
+		String cases = args.length > 3 ? args[3] : ".*";
+		int elements = sessions * eventsPerSession;
+
+		String[] names = {
+			"Reactive.groupBy + count",
+			"groupBy + count",
+			"groupBy(" + maxGroups + ") + count",
+			"groupAggregate",
+			"groupAggregate(" + maxGroups + ")"
+		};
+		Stage[] stages = {
+			new Stage() {
+				@Override
+				public Observable<?> invoke(Observable<Integer> source) {
+					return countGroups(Reactive.groupBy(source, SESSION));
+				}
+			},
+			new Stage() {
+				@Override
+				public Observable<?> invoke(Observable<Integer> source) {
+					return countGroups(ReactiveEx.groupBy(source, SESSION));
+				}
+			},
+			new Stage() {
+				@Override
+				public Observable<?> invoke(Observable<Integer> source) {
+					return countGroups(ReactiveEx.groupBy(source, SESSION, maxGroups, 0, TimeUnit.SECONDS, CURRENT));
+				}
+			},
+			new Stage() {
+				@Override
+				public Observable<?> invoke(Observable<Integer> source) {
+					return ReactiveEx.groupAggregate(source, SESSION, SEED, COUNT, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, CURRENT);
+				}
+			},
+			new Stage() {
+				@Override
+				public Observable<?> invoke(Observable<Integer> source) {
+					return ReactiveEx.groupAggregate(source, SESSION, SEED, COUNT, maxGroups, 0, TimeUnit.SECONDS, CURRENT);
+				}
+			}
+		};
+
+		Benchmark.header();
+		for (int i = 0; i < stages.length; i++) {
+			if (!names[i].matches(cases)) {
+				continue;
+			}
+			final Stage stage = stages[i];
+			try {
+				Benchmark.run(names[i], elements, new Action1E<Integer, Exception>() {
+					@Override
+					public void invoke(Integer n) throws Exception {
+						Benchmark.consume(Reactive.last(stage.invoke(Reactive.range(0, n, CURRENT))));
+					}
+				});
+			} catch (OutOfMemoryError ex) {
+				System.out.printf("%-40s %10d %s%n", names[i], elements, "OutOfMemoryError");
+			}
+		}
+		System.out.println();
+		System.out.printf("%-40s %10s %14s %12s%n", "Retained", "sessions", "MB", "B/session");
+		for (int i = 0; i < stages.length; i++) {
+			if (!names[i].matches(cases)) {
+				continue;
+			}
+			retained(names[i], sessions, elements, stages[i]);
+		}
+	}
+	/**
+	 * Counts the events of each group as groups of events per session.
+	 * @param groups the groups
+	 * @return the observable of the counts, one per group
+	 */
+	static Observable<long[]> countGroups(Observable<? extends GroupedObservable<Integer, Integer>> groups) {
+		return Reactive.selectMany(groups, new Func1<GroupedObservable<Integer, Integer>, Observable<long[]>>() {
+			@Override
+			public Observable<long[]> invoke(GroupedObservable<Integer, Integer> group) {
+				return Reactive.aggregate(group, SEED.invoke(), COUNT);
+			}
+		});
+	}
+	/**
+	 * Prints the heap retained by a stage after all events.
+	 * @param name the stage name
+	 * @param sessions the number of sessions
+	 * @param elements the number of events
+	 * @param stage the stage
+	 */
+	static void retained(String name, int sessions, int elements, Stage stage) {
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		long before = usedHeap();
+		Closeable c = null;
+		try {
+			c = stage.invoke(source).register(new Observer<Object>() {
+				@Override
+				public void next(Object value) {
+					Benchmark.consume(value);
+				}
+				@Override
+				public void error(Throwable ex) {
+					ex.printStackTrace();
+				}
+				@Override
+				public void finish() {
+				}
+			});
+			for (int i = 0; i < elements; i++) {
+				source.next(i);
+			}
+			long bytes = usedHeap() - before;
+			System.out.printf("%-40s %10d %14.1f %12.1f%n", name, sessions,
+					bytes / 1048576d, (double)bytes / sessions);
+			source.finish();
+		} catch (OutOfMemoryError ex) {
+			c = null;
+			System.out.printf("%-40s %10d %s%n", name, sessions, "OutOfMemoryError");
+		} finally {
+			if (c != null) {
+				try {
+					c.close();
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+		}
+	}
+	/** @return the used heap after garbage collection */
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
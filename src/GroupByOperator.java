@@ -0,0 +1,246 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The common part of the registrations of
+ * {@link ReactiveEx#groupBy(Observable, Func1, int, long, TimeUnit, Scheduler)}
+ * and {@link ReactiveEx#groupAggregate}: keeps the open groups in a
+ * {@link GroupTable} and evicts them when there are more than
+ * {@code maxGroups} of them, the least recently used first, or when they
+ * received no element for the idle time.
+ * <p>The idle groups are swept by a periodic task every quarter of the idle
+ * time, which also stamps the time used for the last access of the groups,
+ * so the elements never read the clock; as the stamp precedes the element
+ * by up to a period, a group is evicted after 1 to 1.5 times the idle time
+ * without elements. The elements and the sweeps are
+ * serialized by a lock.</p>
+ * <p>The source registration is reference counted as in
+ * {@link WindowOperator}: the downstream holds one reference and the
+ * subclasses may add one per group.</p>
+ * @param <T> the element type
+ * @param <K> the key type
+ * @param <E> the group type
+ * @param <R> the downstream type
+ */
+abstract class GroupByOperator<T, K, E extends GroupTable.Entry<K>, R> implements Observer<T>, Closeable {
+	/** The downstream. */
+	final Observer<? super R> observer;
+	/** The key selector. */
+	final Func1<? super T, ? extends K> keySelector;
+	/** The maximum number of open groups. */
+	final int maxGroups;
+	/** The idle time in nanoseconds, 0 if the groups are not evicted when idle. */
+	final long idleNanos;
+	/** The time between the sweeps in nanoseconds. */
+	final long period;
+	/** The pool of the sweeps. */
+	final Scheduler pool;
+	/** The clock of the sweeps. */
+	final Clock clock;
+	/** The lock serializing the elements and the sweeps. */
+	final Lock lock = new ReentrantLock();
+	/** The open groups. */
+	final GroupTable<K, E> groups = new GroupTable<K, E>();
+	/** The references on the source registration. */
+	final AtomicInteger refs = new AtomicInteger(1);
+	/** The time of the last sweep, lock held. */
+	long now;
+	/** The periodic sweep, null if none. */
+	Closeable sweeper;
+	/** The source terminated or was closed, lock held. */
+	boolean done;
+	/** The downstream closed the registration. */
+	volatile boolean closed;
+	/** The source registration. */
+	volatile Closeable source;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param keySelector the key selector
+	 * @param maxGroups the maximum number of open groups
+	 * @param idle the idle time after which a group is evicted, 0 or less if never
+	 * @param unit the idle time unit
+	 * @param pool the pool of the sweeps
+	 */
+	GroupByOperator(Observer<? super R> observer, Func1<? super T, ? extends K> keySelector,
+			int maxGroups, long idle, TimeUnit unit, Scheduler pool) {
+		this.observer = observer;
+		this.keySelector = keySelector;
+		this.maxGroups = maxGroups;
+		this.idleNanos = idle > 0 ? unit.toNanos(idle) : 0;
+		this.period = Math.max(idleNanos / 4, 1);
+		this.pool = pool;
+		this.clock = pool instanceof Clock ? (Clock)pool : Clock.SYSTEM;
+	}
+	/**
+	 * Starts the sweeps and registers with the source.
+	 * @param src the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> src) {
+		if (idleNanos > 0) {
+			lock.lock();
+			try {
+				now = clock.nanoTime();
+				sweeper = pool.schedule(new Runnable() {
+					@Override
+					public void run() {
+						sweep();
+					}
+				}, period, period, TimeUnit.NANOSECONDS);
+			} finally {
+				lock.unlock();
+			}
+		}
+		Closeable s = src.register(this);
+		source = s;
+		if (refs.get() == 0) {
+			Closeables.close0(s);
+		}
+		return this;
+	}
+	/**
+	 * Opens a new group and emits it, lock held.
+	 * @param key the key
+	 * @return the group, or null to drop the element
+	 */
+	abstract E open(K key);
+	/**
+	 * Adds an element to its group, lock held.
+	 * @param group the group
+	 * @param value the element
+	 */
+	abstract void add(E group, T value);
+	/**
+	 * Completes a group removed from the table, lock held.
+	 * @param group the group
+	 */
+	abstract void evicted(E group);
+	/**
+	 * Terminates a group removed from the table with an error, lock held.
+	 * @param group the group
+	 * @param ex the error
+	 */
+	abstract void failed(E group, Throwable ex);
+	@Override
+	public void next(T value) {
+		K key = keySelector.invoke(value);
+		lock.lock();
+		try {
+			if (done) {
+				return;
+			}
+			E g = groups.get(key);
+			if (g == null) {
+				if (groups.size() >= maxGroups) {
+					evict(groups.eldest());
+				}
+				g = open(key);
+				if (g == null) {
+					return;
+				}
+				groups.add(g);
+			} else {
+				groups.touch(g);
+			}
+			g.lastAccess = now;
+			add(g, value);
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Removes and completes a group, lock held.
+	 * @param g the group
+	 */
+	void evict(E g) {
+		groups.remove(g);
+		evicted(g);
+	}
+	/** Evicts the groups idle for at least the idle time, lock held. */
+	void sweep() {
+		lock.lock();
+		try {
+			if (done) {
+				return;
+			}
+			now = clock.nanoTime();
+			E g;
+			while ((g = groups.eldest()) != null && now - g.lastAccess >= idleNanos + period) {
+				evict(g);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		lock.lock();
+		try {
+			if (done) {
+				return;
+			}
+			done = true;
+			Closeables.close0(sweeper);
+			E g;
+			while ((g = groups.eldest()) != null) {
+				groups.remove(g);
+				failed(g, ex);
+			}
+			if (!closed) {
+				observer.error(ex);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void finish() {
+		lock.lock();
+		try {
+			if (done) {
+				return;
+			}
+			done = true;
+			Closeables.close0(sweeper);
+			E g;
+			while ((g = groups.eldest()) != null) {
+				evict(g);
+			}
+			if (!closed) {
+				observer.finish();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	/** Releases a reference, closes the source registration with the last one. */
+	void release() {
+		if (refs.decrementAndGet() == 0) {
+			lock.lock();
+			try {
+				done = true;
+				Closeables.close0(sweeper);
+			} finally {
+				lock.unlock();
+			}
+			Closeables.close0(source);
+		}
+	}
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			release();
+		}
+	}
+}
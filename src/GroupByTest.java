@@ -0,0 +1,191 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Func0;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.GroupedObservable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class GroupByTest {
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+	/** 文字列の先頭の文字をキーにする */
+	static final Func1<String, Character> FIRST = new Func1<String, Character>() {
+		@Override
+		public Character invoke(String param1) {
+			return param1.charAt(0);
+		}
+	};
+
+	/**
+	 * グループを購読し、"開始:キー"、値、"完了:キー" を記録する
+	 * @param log 記録先
+	 */
+	static <K, T> Observer<GroupedObservable<K, T>> logGroups(final List<Object> log) {
+		return new Observer<GroupedObservable<K, T>>() {
+			@Override
+			public void next(final GroupedObservable<K, T> group) {
+				log.add("open:" + group.key());
+				group.register(new Observer<T>() {
+					@Override
+					public void next(T value) { log.add(value); }
+
+					@Override
+					public void error(Throwable ex) { log.add("error:" + group.key()); }
+
+					@Override
+					public void finish() { log.add("finish:" + group.key()); }
+				});
+			}
+
+			@Override
+			public void error(Throwable ex) { log.add("error!"); }
+
+			@Override
+			public void finish() { log.add("finish!"); }
+		};
+	}
+
+	/**
+	 * キーごとにグループが作られ、ソースの終了で全グループが完了する
+	 */
+	@Test
+	public void testGroupBy() throws Exception {
+		List<Object> log = new ArrayList<Object>();
+		Reactive.run(ReactiveEx.groupBy(Reactive.range(0, 6, current), new Func1<Integer, Integer>() {
+			@Override
+			public Integer invoke(Integer param1) {
+				return param1 % 2;
+			}
+		}), GroupByTest.<Integer, Integer>logGroups(log));
+
+		assertEquals(Arrays.<Object>asList("open:0", 0, "open:1", 1, 2, 3, 4, 5,
+				"finish:0", "finish:1", "finish!"), log);
+	}
+
+	/**
+	 * グループ数の上限を超えると最も長く使われていないグループが完了し、同じキーは新しいグループになる
+	 */
+	@Test
+	public void testMaxGroups() throws Exception {
+		List<Object> log = new ArrayList<Object>();
+		Reactive.run(ReactiveEx.groupBy(Reactive.toObservable(Arrays.asList("a1", "b1", "a2", "c1", "b2"), current),
+				FIRST, 2, 0, TimeUnit.SECONDS, current), GroupByTest.<Character, String>logGroups(log));
+
+		assertEquals(Arrays.<Object>asList("open:a", "a1", "open:b", "b1", "a2",
+				"finish:b", "open:c", "c1",
+				"finish:a", "open:b", "b2",
+				"finish:c", "finish:b", "finish!"), log);
+	}
+
+	/**
+	 * 値の来ないグループはアイドル時間の 1 ～ 1.5 倍で完了する
+	 */
+	@Test
+	public void testIdle() throws Exception {
+		TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<String> source = new MulticastObserver<String>();
+		List<Object> log = new ArrayList<Object>();
+		ReactiveEx.groupBy(source, FIRST, 100, 4, TimeUnit.SECONDS, scheduler)
+		.register(GroupByTest.<Character, String>logGroups(log));
+
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		// a は直前のスイープの時刻 (0 秒) で記録される
+		source.next("a1");
+		scheduler.advanceTimeBy(2500, TimeUnit.MILLISECONDS);
+		source.next("b1");
+		scheduler.advanceTimeBy(1500, TimeUnit.MILLISECONDS);
+		assertFalse(log.contains("finish:a"));
+		scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		assertTrue(log.contains("finish:a"));
+		source.next("a2");
+		scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+		assertFalse(log.contains("finish:b"));
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertTrue(log.contains("finish:b"));
+		source.finish();
+
+		assertEquals(Arrays.<Object>asList("open:a", "a1", "open:b", "b1",
+				"finish:a", "open:a", "a2", "finish:b", "finish:a", "finish!"), log);
+		assertEquals(0, scheduler.pendingCount());
+	}
+
+	/**
+	 * キーごとの集計は追い出されたときとソースの終了時に出力される
+	 */
+	@Test
+	public void testAggregate() throws Exception {
+		final List<Object> log = new ArrayList<Object>();
+		Reactive.run(ReactiveEx.groupAggregate(
+				Reactive.toObservable(Arrays.asList("a1", "b1", "a2", "c1", "c2", "b2"), current),
+				FIRST, new Func0<long[]>() {
+					@Override
+					public long[] invoke() {
+						return new long[1];
+					}
+				}, new Func2<long[], String, long[]>() {
+					@Override
+					public long[] invoke(long[] param1, String param2) {
+						param1[0] += param2.charAt(1) - '0';
+						return param1;
+					}
+				}, 2, 0, TimeUnit.SECONDS, current), new Observer<Map.Entry<Character, long[]>>() {
+			@Override
+			public void next(Map.Entry<Character, long[]> value) { log.add(value.getKey() + "=" + value.getValue()[0]); }
+
+			@Override
+			public void error(Throwable ex) { log.add("error!"); }
+
+			@Override
+			public void finish() { log.add("finish!"); }
+		});
+
+		assertEquals(Arrays.<Object>asList("b=1", "a=3", "c=3", "b=2", "finish!"), log);
+	}
+
+	/**
+	 * ハッシュ表は追加と削除を繰り返しても HashMap と同じ内容を保つ
+	 */
+	@Test
+	public void testGroupTable() {
+		GroupTable<Integer, GroupTable.Entry<Integer>> table = new GroupTable<Integer, GroupTable.Entry<Integer>>();
+		Map<Integer, GroupTable.Entry<Integer>> expected = new HashMap<Integer, GroupTable.Entry<Integer>>();
+		Random rnd = new Random(1);
+		for (int i = 0; i < 200000; i++) {
+			// 衝突が多くなるように 64 の倍数のキーを使う
+			Integer key = rnd.nextInt(i < 100000 ? 4096 : 64) * 64;
+			GroupTable.Entry<Integer> e = table.get(key);
+			assertSame(expected.get(key), e);
+			if (e == null) {
+				e = new GroupTable.Entry<Integer>(key);
+				table.add(e);
+				expected.put(key, e);
+			} else if (rnd.nextBoolean()) {
+				table.remove(e);
+				expected.remove(key);
+			} else {
+				table.touch(e);
+			}
+			assertEquals(expected.size(), table.size());
+		}
+		for (Integer key : new ArrayList<Integer>(expected.keySet())) {
+			table.remove(table.get(key));
+		}
+		assertEquals(0, table.size());
+		assertNull(table.eldest());
+		assertEquals(GroupTable.MIN_CAPACITY, table.slots.length);
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * The open addressing hash table of the groups of a {@link GroupByOperator}.
+ * <p>The entries are stored directly in the slots with linear probing and
+ * are removed by shifting the following entries back, so no tombstones
+ * accumulate when millions of groups come and go. The entries are also
+ * linked in access order, the least recently used first, for the
+ * eviction. The table doubles at 3/4 load and halves below 1/8.</p>
+ * <p>Not thread-safe, the operator serializes the access.</p>
+ * @param <K> the key type
+ * @param <E> the entry type
+ */
+final class GroupTable<K, E extends GroupTable.Entry<K>> {
+	/** The minimum and initial capacity. */
+	static final int MIN_CAPACITY = 16;
+	/** The slots, the length is a power of 2. */
+	Object[] slots = new Object[MIN_CAPACITY];
+	/** The number of entries. */
+	int size;
+	/** The least recently used entry. */
+	Entry<K> eldest;
+	/** The most recently used entry. */
+	Entry<K> youngest;
+	/**
+	 * The base class of the entries: the key and the links of the access order.
+	 * @param <K> the key type
+	 */
+	static class Entry<K> {
+		/** The key. */
+		final K key;
+		/** The spread hash of the key. */
+		final int hash;
+		/** The previous entry in the access order. */
+		Entry<K> before;
+		/** The next entry in the access order. */
+		Entry<K> after;
+		/** The time of the last access, set by the operator. */
+		long lastAccess;
+		/**
+		 * Constructor.
+		 * @param key the key, not null
+		 */
+		Entry(K key) {
+			this.key = key;
+			this.hash = spread(key.hashCode());
+		}
+	}
+	/**
+	 * Spreads the bits of a hash code, the low bits select the slot.
+	 * @param h the hash code
+	 * @return the spread hash
+	 */
+	static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	/** @return the number of entries */
+	int size() {
+		return size;
+	}
+	/** @return the least recently used entry, null if empty */
+	@SuppressWarnings("unchecked")
+	E eldest() {
+		return (E)eldest;
+	}
+	/**
+	 * Finds the entry of a key.
+	 * @param key the key, not null
+	 * @return the entry or null
+	 */
+	@SuppressWarnings("unchecked")
+	E get(K key) {
+		Object[] s = slots;
+		int mask = s.length - 1;
+		int i = spread(key.hashCode()) & mask;
+		for (;;) {
+			Entry<K> e = (Entry<K>)s[i];
+			if (e == null) {
+				return null;
+			}
+			if (e.key == key || e.key.equals(key)) {
+				return (E)e;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+	/**
+	 * Adds an entry whose key is not in the table as the most recently used.
+	 * @param e the entry
+	 */
+	void add(E e) {
+		if ((size + 1) * 4L > slots.length * 3L) {
+			resize(slots.length << 1);
+		}
+		insert(slots, e);
+		size++;
+		link(e);
+	}
+	/**
+	 * Marks an entry as the most recently used.
+	 * @param e the entry in the table
+	 */
+	void touch(E e) {
+		if (youngest != e) {
+			unlink(e);
+			link(e);
+		}
+	}
+	/**
+	 * Removes an entry.
+	 * @param e the entry in the table
+	 */
+	void remove(E e) {
+		Object[] s = slots;
+		int mask = s.length - 1;
+		int i = e.hash & mask;
+		while (s[i] != e) {
+			i = (i + 1) & mask;
+		}
+		// shift back the entries of the cluster which would not be found across the gap
+		int j = i;
+		for (;;) {
+			j = (j + 1) & mask;
+			Entry<?> f = (Entry<?>)s[j];
+			if (f == null) {
+				break;
+			}
+			int k = f.hash & mask;
+			if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) {
+				continue;
+			}
+			s[i] = f;
+			i = j;
+		}
+		s[i] = null;
+		size--;
+		unlink(e);
+		if (size < s.length >>> 3 && s.length > MIN_CAPACITY) {
+			resize(s.length >>> 1);
+		}
+	}
+	/**
+	 * Inserts an entry into the first free slot of its probe sequence.
+	 * @param s the slots
+	 * @param e the entry
+	 */
+	static void insert(Object[] s, Entry<?> e) {
+		int mask = s.length - 1;
+		int i = e.hash & mask;
+		while (s[i] != null) {
+			i = (i + 1) & mask;
+		}
+		s[i] = e;
+	}
+	/**
+	 * Rehashes the entries into a new slot array.
+	 * @param capacity the new capacity, a power of 2
+	 */
+	void resize(int capacity) {
+		Object[] s = new Object[capacity];
+		for (Entry<K> e = eldest; e != null; e = e.after) {
+			insert(s, e);
+		}
+		slots = s;
+	}
+	/**
+	 * Appends an entry to the access order.
+	 * @param e the entry
+	 */
+	void link(Entry<K> e) {
+		e.before = youngest;
+		e.after = null;
+		if (youngest == null) {
+			eldest = e;
+		} else {
+			youngest.after = e;
+		}
+		youngest = e;
+	}
+	/**
+	 * Removes an entry from the access order.
+	 * @param e the entry
+	 */
+	void unlink(Entry<K> e) {
+		if (e.before == null) {
+			eldest = e.after;
+		} else {
+			e.before.after = e.after;
+		}
+		if (e.after == null) {
+			youngest = e.before;
+		} else {
+			e.after.before = e.before;
+		}
+		e.before = null;
+		e.after = null;
+	}
+}
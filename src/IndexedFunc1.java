@@ -0,0 +1,16 @@
+/**
+ * A function with one parameter and a primitive running index.
+ * <p>Used by {@link ReactiveEx#selectIndexed(hu.akarnokd.reactive4java.reactive.Observable, IndexedFunc1)}
+ * so the index is not boxed into an {@code Integer} for every element.</p>
+ * @param <Param1> the parameter type
+ * @param <Return> the return type
+ */
+public interface IndexedFunc1<Param1, Return> {
+	/**
+	 * Invoke the function.
+	 * @param index the zero based index of the parameter in the sequence
+	 * @param param1 the parameter
+	 * @return the return value
+	 */
+	Return invoke(long index, Param1 param1);
+}
@@ -0,0 +1,133 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The registration of {@link Metrics#instrument(String, Observable)}:
+ * relays the events and records them in the {@link StageMetrics}.
+ * <p>The values are counted in a plain field, which is added to the shared
+ * counter every {@link #FLUSH} values and at the termination, and every
+ * n-th {@code next()} is timed; the rest of the values cost a field
+ * increment and a mask test.</p>
+ * @param <T> the element type
+ */
+final class InstrumentedObserver<T> implements Observer<T>, Closeable {
+	/** The number of values counted locally before they are published. */
+	static final int FLUSH = 64;
+	/** The downstream. */
+	final Observer<? super T> observer;
+	/** The metrics of the stage. */
+	final StageMetrics metrics;
+	/** Every {@code sampleMask + 1}-th value is timed. */
+	final long sampleMask;
+	/** The values not matching this mask are neither timed nor flushed. */
+	final long fastMask;
+	/** The registration time. */
+	final long start = System.nanoTime();
+	/** The registration ended. */
+	final AtomicBoolean ended = new AtomicBoolean();
+	/** The values relayed, source thread only. */
+	long count;
+	/** The values already added to the shared counter, source thread only. */
+	long flushed;
+	/** The queue of the registration, null if none. */
+	SimpleQueue<?> queue;
+	/** The source registration. */
+	volatile Closeable upstream;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param metrics the metrics of the stage
+	 * @param sampleMask every {@code sampleMask + 1}-th value is timed
+	 */
+	InstrumentedObserver(Observer<? super T> observer, StageMetrics metrics, long sampleMask) {
+		this.observer = observer;
+		this.metrics = metrics;
+		this.sampleMask = sampleMask;
+		this.fastMask = Math.min(sampleMask, FLUSH - 1);
+		metrics.subscriptions.incrementAndGet();
+		metrics.active.incrementAndGet();
+	}
+	/**
+	 * Registers with the source.
+	 * @param source the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> source) {
+		upstream = source.register(this);
+		if (ended.get()) {
+			Closeables.close0(upstream);
+		}
+		return this;
+	}
+	/**
+	 * Reports the depth of the queue while the registration is active.
+	 * @param q the queue
+	 */
+	void track(SimpleQueue<?> q) {
+		queue = q;
+		metrics.queues.add(q);
+		if (ended.get()) {
+			metrics.queues.remove(q);
+		}
+	}
+	@Override
+	public void next(T value) {
+		long n = ++count;
+		if ((n & fastMask) != 0) {
+			observer.next(value);
+			return;
+		}
+		if ((n & sampleMask) == 0) {
+			long t0 = System.nanoTime();
+			observer.next(value);
+			metrics.nextLatency.record(System.nanoTime() - t0);
+		} else {
+			observer.next(value);
+		}
+		if ((n & (FLUSH - 1)) == 0) {
+			flush();
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		flush();
+		metrics.errors.incrementAndGet();
+		end();
+		observer.error(ex);
+	}
+	@Override
+	public void finish() {
+		flush();
+		metrics.finishes.incrementAndGet();
+		end();
+		observer.finish();
+	}
+	@Override
+	public void close() {
+		end();
+		Closeables.close0(upstream);
+	}
+	/** Publishes the values not yet added to the shared counter. */
+	void flush() {
+		long n = count;
+		if (n != flushed) {
+			metrics.nexts.addAndGet(n - flushed);
+			flushed = n;
+		}
+	}
+	/** Records the end of the registration once. */
+	void end() {
+		if (ended.compareAndSet(false, true)) {
+			metrics.active.decrementAndGet();
+			metrics.lifetime.record(System.nanoTime() - start);
+			SimpleQueue<?> q = queue;
+			if (q != null) {
+				metrics.queues.remove(q);
+			}
+		}
+	}
+}
@@ -0,0 +1,14 @@
+import java.io.Closeable;
+
+/**
+ * Observable of primitive int values.
+ * @see PrimitiveObservables
+ */
+public interface IntObservable {
+	/**
+	 * Registers an observer for the notification of ints.
+	 * @param observer the observer
+	 * @return the way of deregister the observer from this provider
+	 */
+	Closeable register(IntObserver observer);
+}
@@ -0,0 +1,19 @@
+/**
+ * Observer of primitive int values.
+ * <p>The same contract as {@code Observer<Integer>} without boxing the values.</p>
+ * @see PrimitiveObservables
+ */
+public interface IntObserver {
+	/**
+	 * The next value is received.
+	 * @param value the next value
+	 */
+	void next(int value);
+	/**
+	 * An exception is received.
+	 * @param ex the exception
+	 */
+	void error(Throwable ex);
+	/** No more values to expect. */
+	void finish();
+}
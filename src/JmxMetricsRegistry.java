@@ -0,0 +1,60 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link DefaultMetricsRegistry} which registers each stage with the
+ * platform MBean server as
+ * {@code <domain>:type=Stage,name=<stage name>}.
+ */
+public class JmxMetricsRegistry extends DefaultMetricsRegistry {
+	/** The default domain. */
+	public static final String DEFAULT_DOMAIN = "reactive4javaSamples";
+	/** The MBean server. */
+	final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	/** The domain of the object names. */
+	final String domain;
+	/** Constructor, registers under {@link #DEFAULT_DOMAIN}. */
+	public JmxMetricsRegistry() {
+		this(DEFAULT_DOMAIN);
+	}
+	/**
+	 * Constructor.
+	 * @param domain the domain of the object names
+	 */
+	public JmxMetricsRegistry(String domain) {
+		this.domain = domain;
+	}
+	/**
+	 * @param stage the stage name
+	 * @return the object name of the stage
+	 * @throws JMException if the name is malformed
+	 */
+	public ObjectName objectName(String stage) throws JMException {
+		return new ObjectName(domain + ":type=Stage,name=" + ObjectName.quote(stage));
+	}
+	@Override
+	protected void created(StageMetrics metrics) {
+		try {
+			server.registerMBean(metrics, objectName(metrics.getName()));
+		} catch (JMException ex) {
+			// the metrics still work without JMX, e.g. for a name taken by another registry
+			ex.printStackTrace();
+		}
+	}
+	/** Unregisters the MBeans of all stages. */
+	public void unregisterAll() {
+		for (StageMetrics m : stages()) {
+			try {
+				ObjectName n = objectName(m.getName());
+				if (server.isRegistered(n)) {
+					server.unregisterMBean(n);
+				}
+			} catch (JMException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values, such as nanosecond
+ * latencies, in the log-linear layout of HdrHistogram.
+ * <p>Values below 64 have their own bucket; above that, each power of two
+ * is split into 32 buckets, so a value is reported with a relative error
+ * below 1/32 (about 3%). Recording is an atomic increment of the bucket, an
+ * atomic add to the total and, for a new maximum, a CAS; the reads scan the
+ * 1888 buckets and may miss the values recorded concurrently.</p>
+ */
+public final class LatencyHistogram {
+	/** The number of sub-bucket bits. */
+	static final int SUB_BITS = 5;
+	/** The number of buckets per power of two. */
+	static final int SUB = 1 << SUB_BITS;
+	/** The buckets. */
+	final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB);
+	/** The sum of the values. */
+	final AtomicLong total = new AtomicLong();
+	/** The largest value. */
+	final AtomicLong max = new AtomicLong();
+	/**
+	 * Records a value.
+	 * @param value the value, negative values count as 0
+	 */
+	public void record(long value) {
+		long v = Math.max(0, value);
+		counts.incrementAndGet(index(v));
+		total.addAndGet(v);
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v)) {
+			m = max.get();
+		}
+	}
+	/**
+	 * @param value the non-negative value
+	 * @return the bucket of the value
+	 */
+	static int index(long value) {
+		if (value < 2 * SUB) {
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB + (int)(value >>> shift) - SUB;
+	}
+	/**
+	 * @param index the bucket
+	 * @return the largest value of the bucket
+	 */
+	static long highestValue(int index) {
+		if (index < 2 * SUB) {
+			return index;
+		}
+		int shift = index / SUB - 1;
+		long sub = index % SUB + SUB;
+		return ((sub + 1) << shift) - 1;
+	}
+	/** @return the number of values recorded */
+	public long count() {
+		long n = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			n += counts.get(i);
+		}
+		return n;
+	}
+	/** @return the largest value recorded, 0 if none */
+	public long max() {
+		return max.get();
+	}
+	/** @return the mean of the values, 0 if none */
+	public double mean() {
+		long n = count();
+		return n != 0 ? (double)total.get() / n : 0d;
+	}
+	/**
+	 * The value below or at which the given percentage of the values fall.
+	 * @param percentile the percentile, 0..100
+	 * @return the highest value of the bucket of the percentile, at most
+	 * the maximum, 0 if no value was recorded
+	 */
+	public long percentile(double percentile) {
+		int len = counts.length();
+		long[] snapshot = new long[len];
+		long n = 0;
+		for (int i = 0; i < len; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100d * n));
+		long seen = 0;
+		for (int i = 0; i < len; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+	/** Clears the histogram; values recorded concurrently may survive. */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		total.set(0);
+		max.set(0);
+	}
+}
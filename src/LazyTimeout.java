@@ -0,0 +1,177 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The registration of
+ * {@link ReactiveEx#timeout(Observable, long, TimeUnit, Observable, Scheduler)}:
+ * relays the source and switches to the other observable when the source is
+ * silent for the timeout.
+ * <p>A value only counts itself; it never reads the clock. The single
+ * periodic timer of the registration runs every quarter of the timeout and
+ * stamps the time, as the sweeps of {@link GroupByOperator} do: when the
+ * count changed since the previous run, the run records its own time as the
+ * last activity, and once the timeout has passed since that stamp the
+ * source is switched. As the stamp follows the last value by up to a
+ * period, the switch happens after 1 to 1.25 times the timeout of silence.
+ * A busy source therefore costs four timer tasks per timeout period instead
+ * of a cancel and a schedule per value.</p>
+ * <p>The state serializes the downstream: a {@code next()} in progress
+ * holds the RUNNING state, and a timeout found then is handed to it as
+ * SWITCH, so the other observable is registered only after the value has
+ * been delivered.</p>
+ * @param <T> the element type
+ */
+final class LazyTimeout<T> implements Observer<T>, Runnable, Closeable {
+	/** Relaying the source. */
+	static final int ACTIVE = 0;
+	/** A {@code next()} is delivering a value. */
+	static final int RUNNING = 1;
+	/** Timed out while a {@code next()} was delivering, which switches when it returns. */
+	static final int SWITCH = 2;
+	/** Switched to the other observable. */
+	static final int TIMED_OUT = 3;
+	/** Terminated or closed. */
+	static final int DONE = 4;
+	/** The downstream. */
+	final Observer<? super T> observer;
+	/** The observable to switch to. */
+	final Observable<? extends T> other;
+	/** The timeout in nanoseconds. */
+	final long timeout;
+	/** The time between the timer runs in nanoseconds. */
+	final long period;
+	/** The timer pool. */
+	final Scheduler pool;
+	/** The state. */
+	final AtomicInteger state = new AtomicInteger();
+	/** The clock, the pool if it is a clock. */
+	final Clock clock;
+	/** The number of values, written in the RUNNING state and read after reading the state. */
+	int count;
+	/** The count seen by the previous timer run, timer only. */
+	int seenCount;
+	/** The time of the timer run which saw the last value, timer only. */
+	long silentSince;
+	/** The periodic timer. */
+	volatile Closeable timer;
+	/** The source registration. */
+	volatile Closeable source;
+	/** The registration with the other observable. */
+	volatile Closeable otherSource;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param time the timeout
+	 * @param unit the time unit
+	 * @param other the observable to switch to
+	 * @param pool the timer pool
+	 */
+	LazyTimeout(Observer<? super T> observer, long time, TimeUnit unit,
+			Observable<? extends T> other, Scheduler pool) {
+		this.observer = observer;
+		this.timeout = unit.toNanos(time);
+		this.period = Math.max(timeout / 4, 1);
+		this.other = other;
+		this.pool = pool;
+		this.clock = pool instanceof Clock ? (Clock)pool : Clock.SYSTEM;
+	}
+	/**
+	 * Starts the timer and registers with the source.
+	 * @param src the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> src) {
+		silentSince = clock.nanoTime();
+		timer = pool.schedule(this, period, period, TimeUnit.NANOSECONDS);
+		Closeable s = src.register(this);
+		source = s;
+		if (state.get() >= TIMED_OUT) {
+			Closeables.close0(s);
+		}
+		return this;
+	}
+	@Override
+	public void next(T value) {
+		if (!state.compareAndSet(ACTIVE, RUNNING)) {
+			return;
+		}
+		count++;
+		try {
+			observer.next(value);
+		} finally {
+			if (!state.compareAndSet(RUNNING, ACTIVE)
+					&& state.compareAndSet(SWITCH, TIMED_OUT)) {
+				switchToOther();
+			}
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		if (state.compareAndSet(ACTIVE, DONE)) {
+			Closeables.close0(timer);
+			observer.error(ex);
+		}
+	}
+	@Override
+	public void finish() {
+		if (state.compareAndSet(ACTIVE, DONE)) {
+			Closeables.close0(timer);
+			observer.finish();
+		}
+	}
+	@Override
+	public void run() {
+		int s = state.get();
+		if (s >= SWITCH) {
+			return;
+		}
+		long now = clock.nanoTime();
+		int c = count;
+		if (c != seenCount) {
+			seenCount = c;
+			silentSince = now;
+		}
+		if (now - silentSince < timeout) {
+			return;
+		}
+		for (;;) {
+			if (s == ACTIVE) {
+				if (state.compareAndSet(ACTIVE, TIMED_OUT)) {
+					switchToOther();
+					return;
+				}
+			} else if (s == RUNNING) {
+				if (state.compareAndSet(RUNNING, SWITCH)) {
+					Closeables.close0(timer);
+					return;
+				}
+			} else {
+				return;
+			}
+			s = state.get();
+		}
+	}
+	/** Stops the timer and the source and registers with the other observable. */
+	void switchToOther() {
+		Closeables.close0(timer);
+		Closeables.close0(source);
+		Closeable o = other.register(observer);
+		otherSource = o;
+		if (state.get() == DONE) {
+			Closeables.close0(o);
+		}
+	}
+	@Override
+	public void close() {
+		state.set(DONE);
+		Closeables.close0(timer);
+		Closeables.close0(source);
+		Closeables.close0(otherSource);
+	}
+}
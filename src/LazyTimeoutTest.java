@@ -0,0 +1,193 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class LazyTimeoutTest {
+	/** タイマーのスレッド */
+	final Scheduler pool = new DefaultScheduler();
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+	/** タイマーの登録回数 */
+	final AtomicInteger scheduled = new AtomicInteger();
+	/** 登録回数を数えるスケジューラ */
+	final Scheduler counting = new Scheduler() {
+		@Override
+		public Closeable schedule(Runnable run) {
+			scheduled.incrementAndGet();
+			return pool.schedule(run);
+		}
+
+		@Override
+		public Closeable schedule(Runnable run, long delay, TimeUnit unit) {
+			scheduled.incrementAndGet();
+			return pool.schedule(run, delay, unit);
+		}
+
+		@Override
+		public Closeable schedule(Runnable run, long initialDelay, long betweenDelay, TimeUnit unit) {
+			scheduled.incrementAndGet();
+			return pool.schedule(run, initialDelay, betweenDelay, unit);
+		}
+	};
+
+	/**
+	 * 値を溜める
+	 * @param source ソース
+	 * @return 値と "finish!" または例外のクラス名
+	 */
+	static List<Object> collect(Observable<?> source) throws InterruptedException {
+		final List<Object> actual = new ArrayList<Object>();
+		Reactive.run(source, new Observer<Object>() {
+			@Override
+			public void next(Object value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add(ex.getClass().getSimpleName()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+		return actual;
+	}
+
+	/**
+	 * 1 を発行した後は何もしないソース
+	 * @param closed close() されたら true
+	 * @return ソース
+	 */
+	static Observable<Integer> silentAfterOne(final AtomicBoolean closed) {
+		return new Observable<Integer>() {
+			@Override
+			public Closeable register(Observer<? super Integer> observer) {
+				observer.next(1);
+				return new Closeable() {
+					@Override
+					public void close() { closed.set(true); }
+				};
+			}
+		};
+	}
+
+	/**
+	 * MyReactiveTest.testResumeAlways と同じく、止まったソースから次のソースに切り替わる
+	 */
+	@Test
+	public void testSwitchToOther() throws InterruptedException {
+		AtomicBoolean closed = new AtomicBoolean();
+		List<Object> actual = collect(ReactiveEx.timeout(silentAfterOne(closed), 200, TimeUnit.MILLISECONDS,
+				Reactive.singleton(2), counting));
+
+		assertEquals(Arrays.<Object>asList(1, 2, "finish!"), actual);
+		assertTrue(closed.get());
+	}
+
+	/**
+	 * 切り替え先を指定しなければ TimeoutException になる
+	 */
+	@Test
+	public void testTimeoutException() throws InterruptedException {
+		AtomicBoolean closed = new AtomicBoolean();
+		List<Object> actual = collect(ReactiveEx.timeout(silentAfterOne(closed), 100, TimeUnit.MILLISECONDS));
+
+		assertEquals(Arrays.<Object>asList(1, TimeoutException.class.getSimpleName()), actual);
+		assertTrue(closed.get());
+	}
+
+	/**
+	 * 値が来続ける間はタイムアウトせず、タイマーは値毎ではなく時間切れ毎に登録し直す
+	 */
+	@Test
+	public void testBusySourceRearmsLazily() throws InterruptedException {
+		Observable<Long> source = Reactive.tick(0, 30, 10, TimeUnit.MILLISECONDS);
+		List<Object> actual = collect(ReactiveEx.timeout(source, 100, TimeUnit.MILLISECONDS,
+				Reactive.<Long>empty(), counting));
+
+		assertEquals(31, actual.size());
+		assertEquals(29L, actual.get(29));
+		assertEquals("finish!", actual.get(30));
+		// 値毎ではなく登録時に周期タイマーを 1 回だけ登録する
+		assertEquals(1, scheduled.get());
+	}
+
+	/**
+	 * 仮想時間で、最後の値からタイムアウトの 1 ～ 1.25 倍の間に切り替わる
+	 */
+	@Test
+	public void testVirtualTime() {
+		TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		final List<Object> log = new ArrayList<Object>();
+		ReactiveEx.timeout(source, 4, TimeUnit.SECONDS, Reactive.<Integer>empty(current), scheduler)
+		.register(new Observer<Integer>() {
+			@Override
+			public void next(Integer value) { log.add(value); }
+
+			@Override
+			public void error(Throwable ex) { log.add("error!"); }
+
+			@Override
+			public void finish() { log.add("finish!"); }
+		});
+
+		scheduler.advanceTimeBy(3500, TimeUnit.MILLISECONDS);
+		source.next(1);
+		scheduler.advanceTimeBy(3500, TimeUnit.MILLISECONDS);
+		source.next(2);
+		// 最後の値 (7 秒) は次のタイマーの時刻 (8 秒) に記録され、12 秒で切り替わる
+		scheduler.advanceTimeBy(4900, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(1, 2), log);
+		scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(1, 2, "finish!"), log);
+		assertEquals(0, source.observerCount());
+		assertEquals(0, scheduler.pendingCount());
+	}
+
+	/**
+	 * next() の途中でタイムアウトしても、切り替えは next() が戻ってから行われる
+	 */
+	@Test
+	public void testSwitchWaitsForNext() {
+		final TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		final List<Object> log = new ArrayList<Object>();
+		ReactiveEx.timeout(source, 1, TimeUnit.SECONDS, Reactive.singleton(2, current), scheduler)
+		.register(new Observer<Integer>() {
+			@Override
+			public void next(Integer value) {
+				log.add("begin:" + value);
+				if (value == 1) {
+					// 値の処理中にタイムアウトを過ぎる
+					scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+				}
+				log.add("end:" + value);
+			}
+
+			@Override
+			public void error(Throwable ex) { log.add("error!"); }
+
+			@Override
+			public void finish() { log.add("finish!"); }
+		});
+
+		source.next(1);
+		assertEquals(Arrays.<Object>asList("begin:1", "end:1", "begin:2", "end:2", "finish!"), log);
+		source.next(3);
+		assertEquals(5, log.size());
+	}
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pooled, primitive backed window of longs emitted by
+ * {@link PrimitiveObservables#bufferLongs(LongObservable, int)}.
+ * <p>The chunk is valid only during the {@code next()} call which delivers it:
+ * afterwards its array is recycled for a later window. A consumer which needs
+ * the values later either copies them with {@link #toArray()} or calls
+ * {@link #retain()}, which keeps the chunk out of the pool until the matching
+ * {@link #release()}; the operator then fills a fresh array instead.</p>
+ */
+public final class LongChunk {
+	/** The pool to return to, null if unpooled. */
+	final LongChunkPool pool;
+	/** The reference count. */
+	final AtomicInteger refCount = new AtomicInteger(1);
+	/** The values. */
+	long[] array;
+	/** The number of values. */
+	int size;
+	/**
+	 * Constructor.
+	 * @param pool the pool to return to, null if unpooled
+	 * @param capacity the initial capacity
+	 */
+	LongChunk(LongChunkPool pool, int capacity) {
+		this.pool = pool;
+		this.array = new long[Math.max(capacity, 1)];
+	}
+	/**
+	 * Appends a value, growing the array if needed.
+	 * @param value the value
+	 */
+	void add(long value) {
+		if (size == array.length) {
+			array = Arrays.copyOf(array, size * 2);
+		}
+		array[size++] = value;
+	}
+	/** @return the number of values */
+	public int size() {
+		return size;
+	}
+	/** @return true if the chunk has no values */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	/**
+	 * @param index the index
+	 * @return the value at the index
+	 */
+	public long get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+		return array[index];
+	}
+	/** @return the last value */
+	public long last() {
+		return get(size - 1);
+	}
+	/** @return a copy of the values which stays valid after the chunk is recycled */
+	public long[] toArray() {
+		return Arrays.copyOf(array, size);
+	}
+	/**
+	 * Keeps the chunk valid after {@code next()} returns; call
+	 * {@link #release()} when done with it.
+	 * @return this
+	 */
+	public LongChunk retain() {
+		for (;;) {
+			int r = refCount.get();
+			if (r <= 0) {
+				throw new IllegalStateException("The chunk has been released");
+			}
+			if (refCount.compareAndSet(r, r + 1)) {
+				return this;
+			}
+		}
+	}
+	/** Releases a reference, the last release returns the chunk to the pool. */
+	public void release() {
+		int r = refCount.decrementAndGet();
+		if (r == 0) {
+			if (pool != null) {
+				pool.recycle(this);
+			}
+		} else if (r < 0) {
+			throw new IllegalStateException("The chunk has been released");
+		}
+	}
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
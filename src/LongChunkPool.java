@@ -0,0 +1,62 @@
+/**
+ * A bounded free list of {@link LongChunk}s, one per buffering registration.
+ * <p>The chunks may be released from any thread, hence the synchronization;
+ * the lock is uncontended as long as the consumer does not retain them.</p>
+ */
+final class LongChunkPool {
+	/** The capacity of new chunks. */
+	final int chunkCapacity;
+	/** The idle chunks. */
+	final LongChunk[] idle;
+	/** The number of idle chunks. */
+	int count;
+	/**
+	 * Constructor.
+	 * @param chunkCapacity the capacity of new chunks
+	 * @param maxIdle the maximum number of idle chunks kept
+	 */
+	LongChunkPool(int chunkCapacity, int maxIdle) {
+		this.chunkCapacity = chunkCapacity;
+		this.idle = new LongChunk[maxIdle];
+	}
+	/** @return an empty chunk with a reference count of one */
+	LongChunk acquire() {
+		synchronized (this) {
+			if (count > 0) {
+				LongChunk c = idle[--count];
+				idle[count] = null;
+				c.refCount.lazySet(1);
+				return c;
+			}
+		}
+		return new LongChunk(this, chunkCapacity);
+	}
+	/**
+	 * Puts back a released chunk, or lets it be collected if the pool is full.
+	 * @param chunk the chunk
+	 */
+	void recycle(LongChunk chunk) {
+		chunk.size = 0;
+		synchronized (this) {
+			if (count < idle.length) {
+				idle[count++] = chunk;
+			}
+		}
+	}
+	/**
+	 * Prepares the next chunk after an emission: the emitted chunk itself,
+	 * cleared, if the consumer did not retain it, otherwise a fresh one.
+	 * <p>The common, unretained case does not touch the lock or the
+	 * reference count.</p>
+	 * @param emitted the chunk just emitted, with the operator's reference
+	 * @return the chunk to fill next
+	 */
+	LongChunk reuse(LongChunk emitted) {
+		if (emitted.refCount.get() == 1) {
+			emitted.size = 0;
+			return emitted;
+		}
+		emitted.release();
+		return acquire();
+	}
+}
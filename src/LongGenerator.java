@@ -0,0 +1,30 @@
+/**
+ * The primitive state machine of
+ * {@link PrimitiveObservables#generateTimed(long, LongGenerator, java.util.concurrent.TimeUnit, hu.akarnokd.reactive4java.base.Scheduler)}:
+ * the {@code condition}, {@code next}, {@code selector} and
+ * {@code delaySelector} functions of {@code Reactive.generateTimed} over a
+ * {@code long} state, so no step boxes the state, the value or the delay.
+ * @see PrimitiveObservables
+ */
+public interface LongGenerator {
+	/**
+	 * @param state the current state
+	 * @return true if a value should be emitted for the state
+	 */
+	boolean hasNext(long state);
+	/**
+	 * @param state the current state
+	 * @return the value to emit for the state
+	 */
+	long value(long state);
+	/**
+	 * @param state the current state
+	 * @return the delay before the value of the state, in the time unit of the generator
+	 */
+	long delay(long state);
+	/**
+	 * @param state the current state
+	 * @return the state after the current one
+	 */
+	long next(long state);
+}
@@ -0,0 +1,14 @@
+import java.io.Closeable;
+
+/**
+ * Observable of primitive long values.
+ * @see PrimitiveObservables
+ */
+public interface LongObservable {
+	/**
+	 * Registers an observer for the notification of longs.
+	 * @param observer the observer
+	 * @return the way of deregister the observer from this provider
+	 */
+	Closeable register(LongObserver observer);
+}
@@ -0,0 +1,19 @@
+/**
+ * Observer of primitive long values.
+ * <p>The same contract as {@code Observer<Long>} without boxing the values.</p>
+ * @see PrimitiveObservables
+ */
+public interface LongObserver {
+	/**
+	 * The next value is received.
+	 * @param value the next value
+	 */
+	void next(long value);
+	/**
+	 * An exception is received.
+	 * @param ex the exception
+	 */
+	void error(Throwable ex);
+	/** No more values to expect. */
+	void finish();
+}
@@ -0,0 +1,64 @@
+/**
+ * Single pass count, sum, min, max and average of long values.
+ * <p>Accumulating does not allocate. Before the first value, min is
+ * {@code Long.MAX_VALUE} and max is {@code Long.MIN_VALUE}.</p>
+ */
+public final class LongStatistics {
+	/** The number of values. */
+	long count;
+	/** The sum of the values. */
+	long sum;
+	/** The smallest value. */
+	long min = Long.MAX_VALUE;
+	/** The largest value. */
+	long max = Long.MIN_VALUE;
+	/**
+	 * Records a value.
+	 * @param value the value
+	 */
+	public void accept(long value) {
+		count++;
+		sum += value;
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+	/**
+	 * Merges the values recorded by the other instance into this one.
+	 * @param other the other statistics
+	 */
+	public void combine(LongStatistics other) {
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+	/** @return the number of values */
+	public long count() {
+		return count;
+	}
+	/** @return the sum of the values */
+	public long sum() {
+		return sum;
+	}
+	/** @return the smallest value */
+	public long min() {
+		return min;
+	}
+	/** @return the largest value */
+	public long max() {
+		return max;
+	}
+	/** @return the average of the values or 0 if there were none */
+	public double average() {
+		return count > 0 ? (double)sum / count : 0d;
+	}
+	@Override
+	public String toString() {
+		return "LongStatistics{count=" + count + ", sum=" + sum + ", min=" + min
+				+ ", average=" + average() + ", max=" + max + "}";
+	}
+}
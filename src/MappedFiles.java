@@ -0,0 +1,110 @@
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Record sources and sinks over memory-mapped files, for replaying large
+ * captured logs through the pipelines.
+ * <p>A file holds either fixed-width records or length-prefixed records,
+ * where each record is preceded by its length as a big-endian 4 byte int.
+ * The files are mapped in chunks of up to {@link #CHUNK_SIZE} bytes, so
+ * files larger than 2 GB can be read and written.</p>
+ * <p>The sources emit each record as a read-only {@code ByteBuffer} whose
+ * position and limit enclose the record. The buffer is a view of the mapping
+ * and is reused for the next record, so an observer which keeps the bytes
+ * has to copy them before {@code next()} returns.</p>
+ */
+public final class MappedFiles {
+	/** The maximum size of a mapped chunk, 256 MB. */
+	public static final long CHUNK_SIZE = 256L * 1024 * 1024;
+	/** Utility class. */
+	private MappedFiles() {
+		// utility class
+	}
+	/**
+	 * Reads the fixed-width records of the file on the default scheduler.
+	 * @param file the file
+	 * @param recordSize the record size in bytes
+	 * @return the observable of the records, see the class comment
+	 */
+	public static ObservableBuilder<ByteBuffer> readFixed(File file, int recordSize) {
+		return readFixed(file, recordSize, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Reads the fixed-width records of the file; a trailing partial record
+	 * is signalled as an {@code IOException} after the complete ones.
+	 * @param file the file
+	 * @param recordSize the record size in bytes
+	 * @param pool the pool where the records are emitted
+	 * @return the observable of the records, see the class comment
+	 */
+	public static ObservableBuilder<ByteBuffer> readFixed(File file, int recordSize, Scheduler pool) {
+		if (recordSize <= 0) {
+			throw new IllegalArgumentException("recordSize <= 0");
+		}
+		return read(file, recordSize, CHUNK_SIZE, pool);
+	}
+	/**
+	 * Reads the length-prefixed records of the file on the default scheduler.
+	 * @param file the file
+	 * @return the observable of the records, without their prefix
+	 */
+	public static ObservableBuilder<ByteBuffer> readLengthPrefixed(File file) {
+		return readLengthPrefixed(file, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Reads the length-prefixed records of the file; a truncated last record
+	 * is signalled as an {@code IOException} after the complete ones.
+	 * @param file the file
+	 * @param pool the pool where the records are emitted
+	 * @return the observable of the records, without their prefix
+	 */
+	public static ObservableBuilder<ByteBuffer> readLengthPrefixed(File file, Scheduler pool) {
+		return read(file, 0, CHUNK_SIZE, pool);
+	}
+	/**
+	 * @param file the file
+	 * @param recordSize the record size, or 0 for length-prefixed records
+	 * @param chunkSize the maximum size of a mapped chunk
+	 * @param pool the pool where the records are emitted
+	 * @return the observable of the records
+	 */
+	static ObservableBuilder<ByteBuffer> read(final File file, final int recordSize,
+			final long chunkSize, final Scheduler pool) {
+		return ObservableBuilder.from(new Observable<ByteBuffer>() {
+			@Override
+			public Closeable register(Observer<? super ByteBuffer> observer) {
+				return new MappedRecordReader(observer, file, recordSize, chunkSize).scheduleOn(pool);
+			}
+		});
+	}
+	/**
+	 * Opens the file for appending fixed-width records.
+	 * @param file the file, created if it does not exist
+	 * @param recordSize the record size in bytes, other sizes fail the writer
+	 * @return the writer
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static MappedRecordWriter fixedWriter(File file, int recordSize) throws IOException {
+		if (recordSize <= 0) {
+			throw new IllegalArgumentException("recordSize <= 0");
+		}
+		return new MappedRecordWriter(file, recordSize, CHUNK_SIZE);
+	}
+	/**
+	 * Opens the file for appending length-prefixed records.
+	 * @param file the file, created if it does not exist
+	 * @return the writer
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static MappedRecordWriter lengthPrefixedWriter(File file) throws IOException {
+		return new MappedRecordWriter(file, 0, CHUNK_SIZE);
+	}
+}
@@ -0,0 +1,120 @@
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Measures the records/s of writing a file of fixed-width records with
+ * {@link MappedRecordWriter} and of reading it back with
+ * {@link MappedFiles#readFixed}, against reading it through a buffered
+ * stream with a new {@code byte[]} per record.
+ * <p>The file defaults to 4 GB of 64 byte records, so more than one mapped
+ * chunk and more than the 2 GB of a single mapping are involved. The reads
+ * run right after the write, so the file is mostly in the page cache.</p>
+ * <p>Usage: {@code java MappedFilesBenchmark [megabytes [recordSize]]}</p>
+ */
+public class MappedFilesBenchmark {
+	/** Sums the first long of each record. */
+	static final class Checksum implements Observer<ByteBuffer> {
+		/** The sum. */
+		long sum;
+		/** The number of records. */
+		long count;
+		@Override
+		public void next(ByteBuffer value) {
+			sum += value.getLong(value.position());
+			count++;
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			ex.printStackTrace();
+		}
+
+		@Override
+		public void finish() {
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 4096;
+		final int recordSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		final long records = megabytes * 1024 * 1024 / recordSize;
+		final File file = File.createTempFile("mapped", ".dat");
+		file.deleteOnExit();
+		DefaultScheduler pool = new DefaultScheduler();
+
+		System.out.printf("%-28s %14s %12s %10s %10s%n", "case", "records", "records/s", "MB/s", "seconds");
+
+		final MappedRecordWriter writer = MappedFiles.fixedWriter(file, recordSize);
+		final ByteBuffer record = ByteBuffer.allocate(recordSize);
+		long t0 = System.nanoTime();
+		for (long i = 0; i < records; i++) {
+			record.clear();
+			record.putLong(0, i);
+			writer.next(record);
+		}
+		writer.finish();
+		writer.close();
+		print("MappedRecordWriter", records, recordSize, System.nanoTime() - t0);
+
+		Checksum mapped = new Checksum();
+		t0 = System.nanoTime();
+		Reactive.run(MappedFiles.readFixed(file, recordSize, pool), mapped);
+		print("MappedFiles.readFixed", mapped.count, recordSize, System.nanoTime() - t0);
+
+		Checksum stream = new Checksum();
+		t0 = System.nanoTime();
+		Reactive.run(new Observable<ByteBuffer>() {
+			@Override
+			public Closeable register(Observer<? super ByteBuffer> observer) {
+				try {
+					DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+					try {
+						for (long i = 0; i < records; i++) {
+							byte[] b = new byte[recordSize];
+							in.readFully(b);
+							observer.next(ByteBuffer.wrap(b));
+						}
+					} finally {
+						in.close();
+					}
+					observer.finish();
+				} catch (IOException ex) {
+					observer.error(ex);
+				}
+				return new Closeable() {
+					@Override
+					public void close() {
+					}
+				};
+			}
+		}, stream);
+		print("stream + byte[] per record", stream.count, recordSize, System.nanoTime() - t0);
+
+		if (mapped.sum != stream.sum) {
+			System.out.println("Checksum mismatch: " + mapped.sum + " vs " + stream.sum);
+		}
+		pool.shutdown();
+		file.delete();
+	}
+	/**
+	 * Prints a result line.
+	 * @param name the case name
+	 * @param records the number of records
+	 * @param recordSize the record size
+	 * @param nanos the elapsed time
+	 */
+	static void print(String name, long records, int recordSize, long nanos) {
+		System.out.printf("%-28s %14d %12.0f %10.1f %10.2f%n", name, records,
+				records * 1e9 / nanos, records * (double)recordSize * 1e9 / nanos / 1024 / 1024, nanos / 1e9);
+	}
+}
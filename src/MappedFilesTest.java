@@ -0,0 +1,163 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class MappedFilesTest {
+	/** 読み込みを動かすプール */
+	final Scheduler pool = new DefaultScheduler();
+	/** テスト用の一時ファイル */
+	File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("mapped", ".dat");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * レコードをコピーして溜める
+	 * @param source ソース
+	 * @return レコードの内容 (byte[]) と "finish!" または "error:..."
+	 */
+	static List<Object> collect(Observable<ByteBuffer> source) throws InterruptedException {
+		final List<Object> actual = new ArrayList<Object>();
+		Reactive.run(source, new Observer<ByteBuffer>() {
+			@Override
+			public void next(ByteBuffer value) {
+				// バッファは使い回されるのでコピーする
+				byte[] b = new byte[value.remaining()];
+				value.get(b);
+				actual.add(b);
+			}
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getClass().getSimpleName()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+		return actual;
+	}
+
+	/**
+	 * 固定長レコードを書いて読む。チャンク (100 バイト) をまたぐレコードは次のチャンクで読まれる
+	 */
+	@Test
+	public void testFixed() throws Exception {
+		MappedRecordWriter writer = new MappedRecordWriter(file, 12, 100);
+		ByteBuffer record = ByteBuffer.allocate(12);
+		for (int i = 0; i < 1000; i++) {
+			record.clear();
+			record.putInt(i).putLong(i * 3L).flip();
+			writer.next(record);
+			assertEquals(0, record.remaining());
+		}
+		writer.finish();
+		writer.close();
+		assertEquals(12000, file.length());
+
+		List<Object> actual = collect(MappedFiles.read(file, 12, 100, pool));
+		assertEquals(1001, actual.size());
+		for (int i = 0; i < 1000; i++) {
+			ByteBuffer b = ByteBuffer.wrap((byte[])actual.get(i));
+			assertEquals(i, b.getInt());
+			assertEquals(i * 3L, b.getLong());
+		}
+		assertEquals("finish!", actual.get(1000));
+	}
+
+	/**
+	 * 長さ付きレコード (長さ 0 を含む) を書いて読む。追記もできる
+	 */
+	@Test
+	public void testLengthPrefixed() throws Exception {
+		MappedRecordWriter writer = new MappedRecordWriter(file, 0, 64);
+		for (int i = 0; i < 30; i++) {
+			writer.next(ByteBuffer.wrap(bytes(i)));
+		}
+		writer.close();
+		writer = new MappedRecordWriter(file, 0, 64);
+		for (int i = 30; i < 50; i++) {
+			writer.next(ByteBuffer.wrap(bytes(i)));
+		}
+		writer.finish();
+		assertEquals(50 * 4 + 49 * 50 / 2, file.length());
+
+		List<Object> actual = collect(MappedFiles.read(file, 0, 64, pool));
+		assertEquals(51, actual.size());
+		for (int i = 0; i < 50; i++) {
+			assertArrayEquals(bytes(i), (byte[])actual.get(i));
+		}
+		assertEquals("finish!", actual.get(50));
+		// 公開 API (チャンク 256MB) でも同じ
+		assertEquals(51, collect(MappedFiles.readLengthPrefixed(file, pool)).size());
+	}
+
+	/**
+	 * 途中で切れたレコードは、完全なレコードの後に IOException になる
+	 */
+	@Test
+	public void testTruncated() throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[8 * 10 + 3]);
+		out.close();
+
+		List<Object> actual = collect(MappedFiles.readFixed(file, 8, pool));
+		assertEquals(11, actual.size());
+		assertEquals("error:IOException", actual.get(10));
+
+		// チャンクより長いレコードもエラー
+		actual = collect(MappedFiles.read(file, 0, 16, pool));
+		assertEquals(Arrays.<Object>asList("error:IOException"), actual.subList(actual.size() - 1, actual.size()));
+	}
+
+	/**
+	 * 長さの違うレコードで書き込みは止まり、close() で例外になる。それまでのレコードは残る
+	 */
+	@Test
+	public void testWrongSize() throws Exception {
+		MappedRecordWriter writer = MappedFiles.fixedWriter(file, 4);
+		writer.next(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }));
+		writer.next(ByteBuffer.wrap(new byte[] { 5, 6, 7 }));
+		writer.next(ByteBuffer.wrap(new byte[] { 8, 9, 10, 11 }));
+		writer.finish();
+		try {
+			writer.close();
+			fail("IOException expected");
+		} catch (IOException ex) {
+			// expected
+		}
+		assertEquals(4, file.length());
+	}
+
+	/**
+	 * 長さ i、内容 i の配列
+	 * @param i 長さと内容
+	 * @return 配列
+	 */
+	static byte[] bytes(int i) {
+		byte[] b = new byte[i];
+		Arrays.fill(b, (byte)i);
+		return b;
+	}
+}
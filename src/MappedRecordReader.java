@@ -0,0 +1,144 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The registration of the {@link MappedFiles} sources: maps the file chunk
+ * by chunk and emits each record as a view of the mapped chunk.
+ * <p>One read-only buffer per chunk is emitted over and over, with its
+ * position and limit set around the current record, so no bytes are copied
+ * and nothing is allocated per record. A chunk starts at the first record
+ * which did not fit into the previous chunk, so records never straddle a
+ * chunk boundary; a record longer than a chunk is an error.</p>
+ */
+final class MappedRecordReader implements Runnable, Closeable {
+	/** The downstream. */
+	final Observer<? super ByteBuffer> observer;
+	/** The file. */
+	final File file;
+	/** The record size, or 0 for length-prefixed records. */
+	final int recordSize;
+	/** The maximum size of a mapped chunk. */
+	final long chunkSize;
+	/** Set when the registration is closed. */
+	volatile boolean cancelled;
+	/** The scheduled task. */
+	volatile Closeable task;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param file the file
+	 * @param recordSize the record size, or 0 for length-prefixed records
+	 * @param chunkSize the maximum size of a mapped chunk
+	 */
+	MappedRecordReader(Observer<? super ByteBuffer> observer, File file, int recordSize, long chunkSize) {
+		this.observer = observer;
+		this.file = file;
+		this.recordSize = recordSize;
+		this.chunkSize = chunkSize;
+	}
+	/**
+	 * Schedules the reading on the pool.
+	 * @param pool the pool
+	 * @return this
+	 */
+	Closeable scheduleOn(Scheduler pool) {
+		task = pool.schedule(this);
+		return this;
+	}
+	@Override
+	public void close() {
+		cancelled = true;
+		Closeables.close0(task);
+	}
+	@Override
+	public void run() {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				read(raf.getChannel());
+			} finally {
+				raf.close();
+			}
+		} catch (IOException ex) {
+			if (!cancelled) {
+				observer.error(ex);
+			}
+			return;
+		}
+		if (!cancelled) {
+			observer.finish();
+		}
+	}
+	/**
+	 * Emits the records of the file.
+	 * @param channel the file channel
+	 * @throws IOException on a read error or a malformed file
+	 */
+	void read(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long start = 0;
+		while (start < size && !cancelled) {
+			int len = (int)Math.min(chunkSize, size - start);
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+			int p = recordSize > 0 ? emitFixed(map, len) : emitPrefixed(map, len);
+			if (p < len && start + len == size && !cancelled) {
+				throw new IOException("Truncated record at offset " + (start + p) + " of " + file);
+			}
+			if (p == 0 && !cancelled) {
+				throw new IOException("Record at offset " + start + " is longer than a chunk (" + chunkSize + ") in " + file);
+			}
+			start += p;
+		}
+	}
+	/**
+	 * Emits the fixed-width records which fit in the chunk.
+	 * @param map the chunk
+	 * @param len the chunk length
+	 * @return the offset after the last record emitted
+	 */
+	int emitFixed(ByteBuffer map, int len) {
+		int p = 0;
+		while (p + recordSize <= len && !cancelled) {
+			map.limit(len);
+			map.position(p);
+			p += recordSize;
+			map.limit(p);
+			observer.next(map);
+		}
+		return p;
+	}
+	/**
+	 * Emits the length-prefixed records which fit in the chunk.
+	 * @param map the chunk
+	 * @param len the chunk length
+	 * @return the offset after the last record emitted
+	 * @throws IOException on a negative length
+	 */
+	int emitPrefixed(ByteBuffer map, int len) throws IOException {
+		int p = 0;
+		while (p + 4 <= len && !cancelled) {
+			map.limit(len);
+			int n = map.getInt(p);
+			if (n < 0) {
+				throw new IOException("Negative record length " + n + " in " + file);
+			}
+			if (n > len - p - 4) {
+				break;
+			}
+			map.position(p + 4);
+			p += 4 + n;
+			map.limit(p);
+			observer.next(map);
+		}
+		return p;
+	}
+}
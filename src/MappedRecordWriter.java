@@ -0,0 +1,147 @@
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An observer appending the records it receives to a file through
+ * read-write mapped chunks, created by {@link MappedFiles#fixedWriter} and
+ * {@link MappedFiles#lengthPrefixedWriter}.
+ * <p>The bytes between the position and the limit of each buffer are copied
+ * into the mapping, and the position of the buffer is moved to its limit.
+ * The mapping grows the file a chunk at a time; {@code finish()},
+ * {@code error()} and {@link #close()} cut the file back to the bytes
+ * written and close it. The data reaches the disk when the operating
+ * system writes back the mapped pages.</p>
+ * <p>An I/O error or a record of the wrong size stops the writing; it is
+ * rethrown by {@link #close()}.</p>
+ */
+public final class MappedRecordWriter implements Observer<ByteBuffer>, Closeable {
+	/** The file. */
+	final File file;
+	/** The record size, or 0 for length-prefixed records. */
+	final int recordSize;
+	/** The size of a mapped chunk. */
+	final long chunkSize;
+	/** The file. */
+	final RandomAccessFile raf;
+	/** The file channel. */
+	final FileChannel channel;
+	/** The current chunk. */
+	MappedByteBuffer map;
+	/** The file offset of the current chunk. */
+	long mapStart;
+	/** The bytes in the file when no chunk is mapped. */
+	long written;
+	/** The first failure. */
+	IOException failure;
+	/** The file was closed. */
+	boolean closed;
+	/**
+	 * Opens the file for appending.
+	 * @param file the file
+	 * @param recordSize the record size, or 0 for length-prefixed records
+	 * @param chunkSize the size of a mapped chunk
+	 * @throws IOException if the file cannot be opened
+	 */
+	MappedRecordWriter(File file, int recordSize, long chunkSize) throws IOException {
+		this.file = file;
+		this.recordSize = recordSize;
+		this.chunkSize = chunkSize;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		this.written = channel.size();
+	}
+	/** @return the number of bytes in the file, including the bytes appended so far */
+	public synchronized long size() {
+		return map != null ? mapStart + map.position() : written;
+	}
+	@Override
+	public synchronized void next(ByteBuffer value) {
+		if (closed || failure != null) {
+			return;
+		}
+		int n = value.remaining();
+		if (recordSize > 0 && n != recordSize) {
+			failure = new IOException("Record of " + n + " bytes instead of " + recordSize + " for " + file);
+			return;
+		}
+		int need = recordSize > 0 ? n : n + 4;
+		try {
+			if (map == null || map.remaining() < need) {
+				remap(need);
+			}
+		} catch (IOException ex) {
+			failure = ex;
+			return;
+		}
+		if (recordSize == 0) {
+			map.putInt(n);
+		}
+		map.put(value);
+	}
+	/**
+	 * Maps the next chunk at the end of the bytes written.
+	 * @param need the bytes the chunk has to hold at least
+	 * @throws IOException if the mapping fails
+	 */
+	void remap(int need) throws IOException {
+		long start = size();
+		written = start;
+		map = null;
+		map = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(chunkSize, need));
+		mapStart = start;
+	}
+	@Override
+	public void error(Throwable ex) {
+		try {
+			close();
+		} catch (IOException e) {
+			// the source error is the one which matters
+		}
+	}
+	@Override
+	public void finish() {
+		try {
+			close();
+		} catch (IOException e) {
+			// reported by a later close()
+		}
+	}
+	/**
+	 * Cuts the file to the bytes written and closes it; later calls only
+	 * rethrow the failure.
+	 * @throws IOException the failure of the writing or of the closing
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			long size = size();
+			map = null;
+			written = size;
+			try {
+				channel.truncate(size);
+			} catch (IOException ex) {
+				if (failure == null) {
+					failure = ex;
+				}
+			}
+			try {
+				raf.close();
+			} catch (IOException ex) {
+				if (failure == null) {
+					failure = ex;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+
+/**
+ * Opt-in instrumentation of the stages of a chain.
+ * <p>A stage is instrumented by wrapping it, for example
+ * {@code Metrics.instrument("take", Metrics.instrument("buffer", from(source).buffer(3)).take(1))},
+ * which records the values, errors, finishes, registrations, registration
+ * lifetimes and sampled {@code next()} latencies of the wrapped stage in the
+ * {@link StageMetrics} of its name. {@link #observeOn} also reports the
+ * depth of its queue.</p>
+ * <p>The instrumentation is decided when the chain is assembled: while no
+ * registry is installed, {@code instrument} returns the stage itself, so a
+ * chain assembled with the metrics disabled has no overhead.</p>
+ */
+public final class Metrics {
+	/** The registry, null while the metrics are disabled. */
+	static volatile MetricsRegistry registry;
+	/** Every {@code sampleMask + 1}-th value is timed. */
+	static volatile long sampleMask = 63;
+	/** Utility class. */
+	private Metrics() {
+		// utility class
+	}
+	/**
+	 * Enables the metrics of the chains assembled from now on, or disables
+	 * them with null.
+	 * @param registry the registry or null
+	 */
+	public static void setRegistry(MetricsRegistry registry) {
+		Metrics.registry = registry;
+	}
+	/** @return the registry, null if the metrics are disabled */
+	public static MetricsRegistry getRegistry() {
+		return registry;
+	}
+	/**
+	 * Sets how many values pass for each timed {@code next()}, 64 by default;
+	 * the two {@code System.nanoTime()} calls of a timed value dominate the
+	 * cost of the instrumentation.
+	 * @param everyNth the sampling interval, rounded up to a power of two,
+	 * 1 times every value
+	 */
+	public static void setSampling(int everyNth) {
+		sampleMask = SpscArrayQueue.roundToPowerOfTwo(everyNth) - 1;
+	}
+	/**
+	 * Instruments a stage.
+	 * @param <T> the element type
+	 * @param name the stage name, the metrics are shared by the stages of the same name
+	 * @param source the stage
+	 * @return the instrumented stage, or the stage itself if the metrics are disabled
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ObservableBuilder<T> instrument(final String name, final Observable<? extends T> source) {
+		MetricsRegistry r = registry;
+		if (r == null) {
+			return ObservableBuilder.from((Observable<T>)source);
+		}
+		final StageMetrics metrics = r.stage(name);
+		final long mask = sampleMask;
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				return new InstrumentedObserver<T>(observer, metrics, mask).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * {@link ReactiveEx#observeOn(Observable, Scheduler, int, boolean)} as an
+	 * instrumented stage which also reports the depth of its queue.
+	 * @param <T> the element type
+	 * @param name the stage name
+	 * @param source the source observable
+	 * @param pool the pool relaying the events
+	 * @param capacity the queue capacity, rounded up to a power of two
+	 * @param multiProducer false if the source calls {@code next()} from one
+	 * thread at a time
+	 * @return the instrumented stage, or the plain stage if the metrics are disabled
+	 */
+	public static <T> ObservableBuilder<T> observeOn(final String name,
+			final Observable<? extends T> source, final Scheduler pool,
+			final int capacity, final boolean multiProducer) {
+		MetricsRegistry r = registry;
+		if (r == null) {
+			return ReactiveEx.observeOn(source, pool, capacity, multiProducer);
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity <= 0");
+		}
+		final StageMetrics metrics = r.stage(name);
+		final long mask = sampleMask;
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				InstrumentedObserver<T> io = new InstrumentedObserver<T>(observer, metrics, mask);
+				ObserveOn<T> stage = new ObserveOn<T>(io, pool, capacity, multiProducer);
+				io.track(stage.queue);
+				io.upstream = stage;
+				stage.registerWith(source);
+				return io;
+			}
+		});
+	}
+}
@@ -0,0 +1,103 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the overhead of {@link Metrics#instrument} on a
+ * {@code range.select.where.buffer(3)} chain with every stage instrumented:
+ * assembled while the metrics are disabled, enabled with the default
+ * sampling of every 64th value, and enabled with every value timed.
+ * <p>The chain runs once with a trivial selector, where the four stages
+ * together cost only a few nanoseconds per value and the instrumentation
+ * is the worst case, and once with a selector doing some hashing work per
+ * value, closer to the pipelines which do real work per value.</p>
+ * <p>Usage: {@code java MetricsBenchmark [work [elementCount...]]}, where
+ * work is the number of mixing rounds of the second selector.</p>
+ */
+public class MetricsBenchmark {
+	/** The synchronous scheduler for the sources. */
+	static final Scheduler CURRENT = new CurrentThreadScheduler();
+	/** Keeps the even values. */
+	static final Func1<Integer, Boolean> EVEN = new Func1<Integer, Boolean>() {
+		@Override
+		public Boolean invoke(Integer param1) {
+			return (param1 & 1) == 0;
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		int work = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int[] sizes = args.length > 1 ? Benchmark.sizes(Arrays.copyOfRange(args, 1, args.length)) : new int[] { 1000000 };
+		Benchmark.header();
+		for (int w : new int[] { 0, work }) {
+			String name = w == 0 ? "trivial" : "work=" + w;
+			Func1<Integer, Integer> selector = selector(w);
+			Metrics.setRegistry(null);
+			Metrics.setSampling(64);
+			Benchmark.run(name + ", plain", sizes, plain(selector));
+			Benchmark.run(name + ", instrumented, disabled", sizes, instrumented(selector));
+			Metrics.setRegistry(new DefaultMetricsRegistry());
+			Benchmark.run(name + ", instrumented, 1/64 timed", sizes, instrumented(selector));
+			Metrics.setSampling(1);
+			Benchmark.run(name + ", instrumented, all timed", sizes, instrumented(selector));
+		}
+		for (StageMetrics m : Metrics.getRegistry().stages()) {
+			System.out.println(m);
+		}
+	}
+	/**
+	 * @param work the number of mixing rounds per value
+	 * @return the selector
+	 */
+	static Func1<Integer, Integer> selector(final int work) {
+		return new Func1<Integer, Integer>() {
+			@Override
+			public Integer invoke(Integer param1) {
+				int h = param1;
+				for (int i = 0; i < work; i++) {
+					h ^= h >>> 16;
+					h *= 0x85ebca6b;
+					h ^= h >>> 13;
+				}
+				return work == 0 ? h + 1 : h;
+			}
+		};
+	}
+	/**
+	 * @param selector the selector
+	 * @return the body running the chain
+	 */
+	static Action1E<Integer, Exception> plain(final Func1<Integer, Integer> selector) {
+		return new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				Benchmark.consume(Reactive.last(ObservableBuilder.range(0, n, CURRENT)
+						.select(selector).where(EVEN).buffer(3)));
+			}
+		};
+	}
+	/**
+	 * The chain with every stage instrumented, assembled per run with the
+	 * current metrics settings.
+	 * @param selector the selector
+	 * @return the body running the chain
+	 */
+	static Action1E<Integer, Exception> instrumented(final Func1<Integer, Integer> selector) {
+		return new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				ObservableBuilder<Integer> range = Metrics.instrument("range", ObservableBuilder.range(0, n, CURRENT));
+				ObservableBuilder<Integer> select = Metrics.instrument("select", range.select(selector));
+				ObservableBuilder<Integer> where = Metrics.instrument("where", select.where(EVEN));
+				ObservableBuilder<List<Integer>> buffer = Metrics.instrument("buffer", where.buffer(3));
+				Benchmark.consume(Reactive.last(buffer));
+			}
+		};
+	}
+}
@@ -0,0 +1,19 @@
+import java.util.Collection;
+
+/**
+ * Creates and keeps the {@link StageMetrics} of the instrumented stages,
+ * installed by {@link Metrics#setRegistry(MetricsRegistry)}.
+ * <p>Implementations may publish the metrics elsewhere, as
+ * {@link JmxMetricsRegistry} does; they have to be thread-safe.</p>
+ */
+public interface MetricsRegistry {
+	/**
+	 * Returns the metrics of the stage, creating them on the first call;
+	 * stages with the same name share their metrics.
+	 * @param name the stage name
+	 * @return the metrics
+	 */
+	StageMetrics stage(String name);
+	/** @return the metrics of all stages */
+	Collection<StageMetrics> stages();
+}
@@ -0,0 +1,183 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class MetricsTest {
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+
+	@After
+	public void tearDown() {
+		Metrics.setRegistry(null);
+		Metrics.setSampling(64);
+	}
+
+	/**
+	 * 値を溜める
+	 * @param source ソース
+	 * @return 値と "finish!"
+	 */
+	static List<Object> collect(Observable<?> source) throws InterruptedException {
+		final List<Object> actual = new ArrayList<Object>();
+		Reactive.run(source, new Observer<Object>() {
+			@Override
+			public void next(Object value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+		return actual;
+	}
+
+	/**
+	 * ステージごとに件数、終了、購読、レイテンシが記録される
+	 */
+	@Test
+	public void testCounts() throws Exception {
+		DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+		Metrics.setRegistry(registry);
+		Metrics.setSampling(1);
+
+		ObservableBuilder<List<Integer>> buffer = Metrics.instrument("buffer",
+				Metrics.instrument("range", ObservableBuilder.range(0, 10, current)).buffer(3));
+		List<Object> actual = collect(Metrics.instrument("take", buffer.take(2)));
+
+		assertEquals(Arrays.<Object>asList(Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5), "finish!"), actual);
+		StageMetrics take = registry.stage("take");
+		assertEquals(2, take.getNextCount());
+		assertEquals(1, take.getFinishCount());
+		assertEquals(0, take.getErrorCount());
+		assertEquals(1, take.getSubscriptionCount());
+		assertEquals(0, take.getActiveSubscriptions());
+		assertEquals(2, take.nextLatency().count());
+		assertEquals(1, take.lifetime().count());
+		assertTrue(registry.stage("range").getNextCount() >= 6);
+		assertEquals(3, registry.stages().size());
+
+		// エラーも数える
+		collect(Metrics.instrument("take", Reactive.<Integer>throwException(new RuntimeException("boom"))));
+		assertEquals(1, take.getErrorCount());
+		assertEquals(2, take.getSubscriptionCount());
+	}
+
+	/**
+	 * レジストリがなければ元のステージがそのまま使われ、何も記録されない
+	 */
+	@Test
+	public void testDisabled() throws Exception {
+		Metrics.setRegistry(null);
+		ObservableBuilder<Integer> stage = Metrics.instrument("off", ObservableBuilder.range(0, 3, current));
+		DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+		Metrics.setRegistry(registry);
+
+		assertEquals(Arrays.<Object>asList(0, 1, 2, "finish!"), collect(stage));
+		assertEquals(0, registry.stages().size());
+	}
+
+	/**
+	 * observeOn のキューの深さが見える
+	 */
+	@Test
+	public void testQueueDepth() throws Exception {
+		DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+		Metrics.setRegistry(registry);
+		TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		final List<Integer> actual = new ArrayList<Integer>();
+		Metrics.observeOn("observeOn", source, scheduler, 16, false).register(new Observer<Integer>() {
+			@Override
+			public void next(Integer value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { }
+
+			@Override
+			public void finish() { }
+		});
+		StageMetrics m = registry.stage("observeOn");
+		for (int i = 0; i < 5; i++) {
+			source.next(i);
+		}
+		assertEquals(5, m.getQueueDepth());
+		assertEquals(1, m.getActiveSubscriptions());
+
+		scheduler.triggerActions();
+		assertEquals(0, m.getQueueDepth());
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), actual);
+
+		source.finish();
+		scheduler.triggerActions();
+		assertEquals(5, m.getNextCount());
+		assertEquals(0, m.getActiveSubscriptions());
+		assertEquals(0, m.queues.size());
+	}
+
+	/**
+	 * JMX から属性が読める
+	 */
+	@Test
+	public void testJmx() throws Exception {
+		JmxMetricsRegistry registry = new JmxMetricsRegistry("metricsTest");
+		Metrics.setRegistry(registry);
+		try {
+			collect(Metrics.instrument("jmx stage", ObservableBuilder.range(0, 100, current)
+					.select(new Func1<Integer, Integer>() {
+						@Override
+						public Integer invoke(Integer param1) { return param1 + 1; }
+					})));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(100L, server.getAttribute(registry.objectName("jmx stage"), "NextCount"));
+			assertEquals(1L, server.getAttribute(registry.objectName("jmx stage"), "FinishCount"));
+		} finally {
+			registry.unregisterAll();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(registry.objectName("jmx stage")));
+	}
+
+	/**
+	 * ヒストグラムの誤差は 1/32 未満
+	 */
+	@Test
+	public void testHistogram() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (int i = 1; i <= 10000; i++) {
+			h.record(i);
+		}
+		assertEquals(10000, h.count());
+		assertEquals(10000, h.max());
+		assertEquals(5000.5, h.mean(), 0.001);
+		assertEquals(5000, h.percentile(50), 5000 / 32);
+		assertEquals(9900, h.percentile(99), 9900 / 32);
+		assertEquals(1, h.percentile(0));
+
+		Random rnd = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			long v = (rnd.nextLong() >>> 1) >>> rnd.nextInt(63);
+			long high = LatencyHistogram.highestValue(LatencyHistogram.index(v));
+			assertTrue(v + " " + high, high >= v && high - v <= v / 32);
+		}
+		h.reset();
+		assertEquals(0, h.count());
+		assertEquals(0, h.percentile(50));
+	}
+}
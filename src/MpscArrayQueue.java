@@ -0,0 +1,71 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, array backed queue for any number of producer
+ * threads and one consumer thread.
+ * <p>The producers claim a slot by a CAS on the padded producer index and
+ * then fill it; the consumer waits briefly for a claimed but not yet filled
+ * slot instead of treating it as empty.</p>
+ * @param <T> the element type
+ */
+final class MpscArrayQueue<T> implements SimpleQueue<T> {
+	/** The slots. */
+	final AtomicReferenceArray<T> buffer;
+	/** The index mask. */
+	final int mask;
+	/** The capacity. */
+	final int capacity;
+	/** The next slot to claim. */
+	final PaddedAtomicLong producerIndex = new PaddedAtomicLong(0);
+	/** The next slot to read. */
+	final PaddedAtomicLong consumerIndex = new PaddedAtomicLong(0);
+	/**
+	 * Constructor.
+	 * @param capacity the capacity, rounded up to the next power of two
+	 */
+	MpscArrayQueue(int capacity) {
+		this.capacity = SpscArrayQueue.roundToPowerOfTwo(capacity);
+		this.buffer = new AtomicReferenceArray<T>(this.capacity);
+		this.mask = this.capacity - 1;
+	}
+	@Override
+	public boolean offer(T value) {
+		long p;
+		do {
+			p = producerIndex.get();
+			if (p - consumerIndex.get() >= capacity) {
+				return false;
+			}
+		} while (!producerIndex.compareAndSet(p, p + 1));
+		buffer.lazySet((int)p & mask, value);
+		return true;
+	}
+	@Override
+	public T poll() {
+		long c = consumerIndex.get();
+		int offset = (int)c & mask;
+		T v = buffer.get(offset);
+		if (v == null) {
+			if (c == producerIndex.get()) {
+				return null;
+			}
+			// the slot was claimed, the producer is about to fill it
+			do {
+				v = buffer.get(offset);
+			} while (v == null);
+		}
+		buffer.lazySet(offset, null);
+		consumerIndex.lazySet(c + 1);
+		return v;
+	}
+	@Override
+	public boolean isEmpty() {
+		return consumerIndex.get() == producerIndex.get();
+	}
+	@Override
+	public int size() {
+		long c = consumerIndex.get();
+		long n = producerIndex.get() - c;
+		return (int)Math.max(0, Math.min(n, capacity));
+	}
+}
@@ -0,0 +1,67 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.reactive.DefaultObservable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+/**
+ * Emits values to 1, 100 and 10k registered observers through the
+ * {@link MulticastObserver} of {@link ReactiveEx#publish} and through
+ * reactive4java's {@link DefaultObservable}.
+ * <p>The number of values is chosen so that each case makes about the same
+ * number of deliveries; ns/elem is per emitted value, i.e., per fan-out.</p>
+ * <p>Usage: {@code java MulticastBenchmark [deliveries]}</p>
+ */
+public class MulticastBenchmark {
+	/** The observer counts. */
+	static final int[] OBSERVERS = { 1, 100, 10000 };
+
+	/** The observer consuming the values. */
+	static final Observer<Object> SINK = new Observer<Object>() {
+		@Override
+		public void next(Object value) {
+			Benchmark.consume(value);
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			ex.printStackTrace();
+		}
+
+		@Override
+		public void finish() {
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		int deliveries = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		Benchmark.header();
+		for (int observers : OBSERVERS) {
+			int n = Math.max(1, deliveries / observers);
+
+			final MulticastObserver<Integer> multicast = new MulticastObserver<Integer>();
+			for (int i = 0; i < observers; i++) {
+				multicast.register(SINK);
+			}
+			Benchmark.run("MulticastObserver x" + observers, n, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					for (int i = 0; i < n; i++) {
+						multicast.next(i);
+					}
+				}
+			});
+
+			final DefaultObservable<Integer> subject = new DefaultObservable<Integer>();
+			for (int i = 0; i < observers; i++) {
+				subject.register(SINK);
+			}
+			Benchmark.run("DefaultObservable x" + observers, n, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					for (int i = 0; i < n; i++) {
+						subject.next(i);
+					}
+				}
+			});
+		}
+	}
+}
@@ -6,13 +6,14 @@ import hu.akarnokd.reactive4java.query.ObservableBuilder;
 import hu.akarnokd.reactive4java.reactive.Observable;
 import hu.akarnokd.reactive4java.reactive.Observer;
 import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+import hu.akarnokd.reactive4java.util.NewThreadScheduler;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.AbstractMap.SimpleEntry;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -69,6 +70,98 @@ public class MyReactiveTest {
 		
 	}
 
+	/**
+	 * testChain の内側の Observable を同時に購読しても順番が維持されるかのテスト
+	 *
+	 * 2秒待つ Observable が3つあるが、同時に購読するので約2秒で終わる(順に購読すると約6秒)
+	 * 別スレッドで実際に並行して待つことを確かめるので、仮想時間ではなく実時間で測る
+	 */
+	@Test
+	public void testChainConcurrent() throws InterruptedException {
+		final List<Integer> list = Arrays.asList(0, 1, 2);
+		final List<Integer> actual = new ArrayList<Integer>();
+
+		long start = System.currentTimeMillis();
+		Reactive.run(
+		ReactiveEx.selectManyOrdered(ObservableBuilder.from(list)
+		, new Func1<Integer, Observable<? extends Integer>>() {
+			@Override
+			public Observable<? extends Integer> invoke(final Integer param1) {
+				return Reactive.createWithCloseable(new Func1<Observer<? super Integer>, Closeable>() {
+					@Override
+					public Closeable invoke(Observer<? super Integer> observer) {
+						try {
+							// 後のものほど早く終わるようにして、順番が入れ替わらないことを確認する
+							Thread.sleep(2000 - param1 * 200);
+						} catch (InterruptedException e) {
+							fail(e.getMessage());
+						}
+						observer.next(param1);
+						observer.finish();
+						return new Closeable() {
+							@Override
+							public void close() throws IOException {
+							}
+						};
+					}
+				});
+			}
+		}, 3, new NewThreadScheduler())
+		.invoke(Reactive.println())
+		, new Action1<Integer>() {
+			@Override
+			public void invoke(Integer value) {
+				actual.add(value);
+			}
+		});
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertEquals(Arrays.asList(0, 1, 2), actual);
+		assertTrue("elapsed " + elapsed + " ms", elapsed < 4000);
+	}
+
+	/**
+	 * 順番を保証しない版は終わったものから流れてくる
+	 */
+	@Test
+	public void testChainConcurrentUnordered() throws InterruptedException {
+		final List<Integer> list = Arrays.asList(0, 1, 2);
+		final List<Integer> actual = new ArrayList<Integer>();
+
+		Reactive.run(
+		ReactiveEx.selectManyUnordered(ObservableBuilder.from(list)
+		, new Func1<Integer, Observable<? extends Integer>>() {
+			@Override
+			public Observable<? extends Integer> invoke(final Integer param1) {
+				return Reactive.createWithCloseable(new Func1<Observer<? super Integer>, Closeable>() {
+					@Override
+					public Closeable invoke(Observer<? super Integer> observer) {
+						try {
+							Thread.sleep(600 - param1 * 200);
+						} catch (InterruptedException e) {
+							fail(e.getMessage());
+						}
+						observer.next(param1);
+						observer.finish();
+						return new Closeable() {
+							@Override
+							public void close() throws IOException {
+							}
+						};
+					}
+				});
+			}
+		}, 3, new NewThreadScheduler())
+		, new Action1<Integer>() {
+			@Override
+			public void invoke(Integer value) {
+				actual.add(value);
+			}
+		});
+
+		assertEquals(Arrays.asList(2, 1, 0), actual);
+	}
+
 	/**
 	 * データソースに 0〜のインデックスを付けて後続に流せるのかのテスト(その1)
 	 * 
@@ -151,12 +244,50 @@ public class MyReactiveTest {
 		assertEquals("ccc", actualList.get(2).getValue());
 	}
 
+	/**
+	 * データソースに 0〜のインデックスを付けて後続に流せるのかのテスト(その3)
+	 *
+	 * ReactiveEx.selectIndexed で index を long のまま受け取る方法。buffer も内側の Observable も不要。
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testAppendIndexToArray3() throws InterruptedException {
+
+		List<String> list = Arrays.asList("aaa", "bbb", "ccc");
+		final List<SimpleEntry<Long, String>> actualList = new ArrayList<SimpleEntry<Long,String>>();
+
+		Reactive.run(
+		ReactiveEx.selectIndexed(ObservableBuilder.from(list)
+		, new IndexedFunc1<String, SimpleEntry<Long, String>>() {
+			@Override
+			public SimpleEntry<Long, String> invoke(long index, String param1) {
+				return new SimpleEntry<Long, String>(index, param1);
+			}
+		})
+		.invoke(new Action1<SimpleEntry<Long, String>>() {
+			@Override
+			public void invoke(SimpleEntry<Long, String> value) {
+				actualList.add(value);
+			}
+		})
+		, Reactive.println());
+
+		assertEquals(Long.valueOf(0), actualList.get(0).getKey());
+		assertEquals(Long.valueOf(1), actualList.get(1).getKey());
+		assertEquals(Long.valueOf(2), actualList.get(2).getKey());
+		assertEquals("aaa", actualList.get(0).getValue());
+		assertEquals("bbb", actualList.get(1).getValue());
+		assertEquals("ccc", actualList.get(2).getValue());
+	}
+
 	@Test
 	public void testWindow() throws InterruptedException {
 		Reactive.run(
 //		ObservableBuilder.tick(1, TimeUnit.SECONDS)
 		ObservableBuilder.range(1, 10)
-		.window(3)
+		// window(3) の最初のウィンドウはデフォルトスケジューラのタイマーで作られ、
+		// ソースのロックと逆順にロックを取るため、まれにデッドロックする
+		.window(3, new CurrentThreadScheduler())
 		.take(1)
 		.selectMany(new Func1<Observable<Integer>, Observable<? extends Integer>>() {
 			@Override
@@ -169,8 +300,9 @@ public class MyReactiveTest {
 
 	@Test
 	public void testBuffer() throws InterruptedException {
-		Reactive.run(
-		ObservableBuilder.tick(1, TimeUnit.SECONDS)
+		final TestScheduler scheduler = new TestScheduler();
+		final List<Object> actual = new ArrayList<Object>();
+		ObservableBuilder.tick(0, Long.MAX_VALUE, 1, TimeUnit.SECONDS, scheduler)
 //		ObservableBuilder.range(1, 10)
 		.buffer(3)
 //		.takeWhile(new Func1<List<Long>, Boolean>() {
@@ -192,13 +324,18 @@ public class MyReactiveTest {
 				return l.get(l.size() - 1);
 			}
 		})
-		, Reactive.println());
+		.register(collect(actual));
+		// 1, 2, 3 秒後の 0, 1, 2 で 1 つ目のバッファが埋まる
+		scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(2L, "finish!"), actual);
+		assertEquals(0, scheduler.pendingCount());
 	}
 	
 	@Test
 	public void testTake_nested() throws InterruptedException {
-		Reactive.run(
-		ObservableBuilder.tick(1, TimeUnit.SECONDS)
+		final TestScheduler scheduler = new TestScheduler();
+		final List<Object> actual = new ArrayList<Object>();
+		ObservableBuilder.tick(0, Long.MAX_VALUE, 1, TimeUnit.SECONDS, scheduler)
 		.buffer(3)
 		.take(1)
 		.select(new Func1<List<Long>, Long>() {
@@ -209,8 +346,11 @@ public class MyReactiveTest {
 		})
 		.buffer(3)
 		.take(1)
-		, Reactive.println());
-		
+		.register(collect(actual));
+		// 内側の take(1) が終わると、外側の buffer は 1 つだけ溜まったまま流れる
+		scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(Arrays.asList(2L), "finish!"), actual);
+		assertEquals(0, scheduler.pendingCount());
 	}
 
 	/**
@@ -219,14 +359,15 @@ public class MyReactiveTest {
 	@Test
 	public void testCloseByBuffer() throws InterruptedException {
 		final List<Object> expected = new ArrayList<Object>();
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		final TestScheduler scheduler = new TestScheduler();
 
 		Observable<Integer> source1 = Reactive.createWithCloseable(
 				new Func1<Observer<? super Integer>, Closeable>() {
 			@Override
 			public Closeable invoke(final Observer<? super Integer> observer) {
-				final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 				final AtomicInteger number = new AtomicInteger();
-				executor.scheduleAtFixedRate(new Runnable() {
+				final Closeable timer = scheduler.schedule(new Runnable() {
 					@Override
 					public void run() {
 						System.out.println("timer1.ticked");
@@ -240,7 +381,7 @@ public class MyReactiveTest {
 						System.out.println("timer1-close() called.");
 						expected.add("timer1-close");
 						
-						executor.shutdown();
+						timer.close();
 						observer.finish();
 					}
 				};
@@ -251,9 +392,8 @@ public class MyReactiveTest {
 				new Func1<Observer<? super Integer>, Closeable>() {
 			@Override
 			public Closeable invoke(final Observer<? super Integer> observer) {
-				final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 				final AtomicInteger number = new AtomicInteger(10);
-				executor.scheduleAtFixedRate(new Runnable() {
+				final Closeable timer = scheduler.schedule(new Runnable() {
 					@Override
 					public void run() {
 						System.out.println("timer2.ticked");
@@ -266,15 +406,14 @@ public class MyReactiveTest {
 					public void close() throws IOException {
 						System.out.println("timer2-close() called.");
 						expected.add("timer2-close");
-						executor.shutdown();
+						timer.close();
 						observer.finish();
 					}
 				};
 			}
 		});
 
-		Reactive.run(
-			ObservableBuilder.from(source1)
+		ObservableBuilder.from(source1)
 			.buffer(3) // 3つためる
 			.take(1) // 1回だけ取る
 			.invoke(new Action1<List<Integer>>() {
@@ -287,13 +426,19 @@ public class MyReactiveTest {
 			.selectMany(source2)
 			.buffer(3) // 3つためる
 			.take(1) // 1回だけ取る
-		, Reactive.asObserver(new Action1<Option<List<Integer>>>() {
+		.register(Reactive.asObserver(new Action1<Option<List<Integer>>>() {
 			@Override
 			public void invoke(Option<List<Integer>> value) {
 				System.out.println("timer2-take(1) called.");
-				expected.add(value.value());
+				// finish() も Option.none() で届くので値だけ記録する
+				if (Option.isSome(value)) {
+					expected.add(value.value());
+				}
 			}
 		}));
+		// timer1 が 3 回、timer2 が 3 回動く 6 秒と少し
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+		assertEquals(0, scheduler.pendingCount());
 
 		// verification
 		Iterator<Object> iterator = expected.iterator();
@@ -325,19 +470,23 @@ public class MyReactiveTest {
 			}
 		});
 
-		List<Observable<Integer>> list = Arrays.asList(Reactive.singleton(2));
-		Reactive.run(
+		TestScheduler scheduler = new TestScheduler();
+		List<Observable<Integer>> list = Arrays.asList(Reactive.singleton(2, scheduler));
 		ObservableBuilder.from(source)
-		.timeout(3, TimeUnit.SECONDS)
+		// timeout(time, unit, pool) の TimeoutException はデフォルトスケジューラから届くので、仮想時間で投げるものを渡す
+		.timeout(3, TimeUnit.SECONDS, Reactive.<Integer>throwException(new TimeoutException(), scheduler), scheduler)
 		.resumeAlways(list)
-		, Reactive.asObserver(new Action1<Option<Integer>>() {
+		.register(Reactive.asObserver(new Action1<Option<Integer>>() {
 			@Override
 			public void invoke(Option<Integer> value) {
-				System.out.println("invoked:" + value.value());
-				expected.add(value.value());
+				System.out.println("invoked:" + value);
+				if (Option.isSome(value)) {
+					expected.add(value.value());
+				}
 			}
-		})
-		);
+		}));
+		// 1 の後 3 秒で timeout し、resumeAlways で 2 に続く
+		scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
 
 		// verification
 		Iterator<Object> iterator = expected.iterator();
@@ -345,4 +494,28 @@ public class MyReactiveTest {
 		assertEquals(iterator.next(), 2);
 		assertFalse(iterator.hasNext());
 	}
+	/**
+	 * 値と finish を記録する Observer
+	 * @param actual 記録先
+	 * @return Observer
+	 */
+	static <T> Observer<T> collect(final List<Object> actual) {
+		return new Observer<T>() {
+			@Override
+			public void next(T value) {
+				System.out.println("next:" + value);
+				actual.add(value);
+			}
+			@Override
+			public void error(Throwable ex) {
+				System.out.println("error:" + ex.getMessage());
+				actual.add(ex);
+			}
+			@Override
+			public void finish() {
+				System.out.println("finish!");
+				actual.add("finish!");
+			}
+		};
+	}
 }
@@ -6,11 +6,13 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import hu.akarnokd.reactive4java.base.Action1;
 import hu.akarnokd.reactive4java.base.Func0;
 import hu.akarnokd.reactive4java.base.Func1;
 import hu.akarnokd.reactive4java.base.Func2;
@@ -32,31 +34,37 @@ public class ObservableBuilderTest {
 	 */
 	@Test
 	public void sample_04a_tick() {
-		// 3秒後から1秒間隔で5回値を発行するIObservable<long>を作成する
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		TestScheduler scheduler = new TestScheduler();
+		// 3秒後から3秒間隔で 1 から 4 を発行するIObservable<long>を作成する
 		ObservableBuilder<Long> source = ObservableBuilder.tick(
-			1, 5, 3, TimeUnit.SECONDS);
+			1, 5, 3, TimeUnit.SECONDS, scheduler);
+		final List<Object> actual = new ArrayList<Object>();
 		
-		try {
-			// 購読
-			// 3秒後からOnNext(回数)が表示される
-			Reactive.run(
-				source
-				, new Observer<Long>() {
-					@Override
-					public void next(Long value) { System.out.println("next:" + value); }
-	
-					@Override
-					public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
-	
-					@Override
-					public void finish() { 
-						System.out.println("finish!"); 
-						assertTrue(true);
-					}
-				});
-		} catch (InterruptedException e) {
-			fail(e.getMessage());
-		}
+		// 購読
+		// 3秒後からOnNext(回数)が表示される
+		source.register(new Observer<Long>() {
+				@Override
+				public void next(Long value) { System.out.println("next:" + value); actual.add(value); }
+
+				@Override
+				public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
+
+				@Override
+				public void finish() { 
+					System.out.println("finish!"); 
+					actual.add("finish!");
+				}
+			});
+
+		scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(), actual);
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(1L), actual);
+		// 残りは 6, 9, 12 秒後、15 秒後に finish
+		scheduler.advanceTimeBy(12, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L, "finish!"), actual);
+		assertEquals(0, scheduler.pendingCount());
 	}
 	
 	/***
@@ -66,8 +74,11 @@ public class ObservableBuilderTest {
 	 */
 	@Test
 	public void sample_04b_generate() {
-		
-		ObservableBuilder<Timestamped<Integer>> source = ObservableBuilder.generateTimed(
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		TestScheduler scheduler = new TestScheduler();
+		final List<Object> actual = new ArrayList<Object>();
+		// ObservableBuilder.generateTimed の Scheduler 版は Scheduler を渡さないので Reactive の方を使う
+		ObservableBuilder<Timestamped<Integer>> source = ObservableBuilder.from(Reactive.generateTimed(
 				0,  // 0から
 				new Func1<Integer, Boolean>() {
 					@Override
@@ -93,27 +104,32 @@ public class ObservableBuilderTest {
 						// 値は(発行する値 * 100)ms間隔で発行する
 						return  i * 100L; // TODO reactive4java 側で TimeUnit に対応するらしいので、その時は要修正。
 					}
-				});
+				}, scheduler));
 
-		try {
-			// 購読
-			Reactive.run(source
-				, new Observer<Timestamped<Integer>>() {
-					@Override
-					public void next(Timestamped<Integer> value) { System.out.println("next:" + value.value()); }
-	
-					@Override
-					public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
-	
-					@Override
-					public void finish() { 
-						System.out.println("finish!"); 
-						assertTrue(true);
-					}
-				});
-		} catch (InterruptedException e) {
-			fail(e.getMessage());
-		}
+		// 購読
+		source.register(new Observer<Timestamped<Integer>>() {
+				@Override
+				public void next(Timestamped<Integer> value) { System.out.println("next:" + value.value()); actual.add(value.value()); }
+
+				@Override
+				public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
+
+				@Override
+				public void finish() { 
+					System.out.println("finish!"); 
+					actual.add("finish!");
+				}
+			});
+
+		// 0 は すぐ、1 は 100ms 後、4 はさらに 200ms 後
+		scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(0, 1, 4), actual);
+		// 81 は 100 + 200 + ... + 900 = 4500ms 後、続けて finish
+		scheduler.advanceTimeBy(4199, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(0, 1, 4, 9, 16, 25, 36, 49, 64), actual);
+		scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(0, 1, 4, 9, 16, 25, 36, 49, 64, 81, "finish!"), actual);
+		assertEquals(0, scheduler.pendingCount());
 	}
 	
 	/***
@@ -123,64 +139,71 @@ public class ObservableBuilderTest {
 	 */
 	@Test
 	public void sample_05a_hot_cold() {
-		final DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss.SSS");
-		final CountDownLatch latch = new CountDownLatch(2);
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		final TestScheduler scheduler = new TestScheduler();
+		final List<Object> actual1 = new ArrayList<Object>();
+		final List<Object> actual2 = new ArrayList<Object>();
 
 		// 1秒間隔で値を発行するIObservable<long>を作成する
 		ObservableBuilder<Long> source = ObservableBuilder.tick(
 				 1, 10, 1, 
-				 TimeUnit.SECONDS);
+				 TimeUnit.SECONDS, scheduler);
 		// 購読
 		Closeable registered1 = source.register(new Observer<Long>() {
 			@Override
 			public void next(Long value) {
-				System.out.println(dateFormat.format(new Date()) + " 1##next:" + value); 
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms 1##next:" + value); 
+				actual1.add(value);
 			}
 
 			@Override
 			public void error(Throwable ex) {
-				System.out.println(dateFormat.format(new Date()) + " 1##error:" + ex.getMessage()); 
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms 1##error:" + ex.getMessage()); 
 			}
 
 			@Override
 			public void finish() { 
-				System.out.println(dateFormat.format(new Date()) + " 1##finish!"); 
-				latch.countDown();
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms 1##finish!"); 
+				actual1.add("finish!");
 			}
 		});
 		
 		// 3秒後にもう一度購読
-		try {
-			Thread.sleep(3000);
-		} catch (InterruptedException e) {
-			fail(e.getMessage());
-		}
+		scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L), actual1);
 		
 		// 購読
 		Closeable registered2 = source.register(new Observer<Long>() {
 			@Override
 			public void next(Long value) {
-				System.out.println(dateFormat.format(new Date()) + " 2##next:" + value); 
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms 2##next:" + value); 
+				actual2.add(value);
 			}
 
 			@Override
 			public void error(Throwable ex) {
-				System.out.println(dateFormat.format(new Date()) + " 2##error:" + ex.getMessage()); 
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms 2##error:" + ex.getMessage()); 
 			}
 
 			@Override
 			public void finish() { 
-				System.out.println(dateFormat.format(new Date()) + " 2##finish!"); 
-				latch.countDown();
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms 2##finish!"); 
+				actual2.add("finish!");
 			}
 		});
-	
+
+		// cold なので 2 つ目の購読は 1 から始まり、1 つ目より 3 秒遅れる
+		scheduler.advanceTimeBy(7, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, "finish!"), actual1);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L, 5L, 6L, 7L), actual2);
+		scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+		assertEquals(actual1, actual2);
+		assertEquals(0, scheduler.pendingCount());
+
 		try {
-			latch.await(30, TimeUnit.SECONDS);
 			registered1.close();
 			registered2.close();
-			assertTrue(true);
-		} catch (Exception e) {
+		} catch (IOException e) {
 			fail(e.getMessage());
 		}
 	}
@@ -195,27 +218,131 @@ public class ObservableBuilderTest {
 		System.out.println("reactive4java not implement FromEvent()");
 	}
 	
+	/***
+	 * Sample of sharing a cold observable (Publish().RefCount())
+	 * 
+	 * sample_05a_hot_cold では購読毎にタイマーが動くが、share() すると 1 つのタイマーを共有する
+	 */
+	@Test
+	public void sample_05c_publish_refCount() {
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		final TestScheduler scheduler = new TestScheduler();
+		final AtomicInteger ticks = new AtomicInteger();
+		final List<Object> values1 = new ArrayList<Object>();
+		final List<Object> values2 = new ArrayList<Object>();
+		final List<Object> values3 = new ArrayList<Object>();
+
+		// 100ms間隔で値を発行するIObservable<long>を共有する
+		ObservableBuilder<Long> source = ReactiveEx.share(
+			ObservableBuilder.tick(1, 10, 100, TimeUnit.MILLISECONDS, scheduler)
+			.invoke(new Action1<Long>() {
+				@Override
+				public void invoke(Long value) {
+					// タイマーが発行した回数
+					ticks.incrementAndGet();
+				}
+			}));
+		// 購読
+		Closeable registered1 = source.register(collect(scheduler, "1", values1));
+		
+		// 350ms後にもう一度購読
+		scheduler.advanceTimeBy(350, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L), values1);
+		Closeable registered2 = source.register(collect(scheduler, "2", values2));
+
+		scheduler.advanceTimeBy(650, TimeUnit.MILLISECONDS);
+		// 2つ目の購読は途中から同じ値を受け取る
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, "finish!"), values1);
+		assertEquals(Arrays.<Object>asList(4L, 5L, 6L, 7L, 8L, 9L, "finish!"), values2);
+		// タイマーは1つだけ
+		assertEquals(9, ticks.get());
+		assertEquals(0, scheduler.pendingCount());
+
+		// 終わった後の購読は finish だけではなく、新しいタイマーで最初から受け取る
+		Closeable registered3 = source.register(collect(scheduler, "3", values3));
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertEquals(values1, values3);
+		assertEquals(18, ticks.get());
+
+		try {
+			registered1.close();
+			registered2.close();
+			registered3.close();
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/***
+	 * refCount(publish()) は publish() の Subject を使い回すので、終わった後の購読は finish だけを受け取る
+	 */
+	@Test
+	public void sample_05d_publish_refCount_terminated() throws IOException {
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		final TestScheduler scheduler = new TestScheduler();
+		final List<Object> values1 = new ArrayList<Object>();
+		final List<Object> values2 = new ArrayList<Object>();
+
+		ObservableBuilder<Long> source = ReactiveEx.refCount(ReactiveEx.publish(
+			ObservableBuilder.tick(1, 4, 100, TimeUnit.MILLISECONDS, scheduler)));
+		Closeable registered1 = source.register(collect(scheduler, "1", values1));
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L, "finish!"), values1);
+		registered1.close();
+
+		// 購読が 0 になった後でも、接続し直した Subject は終わったまま
+		source.register(collect(scheduler, "2", values2)).close();
+		assertEquals(Arrays.<Object>asList("finish!"), values2);
+		assertEquals(0, scheduler.pendingCount());
+	}
+
+	/**
+	 * 値と finish を仮想時間と一緒に表示して記録する Observer
+	 * @param scheduler 仮想時間のスケジューラ
+	 * @param name 表示する名前
+	 * @param values 記録先
+	 * @return Observer
+	 */
+	static Observer<Long> collect(final TestScheduler scheduler, final String name, final List<Object> values) {
+		return new Observer<Long>() {
+			@Override
+			public void next(Long value) {
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms " + name + "##next:" + value); 
+				values.add(value);
+			}
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { 
+				System.out.println(scheduler.now(TimeUnit.MILLISECONDS) + "ms " + name + "##finish!"); 
+				values.add("finish!");
+			}
+		};
+	}
+	
 	/***
 	 * Sample of hot observable generators
 	 * 
 	 * @see http://d.hatena.ne.jp/okazuki/20111109/1320849106
 	 */
 	@Test
-	public void sample_06b_start() {
+	public void sample_06b_start() throws IOException {
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		TestScheduler scheduler = new TestScheduler();
+		final List<Object> actual = new ArrayList<Object>();
 		// バックグラウンドで処理を開始
 		Observable<Integer> source = Reactive.start(new Func0<Integer>() {
 			@Override
 			public Integer invoke() {
+				// 仮想時間なので Thread.sleep(2000) の代わりは要らない
 				System.out.println("background task start.");
-				try {
-					Thread.sleep(2000);
-				} catch (InterruptedException e) {
-					fail(e.getMessage());
-				}
 				System.out.println("background task end.");
+				actual.add("task");
 				return 1;
 			}
-		});
+		}, scheduler);
 		
 		// 購読
 		System.out.println("subscribe1");
@@ -223,6 +350,7 @@ public class ObservableBuilderTest {
 			@Override
 			public void next(Integer value) {
 				System.out.println("1##next:" + value); 
+				actual.add("1##next:" + value);
 			}
 
 			@Override
@@ -233,24 +361,17 @@ public class ObservableBuilderTest {
 			@Override
 			public void finish() { 
 				System.out.println("1##finish!"); 
+				actual.add("1##finish!");
 			}
 		});
 		
 		// 処理が確実に終わるように5秒待つ
 		System.out.println("sleep 5sec.");
-		try {
-			Thread.sleep(5000);
-		} catch (InterruptedException e) {
-			fail(e.getMessage());
-		}
+		scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
 		
 		// Observableが発行する値の購読を停止
 		System.out.println("dispose method call.");
-		try {
-			subscription1.close();
-		} catch (IOException e) {
-			fail(e.getMessage());
-		}
+		subscription1.close();
 		
 		// 購読
 		System.out.println("subscribe2");
@@ -258,6 +379,7 @@ public class ObservableBuilderTest {
 			@Override
 			public void next(Integer value) {
 				System.out.println("2##next:" + value); 
+				actual.add("2##next:" + value);
 			}
 
 			@Override
@@ -268,14 +390,14 @@ public class ObservableBuilderTest {
 			@Override
 			public void finish() { 
 				System.out.println("2##finish!"); 
+				actual.add("2##finish!");
 			}
 		});
-		try {
-			Thread.sleep(3000);
-			subscription2.close();
-		} catch (Exception e) {
-			fail(e.getMessage());
-		}
+		scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+		subscription2.close();
+
+		// Reactive.start は購読の度に関数を実行する
+		assertEquals(Arrays.<Object>asList("task", "1##next:1", "1##finish!", "task", "2##next:1", "2##finish!"), actual);
 	}
 	
 	/***
@@ -488,38 +610,47 @@ public class ObservableBuilderTest {
 	@Test
 	public void sample_25b_buffer_time() {
 		final DateFormat dateFormat = new SimpleDateFormat("HH:mm:ss");
-		try {
-			// 購読
-			Reactive.run(
-				// 500msごとに値を発行する
-				ObservableBuilder.tick(500, TimeUnit.MILLISECONDS)
-				// 3秒間値を溜める
-				.buffer(3, TimeUnit.SECONDS)
-				// 最初の3つを後続に流す
-				.take(3)
-			, new Observer<List<Long>>() {
-				@Override
-				public void next(List<Long> l) {
-					// List<int>の内容を出力
-		            System.out.println("-- Buffer " + dateFormat.format(new Date()));
-		            for (long i : l)
-		            {
-			            System.out.println(i);
-		            }
-				}
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		final TestScheduler scheduler = new TestScheduler();
+		final List<Object> actual = new ArrayList<Object>();
+		// 購読
+		ObservableBuilder
+			// 500msごとに値を発行する
+			.tick(0, Long.MAX_VALUE, 500, TimeUnit.MILLISECONDS, scheduler)
+			// 3秒間値を溜める
+			.buffer(3, TimeUnit.SECONDS, scheduler)
+			// 最初の3つを後続に流す
+			.take(3)
+		.register(new Observer<List<Long>>() {
+			@Override
+			public void next(List<Long> l) {
+				// List<int>の内容を出力
+	            System.out.println("-- Buffer " + dateFormat.format(new Date(scheduler.now(TimeUnit.MILLISECONDS))));
+	            for (long i : l)
+	            {
+		            System.out.println(i);
+	            }
+	            actual.add(new ArrayList<Long>(l));
+			}
 
-				@Override
-				public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
+			@Override
+			public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
 
-				@Override
-				public void finish() { 
-					System.out.println("finish!"); 
-					assertTrue(true);
-				}
-			});
-		} catch (InterruptedException e) {
-			fail(e.getMessage());
-		}
+			@Override
+			public void finish() { 
+				System.out.println("finish!"); 
+				actual.add("finish!");
+			}
+		});
+		scheduler.advanceTimeBy(9, TimeUnit.SECONDS);
+
+		// 3 秒毎に溜まった値。同じ時刻ではスケジュールした順に実行されるので、
+		// 3 秒ちょうどの tick の値は先に登録された buffer のタイマーの後 (次のバッファ) になる
+		assertEquals(Arrays.<Object>asList(
+				Arrays.asList(0L, 1L, 2L, 3L, 4L),
+				Arrays.asList(5L, 6L, 7L, 8L, 9L, 10L),
+				Arrays.asList(11L, 12L, 13L, 14L, 15L, 16L),
+				"finish!"), actual);
 	}
 
 	/***
@@ -529,37 +660,40 @@ public class ObservableBuilderTest {
 	 */
 	@Test
 	public void sample_25c_buffer_combination() {
-		try {
-			// 購読
-			Reactive.run(
-				// 500msごとに値を発行する
-				ObservableBuilder.tick(500, TimeUnit.MILLISECONDS)
-				// 3秒間値を溜める
-				.buffer(3, TimeUnit.SECONDS)
-				// 最初の3つを後続に流す
-				.take(3)
-				.selectMany(new Func1<List<Long>, Observable<? extends Long>>() {
-					@Override
-					public Observable<? extends Long> invoke(List<Long> l) {
-						return ObservableBuilder.from(l);
-					}
-				})
-				.<Long>max()
-			, new Observer<Long>() {
+		// 仮想時間のスケジューラ (advanceTimeBy で時間を進める)
+		final TestScheduler scheduler = new TestScheduler();
+		final List<Object> actual = new ArrayList<Object>();
+		// 購読
+		ObservableBuilder
+			// 500msごとに値を発行する
+			.tick(0, Long.MAX_VALUE, 500, TimeUnit.MILLISECONDS, scheduler)
+			// 3秒間値を溜める
+			.buffer(3, TimeUnit.SECONDS, scheduler)
+			// 最初の3つを後続に流す
+			.take(3)
+			.selectMany(new Func1<List<Long>, Observable<? extends Long>>() {
 				@Override
-				public void next(Long l) { System.out.println("next:" + l); }
+				public Observable<? extends Long> invoke(List<Long> l) {
+					return ObservableBuilder.from(l, scheduler);
+				}
+			})
+			.<Long>max()
+		.register(new Observer<Long>() {
+			@Override
+			public void next(Long l) { System.out.println("next:" + l); actual.add(l); }
 
-				@Override
-				public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
+			@Override
+			public void error(Throwable ex) { System.out.println("error:" + ex.getMessage()); }
 
-				@Override
-				public void finish() { 
-					System.out.println("finish!"); 
-					assertTrue(true);
-				}
-			});
-		} catch (InterruptedException e) {
-			fail(e.getMessage());
-		}
+			@Override
+			public void finish() { 
+				System.out.println("finish!"); 
+				actual.add("finish!");
+			}
+		});
+		scheduler.advanceTimeBy(9, TimeUnit.SECONDS);
+
+		// sample_25b_buffer_time の 3 つのバッファの最大値
+		assertEquals(Arrays.<Object>asList(16L, "finish!"), actual);
 	}
 }
@@ -0,0 +1,201 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The registration of {@link ReactiveEx#observeOn(Observable, Scheduler, int, boolean)}:
+ * queues the source events in a lock-free ring buffer and relays them on the
+ * scheduler.
+ * <p>A drain task is scheduled only when the stage goes idle to busy, and
+ * each task relays up to {@code capacity} values before it yields the pool
+ * thread by rescheduling itself. When the buffer is full the producer makes
+ * sure a drain is scheduled, once, and parks, after a few yields to the
+ * drain if it is the only producer. As in {@link BlockingIterator}, the
+ * drain resumes it after taking three quarters of the buffer, so a fast
+ * producer and a slow observer exchange a wake-up per batch instead of
+ * spinning. Concurrent producers share one waiter slot, so a producer whose
+ * slot was taken over parks for at most {@link #MAX_PARK_NANOS} at a
+ * time.</p>
+ * @param <T> the element type
+ */
+final class ObserveOn<T> implements Observer<T>, Runnable, Closeable {
+	/** The number of times a single producer yields to the drain before it parks. */
+	static final int YIELDS = 8;
+	/** The longest park of a producer waiting for room, in case its wake-up went to another producer. */
+	static final long MAX_PARK_NANOS = 1000000L;
+	/** The downstream. */
+	final Observer<? super T> observer;
+	/** The pool relaying the events. */
+	final Scheduler pool;
+	/** The queue of values, nulls wrapped. */
+	final SimpleQueue<Object> queue;
+	/** The maximum number of values relayed by one drain task. */
+	final int batch;
+	/** The number of values relayed between two wake-ups of a waiting producer. */
+	final int limit;
+	/** The number of times the producer yields before it parks, 0 for concurrent producers. */
+	final int yields;
+	/** The scheduled or running drain tasks plus missed signals. */
+	final AtomicInteger wip = new AtomicInteger();
+	/** The values relayed since the producer was last woken, drain only. */
+	int taken;
+	/** The number of values relayed, written once per {@code limit} values. */
+	volatile long consumed;
+	/** The producer thread waiting for room in the buffer, null if none or already woken. */
+	final AtomicReference<Thread> producerWaiter = new AtomicReference<Thread>();
+	/** The termination error. */
+	Throwable error;
+	/** The source terminated. */
+	volatile boolean done;
+	/** The downstream closed. */
+	volatile boolean cancelled;
+	/** The source registration. */
+	volatile Closeable upstream;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param pool the pool relaying the events
+	 * @param capacity the queue capacity
+	 * @param multiProducer may the source call next() from several threads at once?
+	 */
+	ObserveOn(Observer<? super T> observer, Scheduler pool, int capacity, boolean multiProducer) {
+		this.observer = observer;
+		this.pool = pool;
+		this.queue = multiProducer
+				? new MpscArrayQueue<Object>(capacity)
+				: new SpscArrayQueue<Object>(capacity);
+		this.batch = capacity;
+		this.limit = Math.max(1, capacity - (capacity >> 2));
+		// concurrent producers would mostly yield to each other instead of the drain
+		this.yields = multiProducer ? 0 : YIELDS;
+	}
+	/**
+	 * Registers with the source.
+	 * @param source the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> source) {
+		upstream = source.register(this);
+		if (cancelled) {
+			Closeables.close0(upstream);
+		}
+		return this;
+	}
+	@Override
+	public void next(T value) {
+		if (done || cancelled) {
+			return;
+		}
+		Object v = BufferedFlow.wrap(value);
+		if (!queue.offer(v)) {
+			// the drain runs until the buffer is empty, one schedule per full episode is enough
+			schedule();
+			for (int i = 0; i < yields; i++) {
+				Thread.yield();
+				if (queue.offer(v)) {
+					schedule();
+					return;
+				}
+				if (cancelled) {
+					return;
+				}
+			}
+			Thread t = Thread.currentThread();
+			for (;;) {
+				producerWaiter.set(t);
+				// reading consumed makes the slots freed before it visible
+				if (consumed >= 0 && queue.offer(v)) {
+					break;
+				}
+				if (cancelled) {
+					producerWaiter.lazySet(null);
+					return;
+				}
+				LockSupport.parkNanos(this, MAX_PARK_NANOS);
+				if (Thread.interrupted()) {
+					producerWaiter.lazySet(null);
+					t.interrupt();
+					Closeables.close0(upstream);
+					error(new InterruptedException());
+					return;
+				}
+			}
+			producerWaiter.lazySet(null);
+		}
+		schedule();
+	}
+	@Override
+	public void error(Throwable ex) {
+		if (done) {
+			return;
+		}
+		error = ex;
+		done = true;
+		schedule();
+	}
+	@Override
+	public void finish() {
+		done = true;
+		schedule();
+	}
+	@Override
+	public void close() {
+		cancelled = true;
+		Closeables.close0(upstream);
+		BlockingIterator.wake(producerWaiter);
+	}
+	/** Schedules the drain task unless it is already scheduled or running. */
+	void schedule() {
+		if (wip.getAndIncrement() == 0) {
+			pool.schedule(this);
+		}
+	}
+	@Override
+	public void run() {
+		int missed = 1;
+		int emitted = 0;
+		for (;;) {
+			for (;;) {
+				if (cancelled) {
+					return;
+				}
+				boolean d = done;
+				Object v = queue.poll();
+				if (v == null) {
+					if (d) {
+						cancelled = true;
+						if (error != null) {
+							observer.error(error);
+						} else {
+							observer.finish();
+						}
+						return;
+					}
+					break;
+				}
+				if (++taken == limit) {
+					taken = 0;
+					// the volatile write publishes the freed slots before reading the waiter
+					consumed += limit;
+					BlockingIterator.wake(producerWaiter);
+				}
+				observer.next(BufferedFlow.<T>unwrap(v));
+				if (++emitted == batch) {
+					// keep wip, let other tasks run on the pool thread
+					pool.schedule(this);
+					return;
+				}
+			}
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				break;
+			}
+		}
+	}
+}
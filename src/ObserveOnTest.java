@@ -0,0 +1,223 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class ObserveOnTest {
+	/** 受け取り側のスレッド */
+	final Scheduler pool = new DefaultScheduler();
+
+	/**
+	 * 複数スレッドから同時に値を発行する Observable を作る
+	 * @param producers スレッド数
+	 * @param count スレッド毎の値の数
+	 * @return 値は producer * count + i
+	 */
+	static Observable<Integer> producers(final int producers, final int count) {
+		return new Observable<Integer>() {
+			@Override
+			public Closeable register(final Observer<? super Integer> observer) {
+				final AtomicInteger running = new AtomicInteger(producers);
+				for (int p = 0; p < producers; p++) {
+					final int base = p * count;
+					new Thread(new Runnable() {
+						@Override
+						public void run() {
+							for (int i = 0; i < count; i++) {
+								observer.next(base + i);
+							}
+							if (running.decrementAndGet() == 0) {
+								observer.finish();
+							}
+						}
+					}).start();
+				}
+				return new Closeable() {
+					@Override
+					public void close() { }
+				};
+			}
+		};
+	}
+
+	/**
+	 * 結果を溜める Observer
+	 */
+	static final class Collector implements Observer<Integer> {
+		/** 受け取った値 */
+		final List<Integer> values = new ArrayList<Integer>();
+		/** 受け取ったスレッド */
+		final List<Thread> threads = new ArrayList<Thread>();
+		/** 受け取ったエラー */
+		Throwable error;
+		/** 完了 */
+		final CountDownLatch done = new CountDownLatch(1);
+		@Override
+		public void next(Integer value) {
+			values.add(value);
+			if (threads.isEmpty()) {
+				threads.add(Thread.currentThread());
+			}
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			error = ex;
+			done.countDown();
+		}
+
+		@Override
+		public void finish() {
+			done.countDown();
+		}
+	}
+
+	/**
+	 * リングバッファは容量を 2 のべき乗に切り上げ、溢れたら offer が false を返す
+	 */
+	@Test
+	public void testQueues() {
+		for (SimpleQueue<Integer> q : Arrays.<SimpleQueue<Integer>>asList(
+				new SpscArrayQueue<Integer>(3), new MpscArrayQueue<Integer>(3))) {
+			assertTrue(q.isEmpty());
+			for (int i = 0; i < 4; i++) {
+				assertTrue(q.offer(i));
+			}
+			assertFalse(q.offer(4));
+			assertEquals(Integer.valueOf(0), q.poll());
+			assertTrue(q.offer(4));
+			for (int i = 1; i < 5; i++) {
+				assertEquals(Integer.valueOf(i), q.poll());
+			}
+			assertNull(q.poll());
+			assertTrue(q.isEmpty());
+		}
+	}
+
+	/**
+	 * 1 スレッドからの値が順番通りに別スレッドへ渡る (容量を超える数)
+	 */
+	@Test
+	public void testSingleProducer() throws InterruptedException {
+		Collector c = new Collector();
+		ReactiveEx.observeOn(producers(1, 100000), pool, 16, false).register(c);
+
+		assertTrue(c.done.await(10, TimeUnit.SECONDS));
+		assertNull(c.error);
+		assertEquals(100000, c.values.size());
+		for (int i = 0; i < c.values.size(); i++) {
+			assertEquals(i, c.values.get(i).intValue());
+		}
+		assertNotSame(Thread.currentThread(), c.threads.get(0));
+	}
+
+	/**
+	 * 4 スレッドから同時に発行しても、スレッド毎の順序は保たれ、値は失われない
+	 */
+	@Test
+	public void testMultiProducer() throws InterruptedException {
+		final int producers = 4;
+		final int count = 50000;
+		Collector c = new Collector();
+		ReactiveEx.observeOn(producers(producers, count), pool, 64, true).register(c);
+
+		assertTrue(c.done.await(10, TimeUnit.SECONDS));
+		assertNull(c.error);
+		assertEquals(producers * count, c.values.size());
+		int[] last = new int[producers];
+		Arrays.fill(last, -1);
+		for (int v : c.values) {
+			int p = v / count;
+			assertTrue(v + " after " + last[p], v % count == last[p] + 1);
+			last[p] = v % count;
+		}
+	}
+
+	/**
+	 * エラーは先に発行された値の後に届く
+	 */
+	@Test
+	public void testError() throws InterruptedException {
+		Collector c = new Collector();
+		ReactiveEx.observeOn(
+				Reactive.concat(Reactive.range(1, 2), Reactive.<Integer>throwException(new RuntimeException("error!"))),
+				pool).register(c);
+
+		assertTrue(c.done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 2), c.values);
+		assertEquals("error!", c.error.getMessage());
+	}
+
+	/**
+	 * バッファが一杯の間、発行側は回り続けずに待ち、受け取り側が追いつくと再開する
+	 */
+	@Test
+	public void testProducerParksWhileFull() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Thread[] producer = new Thread[1];
+		final Collector c = new Collector();
+		ReactiveEx.observeOn(new Observable<Integer>() {
+			@Override
+			public Closeable register(final Observer<? super Integer> observer) {
+				producer[0] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < 1000; i++) {
+							observer.next(i);
+						}
+						observer.finish();
+					}
+				});
+				producer[0].start();
+				return new Closeable() {
+					@Override
+					public void close() { }
+				};
+			}
+		}, pool, 16, false).register(new Observer<Integer>() {
+			@Override
+			public void next(Integer value) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					fail(e.getMessage());
+				}
+				c.next(value);
+			}
+
+			@Override
+			public void error(Throwable ex) { c.error(ex); }
+
+			@Override
+			public void finish() { c.finish(); }
+		});
+
+		// 受け取り側が止まっているので、バッファが埋まると発行側は park する
+		long end = System.currentTimeMillis() + 10000;
+		while (producer[0].getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(Thread.State.TIMED_WAITING, producer[0].getState());
+
+		release.countDown();
+		assertTrue(c.done.await(10, TimeUnit.SECONDS));
+		assertNull(c.error);
+		assertEquals(1000, c.values.size());
+		for (int i = 0; i < c.values.size(); i++) {
+			assertEquals(i, c.values.get(i).intValue());
+		}
+	}
+}
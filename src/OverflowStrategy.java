@@ -0,0 +1,15 @@
+/**
+ * What to do when a push source is faster than the demand
+ * and the bounded buffer is full.
+ * @see Backpressure#from(hu.akarnokd.reactive4java.reactive.Observable, int, OverflowStrategy)
+ */
+public enum OverflowStrategy {
+	/** Drop the new value. */
+	DROP,
+	/** Drop the oldest buffered value, so the buffer keeps the latest values. */
+	LATEST,
+	/** Block the producer thread until there is room in the buffer. */
+	BLOCK,
+	/** Signal an {@code IllegalStateException} and release the source. */
+	ERROR
+}
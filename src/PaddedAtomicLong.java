@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * The padding before the value of {@link PaddedAtomicLong}; the fields of a
+ * superclass are laid out before those of its subclasses.
+ */
+abstract class PaddedAtomicLongLhs {
+	/** Padding. */
+	long p0, p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The value of {@link PaddedAtomicLong}, between the two paddings.
+ */
+abstract class PaddedAtomicLongValue extends PaddedAtomicLongLhs {
+	/** The value. */
+	volatile long value;
+}
+
+/**
+ * An atomic long padded on both sides to occupy its own cache line, so that
+ * the producer and the consumer index of a queue do not false-share with
+ * each other or with the fields around them.
+ * <p>An {@code AtomicLong} subclass can only be padded after its value,
+ * hence the field updater over a value placed between the padding of a
+ * superclass and of this class.</p>
+ */
+final class PaddedAtomicLong extends PaddedAtomicLongValue {
+	/** The value updater. */
+	static final AtomicLongFieldUpdater<PaddedAtomicLongValue> VALUE =
+			AtomicLongFieldUpdater.newUpdater(PaddedAtomicLongValue.class, "value");
+	/** Padding. */
+	long p9, p10, p11, p12, p13, p14, p15, p16;
+	/**
+	 * Constructor.
+	 * @param initialValue the initial value
+	 */
+	PaddedAtomicLong(long initialValue) {
+		VALUE.lazySet(this, initialValue);
+	}
+	/** @return the current value */
+	long get() {
+		return value;
+	}
+	/**
+	 * Sets the value with a volatile write.
+	 * @param newValue the new value
+	 */
+	void set(long newValue) {
+		value = newValue;
+	}
+	/**
+	 * Sets the value with an ordered, but not volatile, write.
+	 * @param newValue the new value
+	 */
+	void lazySet(long newValue) {
+		VALUE.lazySet(this, newValue);
+	}
+	/**
+	 * Sets the value if it is the expected one.
+	 * @param expect the expected value
+	 * @param update the new value
+	 * @return true if the value was set
+	 */
+	boolean compareAndSet(long expect, long update) {
+		return VALUE.compareAndSet(this, expect, update);
+	}
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+}
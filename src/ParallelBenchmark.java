@@ -0,0 +1,91 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures how {@link ParallelObservable} scales a CPU-bound selector from
+ * one rail to one rail per processor, with the unordered and the ordered
+ * merge and with the {@code averageInt()} reducer, against the plain
+ * single-threaded {@code Reactive.select}.
+ * <p>Each rail count runs on its own pool with as many threads as rails;
+ * the source runs on a separate pool.</p>
+ * <p>Usage: {@code java ParallelBenchmark [elements [work]]}, where work is
+ * the number of mixing rounds of the selector per element.</p>
+ */
+public class ParallelBenchmark {
+	/** The number of mixing rounds per element. */
+	static int work;
+	/** The pool running the sources. */
+	static final DefaultScheduler SOURCE = new DefaultScheduler();
+	/** The CPU-bound selector. */
+	static final Func1<Integer, Integer> SELECTOR = new Func1<Integer, Integer>() {
+		@Override
+		public Integer invoke(Integer param1) {
+			int h = param1;
+			for (int i = 0; i < work; i++) {
+				h ^= h >>> 16;
+				h *= 0x85ebca6b;
+				h ^= h >>> 13;
+			}
+			return h & 0xFFFF;
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		final int elements = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		work = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int cpus = Runtime.getRuntime().availableProcessors();
+		List<Integer> rails = new ArrayList<Integer>();
+		for (int r = 1; r < cpus; r *= 2) {
+			rails.add(r);
+		}
+		rails.add(cpus);
+
+		Benchmark.header();
+		Benchmark.run("Reactive.select", elements, new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				Benchmark.consume(Reactive.last(Reactive.select(Reactive.range(0, n, SOURCE), SELECTOR)));
+			}
+		});
+		for (final int r : rails) {
+			final DefaultScheduler pool = new DefaultScheduler(Executors.newScheduledThreadPool(r));
+			Benchmark.run("parallel(" + r + ").sequential", elements, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					Benchmark.consume(Reactive.last(rails(n, r, pool).sequential()));
+				}
+			});
+			Benchmark.run("parallel(" + r + ").ordered", elements, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					Benchmark.consume(Reactive.last(rails(n, r, pool).ordered()));
+				}
+			});
+			Benchmark.run("parallel(" + r + ").averageInt", elements, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					Benchmark.consume(Reactive.last(rails(n, r, pool).averageInt()));
+				}
+			});
+			pool.shutdown();
+		}
+		SOURCE.shutdown();
+	}
+	/**
+	 * @param n the number of elements
+	 * @param rails the number of rails
+	 * @param pool the pool of the rails
+	 * @return the rails running the selector
+	 */
+	static ParallelObservable<Integer> rails(int n, int rails, DefaultScheduler pool) {
+		Observable<Integer> source = Reactive.range(0, n, SOURCE);
+		return ReactiveEx.parallel(source, rails, pool).select(SELECTOR);
+	}
+}
@@ -0,0 +1,273 @@
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The values of a source split across a fixed number of rails, each
+ * processed on its own task of a scheduler, created by
+ * {@link ReactiveEx#parallel(Observable, int, Scheduler)}.
+ * <p>The values are dealt to the rails round-robin or by the hash of a key,
+ * through a single-producer ring buffer per rail. The {@code select} and
+ * {@code where} stages are recorded and run on the rail of the value. The
+ * rails are joined back by {@link #sequential()} in completion order, by
+ * {@link #ordered()} in the source order, or by one of the reducers, which
+ * reduce each rail separately and combine the per-rail partials at the end.</p>
+ * <p>The source thread waits while the ring buffer of a rail is full, so the
+ * source should not run on the rails' scheduler unless it has more threads
+ * than rails.</p>
+ * @param <T> the element type of the rails
+ */
+public final class ParallelObservable<T> {
+	/** The stage kinds. */
+	static final int SELECT = 0, WHERE = 1;
+	/** A recorded stage. */
+	static final class Stage {
+		/** The kind. */
+		final int kind;
+		/** The selector of SELECT. */
+		final Func1<Object, Object> selector;
+		/** The predicate of WHERE. */
+		final Func1<Object, Boolean> predicate;
+		/**
+		 * Constructor.
+		 * @param kind the kind
+		 * @param selector the selector or null
+		 * @param predicate the predicate or null
+		 */
+		Stage(int kind, Func1<Object, Object> selector, Func1<Object, Boolean> predicate) {
+			this.kind = kind;
+			this.selector = selector;
+			this.predicate = predicate;
+		}
+	}
+	/** The source. */
+	final Observable<?> source;
+	/** The number of rails. */
+	final int rails;
+	/** The scheduler running the rails. */
+	final Scheduler pool;
+	/** The key of the hash partitioning, null for round-robin. */
+	final Func1<Object, ?> partitioner;
+	/** The capacity of the ring buffer of a rail. */
+	final int capacity;
+	/** The stages. */
+	final Stage[] stages;
+	/**
+	 * Constructor.
+	 * @param source the source
+	 * @param rails the number of rails
+	 * @param pool the scheduler running the rails
+	 * @param partitioner the key of the hash partitioning, null for round-robin
+	 * @param capacity the capacity of the ring buffer of a rail
+	 * @param stages the stages
+	 */
+	ParallelObservable(Observable<?> source, int rails, Scheduler pool,
+			Func1<Object, ?> partitioner, int capacity, Stage[] stages) {
+		this.source = source;
+		this.rails = rails;
+		this.pool = pool;
+		this.partitioner = partitioner;
+		this.capacity = capacity;
+		this.stages = stages;
+	}
+	/** @return the number of rails */
+	public int rails() {
+		return rails;
+	}
+	/**
+	 * @param <U> the new element type
+	 * @param stage the stage to append
+	 * @return a new instance with the stage appended
+	 */
+	<U> ParallelObservable<U> add(Stage stage) {
+		Stage[] s = Arrays.copyOf(stages, stages.length + 1);
+		s[stages.length] = stage;
+		return new ParallelObservable<U>(source, rails, pool, partitioner, capacity, s);
+	}
+	/**
+	 * Transforms the values on their rails.
+	 * @param <U> the result type
+	 * @param selector the selector, called concurrently from the rails
+	 * @return the rails of the results
+	 */
+	@SuppressWarnings("unchecked")
+	public <U> ParallelObservable<U> select(Func1<? super T, ? extends U> selector) {
+		return add(new Stage(SELECT, (Func1<Object, Object>)selector, null));
+	}
+	/**
+	 * Filters the values on their rails.
+	 * @param predicate the predicate, called concurrently from the rails
+	 * @return the rails of the values accepted
+	 */
+	@SuppressWarnings("unchecked")
+	public ParallelObservable<T> where(Func1<? super T, Boolean> predicate) {
+		return add(new Stage(WHERE, null, (Func1<Object, Boolean>)predicate));
+	}
+	/**
+	 * Joins the rails in the order the values complete.
+	 * @return the builder
+	 */
+	public ObservableBuilder<T> sequential() {
+		return join(false);
+	}
+	/**
+	 * Joins the rails in the order of the source values.
+	 * <p>Each value carries its source index through its rail, and a value
+	 * finished early waits until the values before it are relayed.</p>
+	 * @return the builder
+	 */
+	public ObservableBuilder<T> ordered() {
+		return join(true);
+	}
+	/**
+	 * @param ordered keep the source order?
+	 * @return the builder
+	 */
+	ObservableBuilder<T> join(final boolean ordered) {
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				return new RailJoin<T>(ParallelObservable.this, observer, ordered).start();
+			}
+		});
+	}
+	/**
+	 * Reduces each rail and combines the partials.
+	 * @param <A> the partial type
+	 * @param aggregator the aggregator
+	 * @return the builder of the combined partial, null if the rails were empty
+	 */
+	<A> ObservableBuilder<A> aggregate(final RailAggregator<? super T, A> aggregator) {
+		return ObservableBuilder.from(new Observable<A>() {
+			@Override
+			public Closeable register(Observer<? super A> observer) {
+				return new RailAggregate<T, A>(ParallelObservable.this, observer, aggregator).start();
+			}
+		});
+	}
+	/**
+	 * Reduces the values with the function, first per rail, then the partials
+	 * of the rails; signals only {@code finish()} if there are no values.
+	 * @param reducer the associative function, called concurrently from the rails
+	 * @return the builder
+	 */
+	public ObservableBuilder<T> reduce(final Func2<? super T, ? super T, ? extends T> reducer) {
+		return aggregate(new RailAggregator<T, T>() {
+			@Override
+			public T seed() {
+				return null;
+			}
+			@Override
+			public T add(T acc, T value) {
+				return acc == null ? value : reducer.invoke(acc, value);
+			}
+			@Override
+			public T combine(T left, T right) {
+				if (left == null) {
+					return right;
+				}
+				return right == null ? left : reducer.invoke(left, right);
+			}
+			@Override
+			public boolean isEmpty(T acc) {
+				return acc == null;
+			}
+		});
+	}
+	/**
+	 * The maximum of the values by the comparator, see {@link #reduce(Func2)}.
+	 * @param comparator the comparator
+	 * @return the builder
+	 */
+	public ObservableBuilder<T> max(final Comparator<? super T> comparator) {
+		return reduce(new Func2<T, T, T>() {
+			@Override
+			public T invoke(T param1, T param2) {
+				return comparator.compare(param1, param2) >= 0 ? param1 : param2;
+			}
+		});
+	}
+	/**
+	 * The minimum of the values by the comparator, see {@link #reduce(Func2)}.
+	 * @param comparator the comparator
+	 * @return the builder
+	 */
+	public ObservableBuilder<T> min(final Comparator<? super T> comparator) {
+		return reduce(new Func2<T, T, T>() {
+			@Override
+			public T invoke(T param1, T param2) {
+				return comparator.compare(param1, param2) <= 0 ? param1 : param2;
+			}
+		});
+	}
+	/**
+	 * The maximum of comparable values, see {@link #reduce(Func2)}.
+	 * @param <U> the comparable element type, the same as T
+	 * @return the builder
+	 */
+	@SuppressWarnings("unchecked")
+	public <U extends Comparable<? super U>> ObservableBuilder<U> max() {
+		return ((ParallelObservable<U>)this).max(new Comparator<U>() {
+			@Override
+			public int compare(U o1, U o2) {
+				return o1.compareTo(o2);
+			}
+		});
+	}
+	/**
+	 * The minimum of comparable values, see {@link #reduce(Func2)}.
+	 * @param <U> the comparable element type, the same as T
+	 * @return the builder
+	 */
+	@SuppressWarnings("unchecked")
+	public <U extends Comparable<? super U>> ObservableBuilder<U> min() {
+		return ((ParallelObservable<U>)this).min(new Comparator<U>() {
+			@Override
+			public int compare(U o1, U o2) {
+				return o1.compareTo(o2);
+			}
+		});
+	}
+	/**
+	 * The average of integer values, summed per rail into a long; signals
+	 * only {@code finish()} if there are no values.
+	 * @return the builder
+	 */
+	@SuppressWarnings("unchecked")
+	public ObservableBuilder<Double> averageInt() {
+		return ((ParallelObservable<Integer>)this).aggregate(new RailAggregator<Integer, long[]>() {
+			@Override
+			public long[] seed() {
+				return new long[2];
+			}
+			@Override
+			public long[] add(long[] acc, Integer value) {
+				acc[0] += value;
+				acc[1]++;
+				return acc;
+			}
+			@Override
+			public long[] combine(long[] left, long[] right) {
+				left[0] += right[0];
+				left[1] += right[1];
+				return left;
+			}
+			@Override
+			public boolean isEmpty(long[] acc) {
+				return acc[1] == 0;
+			}
+		}).select(new Func1<long[], Double>() {
+			@Override
+			public Double invoke(long[] param1) {
+				return (double)param1[0] / param1[1];
+			}
+		});
+	}
+}
@@ -0,0 +1,162 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class ParallelObservableTest {
+	/** レールを動かすプール */
+	final Scheduler pool = new DefaultScheduler();
+	/** 2 倍にする */
+	final Func1<Integer, Integer> twice = new Func1<Integer, Integer>() {
+		@Override
+		public Integer invoke(Integer param1) { return param1 * 2; }
+	};
+	/** 3 の倍数を除く */
+	final Func1<Integer, Boolean> notMultipleOf3 = new Func1<Integer, Boolean>() {
+		@Override
+		public Boolean invoke(Integer param1) { return param1 % 3 != 0; }
+	};
+
+	/**
+	 * 値を溜める
+	 * @param source ソース
+	 * @return 値と "finish!"
+	 */
+	static List<Object> collect(Observable<?> source) throws InterruptedException {
+		final List<Object> actual = new ArrayList<Object>();
+		Reactive.run(source, new Observer<Object>() {
+			@Override
+			public void next(Object value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+		return actual;
+	}
+
+	/**
+	 * sequential() は順不同だが値は全部届き、最後に finish
+	 */
+	@Test
+	public void testSequential() throws Exception {
+		List<Object> actual = collect(ReactiveEx.parallel(Reactive.range(0, 10000), 4, pool)
+				.select(twice).sequential());
+
+		assertEquals(10001, actual.size());
+		assertEquals("finish!", actual.remove(10000));
+		List<Integer> values = new ArrayList<Integer>();
+		for (Object o : actual) {
+			values.add((Integer)o);
+		}
+		Collections.sort(values);
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i * 2, values.get(i).intValue());
+		}
+	}
+
+	/**
+	 * ordered() は where で間引かれてもソースの順に並ぶ
+	 */
+	@Test
+	public void testOrdered() throws Exception {
+		List<Object> expected = collect(Reactive.select(Reactive.where(Reactive.range(0, 10000), notMultipleOf3), twice));
+		List<Object> actual = collect(ReactiveEx.parallel(Reactive.range(0, 10000), 4, pool)
+				.where(notMultipleOf3).select(twice).ordered());
+
+		assertEquals(expected, actual);
+	}
+
+	/**
+	 * max/min/averageInt はレールごとの途中結果をまとめる。空なら finish だけ
+	 */
+	@Test
+	public void testReducers() throws Exception {
+		List<Integer> source = new ArrayList<Integer>();
+		for (int i = 0; i < 10000; i++) {
+			source.add((i * 7919) % 10007);
+		}
+		Observable<Integer> values = Reactive.toObservable(source);
+
+		assertEquals(Arrays.<Object>asList(Collections.max(source), "finish!"),
+				collect(ReactiveEx.parallel(values, 4, pool).<Integer>max()));
+		assertEquals(Arrays.<Object>asList(Collections.min(source), "finish!"),
+				collect(ReactiveEx.parallel(values, 4, pool).<Integer>min()));
+		assertEquals(collect(Reactive.averageInt(values)),
+				collect(ReactiveEx.parallel(values, 4, pool).averageInt()));
+		assertEquals(Arrays.<Object>asList(10000 * 9999 / 2, "finish!"),
+				collect(ReactiveEx.parallel(Reactive.range(0, 10000), 4, pool)
+						.reduce(new Func2<Integer, Integer, Integer>() {
+							@Override
+							public Integer invoke(Integer param1, Integer param2) { return param1 + param2; }
+						})));
+
+		assertEquals(Arrays.<Object>asList("finish!"),
+				collect(ReactiveEx.parallel(Reactive.<Integer>empty(), 4, pool).averageInt()));
+		assertEquals(Arrays.<Object>asList("finish!"),
+				collect(ReactiveEx.parallel(Reactive.range(0, 100), 4, pool).where(new Func1<Integer, Boolean>() {
+					@Override
+					public Boolean invoke(Integer param1) { return false; }
+				}).<Integer>max()));
+	}
+
+	/**
+	 * キーで振り分けると同じキーの値は同じレールに乗るので、キーごとの順序が保たれる
+	 */
+	@Test
+	public void testPartitioned() throws Exception {
+		List<Object> actual = collect(ReactiveEx.parallel(Reactive.range(0, 10000), 3, pool,
+				new Func1<Integer, Integer>() {
+					@Override
+					public Integer invoke(Integer param1) { return param1 % 7; }
+				}).sequential());
+
+		assertEquals("finish!", actual.remove(actual.size() - 1));
+		assertEquals(10000, actual.size());
+		int[] last = new int[7];
+		Arrays.fill(last, -1);
+		for (Object o : actual) {
+			int v = (Integer)o;
+			assertTrue(v + " after " + last[v % 7], v > last[v % 7]);
+			last[v % 7] = v;
+		}
+	}
+
+	/**
+	 * セレクタの例外は一度だけ error になり、finish は来ない
+	 */
+	@Test
+	public void testError() throws Exception {
+		for (boolean ordered : new boolean[] { false, true }) {
+			ParallelObservable<Integer> p = ReactiveEx.parallel(Reactive.range(0, 10000), 4, pool)
+					.select(new Func1<Integer, Integer>() {
+						@Override
+						public Integer invoke(Integer param1) {
+							if (param1 == 5000) {
+								throw new IllegalStateException("boom");
+							}
+							return param1;
+						}
+					});
+			List<Object> actual = collect(ordered ? p.ordered() : p.sequential());
+
+			assertEquals("error:boom", actual.get(actual.size() - 1));
+			assertFalse(actual.contains("finish!"));
+			assertEquals(1, Collections.frequency(actual, "error:boom"));
+		}
+	}
+}
@@ -0,0 +1,196 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The common part of the registrations of a {@link ParallelObservable}:
+ * deals the source values to the rails and runs the stages on the rails.
+ * <p>Each rail is an {@link ObserveOn} with a single-producer ring buffer
+ * fed by the source thread, so a rail runs on one pool task at a time and
+ * sees its values in source order. The subclass receives the results of the
+ * stages on the rail threads and terminates the downstream once, through
+ * {@link #terminate()}.</p>
+ * @param <T> the element type of the rails
+ */
+abstract class ParallelRails<T> implements Observer<Object>, Closeable {
+	/** A value with its source index, used when {@link #indexed} is set. */
+	static final class Indexed {
+		/** The source index. */
+		final long index;
+		/** The value. */
+		final Object value;
+		/**
+		 * Constructor.
+		 * @param index the source index
+		 * @param value the value
+		 */
+		Indexed(long index, Object value) {
+			this.index = index;
+			this.value = value;
+		}
+	}
+	/** The rail definition. */
+	final ParallelObservable<T> parent;
+	/** Does the subclass need the source index of the values? */
+	final boolean indexed;
+	/** The rail inputs. */
+	final ObserveOn<Object>[] inputs;
+	/** The downstream was terminated or closed. */
+	final AtomicBoolean terminated = new AtomicBoolean();
+	/** The source registration. */
+	volatile Closeable upstream;
+	/** The index of the next source value, source thread only. */
+	long index;
+	/** The rail of the next source value in round-robin mode, source thread only. */
+	int next;
+	/**
+	 * Constructor.
+	 * @param parent the rail definition
+	 * @param indexed does the subclass need the source index of the values?
+	 */
+	ParallelRails(ParallelObservable<T> parent, boolean indexed) {
+		this.parent = parent;
+		this.indexed = indexed;
+		// every element is created below as an ObserveOn<Object>
+		@SuppressWarnings("unchecked")
+		ObserveOn<Object>[] a = (ObserveOn<Object>[])new ObserveOn<?>[parent.rails];
+		this.inputs = a;
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = new ObserveOn<Object>(new Rail(i), parent.pool, parent.capacity, false);
+		}
+	}
+	/**
+	 * Registers with the source.
+	 * @return this
+	 */
+	Closeable start() {
+		upstream = parent.source.register(this);
+		if (terminated.get()) {
+			Closeables.close0(upstream);
+		}
+		return this;
+	}
+	@Override
+	public void next(Object value) {
+		int r;
+		if (parent.partitioner != null) {
+			Object key;
+			try {
+				key = parent.partitioner.invoke(value);
+			} catch (Throwable ex) {
+				error(ex);
+				return;
+			}
+			int h = key != null ? key.hashCode() : 0;
+			r = ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % inputs.length;
+		} else {
+			r = next;
+			next = r + 1 == inputs.length ? 0 : r + 1;
+		}
+		inputs[r].next(indexed ? new Indexed(index++, value) : value);
+	}
+	@Override
+	public void error(Throwable ex) {
+		if (terminated.compareAndSet(false, true)) {
+			closeRails();
+			onError(ex);
+		}
+	}
+	@Override
+	public void finish() {
+		for (ObserveOn<Object> in : inputs) {
+			in.finish();
+		}
+	}
+	@Override
+	public void close() {
+		terminated.set(true);
+		closeRails();
+	}
+	/** Closes the source and the rails. */
+	void closeRails() {
+		Closeables.close0(upstream);
+		for (ObserveOn<Object> in : inputs) {
+			in.close();
+		}
+	}
+	/**
+	 * Marks the downstream terminated.
+	 * @return true if it was not terminated or closed before
+	 */
+	boolean terminate() {
+		return terminated.compareAndSet(false, true);
+	}
+	/**
+	 * A value passed all the stages of its rail.
+	 * @param rail the rail
+	 * @param index the source index, or 0 if not {@link #indexed}
+	 * @param value the value
+	 */
+	abstract void onValue(int rail, long index, Object value);
+	/**
+	 * A value was dropped by a {@code where} stage, in indexed mode only.
+	 * @param rail the rail
+	 * @param index the source index
+	 */
+	void onFiltered(int rail, long index) {
+	}
+	/**
+	 * A rail processed all of its values.
+	 * @param rail the rail
+	 */
+	abstract void onRailDone(int rail);
+	/**
+	 * The source or a stage failed; called once, after the rails were closed.
+	 * @param ex the error
+	 */
+	abstract void onError(Throwable ex);
+	/** A rail running the stages, called by its {@link ObserveOn}. */
+	final class Rail implements Observer<Object> {
+		/** The rail number. */
+		final int id;
+		/**
+		 * Constructor.
+		 * @param id the rail number
+		 */
+		Rail(int id) {
+			this.id = id;
+		}
+		@Override
+		public void next(Object value) {
+			long idx = 0;
+			Object v = value;
+			if (indexed) {
+				Indexed iv = (Indexed)value;
+				idx = iv.index;
+				v = iv.value;
+			}
+			try {
+				for (ParallelObservable.Stage s : parent.stages) {
+					if (s.kind == ParallelObservable.SELECT) {
+						v = s.selector.invoke(v);
+					} else if (!s.predicate.invoke(v)) {
+						if (indexed) {
+							onFiltered(id, idx);
+						}
+						return;
+					}
+				}
+			} catch (Throwable ex) {
+				ParallelRails.this.error(ex);
+				return;
+			}
+			onValue(id, idx, v);
+		}
+		@Override
+		public void error(Throwable ex) {
+			ParallelRails.this.error(ex);
+		}
+		@Override
+		public void finish() {
+			onRailDone(id);
+		}
+	}
+}
@@ -0,0 +1,1370 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.reactive.Timestamped;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sources, aggregates and bridges for the {@link IntObservable},
+ * {@link LongObservable} and {@link DoubleObservable} primitive streams.
+ * <p>The aggregates ({@code sum}, {@code min}, {@code max}, {@code average},
+ * {@code count} and {@code statistics}) keep their state in primitive fields
+ * and do not allocate per element. Like their {@code Reactive} counterparts,
+ * {@code min}, {@code max} and {@code average} signal only {@code finish()}
+ * for an empty source, while {@code sum} and {@code count} signal zero.</p>
+ * <p>The aggregates and {@code boxed} are named by the source type, e.g.
+ * {@code sumInt}, {@code sumLong} and {@code sumDouble}, like
+ * {@code toInt}, {@code toLong} and {@code toDouble}: the primitive
+ * observables are single-method interfaces, so overloads on them would be
+ * ambiguous for a lambda or method reference argument.</p>
+ * <p>{@code bufferLongs} emits its windows as recycled {@link LongChunk}s
+ * instead of a new {@code List<Long>} per window.</p>
+ * <p>The sliding window aggregates ({@code slidingMin}, {@code slidingMax},
+ * {@code slidingSum}, {@code slidingCount} and {@code slidingAverage}) emit
+ * the aggregate of the last n values or of the values of the last time span
+ * after each value, with O(1) amortized updates; {@code tumblingStatistics}
+ * emits the statistics of consecutive windows.</p>
+ * <p>{@code generateTimed} is a timed source over a primitive state with
+ * nanosecond, drift-compensated scheduling.</p>
+ */
+public final class PrimitiveObservables {
+	/** Utility class. */
+	private PrimitiveObservables() {
+		// utility class
+	}
+	/**
+	 * A cancellable task which emits values in a loop on a scheduler.
+	 */
+	abstract static class Emitter implements Runnable, Closeable {
+		/** Set when the registration is closed. */
+		volatile boolean cancelled;
+		/** The scheduled task. */
+		volatile Closeable task;
+		@Override
+		public void close() {
+			cancelled = true;
+			Closeables.close0(task);
+		}
+		/**
+		 * Schedules this emitter on the pool.
+		 * @param pool the pool
+		 * @return this
+		 */
+		Closeable scheduleOn(Scheduler pool) {
+			task = pool.schedule(this);
+			return this;
+		}
+	}
+	// -------------------------------------------------------------------------
+	// Sources
+	// -------------------------------------------------------------------------
+	/**
+	 * Creates an observable of ints from start to start + count - 1 on the default scheduler.
+	 * @param start the first value
+	 * @param count the number of values
+	 * @return the observable
+	 */
+	public static IntObservable range(int start, int count) {
+		return range(start, count, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Creates an observable of ints from start to start + count - 1.
+	 * @param start the first value
+	 * @param count the number of values
+	 * @param pool the pool where the values are emitted
+	 * @return the observable
+	 */
+	public static IntObservable range(final int start, final int count, final Scheduler pool) {
+		return new IntObservable() {
+			@Override
+			public Closeable register(final IntObserver observer) {
+				return new Emitter() {
+					@Override
+					public void run() {
+						int end = start + count;
+						for (int i = start; i < end && !cancelled; i++) {
+							observer.next(i);
+						}
+						if (!cancelled) {
+							observer.finish();
+						}
+					}
+				}.scheduleOn(pool);
+			}
+		};
+	}
+	/**
+	 * Creates an observable of longs from start to start + count - 1 on the default scheduler.
+	 * @param start the first value
+	 * @param count the number of values
+	 * @return the observable
+	 */
+	public static LongObservable range(long start, long count) {
+		return range(start, count, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Creates an observable of longs from start to start + count - 1.
+	 * @param start the first value
+	 * @param count the number of values
+	 * @param pool the pool where the values are emitted
+	 * @return the observable
+	 */
+	public static LongObservable range(final long start, final long count, final Scheduler pool) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return new Emitter() {
+					@Override
+					public void run() {
+						long end = start + count;
+						for (long i = start; i < end && !cancelled; i++) {
+							observer.next(i);
+						}
+						if (!cancelled) {
+							observer.finish();
+						}
+					}
+				}.scheduleOn(pool);
+			}
+		};
+	}
+	/**
+	 * Creates an observable of the given ints on the given pool.
+	 * @param pool the pool where the values are emitted
+	 * @param values the values, not copied
+	 * @return the observable
+	 */
+	public static IntObservable from(final Scheduler pool, final int... values) {
+		return new IntObservable() {
+			@Override
+			public Closeable register(final IntObserver observer) {
+				return new Emitter() {
+					@Override
+					public void run() {
+						for (int i = 0; i < values.length && !cancelled; i++) {
+							observer.next(values[i]);
+						}
+						if (!cancelled) {
+							observer.finish();
+						}
+					}
+				}.scheduleOn(pool);
+			}
+		};
+	}
+	/**
+	 * Creates an observable of the given longs on the given pool.
+	 * @param pool the pool where the values are emitted
+	 * @param values the values, not copied
+	 * @return the observable
+	 */
+	public static LongObservable from(final Scheduler pool, final long... values) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return new Emitter() {
+					@Override
+					public void run() {
+						for (int i = 0; i < values.length && !cancelled; i++) {
+							observer.next(values[i]);
+						}
+						if (!cancelled) {
+							observer.finish();
+						}
+					}
+				}.scheduleOn(pool);
+			}
+		};
+	}
+	/**
+	 * Creates an observable of the given doubles on the given pool.
+	 * @param pool the pool where the values are emitted
+	 * @param values the values, not copied
+	 * @return the observable
+	 */
+	public static DoubleObservable from(final Scheduler pool, final double... values) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return new Emitter() {
+					@Override
+					public void run() {
+						for (int i = 0; i < values.length && !cancelled; i++) {
+							observer.next(values[i]);
+						}
+						if (!cancelled) {
+							observer.finish();
+						}
+					}
+				}.scheduleOn(pool);
+			}
+		};
+	}
+	/**
+	 * Generates longs from a primitive state with a delay before each value,
+	 * in the given time unit, on the default scheduler.
+	 * @param initial the initial state
+	 * @param generator the state machine
+	 * @param unit the unit of the delays
+	 * @return the observable
+	 * @see #generateTimed(long, LongGenerator, TimeUnit, Scheduler)
+	 */
+	public static LongObservable generateTimed(long initial, LongGenerator generator, TimeUnit unit) {
+		return generateTimed(initial, generator, unit, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Generates longs from a primitive state with a delay before each value,
+	 * the primitive counterpart of {@code Reactive.generateTimed}.
+	 * <p>The value of a state is due its delay after the previous value was
+	 * due (the first one after the registration), so the time points are
+	 * computed from the start and do not drift with the time spent emitting;
+	 * a value which is late is emitted right away. Short delays are waited
+	 * on the pool thread, which makes rates of several kHz possible. Nothing
+	 * is boxed or wrapped into {@code Timestamped}, see
+	 * {@link #timestamped(LongObservable)} for the latter.</p>
+	 * @param initial the initial state
+	 * @param generator the state machine
+	 * @param unit the unit of the delays
+	 * @param pool the pool where the values are emitted
+	 * @return the observable
+	 */
+	public static LongObservable generateTimed(
+			final long initial, final LongGenerator generator,
+			final TimeUnit unit, final Scheduler pool) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(LongObserver observer) {
+				return new TimedLongGenerator(observer, initial, generator, unit, pool).start();
+			}
+		};
+	}
+	// -------------------------------------------------------------------------
+	// Bridges
+	// -------------------------------------------------------------------------
+	/**
+	 * Unboxes the numbers of the source into ints.
+	 * @param source the source of numbers, may not send nulls
+	 * @return the int observable
+	 */
+	public static IntObservable toInt(final Observable<? extends Number> source) {
+		return new IntObservable() {
+			@Override
+			public Closeable register(final IntObserver observer) {
+				return source.register(new Observer<Number>() {
+					@Override
+					public void next(Number value) {
+						observer.next(value.intValue());
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Unboxes the numbers of the source into longs.
+	 * @param source the source of numbers, may not send nulls
+	 * @return the long observable
+	 */
+	public static LongObservable toLong(final Observable<? extends Number> source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new Observer<Number>() {
+					@Override
+					public void next(Number value) {
+						observer.next(value.longValue());
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Unboxes the numbers of the source into doubles.
+	 * @param source the source of numbers, may not send nulls
+	 * @return the double observable
+	 */
+	public static DoubleObservable toDouble(final Observable<? extends Number> source) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new Observer<Number>() {
+					@Override
+					public void next(Number value) {
+						observer.next(value.doubleValue());
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Boxes the ints of the source.
+	 * @param source the source
+	 * @return the builder
+	 */
+	public static ObservableBuilder<Integer> boxedInt(final IntObservable source) {
+		return ObservableBuilder.from(new Observable<Integer>() {
+			@Override
+			public Closeable register(final Observer<? super Integer> observer) {
+				return source.register(new IntObserver() {
+					@Override
+					public void next(int value) {
+						observer.next(value);
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Boxes the longs of the source.
+	 * @param source the source
+	 * @return the builder
+	 */
+	public static ObservableBuilder<Long> boxedLong(final LongObservable source) {
+		return ObservableBuilder.from(new Observable<Long>() {
+			@Override
+			public Closeable register(final Observer<? super Long> observer) {
+				return source.register(new LongObserver() {
+					@Override
+					public void next(long value) {
+						observer.next(value);
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Boxes the longs of the source with the time they were received,
+	 * as {@code Reactive.generateTimed} does.
+	 * @param source the source
+	 * @return the builder
+	 */
+	public static ObservableBuilder<Timestamped<Long>> timestamped(final LongObservable source) {
+		return ObservableBuilder.from(new Observable<Timestamped<Long>>() {
+			@Override
+			public Closeable register(final Observer<? super Timestamped<Long>> observer) {
+				return source.register(new LongObserver() {
+					@Override
+					public void next(long value) {
+						observer.next(Timestamped.of(value, System.currentTimeMillis()));
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Boxes the doubles of the source.
+	 * @param source the source
+	 * @return the builder
+	 */
+	public static ObservableBuilder<Double> boxedDouble(final DoubleObservable source) {
+		return ObservableBuilder.from(new Observable<Double>() {
+			@Override
+			public Closeable register(final Observer<? super Double> observer) {
+				return source.register(new DoubleObserver() {
+					@Override
+					public void next(double value) {
+						observer.next(value);
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	// -------------------------------------------------------------------------
+	// Aggregates
+	// -------------------------------------------------------------------------
+	/** Accumulates the ints into statistics, the subclass signals the result. */
+	abstract static class IntAggregator implements IntObserver {
+		/** The statistics. */
+		final IntStatistics stats = new IntStatistics();
+		@Override
+		public void next(int value) {
+			stats.accept(value);
+		}
+	}
+	/** Accumulates the longs into statistics, the subclass signals the result. */
+	abstract static class LongAggregator implements LongObserver {
+		/** The statistics. */
+		final LongStatistics stats = new LongStatistics();
+		@Override
+		public void next(long value) {
+			stats.accept(value);
+		}
+	}
+	/** Accumulates the doubles into statistics, the subclass signals the result. */
+	abstract static class DoubleAggregator implements DoubleObserver {
+		/** The statistics. */
+		final DoubleStatistics stats = new DoubleStatistics();
+		@Override
+		public void next(double value) {
+			stats.accept(value);
+		}
+	}
+	/**
+	 * Computes the single pass statistics of the source.
+	 * @param source the source
+	 * @return the builder signalling the statistics once the source finishes
+	 */
+	public static ObservableBuilder<IntStatistics> statisticsInt(final IntObservable source) {
+		return ObservableBuilder.from(new Observable<IntStatistics>() {
+			@Override
+			public Closeable register(final Observer<? super IntStatistics> observer) {
+				return source.register(new IntAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(stats);
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Computes the single pass statistics of the source.
+	 * @param source the source
+	 * @return the builder signalling the statistics once the source finishes
+	 */
+	public static ObservableBuilder<LongStatistics> statisticsLong(final LongObservable source) {
+		return ObservableBuilder.from(new Observable<LongStatistics>() {
+			@Override
+			public Closeable register(final Observer<? super LongStatistics> observer) {
+				return source.register(new LongAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(stats);
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Computes the single pass statistics of the source.
+	 * @param source the source
+	 * @return the builder signalling the statistics once the source finishes
+	 */
+	public static ObservableBuilder<DoubleStatistics> statisticsDouble(final DoubleObservable source) {
+		return ObservableBuilder.from(new Observable<DoubleStatistics>() {
+			@Override
+			public Closeable register(final Observer<? super DoubleStatistics> observer) {
+				return source.register(new DoubleAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(stats);
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Computes the sum of the ints as long.
+	 * @param source the source
+	 * @return the observable of the sum
+	 */
+	public static LongObservable sumInt(final IntObservable source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new IntObserver() {
+					/** The running sum. */
+					long sum;
+					@Override
+					public void next(int value) {
+						sum += value;
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(sum);
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the sum of the longs.
+	 * @param source the source
+	 * @return the observable of the sum
+	 */
+	public static LongObservable sumLong(final LongObservable source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new LongObserver() {
+					/** The running sum. */
+					long sum;
+					@Override
+					public void next(long value) {
+						sum += value;
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(sum);
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the sum of the doubles.
+	 * @param source the source
+	 * @return the observable of the sum
+	 */
+	public static DoubleObservable sumDouble(final DoubleObservable source) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new DoubleObserver() {
+					/** The running sum. */
+					double sum;
+					@Override
+					public void next(double value) {
+						sum += value;
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(sum);
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the smallest int.
+	 * @param source the source
+	 * @return the observable of the minimum, empty if the source is empty
+	 */
+	public static IntObservable minInt(final IntObservable source) {
+		return new IntObservable() {
+			@Override
+			public Closeable register(final IntObserver observer) {
+				return source.register(new IntAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.min());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the smallest long.
+	 * @param source the source
+	 * @return the observable of the minimum, empty if the source is empty
+	 */
+	public static LongObservable minLong(final LongObservable source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new LongAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.min());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the smallest double.
+	 * @param source the source
+	 * @return the observable of the minimum, empty if the source is empty
+	 */
+	public static DoubleObservable minDouble(final DoubleObservable source) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new DoubleAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.min());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the largest int.
+	 * @param source the source
+	 * @return the observable of the maximum, empty if the source is empty
+	 */
+	public static IntObservable maxInt(final IntObservable source) {
+		return new IntObservable() {
+			@Override
+			public Closeable register(final IntObserver observer) {
+				return source.register(new IntAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.max());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the largest long.
+	 * @param source the source
+	 * @return the observable of the maximum, empty if the source is empty
+	 */
+	public static LongObservable maxLong(final LongObservable source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new LongAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.max());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the largest double.
+	 * @param source the source
+	 * @return the observable of the maximum, empty if the source is empty
+	 */
+	public static DoubleObservable maxDouble(final DoubleObservable source) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new DoubleAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.max());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the average of the ints.
+	 * @param source the source
+	 * @return the observable of the average, empty if the source is empty
+	 */
+	public static DoubleObservable averageInt(final IntObservable source) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new IntAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.average());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the average of the longs.
+	 * @param source the source
+	 * @return the observable of the average, empty if the source is empty
+	 */
+	public static DoubleObservable averageLong(final LongObservable source) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new LongAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.average());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the average of the doubles.
+	 * @param source the source
+	 * @return the observable of the average, empty if the source is empty
+	 */
+	public static DoubleObservable averageDouble(final DoubleObservable source) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new DoubleAggregator() {
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats.average());
+						}
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Counts the ints.
+	 * @param source the source
+	 * @return the observable of the count
+	 */
+	public static LongObservable countInt(final IntObservable source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new IntObserver() {
+					/** The running count. */
+					long count;
+					@Override
+					public void next(int value) {
+						count++;
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(count);
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Counts the longs.
+	 * @param source the source
+	 * @return the observable of the count
+	 */
+	public static LongObservable countLong(final LongObservable source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new LongObserver() {
+					/** The running count. */
+					long count;
+					@Override
+					public void next(long value) {
+						count++;
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(count);
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Counts the doubles.
+	 * @param source the source
+	 * @return the observable of the count
+	 */
+	public static LongObservable countDouble(final DoubleObservable source) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				return source.register(new DoubleObserver() {
+					/** The running count. */
+					long count;
+					@Override
+					public void next(double value) {
+						count++;
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.next(count);
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Collects the longs into windows of the given size, emitting each window
+	 * as a pooled {@link LongChunk} (and the last, partial window on finish).
+	 * <p>The chunk is recycled once {@code next()} returns, so buffering
+	 * allocates nothing per window unless the consumer retains the chunk.</p>
+	 * @param source the source
+	 * @param count the window size
+	 * @return the builder of the chunks
+	 */
+	public static ObservableBuilder<LongChunk> bufferLongs(final LongObservable source, final int count) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("count <= 0");
+		}
+		return ObservableBuilder.from(new Observable<LongChunk>() {
+			@Override
+			public Closeable register(final Observer<? super LongChunk> observer) {
+				return source.register(new LongObserver() {
+					/** The chunk pool. */
+					final LongChunkPool chunks = new LongChunkPool(count, 4);
+					/** The chunk being filled. */
+					LongChunk chunk = chunks.acquire();
+					@Override
+					public void next(long value) {
+						chunk.add(value);
+						if (chunk.size() == count) {
+							try {
+								observer.next(chunk);
+							} finally {
+								chunk = chunks.reuse(chunk);
+							}
+						}
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						chunk.release();
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						LongChunk c = chunk;
+						try {
+							if (!c.isEmpty()) {
+								observer.next(c);
+							}
+						} finally {
+							c.release();
+						}
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Collects the longs of each time window into a pooled {@link LongChunk},
+	 * emitted on the given scheduler when the window closes (and the last
+	 * window on finish).
+	 * <p>The chunk is recycled once {@code next()} returns, see
+	 * {@link #bufferLongs(LongObservable, int)}.</p>
+	 * @param source the source
+	 * @param time the window length
+	 * @param unit the time unit
+	 * @param pool the scheduler closing the windows
+	 * @return the builder of the chunks
+	 */
+	public static ObservableBuilder<LongChunk> bufferLongs(
+			final LongObservable source,
+			final long time, final TimeUnit unit, final Scheduler pool) {
+		return ObservableBuilder.from(new Observable<LongChunk>() {
+			@Override
+			public Closeable register(Observer<? super LongChunk> observer) {
+				return new TimedLongBuffer(observer, 16).registerWith(source, time, unit, pool);
+			}
+		});
+	}
+	// -------------------------------------------------------------------------
+	// Sliding and tumbling windows
+	// -------------------------------------------------------------------------
+	/** Adds the longs to a sliding window and emits its aggregate after each one. */
+	abstract static class SlidingAggregator implements LongObserver {
+		/** The window. */
+		final SlidingLongWindow window;
+		/** The clock of a time window, null for a count window. */
+		final Clock clock;
+		/**
+		 * Constructor.
+		 * @param window the window
+		 * @param clock the clock of a time window, null for a count window
+		 */
+		SlidingAggregator(SlidingLongWindow window, Clock clock) {
+			this.window = window;
+			this.clock = clock;
+		}
+		@Override
+		public void next(long value) {
+			window.add(clock != null ? clock.nanoTime() : 0L, value);
+			emit();
+		}
+		/** Emits the aggregate of the window. */
+		abstract void emit();
+	}
+	/** The aggregates of {@link #sliding}. */
+	enum SlidingKind {
+		/** The smallest value. */
+		MIN,
+		/** The largest value. */
+		MAX,
+		/** The sum of the values. */
+		SUM,
+		/** The number of values. */
+		COUNT
+	}
+	/**
+	 * The sliding window aggregates emitting a long.
+	 * @param source the source
+	 * @param kind the aggregate
+	 * @param limit the window size, in values for a count window, in
+	 * nanoseconds for a time window
+	 * @param clock the clock of a time window, null for a count window
+	 * @return the observable of the aggregates
+	 */
+	static LongObservable sliding(final LongObservable source, final SlidingKind kind,
+			final long limit, final Clock clock) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(final LongObserver observer) {
+				SlidingLongWindow w = new SlidingLongWindow(limit, clock != null,
+						kind == SlidingKind.MIN, kind == SlidingKind.MAX,
+						kind == SlidingKind.SUM || kind == SlidingKind.COUNT);
+				return source.register(new SlidingAggregator(w, clock) {
+					@Override
+					void emit() {
+						switch (kind) {
+						case MIN:
+							observer.next(window.min());
+							break;
+						case MAX:
+							observer.next(window.max());
+							break;
+						case SUM:
+							observer.next(window.sum());
+							break;
+						default:
+							observer.next(window.count());
+						}
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Validates the size of a count window.
+	 * @param count the window size
+	 */
+	static void checkCount(int count) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("count <= 0");
+		}
+	}
+	/**
+	 * Validates the span of a time window.
+	 * @param time the time span
+	 * @param unit the time unit
+	 * @return the time span in nanoseconds
+	 */
+	static long spanNanos(long time, TimeUnit unit) {
+		if (time <= 0) {
+			throw new IllegalArgumentException("time <= 0");
+		}
+		return unit.toNanos(time);
+	}
+	/**
+	 * Validates the span and the clock of a sliding time window.
+	 * @param time the time span
+	 * @param unit the time unit
+	 * @param clock the clock
+	 * @return the time span in nanoseconds
+	 */
+	static long timeWindow(long time, TimeUnit unit, Clock clock) {
+		if (clock == null) {
+			throw new NullPointerException("clock");
+		}
+		return spanNanos(time, unit);
+	}
+	/**
+	 * Emits the smallest of the last {@code count} longs after each long.
+	 * <p>The sliding {@code min} and {@code max} keep a monotonic deque of the
+	 * values which can still become the extreme of the window, O(1) amortized
+	 * per value, instead of re-scanning a buffered window.</p>
+	 * @param source the source
+	 * @param count the window size
+	 * @return the observable of the minimums
+	 */
+	public static LongObservable slidingMin(LongObservable source, int count) {
+		checkCount(count);
+		return sliding(source, SlidingKind.MIN, count, null);
+	}
+	/**
+	 * Emits the smallest long received within the time span after each long.
+	 * @param source the source
+	 * @param time the time span of the window
+	 * @param unit the time unit
+	 * @param clock the clock timing the values, e.g. {@link Clock#SYSTEM}
+	 * @return the observable of the minimums
+	 * @see #slidingMin(LongObservable, int)
+	 */
+	public static LongObservable slidingMin(LongObservable source, long time, TimeUnit unit, Clock clock) {
+		return sliding(source, SlidingKind.MIN, timeWindow(time, unit, clock), clock);
+	}
+	/**
+	 * Emits the largest of the last {@code count} longs after each long.
+	 * @param source the source
+	 * @param count the window size
+	 * @return the observable of the maximums
+	 * @see #slidingMin(LongObservable, int)
+	 */
+	public static LongObservable slidingMax(LongObservable source, int count) {
+		checkCount(count);
+		return sliding(source, SlidingKind.MAX, count, null);
+	}
+	/**
+	 * Emits the largest long received within the time span after each long.
+	 * @param source the source
+	 * @param time the time span of the window
+	 * @param unit the time unit
+	 * @param clock the clock timing the values, e.g. {@link Clock#SYSTEM}
+	 * @return the observable of the maximums
+	 * @see #slidingMin(LongObservable, int)
+	 */
+	public static LongObservable slidingMax(LongObservable source, long time, TimeUnit unit, Clock clock) {
+		return sliding(source, SlidingKind.MAX, timeWindow(time, unit, clock), clock);
+	}
+	/**
+	 * Emits the sum of the last {@code count} longs after each long.
+	 * <p>The sliding {@code sum}, {@code count} and {@code average} keep the
+	 * values of the window and running totals, a value is subtracted when it
+	 * leaves the window.</p>
+	 * @param source the source
+	 * @param count the window size
+	 * @return the observable of the sums
+	 */
+	public static LongObservable slidingSum(LongObservable source, int count) {
+		checkCount(count);
+		return sliding(source, SlidingKind.SUM, count, null);
+	}
+	/**
+	 * Emits the sum of the longs received within the time span after each long.
+	 * @param source the source
+	 * @param time the time span of the window
+	 * @param unit the time unit
+	 * @param clock the clock timing the values, e.g. {@link Clock#SYSTEM}
+	 * @return the observable of the sums
+	 * @see #slidingSum(LongObservable, int)
+	 */
+	public static LongObservable slidingSum(LongObservable source, long time, TimeUnit unit, Clock clock) {
+		return sliding(source, SlidingKind.SUM, timeWindow(time, unit, clock), clock);
+	}
+	/**
+	 * Emits the number of longs received within the time span after each long.
+	 * @param source the source
+	 * @param time the time span of the window
+	 * @param unit the time unit
+	 * @param clock the clock timing the values, e.g. {@link Clock#SYSTEM}
+	 * @return the observable of the counts
+	 * @see #slidingSum(LongObservable, int)
+	 */
+	public static LongObservable slidingCount(LongObservable source, long time, TimeUnit unit, Clock clock) {
+		return sliding(source, SlidingKind.COUNT, timeWindow(time, unit, clock), clock);
+	}
+	/**
+	 * Emits the average of the last {@code count} longs after each long.
+	 * @param source the source
+	 * @param count the window size
+	 * @return the observable of the averages
+	 * @see #slidingSum(LongObservable, int)
+	 */
+	public static DoubleObservable slidingAverage(LongObservable source, int count) {
+		checkCount(count);
+		return slidingAverage(source, count, null);
+	}
+	/**
+	 * Emits the average of the longs received within the time span after each long.
+	 * @param source the source
+	 * @param time the time span of the window
+	 * @param unit the time unit
+	 * @param clock the clock timing the values, e.g. {@link Clock#SYSTEM}
+	 * @return the observable of the averages
+	 * @see #slidingSum(LongObservable, int)
+	 */
+	public static DoubleObservable slidingAverage(LongObservable source, long time, TimeUnit unit, Clock clock) {
+		return slidingAverage(source, timeWindow(time, unit, clock), clock);
+	}
+	/**
+	 * The sliding window average.
+	 * @param source the source
+	 * @param limit the window size, in values for a count window, in
+	 * nanoseconds for a time window
+	 * @param clock the clock of a time window, null for a count window
+	 * @return the observable of the averages
+	 */
+	static DoubleObservable slidingAverage(final LongObservable source,
+			final long limit, final Clock clock) {
+		return new DoubleObservable() {
+			@Override
+			public Closeable register(final DoubleObserver observer) {
+				return source.register(new SlidingAggregator(
+						new SlidingLongWindow(limit, clock != null, false, false, true), clock) {
+					@Override
+					void emit() {
+						observer.next((double)window.sum() / window.count());
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		};
+	}
+	/**
+	 * Computes the statistics of consecutive windows of {@code count} longs
+	 * (and of the last, partial window on finish).
+	 * <p>The statistics are accumulated as the values arrive, nothing is
+	 * buffered; each window gets a new {@link LongStatistics}.</p>
+	 * @param source the source
+	 * @param count the window size
+	 * @return the builder of the statistics
+	 */
+	public static ObservableBuilder<LongStatistics> tumblingStatistics(final LongObservable source, final int count) {
+		checkCount(count);
+		return ObservableBuilder.from(new Observable<LongStatistics>() {
+			@Override
+			public Closeable register(final Observer<? super LongStatistics> observer) {
+				return source.register(new LongObserver() {
+					/** The statistics of the current window. */
+					LongStatistics stats = new LongStatistics();
+					@Override
+					public void next(long value) {
+						stats.accept(value);
+						if (stats.count() == count) {
+							LongStatistics s = stats;
+							stats = new LongStatistics();
+							observer.next(s);
+						}
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						if (stats.count() > 0) {
+							observer.next(stats);
+						}
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Computes the statistics of consecutive time windows, emitted on the
+	 * given scheduler when the window closes, even if it is empty (and the
+	 * last window on finish).
+	 * @param source the source
+	 * @param time the window length
+	 * @param unit the time unit
+	 * @param pool the scheduler closing the windows
+	 * @return the builder of the statistics
+	 * @see #tumblingStatistics(LongObservable, int)
+	 */
+	public static ObservableBuilder<LongStatistics> tumblingStatistics(
+			final LongObservable source,
+			final long time, final TimeUnit unit, final Scheduler pool) {
+		spanNanos(time, unit);
+		return ObservableBuilder.from(new Observable<LongStatistics>() {
+			@Override
+			public Closeable register(Observer<? super LongStatistics> observer) {
+				return new TimedLongStatistics(observer).registerWith(source, time, unit, pool);
+			}
+		});
+	}
+}
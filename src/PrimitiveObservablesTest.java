@@ -0,0 +1,481 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class PrimitiveObservablesTest {
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+
+	/**
+	 * sample_16_min_max_ave を boxing なしで行う
+	 */
+	@Test
+	public void testMinMaxAverage() {
+		IntObservable s = PrimitiveObservables.range(1, 3, current);
+		final List<Object> actual = new ArrayList<Object>();
+
+		// 最大値
+		PrimitiveObservables.maxInt(s).register(new IntObserver() {
+			@Override
+			public void next(int value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("max finish!"); }
+		});
+		// 最小値
+		PrimitiveObservables.minInt(s).register(new IntObserver() {
+			@Override
+			public void next(int value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("min finish!"); }
+		});
+		// 平均
+		PrimitiveObservables.averageInt(s).register(new DoubleObserver() {
+			@Override
+			public void next(double value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("average finish!"); }
+		});
+
+		assertEquals(3, actual.get(0));
+		assertEquals("max finish!", actual.get(1));
+		assertEquals(1, actual.get(2));
+		assertEquals("min finish!", actual.get(3));
+		assertEquals(2.0, actual.get(4));
+		assertEquals("average finish!", actual.get(5));
+	}
+
+	/**
+	 * 空のシーケンスでは min/max/average は finish のみ、sum/count は 0
+	 */
+	@Test
+	public void testEmpty() {
+		final long[] values = { -1, -1 };
+		final int[] calls = new int[1];
+		LongObservable empty = PrimitiveObservables.from(current, new long[0]);
+
+		PrimitiveObservables.maxLong(empty).register(new LongObserver() {
+			@Override
+			public void next(long value) { fail("next:" + value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { calls[0]++; }
+		});
+		PrimitiveObservables.sumLong(empty).register(new LongObserver() {
+			@Override
+			public void next(long value) { values[0] = value; }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { calls[0]++; }
+		});
+		PrimitiveObservables.countLong(empty).register(new LongObserver() {
+			@Override
+			public void next(long value) { values[1] = value; }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { calls[0]++; }
+		});
+
+		assertEquals(3, calls[0]);
+		assertEquals(0L, values[0]);
+		assertEquals(0L, values[1]);
+	}
+
+	/**
+	 * int の合計は long で計算されるのでオーバーフローしない
+	 */
+	@Test
+	public void testSumDoesNotOverflow() {
+		final long[] sum = new long[1];
+		PrimitiveObservables.sumInt(PrimitiveObservables.from(current, Integer.MAX_VALUE, Integer.MAX_VALUE))
+		.register(new LongObserver() {
+			@Override
+			public void next(long value) { sum[0] = value; }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { }
+		});
+		assertEquals(2L * Integer.MAX_VALUE, sum[0]);
+	}
+
+	/**
+	 * ObservableBuilder との相互変換と、一回の走査での統計
+	 */
+	@Test
+	public void testStatisticsFromBuilder() throws InterruptedException {
+		final List<DoubleStatistics> actual = new ArrayList<DoubleStatistics>();
+
+		Reactive.run(
+			PrimitiveObservables.statisticsDouble(
+				PrimitiveObservables.toDouble(ObservableBuilder.from(1.5, 2.5, -4.0)))
+		, new Observer<DoubleStatistics>() {
+			@Override
+			public void next(DoubleStatistics value) {
+				System.out.println(value);
+				actual.add(value);
+			}
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { }
+		});
+
+		assertEquals(1, actual.size());
+		DoubleStatistics stats = actual.get(0);
+		assertEquals(3L, stats.count());
+		assertEquals(0.0, stats.sum(), 1e-9);
+		assertEquals(-4.0, stats.min(), 1e-9);
+		assertEquals(2.5, stats.max(), 1e-9);
+		assertEquals(0.0, stats.average(), 1e-9);
+
+		final List<Integer> boxed = new ArrayList<Integer>();
+		Reactive.run(PrimitiveObservables.boxedInt(PrimitiveObservables.range(5, 3, current))
+		, new Observer<Integer>() {
+			@Override
+			public void next(Integer value) { boxed.add(value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { }
+		});
+		assertEquals(3, boxed.size());
+		assertEquals(Integer.valueOf(5), boxed.get(0));
+		assertEquals(Integer.valueOf(7), boxed.get(2));
+	}
+
+	/**
+	 * sample_25a_buffer_count を再利用されるチャンクで行う
+	 */
+	@Test
+	public void testBufferLongs() throws InterruptedException {
+		final List<String> windows = new ArrayList<String>();
+		final List<LongChunk> chunks = new ArrayList<LongChunk>();
+		Reactive.run(PrimitiveObservables.bufferLongs(PrimitiveObservables.range(1L, 10L, current), 3)
+		, new Observer<LongChunk>() {
+			@Override
+			public void next(LongChunk c) {
+				// next() の中でだけ有効
+				windows.add(Arrays.toString(c.toArray()));
+				chunks.add(c);
+			}
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { windows.add("finish!"); }
+		});
+
+		assertEquals(Arrays.asList("[1, 2, 3]", "[4, 5, 6]", "[7, 8, 9]", "[10]", "finish!"), windows);
+		// 同じチャンクが使いまわされる
+		assertSame(chunks.get(0), chunks.get(3));
+	}
+
+	/**
+	 * retain() したチャンクは release() するまで上書きされない
+	 */
+	@Test
+	public void testBufferLongsRetain() throws InterruptedException {
+		final List<LongChunk> retained = new ArrayList<LongChunk>();
+		final List<Long> last = new ArrayList<Long>();
+		Reactive.run(PrimitiveObservables.bufferLongs(PrimitiveObservables.range(1L, 9L, current), 3)
+		, new Observer<LongChunk>() {
+			@Override
+			public void next(LongChunk c) {
+				if (retained.isEmpty()) {
+					retained.add(c.retain());
+				}
+				last.add(c.last());
+			}
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { }
+		});
+
+		assertEquals(Arrays.asList(3L, 6L, 9L), last);
+		LongChunk c = retained.get(0);
+		assertEquals(3, c.size());
+		assertEquals(1L, c.get(0));
+		assertEquals(3L, c.last());
+		c.release();
+		try {
+			c.release();
+			fail("released twice");
+		} catch (IllegalStateException ex) {
+			// 二重の release はエラー
+		}
+	}
+
+	/**
+	 * sample_25b_buffer_time を再利用されるチャンクで行う
+	 */
+	@Test
+	public void testBufferLongsTime() throws InterruptedException {
+		final List<String> windows = new ArrayList<String>();
+		Reactive.run(
+			PrimitiveObservables.bufferLongs(
+				PrimitiveObservables.toLong(ObservableBuilder.tick(0, 5, 100, TimeUnit.MILLISECONDS)),
+				250, TimeUnit.MILLISECONDS, new DefaultScheduler())
+		, new Observer<LongChunk>() {
+			@Override
+			public void next(LongChunk c) { windows.add(Arrays.toString(c.toArray())); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { windows.add("finish!"); }
+		});
+
+		System.out.println(windows);
+		// 100ms 毎の 5 つの値が 250ms 毎の窓に分かれる
+		assertEquals("finish!", windows.get(windows.size() - 1));
+		StringBuilder all = new StringBuilder();
+		for (String w : windows.subList(0, windows.size() - 1)) {
+			all.append(w.substring(1, w.length() - 1)).append(w.length() > 2 ? ", " : "");
+		}
+		assertEquals("0, 1, 2, 3, 4, ", all.toString());
+		assertTrue(windows.size() >= 3);
+	}
+
+	/**
+	 * sample_04b_generate を boxing なしで、10kHz (100µs 間隔) で行う
+	 */
+	@Test
+	public void testGenerateTimedJitter() throws InterruptedException {
+		final int n = 5000;
+		final long period = 100000L; // ns
+		final long[] values = new long[n];
+		final long[] times = new long[n];
+		final int[] count = new int[1];
+		final CountDownLatch done = new CountDownLatch(1);
+		PrimitiveObservables.generateTimed(0, new LongGenerator() {
+			@Override
+			public boolean hasNext(long state) { return state < n; }
+
+			@Override
+			public long value(long state) { return state * state; }
+
+			@Override
+			public long delay(long state) { return period; }
+
+			@Override
+			public long next(long state) { return state + 1; }
+		}, TimeUnit.NANOSECONDS, new DefaultScheduler()).register(new LongObserver() {
+			@Override
+			public void next(long value) {
+				times[count[0]] = System.nanoTime();
+				values[count[0]++] = value;
+			}
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { done.countDown(); }
+		});
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+
+		assertEquals(n, count[0]);
+		assertEquals(0L, values[0]);
+		assertEquals((n - 1L) * (n - 1L), values[n - 1]);
+		// 予定時刻 (i * 100µs) とのずれ。スレッドの起動などで最初の値は遅れることがあるので、中央値からのずれを見る
+		long[] offsets = new long[n];
+		for (int i = 0; i < n; i++) {
+			offsets[i] = times[i] - i * period;
+		}
+		long[] sorted = offsets.clone();
+		Arrays.sort(sorted);
+		long median = sorted[n / 2];
+		long[] jitter = new long[n];
+		for (int i = 0; i < n; i++) {
+			jitter[i] = Math.abs(offsets[i] - median);
+		}
+		long last = jitter[n - 1];
+		Arrays.sort(jitter);
+		System.out.printf("jitter: p50 %d us, p99 %d us, max %d us, last %d us%n",
+				jitter[n / 2] / 1000, jitter[n * 99 / 100] / 1000, jitter[n - 1] / 1000, last / 1000);
+		// 開始時刻から計算するので、遅れは積み重ならない
+		assertTrue("drift " + last, last < TimeUnit.MILLISECONDS.toNanos(5));
+		assertTrue("p50 " + jitter[n / 2], jitter[n / 2] < TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	/**
+	 * long の値を溜める Observer
+	 * @param actual 溜める先
+	 */
+	static LongObserver collectLongs(final List<Object> actual) {
+		return new LongObserver() {
+			@Override
+			public void next(long value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		};
+	}
+
+	/**
+	 * 直近 3 件の最大、最小、合計、平均が値ごとに出る。乱数でも全件走査と一致する
+	 */
+	@Test
+	public void testSlidingCount() {
+		LongObservable s = PrimitiveObservables.from(current, 5L, 1L, 4L, 2L, 8L, 3L);
+		List<Object> max = new ArrayList<Object>();
+		List<Object> min = new ArrayList<Object>();
+		List<Object> sum = new ArrayList<Object>();
+		final List<Object> average = new ArrayList<Object>();
+		PrimitiveObservables.slidingMax(s, 3).register(collectLongs(max));
+		PrimitiveObservables.slidingMin(s, 3).register(collectLongs(min));
+		PrimitiveObservables.slidingSum(s, 3).register(collectLongs(sum));
+		PrimitiveObservables.slidingAverage(s, 3).register(new DoubleObserver() {
+			@Override
+			public void next(double value) { average.add(value); }
+
+			@Override
+			public void error(Throwable ex) { fail(ex.getMessage()); }
+
+			@Override
+			public void finish() { average.add("finish!"); }
+		});
+
+		assertEquals(Arrays.<Object>asList(5L, 5L, 5L, 4L, 8L, 8L, "finish!"), max);
+		assertEquals(Arrays.<Object>asList(5L, 1L, 1L, 1L, 2L, 2L, "finish!"), min);
+		assertEquals(Arrays.<Object>asList(5L, 6L, 10L, 7L, 14L, 13L, "finish!"), sum);
+		assertEquals(Arrays.<Object>asList(5.0, 3.0, 10 / 3.0, 7 / 3.0, 14 / 3.0, 13 / 3.0, "finish!"), average);
+
+		// 両端のはみ出しや同じ値の連続を含む乱数列で、窓を毎回走査した結果と比べる
+		Random rnd = new Random(1);
+		long[] values = new long[10000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = rnd.nextInt(4) == 0 ? rnd.nextLong() : rnd.nextInt(10);
+		}
+		int n = 37;
+		List<Object> actualMax = new ArrayList<Object>();
+		List<Object> actualMin = new ArrayList<Object>();
+		PrimitiveObservables.slidingMax(PrimitiveObservables.from(current, values), n).register(collectLongs(actualMax));
+		PrimitiveObservables.slidingMin(PrimitiveObservables.from(current, values), n).register(collectLongs(actualMin));
+		for (int i = 0; i < values.length; i++) {
+			long mx = Long.MIN_VALUE;
+			long mn = Long.MAX_VALUE;
+			for (int j = Math.max(0, i - n + 1); j <= i; j++) {
+				mx = Math.max(mx, values[j]);
+				mn = Math.min(mn, values[j]);
+			}
+			assertEquals(mx, actualMax.get(i));
+			assertEquals(mn, actualMin.get(i));
+		}
+	}
+
+	/**
+	 * 直近 2 秒の最大、件数、合計が仮想時間で値ごとに出る
+	 */
+	@Test
+	public void testSlidingTime() {
+		TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<Long> subject = new MulticastObserver<Long>();
+		LongObservable s = PrimitiveObservables.toLong(subject);
+		List<Object> max = new ArrayList<Object>();
+		List<Object> count = new ArrayList<Object>();
+		List<Object> sum = new ArrayList<Object>();
+		PrimitiveObservables.slidingMax(s, 2, TimeUnit.SECONDS, scheduler).register(collectLongs(max));
+		PrimitiveObservables.slidingCount(s, 2, TimeUnit.SECONDS, scheduler).register(collectLongs(count));
+		PrimitiveObservables.slidingSum(s, 2, TimeUnit.SECONDS, scheduler).register(collectLongs(sum));
+
+		// 0 秒: 9, 1 秒: 3, 5, 2 秒: 4 (9 は 2 秒前なので窓の外), 5 秒: 1
+		subject.next(9L);
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		subject.next(3L);
+		subject.next(5L);
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		subject.next(4L);
+		scheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+		subject.next(1L);
+		subject.finish();
+
+		assertEquals(Arrays.<Object>asList(9L, 9L, 9L, 5L, 1L, "finish!"), max);
+		assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 3L, 1L, "finish!"), count);
+		assertEquals(Arrays.<Object>asList(9L, 12L, 17L, 12L, 1L, "finish!"), sum);
+	}
+
+	/**
+	 * 件数と時間で区切った窓ごとの統計が出る。空の時間窓も出る
+	 */
+	@Test
+	public void testTumblingStatistics() throws InterruptedException {
+		final List<String> actual = new ArrayList<String>();
+		Observer<LongStatistics> collect = new Observer<LongStatistics>() {
+			@Override
+			public void next(LongStatistics value) {
+				actual.add(value.count() + ":" + value.min() + "-" + value.max() + "/" + value.sum());
+			}
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		};
+		Reactive.run(PrimitiveObservables.tumblingStatistics(PrimitiveObservables.from(current, 5L, 1L, 4L, 2L, 8L), 2), collect);
+		assertEquals(Arrays.asList("2:1-5/6", "2:2-4/6", "1:8-8/8", "finish!"), actual);
+
+		actual.clear();
+		TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<Long> subject = new MulticastObserver<Long>();
+		PrimitiveObservables.tumblingStatistics(PrimitiveObservables.toLong(subject), 1, TimeUnit.SECONDS, scheduler)
+		.register(collect);
+		subject.next(3L);
+		subject.next(7L);
+		scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+		subject.next(1L);
+		subject.finish();
+		assertEquals(Arrays.asList("2:3-7/10", "0:" + Long.MAX_VALUE + "-" + Long.MIN_VALUE + "/0", "1:1-1/1", "finish!"), actual);
+		assertEquals(0, scheduler.pendingCount());
+	}
+}
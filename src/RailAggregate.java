@@ -0,0 +1,77 @@
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The registration of the reducers of {@link ParallelObservable}: each rail
+ * folds its values into its own partial without any synchronization, and
+ * the rail finishing last combines the partials in rail order and emits the
+ * result.
+ * @param <T> the element type
+ * @param <A> the partial type
+ */
+final class RailAggregate<T, A> extends ParallelRails<T> {
+	/** The downstream. */
+	final Observer<? super A> observer;
+	/** The reduction. */
+	final RailAggregator<? super T, A> aggregator;
+	/** The partials, each written by its rail only. */
+	final Object[] partials;
+	/** The number of rails not done yet, publishes the partials to the last one. */
+	final AtomicInteger remaining;
+	/**
+	 * Constructor.
+	 * @param parent the rail definition
+	 * @param observer the downstream
+	 * @param aggregator the reduction
+	 */
+	RailAggregate(ParallelObservable<T> parent, Observer<? super A> observer,
+			RailAggregator<? super T, A> aggregator) {
+		super(parent, false);
+		this.observer = observer;
+		this.aggregator = aggregator;
+		this.partials = new Object[parent.rails];
+		for (int i = 0; i < partials.length; i++) {
+			partials[i] = aggregator.seed();
+		}
+		this.remaining = new AtomicInteger(parent.rails);
+	}
+	@Override
+	@SuppressWarnings("unchecked")
+	void onValue(int rail, long index, Object value) {
+		A acc;
+		try {
+			acc = aggregator.add((A)partials[rail], (T)value);
+		} catch (Throwable ex) {
+			error(ex);
+			return;
+		}
+		partials[rail] = acc;
+	}
+	@Override
+	@SuppressWarnings("unchecked")
+	void onRailDone(int rail) {
+		if (remaining.decrementAndGet() != 0) {
+			return;
+		}
+		A acc = (A)partials[0];
+		try {
+			for (int i = 1; i < partials.length; i++) {
+				acc = aggregator.combine(acc, (A)partials[i]);
+			}
+		} catch (Throwable ex) {
+			error(ex);
+			return;
+		}
+		if (terminate()) {
+			if (!aggregator.isEmpty(acc)) {
+				observer.next(acc);
+			}
+			observer.finish();
+		}
+	}
+	@Override
+	void onError(Throwable ex) {
+		observer.error(ex);
+	}
+}
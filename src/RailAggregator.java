@@ -0,0 +1,28 @@
+/**
+ * The per-rail reduction of the reducers of {@link ParallelObservable}.
+ * @param <T> the element type
+ * @param <A> the partial type
+ */
+interface RailAggregator<T, A> {
+	/** @return the initial partial of a rail */
+	A seed();
+	/**
+	 * Adds a value to the partial of its rail.
+	 * @param acc the partial
+	 * @param value the value
+	 * @return the new partial
+	 */
+	A add(A acc, T value);
+	/**
+	 * Combines the partials of two rails.
+	 * @param left the partial of the lower rail
+	 * @param right the partial of the higher rail
+	 * @return the combined partial
+	 */
+	A combine(A left, A right);
+	/**
+	 * @param acc the combined partial
+	 * @return true if no value was added, nothing is emitted then
+	 */
+	boolean isEmpty(A acc);
+}
@@ -0,0 +1,187 @@
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The registration of {@link ParallelObservable#sequential()} and
+ * {@link ParallelObservable#ordered()}: merges the results of the rails into
+ * one serialized stream.
+ * <p>Each rail appends its results to its own unbounded queue, so a rail
+ * never waits for the downstream or for another rail, and whichever thread
+ * finds the merger idle drains the queues. In ordered mode the queues hold
+ * the source index of every value, including a marker for the values
+ * dropped by a {@code where}, and the merger relays the value with the next
+ * expected index from the head of whichever rail it is on. A slow rail
+ * holds back the values of the other rails, which are buffered
+ * meanwhile.</p>
+ * @param <T> the element type
+ */
+final class RailJoin<T> extends ParallelRails<T> implements Runnable {
+	/** The marker of a value dropped by a {@code where}, ordered mode only. */
+	static final Object FILTERED = new Object();
+	/** The downstream. */
+	final Observer<? super T> observer;
+	/** Relay in source order? */
+	final boolean ordered;
+	/** The results of the rails, nulls wrapped, indexed in ordered mode. */
+	final ConcurrentLinkedQueue<Object>[] queues;
+	/** The number of rails not done yet. */
+	final AtomicInteger remaining;
+	/** The running drains plus missed signals. */
+	final AtomicInteger wip = new AtomicInteger();
+	/** The heads taken from the queues, ordered mode, drain only. */
+	final Indexed[] heads;
+	/** The next source index to relay, ordered mode, drain only. */
+	long expected;
+	/** The rail failure. */
+	volatile Throwable error;
+	/** The downstream closed. */
+	volatile boolean cancelled;
+	/**
+	 * Constructor.
+	 * @param parent the rail definition
+	 * @param observer the downstream
+	 * @param ordered relay in source order?
+	 */
+	RailJoin(ParallelObservable<T> parent, Observer<? super T> observer, boolean ordered) {
+		super(parent, ordered);
+		this.observer = observer;
+		this.ordered = ordered;
+		// every element is created below as a ConcurrentLinkedQueue<Object>
+		@SuppressWarnings("unchecked")
+		ConcurrentLinkedQueue<Object>[] q = (ConcurrentLinkedQueue<Object>[])new ConcurrentLinkedQueue<?>[parent.rails];
+		this.queues = q;
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new ConcurrentLinkedQueue<Object>();
+		}
+		this.remaining = new AtomicInteger(parent.rails);
+		this.heads = ordered ? new Indexed[parent.rails] : null;
+	}
+	@Override
+	void onValue(int rail, long index, Object value) {
+		queues[rail].offer(ordered ? new Indexed(index, value) : BufferedFlow.wrap(value));
+		run();
+	}
+	@Override
+	void onFiltered(int rail, long index) {
+		queues[rail].offer(new Indexed(index, FILTERED));
+		run();
+	}
+	@Override
+	void onRailDone(int rail) {
+		remaining.decrementAndGet();
+		run();
+	}
+	@Override
+	void onError(Throwable ex) {
+		error = ex;
+		run();
+	}
+	@Override
+	public void close() {
+		cancelled = true;
+		super.close();
+	}
+	@Override
+	public void run() {
+		if (wip.getAndIncrement() == 0) {
+			run0(1);
+		}
+	}
+	/**
+	 * Drains the queues.
+	 * @param missed the signals accounted for by the caller
+	 */
+	void run0(int missed) {
+		for (;;) {
+			if (ordered ? drainOrdered() : drainUnordered()) {
+				return;
+			}
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				return;
+			}
+		}
+	}
+	/**
+	 * Terminates the downstream if the rails failed or finished.
+	 * @param done all rails were done before the queues were found empty
+	 * @return true if terminated, the drain stops
+	 */
+	boolean checkTerminated(boolean done) {
+		Throwable ex = error;
+		if (ex != null) {
+			observer.error(ex);
+			return true;
+		}
+		if (cancelled) {
+			return true;
+		}
+		if (done && terminate()) {
+			observer.finish();
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * Relays the queued values in completion order.
+	 * @return true if the downstream terminated
+	 */
+	boolean drainUnordered() {
+		for (;;) {
+			boolean done = remaining.get() == 0;
+			boolean empty = true;
+			for (ConcurrentLinkedQueue<Object> q : queues) {
+				Object v = q.poll();
+				if (v != null) {
+					if (checkTerminated(false)) {
+						return true;
+					}
+					empty = false;
+					observer.next(BufferedFlow.<T>unwrap(v));
+				}
+			}
+			if (empty) {
+				return checkTerminated(done);
+			}
+		}
+	}
+	/**
+	 * Relays the queued values in source order.
+	 * @return true if the downstream terminated
+	 */
+	boolean drainOrdered() {
+		for (;;) {
+			boolean done = remaining.get() == 0;
+			int found = -1;
+			boolean empty = true;
+			for (int r = 0; r < heads.length; r++) {
+				Indexed h = heads[r];
+				if (h == null) {
+					h = (Indexed)queues[r].poll();
+					heads[r] = h;
+				}
+				if (h != null) {
+					empty = false;
+					if (h.index == expected) {
+						found = r;
+						break;
+					}
+				}
+			}
+			if (found < 0) {
+				return checkTerminated(done && empty);
+			}
+			if (checkTerminated(false)) {
+				return true;
+			}
+			Object v = heads[found].value;
+			heads[found] = null;
+			expected++;
+			if (v != FILTERED) {
+				observer.next(BufferedFlow.<T>unwrap(v));
+			}
+		}
+	}
+}
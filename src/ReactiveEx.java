@@ -0,0 +1,874 @@
+import hu.akarnokd.reactive4java.base.CloseableIterable;
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Func0;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.ConnectableObservable;
+import hu.akarnokd.reactive4java.reactive.DefaultConnectableObservable;
+import hu.akarnokd.reactive4java.reactive.GroupedObservable;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Additional operators for {@link ObservableBuilder}.
+ * <p>{@code ObservableBuilder} is final, so the operators are static methods
+ * taking the source and returning a new builder, in the same way as
+ * {@code Reactive} backs the builder methods.</p>
+ */
+public final class ReactiveEx {
+	/** Utility class. */
+	private ReactiveEx() {
+		// utility class
+	}
+	/**
+	 * Transforms the elements of the source by a selector which receives
+	 * the zero based index of the element as a primitive long.
+	 * <p>The elements are streamed: nothing is buffered and no inner
+	 * observable is created per element. The index is kept per registration.</p>
+	 * @param <T> the source element type
+	 * @param <U> the result element type
+	 * @param source the source observable
+	 * @param selector the selector taking the index and the current T
+	 * @return the transformed observable
+	 */
+	public static <T, U> ObservableBuilder<U> selectIndexed(
+			final Observable<? extends T> source,
+			final IndexedFunc1<? super T, ? extends U> selector) {
+		return ObservableBuilder.from(new Observable<U>() {
+			@Override
+			public Closeable register(final Observer<? super U> observer) {
+				return source.register(new Observer<T>() {
+					/** The running index. */
+					long index;
+					@Override
+					public void next(T value) {
+						observer.next(selector.invoke(index++, value));
+					}
+
+					@Override
+					public void error(Throwable ex) {
+						observer.error(ex);
+					}
+
+					@Override
+					public void finish() {
+						observer.finish();
+					}
+				});
+			}
+		});
+	}
+	/**
+	 * Transforms the source values into observables and relays their values
+	 * in source order, while up to {@code maxConcurrency} inner observables are
+	 * registered at the same time on the given pool.
+	 * <p>The values of an inner observable are buffered until all earlier inner
+	 * observables finish, so slow (e.g., blocking) inner sources overlap but
+	 * the output order is the same as with {@code selectMany}.</p>
+	 * @param <T> the source element type
+	 * @param <U> the result element type
+	 * @param source the source observable
+	 * @param selector the selector of the inner observables
+	 * @param maxConcurrency the maximum number of inner observables registered at once
+	 * @param pool the pool where the inner observables are registered
+	 * @return the observable
+	 */
+	public static <T, U> ObservableBuilder<U> selectManyOrdered(
+			final Observable<? extends T> source,
+			final Func1<? super T, ? extends Observable<? extends U>> selector,
+			final int maxConcurrency,
+			final Scheduler pool) {
+		return selectManyConcurrent(source, selector, maxConcurrency, pool, true);
+	}
+	/**
+	 * Transforms the source values into observables and relays their values
+	 * as they arrive, while up to {@code maxConcurrency} inner observables are
+	 * registered at the same time on the given pool.
+	 * @param <T> the source element type
+	 * @param <U> the result element type
+	 * @param source the source observable
+	 * @param selector the selector of the inner observables
+	 * @param maxConcurrency the maximum number of inner observables registered at once
+	 * @param pool the pool where the inner observables are registered
+	 * @return the observable
+	 */
+	public static <T, U> ObservableBuilder<U> selectManyUnordered(
+			final Observable<? extends T> source,
+			final Func1<? super T, ? extends Observable<? extends U>> selector,
+			final int maxConcurrency,
+			final Scheduler pool) {
+		return selectManyConcurrent(source, selector, maxConcurrency, pool, false);
+	}
+	/**
+	 * The common implementation of the concurrent selectMany variants.
+	 * @param <T> the source element type
+	 * @param <U> the result element type
+	 * @param source the source observable
+	 * @param selector the selector of the inner observables
+	 * @param maxConcurrency the maximum number of inner observables registered at once
+	 * @param pool the pool where the inner observables are registered
+	 * @param ordered emit in source order?
+	 * @return the observable
+	 */
+	static <T, U> ObservableBuilder<U> selectManyConcurrent(
+			final Observable<? extends T> source,
+			final Func1<? super T, ? extends Observable<? extends U>> selector,
+			final int maxConcurrency,
+			final Scheduler pool,
+			final boolean ordered) {
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException("maxConcurrency <= 0");
+		}
+		return ObservableBuilder.from(new Observable<U>() {
+			@Override
+			public Closeable register(Observer<? super U> observer) {
+				return new ConcurrentSelectMany<T, U>(observer, selector, maxConcurrency, pool, ordered)
+				.registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Relays the events of the source on the given pool through a bounded,
+	 * lock-free queue, assuming the source may call {@code next()} from
+	 * several threads at once.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param pool the pool relaying the events
+	 * @return the observable
+	 * @see #observeOn(Observable, Scheduler, int, boolean)
+	 */
+	public static <T> ObservableBuilder<T> observeOn(
+			final Observable<? extends T> source,
+			final Scheduler pool) {
+		return observeOn(source, pool, 1024, true);
+	}
+	/**
+	 * Relays the events of the source on the given pool through a bounded,
+	 * lock-free ring buffer.
+	 * <p>Unlike {@code ObservableBuilder.observeOn}, no task is allocated per
+	 * value: one drain task relays the queued values in batches. When the
+	 * queue is full the source thread waits until the pool catches up.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param pool the pool relaying the events
+	 * @param capacity the queue capacity, rounded up to a power of two
+	 * @param multiProducer false if the source calls {@code next()} from one
+	 * thread at a time, which allows a cheaper single-producer queue
+	 * @return the observable
+	 */
+	public static <T> ObservableBuilder<T> observeOn(
+			final Observable<? extends T> source,
+			final Scheduler pool,
+			final int capacity,
+			final boolean multiProducer) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity <= 0");
+		}
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				return new ObserveOn<T>(observer, pool, capacity, multiProducer).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Shares one registration of the source among many observers: the
+	 * observers register with a {@link MulticastObserver}, which is
+	 * registered with the source by {@code connect()}.
+	 * <p>Observers registering after the source terminated receive only the
+	 * terminal event.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @return the connectable observable
+	 */
+	public static <T> ConnectableObservable<T> publish(final Observable<? extends T> source) {
+		MulticastObserver<T> subject = new MulticastObserver<T>();
+		return new DefaultConnectableObservable<T>(source, subject, subject);
+	}
+	/**
+	 * Connects the source when the first observer registers and closes the
+	 * connection when the last observer closes its registration.
+	 * <p>The connectable source is reconnected as it is: the subject of
+	 * {@link #publish} stays terminated after the source terminated, so an
+	 * observer registering afterwards receives only the terminal event, even
+	 * if the count dropped to zero in between. {@link #share} creates a new
+	 * subject per connection instead.</p>
+	 * @param <T> the element type
+	 * @param source the connectable source
+	 * @return the observable
+	 */
+	public static <T> ObservableBuilder<T> refCount(final ConnectableObservable<? extends T> source) {
+		return ObservableBuilder.from(new Observable<T>() {
+			/** The lock guarding the count and the connection. */
+			final Lock lock = new ReentrantLock();
+			/** The number of registered observers. */
+			int count;
+			/** The connection. */
+			Closeable connection;
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				final Closeable c = source.register(observer);
+				lock.lock();
+				try {
+					if (count++ == 0) {
+						connection = source.connect();
+					}
+				} finally {
+					lock.unlock();
+				}
+				return new Closeable() {
+					/** Closed already? */
+					boolean closed;
+					@Override
+					public void close() throws IOException {
+						c.close();
+						Closeable conn = null;
+						lock.lock();
+						try {
+							if (!closed) {
+								closed = true;
+								if (--count == 0) {
+									conn = connection;
+									connection = null;
+								}
+							}
+						} finally {
+							lock.unlock();
+						}
+						Closeables.close0(conn);
+					}
+				};
+			}
+		});
+	}
+	/**
+	 * Shares the source among the registered observers, like
+	 * {@code refCount(publish(source))} with a new subject per connection.
+	 * <p>For example, one {@code tick()} timer serves any number of observers
+	 * and stops when the last one leaves. An observer registering after the
+	 * last one left, or after the source terminated, starts a new
+	 * registration with the source instead of receiving only the terminal
+	 * event of the previous one.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @return the observable
+	 */
+	public static <T> ObservableBuilder<T> share(final Observable<? extends T> source) {
+		return ObservableBuilder.from(new Observable<T>() {
+			/** The lock guarding the count and the connection. */
+			final Lock lock = new ReentrantLock();
+			/** The subject of the current connection, null if none. */
+			MulticastObserver<T> subject;
+			/** The number of observers registered with the current subject. */
+			int count;
+			/** The registration of the subject with the source. */
+			Closeable connection;
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				final MulticastObserver<T> s;
+				final Closeable c;
+				Closeable old = null;
+				lock.lock();
+				try {
+					boolean connect = subject == null || subject.isTerminated();
+					if (connect) {
+						// the previous connection terminated or was closed
+						old = connection;
+						subject = new MulticastObserver<T>();
+						count = 0;
+					}
+					s = subject;
+					c = s.register(observer);
+					count++;
+					if (connect) {
+						connection = source.register(s);
+					}
+				} finally {
+					lock.unlock();
+				}
+				Closeables.close0(old);
+				return new Closeable() {
+					/** Closed already? */
+					boolean closed;
+					@Override
+					public void close() throws IOException {
+						c.close();
+						Closeable conn = null;
+						lock.lock();
+						try {
+							if (!closed) {
+								closed = true;
+								if (subject == s && --count == 0) {
+									conn = connection;
+									connection = null;
+									subject = null;
+								}
+							}
+						} finally {
+							lock.unlock();
+						}
+						Closeables.close0(conn);
+					}
+				};
+			}
+		});
+	}
+	/**
+	 * Records the values of the source into a history of at most
+	 * {@code maxCount} values, replayed to every observer before the new
+	 * values, see {@link ReplayObserver}.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param maxCount the maximum number of values retained
+	 * @return the connectable observable
+	 */
+	public static <T> ConnectableObservable<T> replay(
+			final Observable<? extends T> source, final int maxCount) {
+		return replay(source, new ReplayObserver<T>(maxCount, Long.MAX_VALUE, Long.MAX_VALUE, null));
+	}
+	/**
+	 * Records the values of the source into a history of at most
+	 * {@code maxCount} values not older than {@code maxAge}, replayed to every
+	 * observer before the new values.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param maxCount the maximum number of values retained
+	 * @param maxAge the maximum age of the retained values
+	 * @param unit the time unit
+	 * @return the connectable observable
+	 */
+	public static <T> ConnectableObservable<T> replay(
+			final Observable<? extends T> source, final int maxCount,
+			final long maxAge, final TimeUnit unit) {
+		return replay(source, new ReplayObserver<T>(maxCount, unit.toNanos(maxAge), Long.MAX_VALUE, null));
+	}
+	/**
+	 * Records the values of the source into a history of at most
+	 * {@code maxCount} values not older than {@code maxAge}, replayed to every
+	 * observer before the new values; the age is measured by the scheduler if
+	 * it is a {@link Clock}, such as {@link TestScheduler}.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param maxCount the maximum number of values retained
+	 * @param maxAge the maximum age of the retained values
+	 * @param unit the time unit
+	 * @param scheduler the scheduler whose clock measures the age
+	 * @return the connectable observable
+	 */
+	public static <T> ConnectableObservable<T> replay(
+			final Observable<? extends T> source, final int maxCount,
+			final long maxAge, final TimeUnit unit, final Scheduler scheduler) {
+		Clock clock = scheduler instanceof Clock ? (Clock)scheduler : Clock.SYSTEM;
+		return replay(source, new ReplayObserver<T>(maxCount, unit.toNanos(maxAge), Long.MAX_VALUE, null, clock));
+	}
+	/**
+	 * Records the values of the source into a history of at most
+	 * {@code maxCount} values whose sizes total at most {@code maxBytes},
+	 * replayed to every observer before the new values.
+	 * <p>The newest value is retained even if it is larger than the limit.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param maxCount the maximum number of values retained
+	 * @param maxBytes the maximum total size of the retained values
+	 * @param sizeOf the size of a value, e.g., its estimated bytes
+	 * @return the connectable observable
+	 */
+	public static <T> ConnectableObservable<T> replay(
+			final Observable<? extends T> source, final int maxCount,
+			final long maxBytes, final Func1<? super T, Integer> sizeOf) {
+		return replay(source, new ReplayObserver<T>(maxCount, Long.MAX_VALUE, maxBytes, sizeOf));
+	}
+	/**
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param history the recording observer
+	 * @return the connectable observable
+	 */
+	static <T> ConnectableObservable<T> replay(
+			final Observable<? extends T> source, final ReplayObserver<T> history) {
+		return new DefaultConnectableObservable<T>(source, history, history);
+	}
+	/**
+	 * Registers with the source once, when the first observer registers,
+	 * and replays the last {@code maxCount} values to every observer, the
+	 * general form of the cached result of {@code Reactive.start()}.
+	 * <p>The source registration is never closed by the observers.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param maxCount the maximum number of values retained
+	 * @return the observable
+	 */
+	public static <T> ObservableBuilder<T> cache(
+			final Observable<? extends T> source, final int maxCount) {
+		final ConnectableObservable<T> replay = replay(source, maxCount);
+		return ObservableBuilder.from(new Observable<T>() {
+			/** Connected already? */
+			final AtomicBoolean connected = new AtomicBoolean();
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				Closeable c = replay.register(observer);
+				if (connected.compareAndSet(false, true)) {
+					replay.connect();
+				}
+				return c;
+			}
+		});
+	}
+	/**
+	 * Relays the source and signals a {@code TimeoutException} when the
+	 * source is silent for the given time, on the default scheduler.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param time the maximum time between the registration or the events
+	 * @param unit the time unit
+	 * @return the observable
+	 * @see #timeout(Observable, long, TimeUnit, Observable, Scheduler)
+	 */
+	public static <T> ObservableBuilder<T> timeout(
+			final Observable<? extends T> source, final long time, final TimeUnit unit) {
+		return timeout(source, time, unit, Reactive.<T>throwException(new TimeoutException()), Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Relays the source and switches to the other observable when the source
+	 * is silent for the given time, on the default scheduler.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param time the maximum time between the registration or the events
+	 * @param unit the time unit
+	 * @param other the observable to switch to
+	 * @return the observable
+	 * @see #timeout(Observable, long, TimeUnit, Observable, Scheduler)
+	 */
+	public static <T> ObservableBuilder<T> timeout(
+			final Observable<? extends T> source, final long time, final TimeUnit unit,
+			final Observable<? extends T> other) {
+		return timeout(source, time, unit, other, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Relays the source and switches to the other observable when the source
+	 * is silent for the given time, the counterpart of {@code Reactive.timeout}
+	 * for many long-lived registrations.
+	 * <p>{@code Reactive.timeout} cancels and schedules a timer for every
+	 * value. Here a value is only counted and the single periodic timer of
+	 * the registration checks the count every quarter of the timeout, so a
+	 * busy source costs four timer tasks per timeout period and the switch
+	 * happens after 1 to 1.25 times the timeout of silence. A value being
+	 * delivered when the timeout is found is completed before the switch.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param time the maximum time between the registration or the events
+	 * @param unit the time unit
+	 * @param other the observable to switch to
+	 * @param pool the scheduler of the timer
+	 * @return the observable
+	 */
+	public static <T> ObservableBuilder<T> timeout(
+			final Observable<? extends T> source, final long time, final TimeUnit unit,
+			final Observable<? extends T> other, final Scheduler pool) {
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				return new LazyTimeout<T>(observer, time, unit, other, pool).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Registers with the source again after an error, after the delay the
+	 * selector chooses for the attempt, or relays the error if the selector
+	 * gives up.
+	 * <p>The delay is waited on the scheduler, no thread is blocked. The
+	 * attempts are counted from 1 since the last value of the source.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param delaySelector receives the attempt and the error, returns the
+	 * delay in nanoseconds or a negative value to give up
+	 * @param pool the scheduler of the delays and the registrations
+	 * @return the observable
+	 */
+	public static <T> ObservableBuilder<T> retryWhen(
+			final Observable<? extends T> source,
+			final Func2<Integer, Throwable, Long> delaySelector,
+			final Scheduler pool) {
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				return new RetryWhen<T>(source, observer, delaySelector, pool).start();
+			}
+		});
+	}
+	/**
+	 * Registers with the source again after an error, with the delays and
+	 * the budget of the backoff policy, the delayed counterpart of
+	 * {@code resumeAlways} for the same source.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param backoff the backoff policy
+	 * @param pool the scheduler of the delays and the registrations
+	 * @return the observable
+	 */
+	public static <T> ObservableBuilder<T> resumeWithBackoff(
+			final Observable<? extends T> source, final Backoff backoff, final Scheduler pool) {
+		return retryWhen(source, backoff, pool);
+	}
+	/**
+	 * Splits the source into windows of {@code count} elements, starting a
+	 * window every {@code skip} elements.
+	 * <p>Unlike {@code ObservableBuilder.window}, the elements are relayed to
+	 * the observers of the open windows as they arrive, no window is stored.
+	 * An observer registered in the {@code next()} of the window, as
+	 * {@code selectMany} does, sees all of its elements. Closing the
+	 * registration early keeps the emitted windows running until they close
+	 * or their observers leave, then the source is closed.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param count the window size
+	 * @param skip the distance of the window starts
+	 * @return the observable of the windows
+	 */
+	public static <T> ObservableBuilder<Observable<T>> window(
+			final Observable<? extends T> source, final int count, final int skip) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("count <= 0");
+		}
+		if (skip <= 0) {
+			throw new IllegalArgumentException("skip <= 0");
+		}
+		return ObservableBuilder.from(new Observable<Observable<T>>() {
+			@Override
+			public Closeable register(Observer<? super Observable<T>> observer) {
+				return new CountWindow<T>(observer, count, skip).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Splits the source into consecutive windows of the given time span,
+	 * on the default scheduler.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param time the time span of a window
+	 * @param unit the time unit
+	 * @return the observable of the windows
+	 * @see #window(Observable, int, long, TimeUnit, Scheduler)
+	 */
+	public static <T> ObservableBuilder<Observable<T>> window(
+			final Observable<? extends T> source, final long time, final TimeUnit unit) {
+		return window(source, Integer.MAX_VALUE, time, unit, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Splits the source into consecutive windows of the given time span.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param time the time span of a window
+	 * @param unit the time unit
+	 * @param pool the scheduler closing the windows
+	 * @return the observable of the windows
+	 * @see #window(Observable, int, long, TimeUnit, Scheduler)
+	 */
+	public static <T> ObservableBuilder<Observable<T>> window(
+			final Observable<? extends T> source, final long time, final TimeUnit unit,
+			final Scheduler pool) {
+		return window(source, Integer.MAX_VALUE, time, unit, pool);
+	}
+	/**
+	 * Splits the source into consecutive windows closed after the time span
+	 * or after {@code count} elements, whichever comes first, on the default
+	 * scheduler.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param count the maximum window size
+	 * @param time the time span of a window
+	 * @param unit the time unit
+	 * @return the observable of the windows
+	 * @see #window(Observable, int, long, TimeUnit, Scheduler)
+	 */
+	public static <T> ObservableBuilder<Observable<T>> window(
+			final Observable<? extends T> source, final int count,
+			final long time, final TimeUnit unit) {
+		return window(source, count, time, unit, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Splits the source into consecutive windows closed after the time span
+	 * or after {@code count} elements, whichever comes first.
+	 * <p>The elements are streamed to the windows as in
+	 * {@link #window(Observable, int, int)}. Each window has its own time span
+	 * starting when it opens.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param count the maximum window size
+	 * @param time the time span of a window
+	 * @param unit the time unit
+	 * @param pool the scheduler closing the windows
+	 * @return the observable of the windows
+	 */
+	public static <T> ObservableBuilder<Observable<T>> window(
+			final Observable<? extends T> source, final int count,
+			final long time, final TimeUnit unit, final Scheduler pool) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("count <= 0");
+		}
+		return ObservableBuilder.from(new Observable<Observable<T>>() {
+			@Override
+			public Closeable register(Observer<? super Observable<T>> observer) {
+				return new TimedWindow<T>(observer, count, time, unit, pool).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Splits the source across rails on the default scheduler, dealing the
+	 * values round-robin.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param rails the number of rails
+	 * @return the rails
+	 * @see #parallel(Observable, int, Scheduler, Func1)
+	 */
+	public static <T> ParallelObservable<T> parallel(
+			final Observable<? extends T> source, final int rails) {
+		return parallel(source, rails, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Splits the source across rails on the scheduler, dealing the values
+	 * round-robin.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param rails the number of rails
+	 * @param pool the scheduler running the rails
+	 * @return the rails
+	 * @see #parallel(Observable, int, Scheduler, Func1)
+	 */
+	public static <T> ParallelObservable<T> parallel(
+			final Observable<? extends T> source, final int rails,
+			final Scheduler pool) {
+		return parallel(source, rails, pool, null);
+	}
+	/**
+	 * Splits the source across rails, each running on one task of the
+	 * scheduler at a time, so that the {@code select} and {@code where}
+	 * stages of the rails run concurrently.
+	 * <p>With a partitioner, the values with equal keys go to the same rail
+	 * and are therefore processed in source order; otherwise the values are
+	 * dealt round-robin. Each rail buffers up to 256 values, and the source
+	 * thread waits while the buffer of the next rail is full.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param rails the number of rails, usually the number of processors
+	 * @param pool the scheduler running the rails
+	 * @param partitioner the key of the value, hashed to pick the rail, or
+	 * null for round-robin
+	 * @return the rails
+	 */
+	public static <T> ParallelObservable<T> parallel(
+			final Observable<? extends T> source, final int rails,
+			final Scheduler pool, final Func1<? super T, ?> partitioner) {
+		if (rails <= 0) {
+			throw new IllegalArgumentException("rails <= 0");
+		}
+		// the rails only call the partitioner with the values of the source, which are Ts
+		@SuppressWarnings("unchecked")
+		Func1<Object, ?> p = (Func1<Object, ?>)partitioner;
+		return new ParallelObservable<T>(source, rails, pool, p, 256, new ParallelObservable.Stage[0]);
+	}
+	/**
+	 * Collects the values into batches of up to {@code maxItems} values, each
+	 * handed over at most {@code linger} after its first value, and relays
+	 * them on the default scheduler.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param maxItems the maximum number of values in a batch
+	 * @param linger the maximum time the first value of a batch waits
+	 * @param unit the time unit
+	 * @return the observable of the batches
+	 * @see #batch(Observable, int, long, Func1, long, TimeUnit, Scheduler)
+	 */
+	public static <T> ObservableBuilder<List<T>> batch(
+			final Observable<? extends T> source, final int maxItems,
+			final long linger, final TimeUnit unit) {
+		return batch(source, maxItems, Long.MAX_VALUE, null, linger, unit, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Collects the values into batches for a consumer doing I/O, so that it
+	 * can write a batch at once instead of value by value.
+	 * <p>A batch is handed over when it reaches {@code maxItems} values, when
+	 * the estimated size of its values reaches {@code maxBytes} (a value
+	 * which does not fit starts the next batch), or when
+	 * {@code linger} has passed since its first value, whichever comes first.
+	 * The batches are relayed on the pool, one at a time, while the next
+	 * batch fills on the source thread; if that one fills up before the
+	 * observer returns, the source thread waits, so the source should not
+	 * run on the same pool unless the pool has a spare thread.</p>
+	 * <p>The batch list is reused after {@code next()} returns, so the
+	 * observer has to copy it to keep the values.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param maxItems the maximum number of values in a batch
+	 * @param maxBytes the maximum estimated size of a batch
+	 * @param sizer the size estimator of a value, null if only the count and
+	 * the time are limited
+	 * @param linger the maximum time the first value of a batch waits, 0 for
+	 * no time limit
+	 * @param unit the time unit
+	 * @param pool the pool relaying the batches and running the linger timers
+	 * @return the observable of the batches
+	 */
+	public static <T> ObservableBuilder<List<T>> batch(
+			final Observable<? extends T> source, final int maxItems,
+			final long maxBytes, final Func1<? super T, Integer> sizer,
+			final long linger, final TimeUnit unit, final Scheduler pool) {
+		if (maxItems <= 0) {
+			throw new IllegalArgumentException("maxItems <= 0");
+		}
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes <= 0");
+		}
+		return ObservableBuilder.from(new Observable<List<T>>() {
+			@Override
+			public Closeable register(Observer<? super List<T>> observer) {
+				return new BatchingObserver<T>(observer, maxItems, maxBytes, sizer, linger, unit, pool)
+				.registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Groups the values by key, without a limit on the number of groups.
+	 * @param <T> the element type
+	 * @param <K> the key type
+	 * @param source the source observable
+	 * @param keySelector the key selector, the keys must not be null
+	 * @return the observable of the groups
+	 * @see #groupBy(Observable, Func1, int, long, TimeUnit, Scheduler)
+	 */
+	public static <T, K> ObservableBuilder<GroupedObservable<K, T>> groupBy(
+			final Observable<? extends T> source, final Func1<? super T, ? extends K> keySelector) {
+		return groupBy(source, keySelector, Integer.MAX_VALUE, 0, TimeUnit.NANOSECONDS, Reactive.getDefaultScheduler());
+	}
+	/**
+	 * Groups the values by key, with a bounded number of open groups.
+	 * <p>A group is emitted when the first value of its key arrives, and
+	 * completed when it is evicted: when a new key would exceed
+	 * {@code maxGroups} open groups, the least recently used group is
+	 * evicted, and a group which received no value for the idle time is
+	 * evicted by a periodic sweep on the pool. A later value of an evicted
+	 * key opens a new group, so the groups of millions of short lived keys
+	 * (e.g., session IDs) do not accumulate.</p>
+	 * <p>The values are relayed to the observers of their group as they
+	 * arrive, nothing is buffered: an observer registered in the
+	 * {@code next()} of the group, as {@code selectMany} does, sees all of its
+	 * values. The groups are kept in an open addressing hash table.</p>
+	 * @param <T> the element type
+	 * @param <K> the key type
+	 * @param source the source observable
+	 * @param keySelector the key selector, the keys must not be null
+	 * @param maxGroups the maximum number of open groups
+	 * @param idle the idle time after which a group is evicted, 0 if never
+	 * @param unit the idle time unit
+	 * @param pool the pool sweeping the idle groups
+	 * @return the observable of the groups
+	 */
+	public static <T, K> ObservableBuilder<GroupedObservable<K, T>> groupBy(
+			final Observable<? extends T> source, final Func1<? super T, ? extends K> keySelector,
+			final int maxGroups, final long idle, final TimeUnit unit, final Scheduler pool) {
+		if (maxGroups <= 0) {
+			throw new IllegalArgumentException("maxGroups <= 0");
+		}
+		return ObservableBuilder.from(new Observable<GroupedObservable<K, T>>() {
+			@Override
+			public Closeable register(Observer<? super GroupedObservable<K, T>> observer) {
+				return new GroupBy<T, K>(observer, keySelector, maxGroups, idle, unit, pool).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Aggregates the values per key, with a bounded number of open groups,
+	 * emitting the key and the result of a group when it is evicted, as in
+	 * {@link #groupBy(Observable, Func1, int, long, TimeUnit, Scheduler)},
+	 * or when the source finishes.
+	 * <p>Unlike {@code groupBy} followed by an aggregate per group, no
+	 * registration is made per group and nothing is allocated per value
+	 * besides what the accumulator allocates; a mutable accumulator (e.g., a
+	 * {@code long[]}) updated in place and returned avoids even that. If the
+	 * source fails, the partial results are dropped.</p>
+	 * @param <T> the element type
+	 * @param <K> the key type
+	 * @param <A> the accumulator type
+	 * @param source the source observable
+	 * @param keySelector the key selector, the keys must not be null
+	 * @param seed creates the initial accumulator of a group
+	 * @param accumulator folds a value into the accumulator of its group
+	 * @param maxGroups the maximum number of open groups
+	 * @param idle the idle time after which a group is evicted, 0 if never
+	 * @param unit the idle time unit
+	 * @param pool the pool sweeping the idle groups
+	 * @return the observable of the keys and the results
+	 */
+	public static <T, K, A> ObservableBuilder<Map.Entry<K, A>> groupAggregate(
+			final Observable<? extends T> source, final Func1<? super T, ? extends K> keySelector,
+			final Func0<? extends A> seed, final Func2<? super A, ? super T, ? extends A> accumulator,
+			final int maxGroups, final long idle, final TimeUnit unit, final Scheduler pool) {
+		if (maxGroups <= 0) {
+			throw new IllegalArgumentException("maxGroups <= 0");
+		}
+		return ObservableBuilder.from(new Observable<Map.Entry<K, A>>() {
+			@Override
+			public Closeable register(Observer<? super Map.Entry<K, A>> observer) {
+				return new GroupAggregate<T, K, A>(observer, keySelector, seed, accumulator,
+						maxGroups, idle, unit, pool).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Converts the source into an iterable whose iterators take the values
+	 * through a bounded queue, parking the source while the queue is full.
+	 * <p>Each {@code iterator()} registers with the source; the iterators
+	 * are {@link BlockingIterator}s and should be closed if not iterated to
+	 * the end. The source must emit on another thread than the consumer,
+	 * or emit at most {@code prefetch} values.</p>
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param prefetch the maximum number of values queued per iterator,
+	 * rounded up to a power of two
+	 * @return the iterable
+	 * @see #toBlockingIterator(Observable, int)
+	 */
+	public static <T> CloseableIterable<T> toIterable(
+			final Observable<? extends T> source,
+			final int prefetch) {
+		if (prefetch <= 0) {
+			throw new IllegalArgumentException("prefetch <= 0");
+		}
+		return new CloseableIterable<T>() {
+			@Override
+			public BlockingIterator<T> iterator() {
+				return new BlockingIterator<T>(prefetch).registerWith(source);
+			}
+		};
+	}
+	/**
+	 * Registers with the source and returns an iterator taking its values
+	 * through a bounded queue, parking the source while the queue is full.
+	 * @param <T> the element type
+	 * @param source the source observable
+	 * @param prefetch the maximum number of values queued, rounded up to a power of two
+	 * @return the iterator, to be closed if not iterated to the end
+	 */
+	public static <T> BlockingIterator<T> toBlockingIterator(
+			final Observable<? extends T> source,
+			final int prefetch) {
+		if (prefetch <= 0) {
+			throw new IllegalArgumentException("prefetch <= 0");
+		}
+		return new BlockingIterator<T>(prefetch).registerWith(source);
+	}
+}
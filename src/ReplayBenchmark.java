@@ -0,0 +1,86 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+
+/**
+ * Measures how long a late observer takes to catch up with a
+ * {@link ReplayObserver} history of 1M values, with an idle source and with
+ * a source emitting as fast as it can on another thread. The latter also
+ * reports the longest time a single {@code next()} of the producer took,
+ * i.e., how much the catch-up stalls the producer.
+ * <p>Usage: {@code java ReplayBenchmark [history]}</p>
+ */
+public class ReplayBenchmark {
+
+	/** Counts the values until the history is replayed. */
+	static final class CatchUp implements Observer<Integer> {
+		/** The values to wait for. */
+		final int expected;
+		/** The received values. */
+		volatile int received;
+		/**
+		 * Constructor.
+		 * @param expected the values to wait for
+		 */
+		CatchUp(int expected) {
+			this.expected = expected;
+		}
+		@Override
+		public void next(Integer value) {
+			received++;
+			Benchmark.consume(value);
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			ex.printStackTrace();
+		}
+
+		@Override
+		public void finish() {
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int history = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final ReplayObserver<Integer> replay = new ReplayObserver<Integer>(history, Long.MAX_VALUE, Long.MAX_VALUE, null);
+		for (int i = 0; i < history; i++) {
+			replay.next(i);
+		}
+		Benchmark.header();
+		Action1E<Integer, Exception> catchUp = new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				CatchUp o = new CatchUp(n);
+				Closeable c = replay.register(o);
+				while (o.received < o.expected) {
+					// with a running producer, the last values arrive on its thread
+					Thread.yield();
+				}
+				Closeables.close0(c);
+			}
+		};
+		Benchmark.run("catch-up, idle source", history, catchUp);
+
+		final long[] maxStall = { 0 };
+		final boolean[] stop = { false };
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				int i = 0;
+				while (!stop[0]) {
+					long t0 = System.nanoTime();
+					replay.next(i++);
+					maxStall[0] = Math.max(maxStall[0], System.nanoTime() - t0);
+				}
+			}
+		});
+		producer.start();
+		Benchmark.run("catch-up, running source", history, catchUp);
+		stop[0] = true;
+		producer.join();
+		System.out.printf("longest producer next() during the catch-ups: %.2f ms%n", maxStall[0] / 1e6);
+	}
+}
@@ -0,0 +1,337 @@
+import hu.akarnokd.reactive4java.base.CircularBuffer;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Timestamped;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An observer which records the values it receives into a bounded history
+ * and replays the history to the observers registering later, then relays
+ * the new values as well.
+ * <p>The history is a {@link CircularBuffer} of {@link Timestamped} values,
+ * bounded by a count and optionally by the age of the values and by the
+ * total size of the retained values as given by a size function; the oldest
+ * values are evicted first. The age is measured by a {@link Clock}, the
+ * timestamps are its {@code nanoTime()}, so a {@link TestScheduler} ages
+ * the history in virtual time.</p>
+ * <p>Each observer has its own position in the history and catches up in
+ * batches copied under the lock and delivered outside of it, so a late
+ * observer replaying a long history does not block the producer. An observer
+ * which falls behind the evicted part continues from the oldest retained
+ * value.</p>
+ * @param <T> the element type
+ */
+public final class ReplayObserver<T> implements Observer<T>, Observable<T> {
+	/** The number of values copied from the history at once. */
+	static final int BATCH = 256;
+	/** The buffer positions are rebased before they reach this value. */
+	static final int REBASE = 1 << 30;
+	/** The empty array. */
+	static final ReplayObserver<?>.Replayer[] EMPTY = new ReplayObserver<?>.Replayer[0];
+	/** The maximum number of values. */
+	final int maxCount;
+	/** The maximum age in nanoseconds, Long.MAX_VALUE if unbounded. */
+	final long maxAgeNanos;
+	/** The clock of the timestamps. */
+	final Clock clock;
+	/** The maximum total size, Long.MAX_VALUE if unbounded. */
+	final long maxBytes;
+	/** The size of a value, null if unbounded. */
+	final Func1<? super T, Integer> sizeOf;
+	/** The lock guarding the history. */
+	final Lock lock = new ReentrantLock();
+	/** The history. */
+	CircularBuffer<Timestamped<T>> buffer;
+	/** The sizes of the values in the history, indexed as the buffer. */
+	final int[] sizes;
+	/** The logical index of buffer position zero. */
+	long base;
+	/** The total size of the history. */
+	long bytes;
+	/** The source terminated. */
+	boolean done;
+	/** The termination error. */
+	Throwable error;
+	/** The registered observers, typed by the wildcard as generic arrays cannot be created. */
+	final AtomicReference<ReplayObserver<?>.Replayer[]> replayers = new AtomicReference<ReplayObserver<?>.Replayer[]>(EMPTY);
+	/**
+	 * Constructor, the age is measured by {@link Clock#SYSTEM}.
+	 * @param maxCount the maximum number of values
+	 * @param maxAgeNanos the maximum age in nanoseconds, Long.MAX_VALUE if unbounded
+	 * @param maxBytes the maximum total size, Long.MAX_VALUE if unbounded
+	 * @param sizeOf the size of a value, null if the size is unbounded
+	 */
+	public ReplayObserver(int maxCount, long maxAgeNanos, long maxBytes, Func1<? super T, Integer> sizeOf) {
+		this(maxCount, maxAgeNanos, maxBytes, sizeOf, Clock.SYSTEM);
+	}
+	/**
+	 * Constructor.
+	 * @param maxCount the maximum number of values
+	 * @param maxAgeNanos the maximum age in nanoseconds, Long.MAX_VALUE if unbounded
+	 * @param maxBytes the maximum total size, Long.MAX_VALUE if unbounded
+	 * @param sizeOf the size of a value, null if the size is unbounded
+	 * @param clock the clock measuring the age of the values
+	 */
+	public ReplayObserver(int maxCount, long maxAgeNanos, long maxBytes, Func1<? super T, Integer> sizeOf, Clock clock) {
+		if (maxCount <= 0) {
+			throw new IllegalArgumentException("maxCount <= 0");
+		}
+		if (maxBytes != Long.MAX_VALUE && sizeOf == null) {
+			throw new IllegalArgumentException("sizeOf is null");
+		}
+		this.maxCount = maxCount;
+		this.maxAgeNanos = maxAgeNanos;
+		this.clock = clock;
+		this.maxBytes = maxBytes;
+		this.sizeOf = sizeOf;
+		this.buffer = new CircularBuffer<Timestamped<T>>(maxCount);
+		this.sizes = sizeOf != null ? new int[maxCount] : null;
+	}
+	/** The replay state of a registered observer. */
+	final class Replayer implements Closeable {
+		/** The observer. */
+		final Observer<? super T> observer;
+		/** Serializes the delivery. */
+		final AtomicInteger wip = new AtomicInteger();
+		/** The values copied from the history. */
+		final Object[] batch = new Object[BATCH];
+		/** The logical index of the next value. */
+		long index;
+		/** Closed. */
+		volatile boolean cancelled;
+		/**
+		 * Constructor.
+		 * @param observer the observer
+		 */
+		Replayer(Observer<? super T> observer) {
+			this.observer = observer;
+		}
+		/** Delivers the values this observer has not seen yet. */
+		@SuppressWarnings("unchecked")
+		void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			for (;;) {
+				for (;;) {
+					if (cancelled) {
+						return;
+					}
+					int n;
+					boolean terminate;
+					Throwable ex;
+					lock.lock();
+					try {
+						long head = base + buffer.head();
+						long tail = base + buffer.tail();
+						if (index < head) {
+							index = head;
+						}
+						n = (int)Math.min(tail - index, BATCH);
+						for (int i = 0; i < n; i++) {
+							batch[i] = buffer.get((int)(index + i - base)).value();
+						}
+						index += n;
+						terminate = done && index == tail;
+						ex = error;
+					} finally {
+						lock.unlock();
+					}
+					for (int i = 0; i < n; i++) {
+						Object v = batch[i];
+						batch[i] = null;
+						if (cancelled) {
+							return;
+						}
+						observer.next((T)v);
+					}
+					if (terminate) {
+						cancelled = true;
+						remove(this);
+						if (ex != null) {
+							observer.error(ex);
+						} else {
+							observer.finish();
+						}
+						return;
+					}
+					if (n == 0) {
+						break;
+					}
+				}
+				missed = wip.addAndGet(-missed);
+				if (missed == 0) {
+					break;
+				}
+			}
+		}
+		@Override
+		public void close() {
+			cancelled = true;
+			remove(this);
+		}
+	}
+	@Override
+	public Closeable register(Observer<? super T> observer) {
+		Replayer r = new Replayer(observer);
+		for (;;) {
+			ReplayObserver<?>.Replayer[] a = replayers.get();
+			ReplayObserver<?>.Replayer[] b = new ReplayObserver<?>.Replayer[a.length + 1];
+			System.arraycopy(a, 0, b, 0, a.length);
+			b[a.length] = r;
+			if (replayers.compareAndSet(a, b)) {
+				break;
+			}
+		}
+		lock.lock();
+		try {
+			evictOld(clock.nanoTime());
+		} finally {
+			lock.unlock();
+		}
+		r.drain();
+		return r;
+	}
+	/**
+	 * Removes a replayer.
+	 * @param r the replayer
+	 */
+	void remove(Replayer r) {
+		for (;;) {
+			ReplayObserver<?>.Replayer[] a = replayers.get();
+			int idx = -1;
+			for (int i = 0; i < a.length; i++) {
+				if (a[i] == r) {
+					idx = i;
+					break;
+				}
+			}
+			if (idx < 0) {
+				return;
+			}
+			ReplayObserver<?>.Replayer[] b;
+			if (a.length == 1) {
+				b = EMPTY;
+			} else {
+				b = new ReplayObserver<?>.Replayer[a.length - 1];
+				System.arraycopy(a, 0, b, 0, idx);
+				System.arraycopy(a, idx + 1, b, idx, a.length - idx - 1);
+			}
+			if (replayers.compareAndSet(a, b)) {
+				return;
+			}
+		}
+	}
+	@Override
+	public void next(T value) {
+		long now = clock.nanoTime();
+		lock.lock();
+		try {
+			if (done) {
+				return;
+			}
+			int size = sizeOf != null ? sizeOf.invoke(value) : 0;
+			if (buffer.size() == maxCount) {
+				evictFirst();
+			}
+			if (buffer.tail() >= REBASE) {
+				rebase();
+			}
+			if (sizes != null) {
+				sizes[buffer.tail() % maxCount] = size;
+			}
+			buffer.add(Timestamped.of(value, now));
+			bytes += size;
+			while (bytes > maxBytes && buffer.size() > 1) {
+				evictFirst();
+			}
+			evictOld(now);
+		} finally {
+			lock.unlock();
+		}
+		drainAll();
+	}
+	@Override
+	public void error(Throwable ex) {
+		lock.lock();
+		try {
+			if (done) {
+				return;
+			}
+			done = true;
+			error = ex;
+		} finally {
+			lock.unlock();
+		}
+		drainAll();
+	}
+	@Override
+	public void finish() {
+		lock.lock();
+		try {
+			done = true;
+		} finally {
+			lock.unlock();
+		}
+		drainAll();
+	}
+	/** @return the number of values in the history */
+	public int size() {
+		lock.lock();
+		try {
+			return buffer.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/** Lets every registered observer catch up. */
+	void drainAll() {
+		for (ReplayObserver<?>.Replayer r : replayers.get()) {
+			r.drain();
+		}
+	}
+	/** Removes the oldest value, lock held. */
+	void evictFirst() {
+		if (sizes != null) {
+			bytes -= sizes[buffer.head() % maxCount];
+		}
+		buffer.take();
+	}
+	/**
+	 * Removes the values older than the maximum age, lock held.
+	 * @param now the current time of the clock
+	 */
+	void evictOld(long now) {
+		if (maxAgeNanos == Long.MAX_VALUE) {
+			return;
+		}
+		while (!buffer.isEmpty() && now - buffer.get(buffer.head()).timestamp() > maxAgeNanos) {
+			evictFirst();
+		}
+	}
+	/**
+	 * Moves the history into a new buffer starting at position zero so that
+	 * the int positions of the buffer do not overflow, lock held.
+	 */
+	void rebase() {
+		int head = buffer.head();
+		CircularBuffer<Timestamped<T>> b = new CircularBuffer<Timestamped<T>>(maxCount);
+		int n = buffer.size();
+		int[] oldSizes = sizes != null ? sizes.clone() : null;
+		for (int i = 0; i < n; i++) {
+			if (sizes != null) {
+				sizes[i] = oldSizes[(head + i) % maxCount];
+			}
+			b.add(buffer.get(head + i));
+		}
+		buffer = b;
+		base += head;
+	}
+}
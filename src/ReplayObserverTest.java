@@ -0,0 +1,195 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Func0;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.ConnectableObservable;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class ReplayObserverTest {
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+
+	/**
+	 * 受け取った値を溜める
+	 * @param source ソース
+	 * @return 値と "finish!" のリスト (register 後も追加される)
+	 */
+	static List<Object> register(Observable<?> source) {
+		final List<Object> actual = new ArrayList<Object>();
+		source.register(new Observer<Object>() {
+			@Override
+			public void next(Object value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+		return actual;
+	}
+
+	/**
+	 * 遅れて購読しても、直近の値を受け取れる
+	 */
+	@Test
+	public void testReplayCount() {
+		ConnectableObservable<Integer> source = ReactiveEx.replay(Reactive.range(1, 10, current), 3);
+		source.connect();
+
+		assertEquals(Arrays.<Object>asList(8, 9, 10, "finish!"), register(source));
+	}
+
+	/**
+	 * 履歴を受け取った後は、新しい値も受け取る
+	 */
+	@Test
+	public void testReplayThenLive() {
+		ReplayObserver<Integer> history = new ReplayObserver<Integer>(5, Long.MAX_VALUE, Long.MAX_VALUE, null);
+		history.next(1);
+		history.next(2);
+		List<Object> a = register(history);
+		history.next(3);
+		List<Object> b = register(history);
+		history.finish();
+
+		assertEquals(Arrays.<Object>asList(1, 2, 3, "finish!"), a);
+		assertEquals(Arrays.<Object>asList(1, 2, 3, "finish!"), b);
+	}
+
+	/**
+	 * 合計サイズを超えた古い値は捨てられる
+	 */
+	@Test
+	public void testReplayBytes() {
+		ReplayObserver<String> history = new ReplayObserver<String>(100, Long.MAX_VALUE, 10, new Func1<String, Integer>() {
+			@Override
+			public Integer invoke(String param1) {
+				return param1.length();
+			}
+		});
+		history.next("aaaa");
+		history.next("bbbb");
+		history.next("cccc");
+		assertEquals(Arrays.<Object>asList("bbbb", "cccc"), register(history));
+
+		// 上限より大きくても最新の値は残る
+		history.next("dddddddddddd");
+		assertEquals(Arrays.<Object>asList("dddddddddddd"), register(history));
+	}
+
+	/**
+	 * 古くなった値は捨てられる
+	 */
+	@Test
+	public void testReplayAge() {
+		TestScheduler scheduler = new TestScheduler();
+		ReplayObserver<Integer> history = new ReplayObserver<Integer>(100, TimeUnit.MILLISECONDS.toNanos(200), Long.MAX_VALUE, null, scheduler);
+		history.next(1);
+		scheduler.advanceTimeBy(150, TimeUnit.MILLISECONDS);
+		history.next(2);
+		assertEquals(Arrays.<Object>asList(1, 2), register(history));
+
+		// 200ms ちょうどまでは残る
+		scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(1, 2), register(history));
+		scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(2), register(history));
+
+		scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(), register(history));
+	}
+
+	/**
+	 * replay の Scheduler が Clock なら、その時刻で古くなった値を捨てる
+	 */
+	@Test
+	public void testReplayAgeScheduler() {
+		TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		ConnectableObservable<Integer> replay = ReactiveEx.replay(source, 100, 1, TimeUnit.SECONDS, scheduler);
+		replay.connect();
+		source.next(1);
+		scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+		source.next(2);
+		assertEquals(Arrays.<Object>asList(2), register(replay));
+	}
+
+	/**
+	 * 1ms に満たない寿命も切り捨てられずにそのまま使われる
+	 */
+	@Test
+	public void testReplayAgeMicros() {
+		TestScheduler scheduler = new TestScheduler();
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		ConnectableObservable<Integer> replay = ReactiveEx.replay(source, 100, 500, TimeUnit.MICROSECONDS, scheduler);
+		replay.connect();
+		source.next(1);
+		scheduler.advanceTimeBy(300, TimeUnit.MICROSECONDS);
+		source.next(2);
+		assertEquals(Arrays.<Object>asList(1, 2), register(replay));
+
+		// 500us ちょうどまでは残る
+		scheduler.advanceTimeBy(200, TimeUnit.MICROSECONDS);
+		assertEquals(Arrays.<Object>asList(1, 2), register(replay));
+		scheduler.advanceTimeBy(1, TimeUnit.MICROSECONDS);
+		assertEquals(Arrays.<Object>asList(2), register(replay));
+	}
+
+	/**
+	 * バッファの位置を付け替えても履歴とサイズは変わらない
+	 */
+	@Test
+	public void testRebase() {
+		ReplayObserver<String> history = new ReplayObserver<String>(3, Long.MAX_VALUE, 100, new Func1<String, Integer>() {
+			@Override
+			public Integer invoke(String param1) {
+				return param1.length();
+			}
+		});
+		for (String s : Arrays.asList("a", "bb", "ccc", "dddd", "eeeee")) {
+			history.next(s);
+		}
+		history.lock.lock();
+		try {
+			history.rebase();
+		} finally {
+			history.lock.unlock();
+		}
+		assertEquals(0, history.buffer.head());
+		assertEquals(12, history.bytes);
+		history.next("f");
+		assertEquals(10, history.bytes);
+		assertEquals(Arrays.<Object>asList("dddd", "eeeee", "f"), register(history));
+	}
+
+	/**
+	 * sample_06b_start のように、関数は 1 回だけ呼ばれて結果が共有される
+	 */
+	@Test
+	public void testCache() {
+		final AtomicInteger calls = new AtomicInteger();
+		Observable<Integer> source = ReactiveEx.cache(Reactive.start(new Func0<Integer>() {
+			@Override
+			public Integer invoke() {
+				return calls.incrementAndGet();
+			}
+		}, current), 1);
+
+		assertEquals(Arrays.<Object>asList(1, "finish!"), register(source));
+		assertEquals(Arrays.<Object>asList(1, "finish!"), register(source));
+		assertEquals(1, calls.get());
+	}
+}
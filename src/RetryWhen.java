@@ -0,0 +1,167 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Func2;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registration of
+ * {@link ReactiveEx#retryWhen(Observable, Func2, Scheduler)}: registers with
+ * the source again after an error, once the delay chosen for the attempt
+ * has elapsed on the scheduler.
+ * <p>No thread waits for the delay: the next registration is a task on the
+ * scheduler. The attempts are counted since the last value, so a source
+ * which recovers gets the whole budget for its next failure.</p>
+ * <p>The registration of a failed attempt is closed before the retry is
+ * scheduled; if the attempt failed before {@code register} returned, the
+ * registration is closed as soon as it is returned. The pending timer is
+ * kept apart and forgotten once it fires, so closing never cancels (and
+ * interrupts) the task running the registration.</p>
+ * @param <T> the element type
+ */
+final class RetryWhen<T> implements Observer<T>, Runnable, Closeable {
+	/** The source. */
+	final Observable<? extends T> source;
+	/** The downstream. */
+	final Observer<? super T> observer;
+	/** The delay of an attempt in nanoseconds, negative to give up. */
+	final Func2<Integer, Throwable, Long> delaySelector;
+	/** The pool of the delays and the registrations. */
+	final Scheduler pool;
+	/** The lock guarding the registration, the timer and the generation. */
+	final Lock lock = new ReentrantLock();
+	/** The failed attempts since the last value. */
+	int attempt;
+	/** Counts the errors, so the registration of a failed attempt is not kept. */
+	int generation;
+	/** The source registration of the current attempt. */
+	Closeable registration;
+	/** The pending timer of the next attempt. */
+	Closeable timer;
+	/** The generation of the last attempt started, tells a timer which already fired. */
+	int started;
+	/** Set when the registration is closed. */
+	boolean closed;
+	/**
+	 * Constructor.
+	 * @param source the source
+	 * @param observer the downstream
+	 * @param delaySelector the delay of an attempt in nanoseconds, negative to give up
+	 * @param pool the pool of the delays and the registrations
+	 */
+	RetryWhen(Observable<? extends T> source, Observer<? super T> observer,
+			Func2<Integer, Throwable, Long> delaySelector, Scheduler pool) {
+		this.source = source;
+		this.observer = observer;
+		this.delaySelector = delaySelector;
+		this.pool = pool;
+	}
+	/**
+	 * Registers with the source for the first time.
+	 * @return this
+	 */
+	Closeable start() {
+		run();
+		return this;
+	}
+	@Override
+	public void run() {
+		int g;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			timer = null;
+			g = generation;
+			started = g;
+		} finally {
+			lock.unlock();
+		}
+		Closeable c = source.register(this);
+		lock.lock();
+		try {
+			if (g == generation && !closed) {
+				registration = c;
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+		// the attempt failed or this was closed before register returned
+		Closeables.close0(c);
+	}
+	@Override
+	public void next(T value) {
+		attempt = 0;
+		observer.next(value);
+	}
+	@Override
+	public void error(Throwable ex) {
+		Closeable c;
+		int g;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			g = ++generation;
+			c = registration;
+			registration = null;
+		} finally {
+			lock.unlock();
+		}
+		Closeables.close0(c);
+		Long delay;
+		try {
+			delay = delaySelector.invoke(++attempt, ex);
+		} catch (Throwable t) {
+			observer.error(t);
+			return;
+		}
+		if (delay == null || delay < 0) {
+			observer.error(ex);
+			return;
+		}
+		Closeable t = pool.schedule(this, delay, TimeUnit.NANOSECONDS);
+		boolean keep;
+		lock.lock();
+		try {
+			keep = !closed;
+			if (keep && started != g) {
+				timer = t;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (!keep) {
+			Closeables.close0(t);
+		}
+	}
+	@Override
+	public void finish() {
+		observer.finish();
+	}
+	@Override
+	public void close() {
+		Closeable c;
+		Closeable t;
+		lock.lock();
+		try {
+			closed = true;
+			c = registration;
+			t = timer;
+			registration = null;
+			timer = null;
+		} finally {
+			lock.unlock();
+		}
+		Closeables.close0(t);
+		Closeables.close0(c);
+	}
+}
@@ -0,0 +1,181 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class RetryWhenTest {
+	/** 再登録を行う仮想時間のスケジューラ */
+	final TestScheduler scheduler = new TestScheduler();
+
+	/**
+	 * 最初の何回かは失敗するソース (バックエンドの代わり)
+	 */
+	final class FailingSource implements Observable<String> {
+		/** 失敗する回数 */
+		final int failures;
+		/** 通知までの時間 (ms)、0 なら register の中で通知する */
+		final long latency;
+		/** 登録された仮想時刻 (ms) */
+		final List<Long> registrations = new ArrayList<Long>();
+		/** 登録ごとの close された回数 */
+		final List<Integer> closes = new ArrayList<Integer>();
+		/**
+		 * コンストラクタ
+		 * @param failures 失敗する回数
+		 * @param latency 通知までの時間 (ms)、0 なら register の中で通知する
+		 */
+		FailingSource(int failures, long latency) {
+			this.failures = failures;
+			this.latency = latency;
+		}
+		@Override
+		public Closeable register(final Observer<? super String> observer) {
+			final int index = registrations.size();
+			registrations.add(scheduler.now(TimeUnit.MILLISECONDS));
+			closes.add(0);
+			Runnable signal = new Runnable() {
+				@Override
+				public void run() {
+					if (index < failures) {
+						observer.error(new Exception("NG" + (index + 1)));
+					} else {
+						observer.next("OK");
+						observer.finish();
+					}
+				}
+			};
+			if (latency == 0) {
+				signal.run();
+			} else {
+				scheduler.schedule(signal, latency, TimeUnit.MILLISECONDS);
+			}
+			return new Closeable() {
+				@Override
+				public void close() {
+					closes.set(index, closes.get(index) + 1);
+				}
+			};
+		}
+	}
+
+	/**
+	 * 値を溜める
+	 * @param actual 値と "finish!" または "error:..."
+	 * @return オブザーバ
+	 */
+	static Observer<Object> collect(final List<Object> actual) {
+		return new Observer<Object>() {
+			@Override
+			public void next(Object value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		};
+	}
+
+	/**
+	 * sample_34a_resumeAlways_basic と違い、同じソースに 50ms, 100ms, 200ms 待ってから登録し直す
+	 */
+	@Test
+	public void testAttemptTimeline() {
+		FailingSource source = new FailingSource(3, 0);
+		List<Object> actual = new ArrayList<Object>();
+		ReactiveEx.resumeWithBackoff(source,
+				new Backoff(50, 1000, TimeUnit.MILLISECONDS, 2.0, 0, 5), scheduler)
+				.register(collect(actual));
+
+		scheduler.advanceTimeBy(349, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.asList(0L, 50L, 150L), source.registrations);
+		assertTrue(actual.isEmpty());
+
+		scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.asList(0L, 50L, 150L, 350L), source.registrations);
+		assertEquals(Arrays.<Object>asList("OK", "finish!"), actual);
+	}
+
+	/**
+	 * 回数の上限を超えたらエラーを通知する
+	 */
+	@Test
+	public void testBudgetExhausted() {
+		FailingSource source = new FailingSource(Integer.MAX_VALUE, 0);
+		List<Object> actual = new ArrayList<Object>();
+		ReactiveEx.resumeWithBackoff(source,
+				new Backoff(10, 1000, TimeUnit.MILLISECONDS, 2.0, 0.5, 3), scheduler)
+				.register(collect(actual));
+
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList("error:NG4"), actual);
+		assertEquals(4, source.registrations.size());
+		assertEquals(0, scheduler.pendingCount());
+	}
+
+	/**
+	 * 失敗した登録は、register の中で失敗したものも後から失敗したものも一度ずつ close される
+	 */
+	@Test
+	public void testCloseFailedAttempts() throws IOException {
+		for (long latency : new long[] { 0, 10 }) {
+			FailingSource source = new FailingSource(3, latency);
+			List<Object> actual = new ArrayList<Object>();
+			Closeable c = ReactiveEx.resumeWithBackoff(source,
+					new Backoff(50, 1000, TimeUnit.MILLISECONDS, 2.0, 0, 5), scheduler)
+					.register(collect(actual));
+
+			scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+			assertEquals(Arrays.<Object>asList("OK", "finish!"), actual);
+			assertEquals("latency " + latency, Arrays.asList(1, 1, 1, 0), source.closes);
+
+			c.close();
+			assertEquals("latency " + latency, Arrays.asList(1, 1, 1, 1), source.closes);
+		}
+	}
+
+	/**
+	 * 待っている間に close すると、次の登録は行われない
+	 */
+	@Test
+	public void testCloseWhileWaiting() throws IOException {
+		FailingSource source = new FailingSource(3, 0);
+		List<Object> actual = new ArrayList<Object>();
+		Closeable c = ReactiveEx.resumeWithBackoff(source,
+				new Backoff(50, 1000, TimeUnit.MILLISECONDS, 2.0, 0, 5), scheduler)
+				.register(collect(actual));
+
+		scheduler.advanceTimeBy(60, TimeUnit.MILLISECONDS);
+		c.close();
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertEquals(2, source.registrations.size());
+		assertEquals(Arrays.asList(1, 1), source.closes);
+		assertTrue(actual.isEmpty());
+	}
+
+	/**
+	 * 待ち時間は上限で抑えられ、ジッターの分だけ短くなる
+	 */
+	@Test
+	public void testBackoffJitter() {
+		Backoff backoff = new Backoff(100, 1000, TimeUnit.MILLISECONDS, 2.0, 0.5, 10);
+		long[] base = { 100, 200, 400, 800, 1000, 1000 };
+		for (int attempt = 1; attempt <= base.length; attempt++) {
+			long max = TimeUnit.MILLISECONDS.toNanos(base[attempt - 1]);
+			for (int i = 0; i < 100; i++) {
+				long delay = backoff.invoke(attempt, null);
+				assertTrue(delay <= max && delay >= max / 2);
+			}
+		}
+		assertEquals(-1L, backoff.invoke(11, null).longValue());
+	}
+}
@@ -0,0 +1,26 @@
+/**
+ * A minimal non-blocking queue used to hand values between threads.
+ * <p>Null values are not allowed: a null from {@link #poll()} means empty.</p>
+ * @param <T> the element type
+ */
+interface SimpleQueue<T> {
+	/**
+	 * Adds a value to the queue.
+	 * @param value the value, not null
+	 * @return false if the queue is full
+	 */
+	boolean offer(T value);
+	/**
+	 * Removes the next value, consumer thread only.
+	 * @return the value or null if the queue is empty
+	 */
+	T poll();
+	/**
+	 * @return true if the queue is empty, consumer thread only
+	 */
+	boolean isEmpty();
+	/**
+	 * @return the approximate number of values in the queue, any thread
+	 */
+	int size();
+}
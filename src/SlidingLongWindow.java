@@ -0,0 +1,192 @@
+import java.util.Arrays;
+
+/**
+ * The state of the sliding window aggregates of {@link PrimitiveObservables}:
+ * the last {@code limit} values, or the values of the last {@code limit}
+ * nanoseconds, with O(1) amortized updates.
+ * <p>The minimum and the maximum are kept by monotonic deques: a new value
+ * drops the values it dominates from the back, and the expired values leave
+ * from the front, so the front is always the extreme of the window and each
+ * value enters and leaves once. For random values the deques stay short
+ * even for windows of millions of values. The sum and the count are running
+ * totals: a value is added when it enters and subtracted when it expires,
+ * which needs the values of the window in a FIFO.</p>
+ * <p>Only the structures the aggregate needs are kept: the minimum and the
+ * maximum do not keep the FIFO. The deques hold the whole window only for
+ * monotonic input, 16 bytes per value.</p>
+ */
+final class SlidingLongWindow {
+	/** The window size, in values for a count window, in nanoseconds for a time window. */
+	final long limit;
+	/** True for a time window, false for a count window. */
+	final boolean byTime;
+	/** The deque of the minimum, null if not needed. */
+	final MonotonicDeque min;
+	/** The deque of the maximum, null if not needed. */
+	final MonotonicDeque max;
+	/** The FIFO of the sum and the count, null if not needed. */
+	final Fifo fifo;
+	/** The number of values added. */
+	long seq;
+	/**
+	 * Constructor.
+	 * @param limit the window size, in values for a count window, in
+	 * nanoseconds for a time window
+	 * @param byTime true for a time window, false for a count window
+	 * @param min keep the minimum
+	 * @param max keep the maximum
+	 * @param totals keep the sum and the count
+	 */
+	SlidingLongWindow(long limit, boolean byTime, boolean min, boolean max, boolean totals) {
+		this.limit = limit;
+		this.byTime = byTime;
+		this.min = min ? new MonotonicDeque(false) : null;
+		this.max = max ? new MonotonicDeque(true) : null;
+		this.fifo = totals ? new Fifo() : null;
+	}
+	/**
+	 * Adds a value and removes the values which left the window.
+	 * <p>Each value is stamped with its sequence number in a count window
+	 * and with its time in a time window, so a value has expired once the
+	 * stamp of the new value is at least {@code limit} past its own.</p>
+	 * @param now the time of the value in nanoseconds, ignored by a count window
+	 * @param value the value
+	 */
+	void add(long now, long value) {
+		long stamp = byTime ? now : ++seq;
+		if (min != null) {
+			min.add(stamp, value, limit);
+		}
+		if (max != null) {
+			max.add(stamp, value, limit);
+		}
+		if (fifo != null) {
+			fifo.add(stamp, value, limit);
+		}
+	}
+	/** @return the smallest value of the window, the window is not empty */
+	long min() {
+		return min.front();
+	}
+	/** @return the largest value of the window, the window is not empty */
+	long max() {
+		return max.front();
+	}
+	/** @return the sum of the window */
+	long sum() {
+		return fifo.sum;
+	}
+	/** @return the number of values in the window */
+	long count() {
+		return fifo.size;
+	}
+	/**
+	 * A monotonic deque of the values which can still become the extreme of
+	 * the window, in a growable ring.
+	 */
+	static final class MonotonicDeque {
+		/** True for the maximum, false for the minimum. */
+		final boolean max;
+		/** The stamps of the values. */
+		long[] stamps = new long[16];
+		/** The values. */
+		long[] values = new long[16];
+		/** The index of the front. */
+		int head;
+		/** The number of values. */
+		int size;
+		/**
+		 * Constructor.
+		 * @param max true for the maximum, false for the minimum
+		 */
+		MonotonicDeque(boolean max) {
+			this.max = max;
+		}
+		/**
+		 * Removes the expired and the dominated values and appends the value.
+		 * @param stamp the stamp of the value
+		 * @param value the value
+		 * @param limit the window size
+		 */
+		void add(long stamp, long value, long limit) {
+			int mask = values.length - 1;
+			while (size > 0 && stamp - stamps[head] >= limit) {
+				head = (head + 1) & mask;
+				size--;
+			}
+			while (size > 0) {
+				long last = values[(head + size - 1) & mask];
+				if (max ? last > value : last < value) {
+					break;
+				}
+				size--;
+			}
+			if (size == values.length) {
+				stamps = unwrap(stamps, head, size);
+				values = unwrap(values, head, size);
+				head = 0;
+				mask = values.length - 1;
+			}
+			int t = (head + size) & mask;
+			stamps[t] = stamp;
+			values[t] = value;
+			size++;
+		}
+		/** @return the extreme value of the window */
+		long front() {
+			return values[head];
+		}
+	}
+	/**
+	 * The values of the window and their running sum, in a growable ring.
+	 */
+	static final class Fifo {
+		/** The stamps of the values. */
+		long[] stamps = new long[16];
+		/** The values. */
+		long[] values = new long[16];
+		/** The index of the oldest value. */
+		int head;
+		/** The number of values. */
+		int size;
+		/** The sum of the values. */
+		long sum;
+		/**
+		 * Removes the expired values and appends the value.
+		 * @param stamp the stamp of the value
+		 * @param value the value
+		 * @param limit the window size
+		 */
+		void add(long stamp, long value, long limit) {
+			int mask = values.length - 1;
+			while (size > 0 && stamp - stamps[head] >= limit) {
+				sum -= values[head];
+				head = (head + 1) & mask;
+				size--;
+			}
+			if (size == values.length) {
+				stamps = unwrap(stamps, head, size);
+				values = unwrap(values, head, size);
+				head = 0;
+				mask = values.length - 1;
+			}
+			int t = (head + size) & mask;
+			stamps[t] = stamp;
+			values[t] = value;
+			size++;
+			sum += value;
+		}
+	}
+	/**
+	 * Copies a full ring into an array of twice the length, oldest first.
+	 * @param a the ring
+	 * @param head the index of the oldest element
+	 * @param size the number of elements, the length of the ring
+	 * @return the new array
+	 */
+	static long[] unwrap(long[] a, int head, int size) {
+		long[] b = Arrays.copyOfRange(a, head, head + (size << 1));
+		System.arraycopy(a, 0, b, a.length - head, head);
+		return b;
+	}
+}
@@ -0,0 +1,149 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PrimitiveObservables#slidingMax(LongObservable, long, TimeUnit, Clock)}
+ * over a 1 minute window at 1M events/s, and the count window
+ * {@code slidingMax} against re-scanning the window after each value.
+ * <p>The events are timed by a virtual clock advancing 1 µs per event, so
+ * the 1 minute window holds 60M events regardless of how fast the machine
+ * is; the benchmark runs 2 minutes of events, the first one filling the
+ * window. Random values keep the deque short, while the ascending and
+ * descending values are the best and the worst case: the descending values
+ * keep the whole window, 16 bytes per event, in the deque, which needs
+ * {@code -Xmx3g} for the 60M events of the window.</p>
+ * <p>Usage: {@code java SlidingWindowBenchmark [seconds]}.</p>
+ */
+public class SlidingWindowBenchmark {
+	/** The clock advancing 1 µs per reading, one reading per event. */
+	static final class EventClock implements Clock {
+		/** The current time. */
+		long now;
+		@Override
+		public long nanoTime() {
+			return now += 1000;
+		}
+	}
+	/** The value patterns. */
+	enum Pattern {
+		/** Pseudo random values. */
+		RANDOM,
+		/** Ascending values, the deque holds one value. */
+		ASCENDING,
+		/** Descending values, the deque holds the whole window. */
+		DESCENDING
+	}
+	/**
+	 * Emits n values of a pattern synchronously.
+	 * @param n the number of values
+	 * @param pattern the pattern
+	 * @return the source
+	 */
+	static LongObservable events(final int n, final Pattern pattern) {
+		return new LongObservable() {
+			@Override
+			public Closeable register(LongObserver observer) {
+				long x = 0x9E3779B97F4A7C15L;
+				for (int i = 0; i < n; i++) {
+					long v;
+					switch (pattern) {
+					case RANDOM:
+						x ^= x << 13;
+						x ^= x >>> 7;
+						x ^= x << 17;
+						v = x;
+						break;
+					case ASCENDING:
+						v = i;
+						break;
+					default:
+						v = -i;
+					}
+					observer.next(v);
+				}
+				observer.finish();
+				return new Closeable() {
+					@Override
+					public void close() {
+					}
+				};
+			}
+		};
+	}
+	/** Keeps the last value so the results are not optimized away. */
+	static class LastLong implements LongObserver {
+		/** The last value. */
+		long last;
+		@Override
+		public void next(long value) {
+			last = value;
+		}
+		@Override
+		public void error(Throwable ex) {
+			ex.printStackTrace();
+		}
+		@Override
+		public void finish() {
+			Benchmark.consume(last);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+		Benchmark.header();
+		for (final Pattern p : Pattern.values()) {
+			String name = "slidingMax(1 min), " + p.name().toLowerCase();
+			try {
+				Benchmark.run(name, seconds * 1000000, new Action1E<Integer, Exception>() {
+					@Override
+					public void invoke(Integer n) throws Exception {
+						PrimitiveObservables.slidingMax(events(n, p), 1, TimeUnit.MINUTES, new EventClock())
+						.register(new LastLong());
+					}
+				});
+			} catch (OutOfMemoryError ex) {
+				System.out.printf("%-40s %10d %s%n", name, seconds * 1000000, "OutOfMemoryError");
+			}
+		}
+		for (final int w : new int[] { 100, 10000 }) {
+			Benchmark.run("slidingMax(" + w + "), random", 1000000, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					PrimitiveObservables.slidingMax(events(n, Pattern.RANDOM), w).register(new LastLong());
+				}
+			});
+			Benchmark.run("re-scan max(" + w + "), random", 1000000, new Action1E<Integer, Exception>() {
+				@Override
+				public void invoke(Integer n) throws Exception {
+					events(n, Pattern.RANDOM).register(new RescanMax(w));
+				}
+			});
+		}
+	}
+	/** The sliding maximum by re-scanning the buffered window after each value. */
+	static final class RescanMax extends LastLong {
+		/** The window. */
+		final long[] window;
+		/** The number of values received. */
+		long count;
+		/**
+		 * Constructor.
+		 * @param size the window size
+		 */
+		RescanMax(int size) {
+			window = new long[size];
+		}
+		@Override
+		public void next(long value) {
+			window[(int)(count++ % window.length)] = value;
+			int n = (int)Math.min(count, window.length);
+			long m = Long.MIN_VALUE;
+			for (int i = 0; i < n; i++) {
+				m = Math.max(m, window[i]);
+			}
+			super.next(m);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, array backed queue for exactly one producer and
+ * one consumer thread.
+ * <p>A slot is free when it holds null, so each side only reads its own
+ * index and the slot it is about to use; the indexes are padded to avoid
+ * false sharing. The writes are ordered by {@code lazySet} instead of
+ * full volatile writes.</p>
+ * @param <T> the element type
+ */
+final class SpscArrayQueue<T> implements SimpleQueue<T> {
+	/** The slots. */
+	final AtomicReferenceArray<T> buffer;
+	/** The index mask. */
+	final int mask;
+	/** The next slot to write, producer only. */
+	final PaddedAtomicLong producerIndex = new PaddedAtomicLong(0);
+	/** The next slot to read, consumer only. */
+	final PaddedAtomicLong consumerIndex = new PaddedAtomicLong(0);
+	/**
+	 * Constructor.
+	 * @param capacity the capacity, rounded up to the next power of two
+	 */
+	SpscArrayQueue(int capacity) {
+		int c = roundToPowerOfTwo(capacity);
+		this.buffer = new AtomicReferenceArray<T>(c);
+		this.mask = c - 1;
+	}
+	@Override
+	public boolean offer(T value) {
+		long p = producerIndex.get();
+		int offset = (int)p & mask;
+		if (buffer.get(offset) != null) {
+			return false;
+		}
+		buffer.lazySet(offset, value);
+		producerIndex.lazySet(p + 1);
+		return true;
+	}
+	@Override
+	public T poll() {
+		long c = consumerIndex.get();
+		int offset = (int)c & mask;
+		T v = buffer.get(offset);
+		if (v == null) {
+			return null;
+		}
+		buffer.lazySet(offset, null);
+		consumerIndex.lazySet(c + 1);
+		return v;
+	}
+	@Override
+	public boolean isEmpty() {
+		return buffer.get((int)consumerIndex.get() & mask) == null;
+	}
+	@Override
+	public int size() {
+		long c = consumerIndex.get();
+		long n = producerIndex.get() - c;
+		return (int)Math.max(0, Math.min(n, mask + 1));
+	}
+	/**
+	 * @param capacity the requested capacity
+	 * @return the smallest power of two not less than capacity
+	 */
+	static int roundToPowerOfTwo(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity <= 0");
+		}
+		return 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1));
+	}
+}
@@ -0,0 +1,129 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one named stage, shared by all registrations of the
+ * stage and updated by {@link Metrics#instrument(String, hu.akarnokd.reactive4java.reactive.Observable)}.
+ * <p>The {@code next()} latency is the time the downstream spends in
+ * {@code next()}, so it includes every later stage of the chain; the cost
+ * of a stage is the difference to the latency of the next instrumented
+ * stage. Only every n-th value is timed, see {@link Metrics#setSampling(int)};
+ * the value counts are exact but are published in batches, so they lag by
+ * up to {@link InstrumentedObserver#FLUSH} values per active
+ * registration.</p>
+ */
+public final class StageMetrics implements StageMetricsMBean {
+	/** The stage name. */
+	final String name;
+	/** The values relayed. */
+	final AtomicLong nexts = new AtomicLong();
+	/** The errors relayed. */
+	final AtomicLong errors = new AtomicLong();
+	/** The finishes relayed. */
+	final AtomicLong finishes = new AtomicLong();
+	/** The registrations. */
+	final AtomicLong subscriptions = new AtomicLong();
+	/** The active registrations. */
+	final AtomicInteger active = new AtomicInteger();
+	/** The sampled time spent in the downstream {@code next()}, nanoseconds. */
+	final LatencyHistogram nextLatency = new LatencyHistogram();
+	/** The lifetime of the ended registrations, nanoseconds. */
+	final LatencyHistogram lifetime = new LatencyHistogram();
+	/** The queues of the active registrations. */
+	final CopyOnWriteArrayList<SimpleQueue<?>> queues = new CopyOnWriteArrayList<SimpleQueue<?>>();
+	/**
+	 * Constructor.
+	 * @param name the stage name
+	 */
+	public StageMetrics(String name) {
+		this.name = name;
+	}
+	/** @return the histogram of the sampled {@code next()} latencies in nanoseconds */
+	public LatencyHistogram nextLatency() {
+		return nextLatency;
+	}
+	/** @return the histogram of the registration lifetimes in nanoseconds */
+	public LatencyHistogram lifetime() {
+		return lifetime;
+	}
+	@Override
+	public String getName() {
+		return name;
+	}
+	@Override
+	public long getNextCount() {
+		return nexts.get();
+	}
+	@Override
+	public long getErrorCount() {
+		return errors.get();
+	}
+	@Override
+	public long getFinishCount() {
+		return finishes.get();
+	}
+	@Override
+	public long getSubscriptionCount() {
+		return subscriptions.get();
+	}
+	@Override
+	public int getActiveSubscriptions() {
+		return active.get();
+	}
+	@Override
+	public double getNextLatencyMeanNanos() {
+		return nextLatency.mean();
+	}
+	@Override
+	public long getNextLatencyP50Nanos() {
+		return nextLatency.percentile(50);
+	}
+	@Override
+	public long getNextLatencyP99Nanos() {
+		return nextLatency.percentile(99);
+	}
+	@Override
+	public long getNextLatencyP999Nanos() {
+		return nextLatency.percentile(99.9);
+	}
+	@Override
+	public long getNextLatencyMaxNanos() {
+		return nextLatency.max();
+	}
+	@Override
+	public long getLifetimeP50Millis() {
+		return TimeUnit.NANOSECONDS.toMillis(lifetime.percentile(50));
+	}
+	@Override
+	public long getLifetimeMaxMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(lifetime.max());
+	}
+	@Override
+	public int getQueueDepth() {
+		int n = 0;
+		for (SimpleQueue<?> q : queues) {
+			n += q.size();
+		}
+		return n;
+	}
+	@Override
+	public void reset() {
+		nexts.set(0);
+		errors.set(0);
+		finishes.set(0);
+		subscriptions.set(0);
+		nextLatency.reset();
+		lifetime.reset();
+	}
+	@Override
+	public String toString() {
+		return String.format("%s: next=%d error=%d finish=%d subscriptions=%d/%d"
+				+ " next p50=%dns p99=%dns max=%dns queue=%d",
+				name, getNextCount(), getErrorCount(), getFinishCount(),
+				getActiveSubscriptions(), getSubscriptionCount(),
+				getNextLatencyP50Nanos(), getNextLatencyP99Nanos(), getNextLatencyMaxNanos(),
+				getQueueDepth());
+	}
+}
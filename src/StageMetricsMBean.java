@@ -0,0 +1,36 @@
+/**
+ * The JMX view of a {@link StageMetrics}, registered by
+ * {@link JmxMetricsRegistry}.
+ */
+public interface StageMetricsMBean {
+	/** @return the stage name */
+	String getName();
+	/** @return the number of values relayed */
+	long getNextCount();
+	/** @return the number of errors relayed */
+	long getErrorCount();
+	/** @return the number of finishes relayed */
+	long getFinishCount();
+	/** @return the number of registrations so far */
+	long getSubscriptionCount();
+	/** @return the number of registrations not yet terminated or closed */
+	int getActiveSubscriptions();
+	/** @return the mean time spent in the downstream {@code next()}, in nanoseconds */
+	double getNextLatencyMeanNanos();
+	/** @return the median time spent in the downstream {@code next()}, in nanoseconds */
+	long getNextLatencyP50Nanos();
+	/** @return the 99th percentile of the time spent in the downstream {@code next()}, in nanoseconds */
+	long getNextLatencyP99Nanos();
+	/** @return the 99.9th percentile of the time spent in the downstream {@code next()}, in nanoseconds */
+	long getNextLatencyP999Nanos();
+	/** @return the longest time spent in the downstream {@code next()}, in nanoseconds */
+	long getNextLatencyMaxNanos();
+	/** @return the median lifetime of the ended registrations, in milliseconds */
+	long getLifetimeP50Millis();
+	/** @return the longest lifetime of the ended registrations, in milliseconds */
+	long getLifetimeMaxMillis();
+	/** @return the values waiting in the queues of the active registrations */
+	int getQueueDepth();
+	/** Clears the counters and the histograms. */
+	void reset();
+}
@@ -0,0 +1,14 @@
+/**
+ * The link between a {@link FlowObservable} and a {@link FlowObserver}
+ * through which the observer signals its demand.
+ */
+public interface Subscription {
+	/**
+	 * Allows the source to send up to n more values.
+	 * The demand is cumulative and saturates at {@code Long.MAX_VALUE}.
+	 * @param n the additional number of values, positive
+	 */
+	void request(long n);
+	/** Stops the delivery of values and releases the source. */
+	void cancel();
+}
@@ -0,0 +1,61 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A registration reported by {@link SubscriptionTracker#check()}.
+ */
+public final class SubscriptionLeak {
+	/** The kinds of leaks, in the order of severity. */
+	public enum Kind {
+		/** The registration is still active after the threshold. */
+		LONG_LIVED,
+		/** The source terminated, but the registration was not closed within the threshold. */
+		NOT_CLOSED_AFTER_TERMINATION,
+		/** The registration was garbage collected without being closed. */
+		COLLECTED_UNCLOSED
+	}
+	/** The kind. */
+	final Kind kind;
+	/** The name given to the tracked stage. */
+	final String name;
+	/** The time since the registration in nanoseconds. */
+	final long ageNanos;
+	/** The stack of the registration, null if it was not sampled. */
+	final Throwable stack;
+	/**
+	 * Constructor.
+	 * @param kind the kind
+	 * @param name the name given to the tracked stage
+	 * @param ageNanos the time since the registration in nanoseconds
+	 * @param stack the stack of the registration, null if it was not sampled
+	 */
+	SubscriptionLeak(Kind kind, String name, long ageNanos, Throwable stack) {
+		this.kind = kind;
+		this.name = name;
+		this.ageNanos = ageNanos;
+		this.stack = stack;
+	}
+	/** @return the kind */
+	public Kind getKind() {
+		return kind;
+	}
+	/** @return the name given to the tracked stage */
+	public String getName() {
+		return name;
+	}
+	/**
+	 * @param unit the time unit
+	 * @return the time from the registration to the report
+	 */
+	public long getAge(TimeUnit unit) {
+		return unit.convert(ageNanos, TimeUnit.NANOSECONDS);
+	}
+	/** @return the stack of the registration, null if it was not sampled */
+	public Throwable getStack() {
+		return stack;
+	}
+	@Override
+	public String toString() {
+		return kind + " " + name + " registered " + getAge(TimeUnit.MILLISECONDS) + " ms ago"
+				+ (stack != null ? "" : " (stack not sampled)");
+	}
+}
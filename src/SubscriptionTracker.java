@@ -0,0 +1,241 @@
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the registrations of the stages wrapped by {@link #track} and
+ * reports the ones which are not closed in time.
+ * <p>Each registration is held through a weak reference, so the tracker
+ * never keeps a leaked chain alive; {@link #check()} reports
+ * <ul>
+ * <li>the registrations still active after the threshold,</li>
+ * <li>the registrations whose source terminated, but which were not closed
+ * within the threshold, and</li>
+ * <li>the registrations garbage collected without being closed.</li>
+ * </ul>
+ * Each registration is reported at most once per {@link SubscriptionLeak.Kind}.
+ * The stack of every n-th registration is captured, so the report shows
+ * where the leaked chain was registered.</p>
+ * <p>Like {@link Metrics}, the tracking is decided when the chain is
+ * assembled: while no tracker is installed, {@code track} returns the stage
+ * itself. An installed tracker costs a few objects per registration and
+ * nothing per value.</p>
+ */
+public final class SubscriptionTracker {
+	/** The tracker of the chains assembled from now on, null if none. */
+	static volatile SubscriptionTracker installed;
+	/** The registrations not closed yet. */
+	final Set<Entry> live = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+	/** The entries of the collected registrations. */
+	final ReferenceQueue<Closeable> collected = new ReferenceQueue<Closeable>();
+	/** The threshold in nanoseconds. */
+	final long thresholdNanos;
+	/** The stack of every {@code stackMask + 1}-th registration is captured. */
+	final long stackMask;
+	/** The clock. */
+	final Clock clock;
+	/** The number of registrations. */
+	final AtomicLong registrations = new AtomicLong();
+	/**
+	 * Creates a tracker capturing the stack of every 64th registration.
+	 * @param threshold the time after which a registration is reported
+	 * @param unit the threshold unit
+	 */
+	public SubscriptionTracker(long threshold, TimeUnit unit) {
+		this(threshold, unit, 64, Clock.SYSTEM);
+	}
+	/**
+	 * Constructor.
+	 * @param threshold the time after which an active registration, or a
+	 * terminated but not closed registration, is reported
+	 * @param unit the threshold unit
+	 * @param stackSampling the stack of every n-th registration is captured,
+	 * rounded up to a power of two, 1 captures every stack
+	 * @param clock the clock, e.g. a {@link TestScheduler}
+	 */
+	public SubscriptionTracker(long threshold, TimeUnit unit, int stackSampling, Clock clock) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("threshold < 0");
+		}
+		this.thresholdNanos = unit.toNanos(threshold);
+		this.stackMask = SpscArrayQueue.roundToPowerOfTwo(stackSampling) - 1;
+		this.clock = clock;
+	}
+	/**
+	 * Installs the tracker of the chains assembled from now on, or disables
+	 * the tracking with null.
+	 * @param tracker the tracker or null
+	 */
+	public static void install(SubscriptionTracker tracker) {
+		installed = tracker;
+	}
+	/** @return the installed tracker, null if none */
+	public static SubscriptionTracker installed() {
+		return installed;
+	}
+	/**
+	 * Tracks the registrations of a stage with the installed tracker.
+	 * @param <T> the element type
+	 * @param name the name of the stage in the reports
+	 * @param source the stage
+	 * @return the tracked stage, or the stage itself if no tracker is installed
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ObservableBuilder<T> track(String name, Observable<? extends T> source) {
+		SubscriptionTracker t = installed;
+		if (t == null) {
+			return ObservableBuilder.from((Observable<T>)source);
+		}
+		return t.wrap(name, source);
+	}
+	/**
+	 * Tracks the registrations of a stage with this tracker.
+	 * @param <T> the element type
+	 * @param name the name of the stage in the reports
+	 * @param source the stage
+	 * @return the tracked stage
+	 */
+	public <T> ObservableBuilder<T> wrap(final String name, final Observable<? extends T> source) {
+		return ObservableBuilder.from(new Observable<T>() {
+			@Override
+			public Closeable register(Observer<? super T> observer) {
+				return new TrackedSubscription<T>(observer, SubscriptionTracker.this, name).registerWith(source);
+			}
+		});
+	}
+	/**
+	 * Adds the entry of a new registration.
+	 * @param registration the registration
+	 * @param name the name of the stage
+	 * @return the entry
+	 */
+	Entry add(Closeable registration, String name) {
+		long n = registrations.incrementAndGet();
+		Throwable stack = (n & stackMask) == 0 ? new Throwable("Registration of " + name) : null;
+		Entry e = new Entry(registration, collected, name, clock.nanoTime(), stack);
+		live.add(e);
+		return e;
+	}
+	/**
+	 * Records the termination of the source of a registration.
+	 * @param e the entry
+	 */
+	void terminated(Entry e) {
+		if (!e.terminated) {
+			e.terminatedAt = clock.nanoTime();
+			e.terminated = true;
+		}
+	}
+	/**
+	 * Removes the entry of a closed registration.
+	 * @param e the entry
+	 */
+	void remove(Entry e) {
+		live.remove(e);
+		e.clear();
+	}
+	/**
+	 * Collects the leaks found since the previous check.
+	 * @return the leaks, empty if none
+	 */
+	public List<SubscriptionLeak> check() {
+		List<SubscriptionLeak> result = new ArrayList<SubscriptionLeak>();
+		long now = clock.nanoTime();
+		Entry e;
+		while ((e = (Entry)collected.poll()) != null) {
+			if (live.remove(e)) {
+				result.add(new SubscriptionLeak(SubscriptionLeak.Kind.COLLECTED_UNCLOSED, e.name, now - e.created, e.stack));
+			}
+		}
+		for (Entry f : live) {
+			SubscriptionLeak.Kind kind;
+			if (f.terminated) {
+				if (now - f.terminatedAt < thresholdNanos) {
+					continue;
+				}
+				kind = SubscriptionLeak.Kind.NOT_CLOSED_AFTER_TERMINATION;
+			} else {
+				if (now - f.created < thresholdNanos) {
+					continue;
+				}
+				kind = SubscriptionLeak.Kind.LONG_LIVED;
+			}
+			if (f.reported == null || f.reported.compareTo(kind) < 0) {
+				f.reported = kind;
+				result.add(new SubscriptionLeak(kind, f.name, now - f.created, f.stack));
+			}
+		}
+		return result;
+	}
+	/**
+	 * Checks the registrations periodically.
+	 * @param pool the pool running the checks
+	 * @param period the time between the checks
+	 * @param unit the time unit
+	 * @param reporter receives the leaks found
+	 * @return closes the periodic checks
+	 */
+	public Closeable checkPeriodically(Scheduler pool, long period, TimeUnit unit,
+			final Action1<? super SubscriptionLeak> reporter) {
+		return pool.schedule(new Runnable() {
+			@Override
+			public void run() {
+				for (SubscriptionLeak leak : check()) {
+					reporter.invoke(leak);
+				}
+			}
+		}, period, period, unit);
+	}
+	/** @return the number of registrations not closed yet, including the collected ones not checked yet */
+	public int liveCount() {
+		return live.size();
+	}
+	/** @return the number of registrations tracked so far */
+	public long registrationCount() {
+		return registrations.get();
+	}
+	/**
+	 * The weak reference to a registration with its tracking state.
+	 */
+	static final class Entry extends WeakReference<Closeable> {
+		/** The name of the stage. */
+		final String name;
+		/** The registration time. */
+		final long created;
+		/** The stack of the registration, null if not sampled. */
+		final Throwable stack;
+		/** The source terminated. */
+		volatile boolean terminated;
+		/** The time of the termination, valid if terminated. */
+		volatile long terminatedAt;
+		/** The most severe kind reported so far, null if none. */
+		volatile SubscriptionLeak.Kind reported;
+		/**
+		 * Constructor.
+		 * @param registration the registration
+		 * @param queue the queue of the collected registrations
+		 * @param name the name of the stage
+		 * @param created the registration time
+		 * @param stack the stack of the registration, null if not sampled
+		 */
+		Entry(Closeable registration, ReferenceQueue<Closeable> queue, String name, long created, Throwable stack) {
+			super(registration, queue);
+			this.name = name;
+			this.created = created;
+			this.stack = stack;
+		}
+	}
+}
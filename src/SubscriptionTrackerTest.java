@@ -0,0 +1,197 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class SubscriptionTrackerTest {
+	/** 仮想時間のスケジューラ */
+	final TestScheduler scheduler = new TestScheduler();
+	/** 閾値 5 秒、すべてのスタックを取るトラッカー */
+	final SubscriptionTracker tracker = new SubscriptionTracker(5, TimeUnit.SECONDS, 1, scheduler);
+
+	@After
+	public void tearDown() {
+		SubscriptionTracker.install(null);
+	}
+
+	/** 何もしない Observer */
+	static <T> Observer<T> ignore() {
+		return new Observer<T>() {
+			@Override
+			public void next(T value) { }
+
+			@Override
+			public void error(Throwable ex) { }
+
+			@Override
+			public void finish() { }
+		};
+	}
+
+	/**
+	 * 1 秒ごとに値を出すタイマー (MyReactiveTest.testCloseByBuffer と同じ)
+	 * @param name 名前
+	 * @param start 最初の値 - 1
+	 * @param log close の記録先
+	 */
+	Observable<Integer> timer(final String name, final int start, final List<Object> log) {
+		return Reactive.createWithCloseable(new Func1<Observer<? super Integer>, Closeable>() {
+			@Override
+			public Closeable invoke(final Observer<? super Integer> observer) {
+				final AtomicInteger number = new AtomicInteger(start);
+				final Closeable timer = scheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						observer.next(number.incrementAndGet());
+					}
+				}, 1, 1, TimeUnit.SECONDS);
+				return new Closeable() {
+					@Override
+					public void close() throws IOException {
+						log.add(name + "-close");
+						timer.close();
+						observer.finish();
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * testCloseByBuffer の順番で close され、take(1) が閉じたソースは報告されず、
+	 * finish 後に close されない外側の購読だけが報告される
+	 */
+	@Test
+	public void testCloseByBuffer() throws Exception {
+		SubscriptionTracker.install(tracker);
+		final List<Object> log = new ArrayList<Object>();
+		final Observable<Integer> source2 = SubscriptionTracker.track("timer2", timer("timer2", 10, log));
+
+		Closeable outer = SubscriptionTracker.track("outer",
+			SubscriptionTracker.track("timer1", timer("timer1", 0, log))
+			.buffer(3)
+			.take(1)
+			.invoke(new Action1<List<Integer>>() {
+				@Override
+				public void invoke(List<Integer> value) {
+					log.add(value);
+				}
+			})
+			.selectMany(source2)
+			.buffer(3)
+			.take(1))
+		.invoke(new Action1<List<Integer>>() {
+			@Override
+			public void invoke(List<Integer> value) {
+				log.add(value);
+			}
+		})
+		.register(SubscriptionTrackerTest.<List<Integer>>ignore());
+
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+		assertEquals(0, scheduler.pendingCount());
+		assertEquals(Arrays.<Object>asList(Arrays.asList(1, 2, 3), "timer1-close",
+				Arrays.asList(11, 12, 13), "timer2-close"), log);
+		assertEquals(3, tracker.registrationCount());
+		assertEquals(1, tracker.liveCount());
+
+		// finish から 5 秒たっても close されていない
+		scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+		List<SubscriptionLeak> leaks = tracker.check();
+		assertEquals(1, leaks.size());
+		assertEquals(SubscriptionLeak.Kind.NOT_CLOSED_AFTER_TERMINATION, leaks.get(0).getKind());
+		assertEquals("outer", leaks.get(0).getName());
+		assertNotNull(leaks.get(0).getStack());
+
+		outer.close();
+		assertEquals(0, tracker.liveCount());
+		assertTrue(tracker.check().isEmpty());
+	}
+
+	/**
+	 * 閾値を過ぎても生きている購読は一度だけ報告され、終了後も close されなければ再度報告される
+	 */
+	@Test
+	public void testLongLived() throws Exception {
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		Closeable c = tracker.wrap("hot", source).register(SubscriptionTrackerTest.<Integer>ignore());
+
+		scheduler.advanceTimeBy(4, TimeUnit.SECONDS);
+		assertTrue(tracker.check().isEmpty());
+
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		List<SubscriptionLeak> leaks = tracker.check();
+		assertEquals(1, leaks.size());
+		assertEquals(SubscriptionLeak.Kind.LONG_LIVED, leaks.get(0).getKind());
+		assertEquals(5, leaks.get(0).getAge(TimeUnit.SECONDS));
+		assertTrue(tracker.check().isEmpty());
+
+		source.finish();
+		scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+		leaks = tracker.check();
+		assertEquals(1, leaks.size());
+		assertEquals(SubscriptionLeak.Kind.NOT_CLOSED_AFTER_TERMINATION, leaks.get(0).getKind());
+
+		c.close();
+		assertEquals(0, tracker.liveCount());
+	}
+
+	/**
+	 * close されずに捨てられた購読は GC 後に報告される
+	 */
+	@Test
+	public void testCollected() throws Exception {
+		tracker.wrap("dropped", ObservableBuilder.range(0, 3, new CurrentThreadScheduler()))
+			.register(SubscriptionTrackerTest.<Integer>ignore());
+
+		List<SubscriptionLeak> leaks = new ArrayList<SubscriptionLeak>();
+		for (int i = 0; i < 50 && leaks.isEmpty(); i++) {
+			System.gc();
+			Thread.sleep(10);
+			leaks.addAll(tracker.check());
+		}
+		assertEquals(1, leaks.size());
+		assertEquals(SubscriptionLeak.Kind.COLLECTED_UNCLOSED, leaks.get(0).getKind());
+		assertEquals("dropped", leaks.get(0).getName());
+		assertEquals(0, tracker.liveCount());
+	}
+
+	/**
+	 * 定期チェックが報告する。トラッカーがなければ何も追跡されない
+	 */
+	@Test
+	public void testPeriodicAndDisabled() throws Exception {
+		final List<SubscriptionLeak> reported = new ArrayList<SubscriptionLeak>();
+		Closeable checks = tracker.checkPeriodically(scheduler, 1, TimeUnit.SECONDS, new Action1<SubscriptionLeak>() {
+			@Override
+			public void invoke(SubscriptionLeak value) {
+				reported.add(value);
+			}
+		});
+		Closeable c = tracker.wrap("hot", new MulticastObserver<Integer>()).register(SubscriptionTrackerTest.<Integer>ignore());
+		scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+		assertEquals(1, reported.size());
+		c.close();
+		checks.close();
+
+		SubscriptionTracker.install(null);
+		SubscriptionTracker.track("off", new MulticastObserver<Integer>()).register(SubscriptionTrackerTest.<Integer>ignore());
+		assertEquals(1, tracker.registrationCount());
+	}
+}
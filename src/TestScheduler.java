@@ -0,0 +1,182 @@
+import hu.akarnokd.reactive4java.base.Scheduler;
+
+import java.io.Closeable;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler with a virtual clock for testing the timed operators.
+ * <p>Nothing runs until the time is moved by {@link #advanceTimeBy} or
+ * {@link #advanceTo} (or {@link #triggerActions()} for the tasks already
+ * due); then the due tasks run on the calling thread in the order of their
+ * due time, and tasks due at the same time in the order they were
+ * scheduled. The clock is set to the due time of each task before it runs,
+ * so a task sees the time it was scheduled for.</p>
+ * <p>A {@code RuntimeException} thrown by a task stops a repeated task, as
+ * in {@code DefaultScheduler}, but is not lost: the tasks due until the
+ * target time still run, then the first such exception is rethrown by the
+ * {@code advance} method. The {@code CancellationException} of
+ * {@code DefaultRunnable.cancel()} only stops the task. Errors, such as
+ * failed assertions, propagate to the caller at once.</p>
+ */
+public class TestScheduler implements Scheduler, Clock {
+	/** The pending tasks. */
+	final PriorityQueue<Task> queue = new PriorityQueue<Task>();
+	/** The current virtual time in nanoseconds. */
+	long now;
+	/** The number of tasks scheduled, orders the tasks due at the same time. */
+	long sequence;
+	/** A scheduled task, it is also its own cancel handler. */
+	final class Task implements Comparable<Task>, Closeable {
+		/** The task. */
+		final Runnable run;
+		/** The period in nanoseconds, 0 for a single run. */
+		final long period;
+		/** The due time. */
+		long time;
+		/** The scheduling order. */
+		long order;
+		/** Closed. */
+		boolean cancelled;
+		/**
+		 * Constructor.
+		 * @param run the task
+		 * @param time the due time
+		 * @param period the period in nanoseconds, 0 for a single run
+		 */
+		Task(Runnable run, long time, long period) {
+			this.run = run;
+			this.time = time;
+			this.period = period;
+		}
+		@Override
+		public int compareTo(Task o) {
+			if (time != o.time) {
+				return time < o.time ? -1 : 1;
+			}
+			return order < o.order ? -1 : (order == o.order ? 0 : 1);
+		}
+		@Override
+		public void close() {
+			synchronized (TestScheduler.this) {
+				cancelled = true;
+				queue.remove(this);
+			}
+		}
+	}
+	/**
+	 * Enqueues a task.
+	 * @param run the task
+	 * @param delay the delay in nanoseconds
+	 * @param period the period in nanoseconds, 0 for a single run
+	 * @return the task
+	 */
+	synchronized Closeable add(Runnable run, long delay, long period) {
+		Task t = new Task(run, now + Math.max(0, delay), period);
+		t.order = sequence++;
+		queue.add(t);
+		return t;
+	}
+	@Override
+	public Closeable schedule(Runnable run) {
+		return add(run, 0, 0);
+	}
+	@Override
+	public Closeable schedule(Runnable run, long delay, TimeUnit unit) {
+		return add(run, unit.toNanos(delay), 0);
+	}
+	@Override
+	public Closeable schedule(Runnable run, long initialDelay, long betweenDelay, TimeUnit unit) {
+		return add(run, unit.toNanos(initialDelay), Math.max(1, unit.toNanos(betweenDelay)));
+	}
+	@Override
+	public synchronized long nanoTime() {
+		return now;
+	}
+	/**
+	 * @param unit the time unit
+	 * @return the virtual time since the creation of the scheduler
+	 */
+	public synchronized long now(TimeUnit unit) {
+		return unit.convert(now, TimeUnit.NANOSECONDS);
+	}
+	/**
+	 * Moves the clock forward and runs the tasks which become due.
+	 * @param delay the amount of time
+	 * @param unit the time unit
+	 * @throws RuntimeException the first exception thrown by a task
+	 */
+	public void advanceTimeBy(long delay, TimeUnit unit) {
+		long target;
+		synchronized (this) {
+			target = now + unit.toNanos(delay);
+		}
+		runUntil(target);
+	}
+	/**
+	 * Moves the clock to the given time and runs the tasks which become due;
+	 * a time in the past only runs the tasks due now.
+	 * @param time the time since the creation of the scheduler
+	 * @param unit the time unit
+	 * @throws RuntimeException the first exception thrown by a task
+	 */
+	public void advanceTo(long time, TimeUnit unit) {
+		runUntil(unit.toNanos(time));
+	}
+	/**
+	 * Runs the tasks due at the current time.
+	 * @throws RuntimeException the first exception thrown by a task
+	 */
+	public void triggerActions() {
+		runUntil(nanoTime());
+	}
+	/** @return the number of pending tasks */
+	public synchronized int pendingCount() {
+		return queue.size();
+	}
+	/**
+	 * Runs the tasks due until the target time, including the tasks they
+	 * schedule within it, then sets the clock to the target.
+	 * @param target the target time in nanoseconds
+	 * @throws RuntimeException the first exception thrown by a task
+	 */
+	void runUntil(long target) {
+		RuntimeException failure = null;
+		for (;;) {
+			Task t;
+			synchronized (this) {
+				t = queue.peek();
+				if (t == null || t.time > target) {
+					now = Math.max(now, target);
+					break;
+				}
+				queue.poll();
+				now = Math.max(now, t.time);
+			}
+			boolean repeat = t.period > 0;
+			try {
+				t.run.run();
+			} catch (CancellationException ex) {
+				repeat = false;
+			} catch (RuntimeException ex) {
+				repeat = false;
+				if (failure == null) {
+					failure = ex;
+				}
+			}
+			if (repeat) {
+				synchronized (this) {
+					if (!t.cancelled) {
+						t.time += t.period;
+						t.order = sequence++;
+						queue.add(t);
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class TestSchedulerTest {
+	/** 仮想時間のスケジューラ */
+	final TestScheduler scheduler = new TestScheduler();
+	/** 受け取った値 */
+	final List<Object> actual = new ArrayList<Object>();
+	/** 値を actual に溜める */
+	final Observer<Object> collector = new Observer<Object>() {
+		@Override
+		public void next(Object value) { actual.add(value); }
+
+		@Override
+		public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+		@Override
+		public void finish() { actual.add("finish!"); }
+	};
+
+	/**
+	 * 指定した時刻に値を追加するタスク
+	 * @param value 値
+	 * @return タスク
+	 */
+	Runnable add(final Object value) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				actual.add(value + "@" + scheduler.now(TimeUnit.MILLISECONDS));
+			}
+		};
+	}
+
+	/**
+	 * 時刻順、同じ時刻なら登録順に実行され、時間を進めるまで何も実行されない
+	 */
+	@Test
+	public void testOrdering() throws Exception {
+		scheduler.schedule(add("c"), 3, TimeUnit.SECONDS);
+		scheduler.schedule(add("a"), 1, TimeUnit.SECONDS);
+		scheduler.schedule(add("b"), 1, TimeUnit.SECONDS);
+		Closeable periodic = scheduler.schedule(add("p"), 500, 1000, TimeUnit.MILLISECONDS);
+		scheduler.schedule(add("now"));
+		assertEquals(Arrays.<Object>asList(), actual);
+
+		scheduler.triggerActions();
+		assertEquals(Arrays.<Object>asList("now@0"), actual);
+
+		scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList("now@0", "p@500", "a@1000", "b@1000", "p@1500"), actual);
+		assertEquals(2000, scheduler.now(TimeUnit.MILLISECONDS));
+
+		periodic.close();
+		scheduler.advanceTo(10, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList("now@0", "p@500", "a@1000", "b@1000", "p@1500", "c@3000"), actual);
+		assertEquals(0, scheduler.pendingCount());
+	}
+
+	/**
+	 * タスクの例外は握りつぶさず、時間を進め終わってから最初のものを投げる
+	 */
+	@Test
+	public void testTaskFailure() {
+		final IllegalStateException first = new IllegalStateException("first");
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				actual.add("p@" + scheduler.now(TimeUnit.MILLISECONDS));
+				throw first;
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalArgumentException("second");
+			}
+		}, 2, TimeUnit.SECONDS);
+		scheduler.schedule(add("a"), 3, TimeUnit.SECONDS);
+		try {
+			scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+			fail("no exception");
+		} catch (IllegalStateException ex) {
+			assertSame(first, ex);
+		}
+		// 例外を投げた繰り返しタスクは止まり、残りのタスクは実行されている
+		assertEquals(Arrays.<Object>asList("p@1000", "a@3000"), actual);
+		assertEquals(5000, scheduler.now(TimeUnit.MILLISECONDS));
+		assertEquals(0, scheduler.pendingCount());
+
+		// 投げた例外は次の advance には残らない
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * ReactiveEx.timeout も仮想時間で動く
+	 */
+	@Test
+	public void testTimeout() {
+		MulticastObserver<Integer> source = new MulticastObserver<Integer>();
+		ReactiveEx.timeout(source, 3, TimeUnit.SECONDS, Reactive.singleton(99, scheduler), scheduler).register(collector);
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		source.next(1);
+		scheduler.advanceTimeBy(2500, TimeUnit.MILLISECONDS);
+		source.next(2);
+		// 最後の値から 3 秒経つまではタイムアウトしない
+		scheduler.advanceTimeBy(2900, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(1, 2), actual);
+
+		// タイマーはタイムアウトの 1/4 ごとに確認するので、遅くとも 3.75 秒で切り替わる
+		scheduler.advanceTimeBy(850, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList(1, 2, 99, "finish!"), actual);
+		assertEquals(0, source.observerCount());
+	}
+
+	/**
+	 * PrimitiveObservables.generateTimed も仮想時間で動く
+	 */
+	@Test
+	public void testGenerateTimed() {
+		PrimitiveObservables.generateTimed(1, new LongGenerator() {
+			@Override
+			public boolean hasNext(long state) { return state <= 5; }
+
+			@Override
+			public long value(long state) { return state; }
+
+			@Override
+			public long delay(long state) { return state * 100; }
+
+			@Override
+			public long next(long state) { return state + 1; }
+		}, TimeUnit.MILLISECONDS, scheduler).register(new LongObserver() {
+			@Override
+			public void next(long value) { actual.add(value + "@" + scheduler.now(TimeUnit.MILLISECONDS)); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+
+		scheduler.advanceTimeBy(600, TimeUnit.MILLISECONDS);
+		assertEquals(Arrays.<Object>asList("1@100", "2@300", "3@600"), actual);
+		scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+		assertEquals(Arrays.<Object>asList("1@100", "2@300", "3@600", "4@1000", "5@1500", "finish!"), actual);
+	}
+}
@@ -0,0 +1,149 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registration of
+ * {@link PrimitiveObservables#bufferLongs(LongObservable, long, TimeUnit, Scheduler)}:
+ * collects the longs into pooled chunks and emits the current chunk
+ * periodically on the scheduler.
+ */
+final class TimedLongBuffer implements LongObserver, Runnable, Closeable {
+	/** The downstream. */
+	final Observer<? super LongChunk> observer;
+	/** The chunk pool. */
+	final LongChunkPool chunks;
+	/** The lock serializing the values and the timer. */
+	final Lock lock = new ReentrantLock();
+	/** The chunk being filled. */
+	LongChunk chunk;
+	/** The downstream was terminated or closed. */
+	boolean terminated;
+	/** The timer registration. */
+	Closeable timer;
+	/** The source registration. */
+	Closeable source;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param initialCapacity the initial chunk capacity
+	 */
+	TimedLongBuffer(Observer<? super LongChunk> observer, int initialCapacity) {
+		this.observer = observer;
+		this.chunks = new LongChunkPool(initialCapacity, 4);
+		this.chunk = chunks.acquire();
+	}
+	/**
+	 * Starts the timer and registers with the source.
+	 * @param src the source
+	 * @param time the window length
+	 * @param unit the time unit
+	 * @param pool the timer pool
+	 * @return this
+	 */
+	Closeable registerWith(LongObservable src, long time, TimeUnit unit, Scheduler pool) {
+		Closeable t = pool.schedule(this, time, time, unit);
+		Closeable s = src.register(this);
+		lock.lock();
+		try {
+			timer = t;
+			source = s;
+			if (terminated) {
+				closeAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+	@Override
+	public void next(long value) {
+		lock.lock();
+		try {
+			if (!terminated) {
+				chunk.add(value);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		lock.lock();
+		try {
+			if (!terminated) {
+				terminated = true;
+				observer.error(ex);
+				closeAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void finish() {
+		lock.lock();
+		try {
+			if (!terminated) {
+				terminated = true;
+				LongChunk c = chunk;
+				chunk = null;
+				emit(c);
+				observer.finish();
+				closeAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void run() {
+		lock.lock();
+		try {
+			if (!terminated) {
+				try {
+					observer.next(chunk);
+				} finally {
+					chunk = chunks.reuse(chunk);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			terminated = true;
+			closeAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Emits and releases a chunk, lock held.
+	 * @param c the chunk
+	 */
+	void emit(LongChunk c) {
+		try {
+			observer.next(c);
+		} finally {
+			c.release();
+		}
+	}
+	/** Closes the timer and the source, lock held. */
+	void closeAll() {
+		Closeables.close0(timer);
+		Closeables.close0(source);
+		if (chunk != null) {
+			chunk.release();
+			chunk = null;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The registration of
+ * {@link PrimitiveObservables#generateTimed(long, LongGenerator, TimeUnit, Scheduler)}:
+ * emits the values of a {@link LongGenerator} at deadlines computed from the
+ * start of the sequence.
+ * <p>The deadline of a value is the previous deadline plus its delay, so the
+ * time spent emitting and the scheduler latency do not accumulate into drift;
+ * a late value is emitted right away and the following ones catch up. Waits
+ * longer than {@link #PARK_LIMIT} go through the scheduler, which is woken
+ * up early, and the rest is parked on the pool thread for precision. With a
+ * scheduler which is a {@link Clock}, its time is used and every wait goes
+ * through the scheduler.</p>
+ */
+final class TimedLongGenerator implements Runnable, Closeable {
+	/** The longest wait in nanoseconds done by parking instead of rescheduling. */
+	static final long PARK_LIMIT = 1000000L;
+	/** The downstream. */
+	final LongObserver observer;
+	/** The generator. */
+	final LongGenerator generator;
+	/** The unit of the delays. */
+	final TimeUnit unit;
+	/** The pool. */
+	final Scheduler pool;
+	/** The current state. */
+	long state;
+	/** The clock, the pool if it is a clock. */
+	final Clock clock;
+	/** The longest wait done by parking, 0 with a virtual clock. */
+	final long parkLimit;
+	/** The clock time when the value of the current state is due. */
+	long deadline;
+	/** The first run computed the first deadline. */
+	boolean started;
+	/** Set when the registration is closed. */
+	volatile boolean cancelled;
+	/** The pending scheduled run. */
+	volatile Closeable task;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param initial the initial state
+	 * @param generator the generator
+	 * @param unit the unit of the delays
+	 * @param pool the pool
+	 */
+	TimedLongGenerator(LongObserver observer, long initial, LongGenerator generator, TimeUnit unit, Scheduler pool) {
+		this.observer = observer;
+		this.state = initial;
+		this.generator = generator;
+		this.unit = unit;
+		this.pool = pool;
+		if (pool instanceof Clock) {
+			this.clock = (Clock)pool;
+			this.parkLimit = 0;
+		} else {
+			this.clock = Clock.SYSTEM;
+			this.parkLimit = PARK_LIMIT;
+		}
+	}
+	/**
+	 * Starts the sequence.
+	 * @return this
+	 */
+	Closeable start() {
+		deadline = clock.nanoTime();
+		pool.schedule(this);
+		return this;
+	}
+	@Override
+	public void run() {
+		try {
+			if (!started) {
+				started = true;
+				if (!generator.hasNext(state)) {
+					observer.finish();
+					return;
+				}
+				deadline += unit.toNanos(generator.delay(state));
+			}
+			for (;;) {
+				if (cancelled) {
+					return;
+				}
+				long remaining = deadline - clock.nanoTime();
+				if (remaining > parkLimit) {
+					task = pool.schedule(this, remaining - parkLimit / 2, TimeUnit.NANOSECONDS);
+					return;
+				}
+				if (remaining > 0) {
+					LockSupport.parkNanos(remaining);
+					continue;
+				}
+				observer.next(generator.value(state));
+				state = generator.next(state);
+				if (cancelled) {
+					return;
+				}
+				if (!generator.hasNext(state)) {
+					observer.finish();
+					return;
+				}
+				deadline += unit.toNanos(generator.delay(state));
+			}
+		} catch (Throwable ex) {
+			observer.error(ex);
+		}
+	}
+	@Override
+	public void close() {
+		cancelled = true;
+		Closeables.close0(task);
+	}
+}
@@ -0,0 +1,125 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registration of
+ * {@link PrimitiveObservables#tumblingStatistics(LongObservable, long, TimeUnit, Scheduler)}:
+ * accumulates the longs into statistics and emits the current statistics
+ * periodically on the scheduler.
+ */
+final class TimedLongStatistics implements LongObserver, Runnable, Closeable {
+	/** The downstream. */
+	final Observer<? super LongStatistics> observer;
+	/** The lock serializing the values and the timer. */
+	final Lock lock = new ReentrantLock();
+	/** The statistics of the current window. */
+	LongStatistics stats = new LongStatistics();
+	/** The downstream was terminated or closed. */
+	boolean terminated;
+	/** The timer registration. */
+	Closeable timer;
+	/** The source registration. */
+	Closeable source;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 */
+	TimedLongStatistics(Observer<? super LongStatistics> observer) {
+		this.observer = observer;
+	}
+	/**
+	 * Starts the timer and registers with the source.
+	 * @param src the source
+	 * @param time the window length
+	 * @param unit the time unit
+	 * @param pool the timer pool
+	 * @return this
+	 */
+	Closeable registerWith(LongObservable src, long time, TimeUnit unit, Scheduler pool) {
+		Closeable t = pool.schedule(this, time, time, unit);
+		Closeable s = src.register(this);
+		lock.lock();
+		try {
+			timer = t;
+			source = s;
+			if (terminated) {
+				closeAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+		return this;
+	}
+	@Override
+	public void next(long value) {
+		lock.lock();
+		try {
+			if (!terminated) {
+				stats.accept(value);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		lock.lock();
+		try {
+			if (!terminated) {
+				terminated = true;
+				observer.error(ex);
+				closeAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void finish() {
+		lock.lock();
+		try {
+			if (!terminated) {
+				terminated = true;
+				observer.next(stats);
+				observer.finish();
+				closeAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void run() {
+		lock.lock();
+		try {
+			if (!terminated) {
+				LongStatistics s = stats;
+				stats = new LongStatistics();
+				observer.next(s);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			terminated = true;
+			closeAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/** Closes the timer and the source, lock held. */
+	void closeAll() {
+		Closeables.close0(timer);
+		Closeables.close0(source);
+	}
+}
@@ -0,0 +1,142 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The registration of
+ * {@link ReactiveEx#window(Observable, int, long, TimeUnit, Scheduler)}:
+ * consecutive windows, each closed after the time span or after
+ * {@code count} elements, whichever comes first.
+ * <p>Each window has its own timer, so a window closed by the count does not
+ * shorten the next one. The elements and the timers are serialized by a
+ * lock; the elements are relayed as they arrive, nothing is buffered.</p>
+ * @param <T> the element type
+ */
+final class TimedWindow<T> extends WindowOperator<T> {
+	/** The maximum window size. */
+	final int count;
+	/** The time span of a window. */
+	final long time;
+	/** The time unit. */
+	final TimeUnit unit;
+	/** The timer pool. */
+	final Scheduler pool;
+	/** The lock serializing the elements and the timers. */
+	final Lock lock = new ReentrantLock();
+	/** The current window, null when the downstream is closed or terminated. */
+	Window<T> current;
+	/** The timer of the current window. */
+	Closeable timer;
+	/** The source terminated. */
+	boolean done;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param count the maximum window size
+	 * @param time the time span of a window
+	 * @param unit the time unit
+	 * @param pool the timer pool
+	 */
+	TimedWindow(Observer<? super Observable<T>> observer, int count, long time, TimeUnit unit, Scheduler pool) {
+		super(observer);
+		this.count = count;
+		this.time = time;
+		this.unit = unit;
+		this.pool = pool;
+	}
+	/**
+	 * Opens the first window and registers with the source.
+	 * @param src the source
+	 * @return this
+	 */
+	@Override
+	Closeable registerWith(Observable<? extends T> src) {
+		lock.lock();
+		try {
+			nextWindow();
+		} finally {
+			lock.unlock();
+		}
+		return super.registerWith(src);
+	}
+	/** Closes the current window and opens the next one, lock held. */
+	void nextWindow() {
+		Closeables.close0(timer);
+		timer = null;
+		if (current != null) {
+			current.finish();
+		}
+		final Window<T> w = openWindow();
+		current = w;
+		if (w != null) {
+			timer = pool.schedule(new Runnable() {
+				@Override
+				public void run() {
+					lock.lock();
+					try {
+						if (current == w && !done) {
+							nextWindow();
+						}
+					} finally {
+						lock.unlock();
+					}
+				}
+			}, time, unit);
+		}
+	}
+	@Override
+	public void next(T value) {
+		lock.lock();
+		try {
+			Window<T> w = current;
+			if (w != null) {
+				w.next(value);
+				if (++w.count == count) {
+					nextWindow();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void error(Throwable ex) {
+		lock.lock();
+		try {
+			done = true;
+			Closeables.close0(timer);
+			if (current != null) {
+				current.error(ex);
+				current = null;
+			}
+			if (!closed) {
+				observer.error(ex);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void finish() {
+		lock.lock();
+		try {
+			done = true;
+			Closeables.close0(timer);
+			if (current != null) {
+				current.finish();
+				current = null;
+			}
+			if (!closed) {
+				observer.finish();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+}
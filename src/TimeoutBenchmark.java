@@ -0,0 +1,118 @@
+import hu.akarnokd.reactive4java.base.Action1E;
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps 50k timeout registrations open and emits values round-robin to
+ * them, through {@link ReactiveEx#timeout(Observable, long, TimeUnit, Observable, Scheduler)}
+ * and through reactive4java's {@code Reactive.timeout}, which cancels and
+ * schedules a timer for every value.
+ * <p>The timeout is long enough never to fire; the registration and close
+ * times of all the streams are printed once per variant.</p>
+ * <p>Usage: {@code java TimeoutBenchmark [streams]}</p>
+ */
+public class TimeoutBenchmark {
+	/** The timeout in seconds. */
+	static final long TIMEOUT = 60;
+
+	/** The observer consuming the values. */
+	static final Observer<Object> SINK = new Observer<Object>() {
+		@Override
+		public void next(Object value) {
+			Benchmark.consume(value);
+		}
+
+		@Override
+		public void error(Throwable ex) {
+			ex.printStackTrace();
+		}
+
+		@Override
+		public void finish() {
+		}
+	};
+
+	/** Creates the timeout operator under test. */
+	interface Variant {
+		/**
+		 * @param source the source
+		 * @param pool the timer pool
+		 * @return the source with a timeout
+		 */
+		Observable<Integer> timeout(Observable<Integer> source, Scheduler pool);
+	}
+
+	/**
+	 * Registers the streams, emits to them and closes them.
+	 * @param name the case name
+	 * @param streams the number of streams
+	 * @param variant the operator
+	 * @throws Exception on error
+	 */
+	static void run(String name, final int streams, Variant variant) throws Exception {
+		DefaultScheduler pool = new DefaultScheduler();
+		final List<Observer<? super Integer>> inputs = new ArrayList<Observer<? super Integer>>(
+				Collections.<Observer<? super Integer>>nCopies(streams, null));
+		Closeable[] registrations = new Closeable[streams];
+		long t0 = System.nanoTime();
+		for (int i = 0; i < streams; i++) {
+			final int index = i;
+			Observable<Integer> source = new Observable<Integer>() {
+				@Override
+				public Closeable register(Observer<? super Integer> observer) {
+					inputs.set(index, observer);
+					return new Closeable() {
+						@Override
+						public void close() {
+							inputs.set(index, null);
+						}
+					};
+				}
+			};
+			registrations[i] = variant.timeout(source, pool).register(SINK);
+		}
+		long t1 = System.nanoTime();
+		Benchmark.run(name + " x" + streams, 1000000, new Action1E<Integer, Exception>() {
+			@Override
+			public void invoke(Integer n) throws Exception {
+				for (int i = 0; i < n; i++) {
+					inputs.get(i % streams).next(i & 127);
+				}
+			}
+		});
+		long t2 = System.nanoTime();
+		for (Closeable c : registrations) {
+			Closeables.close0(c);
+		}
+		long t3 = System.nanoTime();
+		System.out.printf("  register %d ms, close %d ms%n", (t1 - t0) / 1000000, (t3 - t2) / 1000000);
+		pool.shutdown();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int streams = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		Benchmark.header();
+		run("ReactiveEx.timeout", streams, new Variant() {
+			@Override
+			public Observable<Integer> timeout(Observable<Integer> source, Scheduler pool) {
+				return ReactiveEx.timeout(source, TIMEOUT, TimeUnit.SECONDS, Reactive.<Integer>empty(), pool);
+			}
+		});
+		run("Reactive.timeout", streams, new Variant() {
+			@Override
+			public Observable<Integer> timeout(Observable<Integer> source, Scheduler pool) {
+				return Reactive.timeout(source, TIMEOUT, TimeUnit.SECONDS, Reactive.<Integer>empty(), pool);
+			}
+		});
+	}
+}
@@ -0,0 +1,131 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers many concurrent {@code tick()} subscriptions and reports the live
+ * thread count and the scheduling jitter (actual minus expected tick time).
+ * <p>Compared schedulers: the {@link TimerWheelScheduler}, the reactive4java
+ * {@link DefaultScheduler} and a single thread executor per subscription as in
+ * {@code MyReactiveTest.testCloseByBuffer}. The latter is capped at 2000
+ * subscriptions by default as it needs a thread each.</p>
+ * <p>Usage: {@code java TimerWheelBenchmark [timers [perSubscriptionTimers]]}</p>
+ */
+public class TimerWheelBenchmark {
+	/** The tick period in milliseconds. */
+	static final long PERIOD = 100;
+	/** The ticks per subscription. */
+	static final int TICKS = 10;
+
+	/** Creates a scheduler for one subscription. */
+	interface SchedulerFactory {
+		/** @return the scheduler for the next subscription */
+		Scheduler next();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int timers = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int perSubscription = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		System.out.printf("%-28s %8s %8s %10s %10s %10s %10s%n",
+				"Scheduler", "timers", "threads", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+
+		final TimerWheelScheduler wheel = new TimerWheelScheduler();
+		run("TimerWheelScheduler", timers, new SchedulerFactory() {
+			@Override
+			public Scheduler next() {
+				return wheel;
+			}
+		});
+		wheel.shutdown();
+
+		final DefaultScheduler pool = new DefaultScheduler();
+		run("DefaultScheduler", timers, new SchedulerFactory() {
+			@Override
+			public Scheduler next() {
+				return pool;
+			}
+		});
+		pool.shutdown();
+
+		final List<DefaultScheduler> executors = new ArrayList<DefaultScheduler>();
+		run("executor per subscription", Math.min(timers, perSubscription), new SchedulerFactory() {
+			@Override
+			public Scheduler next() {
+				DefaultScheduler s = new DefaultScheduler(Executors.newSingleThreadScheduledExecutor());
+				executors.add(s);
+				return s;
+			}
+		});
+		for (DefaultScheduler s : executors) {
+			s.shutdown();
+		}
+	}
+	/**
+	 * Runs the given number of tick subscriptions and prints the results.
+	 * @param name the scheduler name
+	 * @param timers the number of subscriptions
+	 * @param factory the scheduler factory
+	 * @throws InterruptedException if interrupted
+	 */
+	static void run(String name, int timers, SchedulerFactory factory) throws InterruptedException {
+		final long[] lateness = new long[timers * TICKS];
+		final AtomicInteger index = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(timers);
+		List<Closeable> subscriptions = new ArrayList<Closeable>(timers);
+		int maxThreads = 0;
+		for (int i = 0; i < timers; i++) {
+			final long start = System.nanoTime();
+			subscriptions.add(ObservableBuilder.tick(0, TICKS, PERIOD, TimeUnit.MILLISECONDS, factory.next())
+			.register(new Observer<Long>() {
+				@Override
+				public void next(Long value) {
+					long expected = start + (value + 1) * PERIOD * 1000000L;
+					int idx = index.getAndIncrement();
+					if (idx < lateness.length) {
+						lateness[idx] = System.nanoTime() - expected;
+					}
+				}
+
+				@Override
+				public void error(Throwable ex) {
+					done.countDown();
+				}
+
+				@Override
+				public void finish() {
+					done.countDown();
+				}
+			}));
+			if ((i & 1023) == 0) {
+				maxThreads = Math.max(maxThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+			}
+		}
+		while (!done.await(PERIOD, TimeUnit.MILLISECONDS)) {
+			maxThreads = Math.max(maxThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+		}
+		for (Closeable c : subscriptions) {
+			Closeables.close0(c);
+		}
+		long[] sorted = Arrays.copyOf(lateness, Math.min(index.get(), lateness.length));
+		Arrays.sort(sorted);
+		System.out.printf("%-28s %8d %8d %10.2f %10.2f %10.2f %10.2f%n",
+				name, timers, maxThreads,
+				Benchmark.percentile(sorted, 0.5) / 1e6,
+				Benchmark.percentile(sorted, 0.99) / 1e6,
+				Benchmark.percentile(sorted, 0.999) / 1e6,
+				sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0d);
+	}
+}
@@ -0,0 +1,272 @@
+import hu.akarnokd.reactive4java.base.Scheduler;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A scheduler backed by a hashed timer wheel.
+ * <p>A single timer thread advances the wheel every tick and hands the due
+ * tasks to a small fixed pool of worker threads, so any number of pending
+ * timers (e.g., one {@code tick()} per subscription) costs one object each
+ * instead of a thread each. Delays are rounded up to the tick duration.</p>
+ * <p>Like {@code DefaultScheduler}, closing a task interrupts it if it is
+ * running, and an exception thrown by a repeated task (e.g., the
+ * {@code CancellationException} of {@code DefaultRunnable.cancel()}) stops
+ * its further executions.</p>
+ */
+public class TimerWheelScheduler implements Scheduler {
+	/** The tick duration in nanoseconds. */
+	final long tickNanos;
+	/** The wheel buckets, the length is a power of 2. */
+	final Timeout[] wheel;
+	/** The mask for the bucket index. */
+	final int mask;
+	/** The newly scheduled timeouts, transferred into the wheel by the timer thread. */
+	final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+	/** The workers running the due tasks. */
+	final ExecutorService workers;
+	/** The timer thread. */
+	final Thread timer;
+	/** The start of the wheel time. */
+	final long startNanos;
+	/** The number of ticks the timer thread has processed. */
+	long tick;
+	/** Set by shutdown. */
+	volatile boolean shutdown;
+	/**
+	 * Creates a wheel with 1 millisecond ticks, 512 buckets
+	 * and as many workers as there are processors.
+	 */
+	public TimerWheelScheduler() {
+		this(1, TimeUnit.MILLISECONDS, 512, Runtime.getRuntime().availableProcessors());
+	}
+	/**
+	 * Creates a wheel with the given tick duration and dedicated worker threads.
+	 * @param tickDuration the tick duration
+	 * @param unit the tick duration unit
+	 * @param bucketCount the number of buckets, rounded up to a power of 2
+	 * @param workerCount the number of worker threads
+	 */
+	public TimerWheelScheduler(long tickDuration, TimeUnit unit, int bucketCount, int workerCount) {
+		this(tickDuration, unit, bucketCount, newWorkers(workerCount));
+	}
+	/**
+	 * Creates a wheel which runs the due tasks on the given executor.
+	 * @param tickDuration the tick duration
+	 * @param unit the tick duration unit
+	 * @param bucketCount the number of buckets, rounded up to a power of 2
+	 * @param workers the executor running the tasks, shut down by {@link #shutdown()}
+	 */
+	public TimerWheelScheduler(long tickDuration, TimeUnit unit, int bucketCount, ExecutorService workers) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration <= 0");
+		}
+		if (bucketCount <= 0 || bucketCount > (1 << 30)) {
+			throw new IllegalArgumentException("bucketCount out of range");
+		}
+		this.tickNanos = unit.toNanos(tickDuration);
+		int n = Integer.highestOneBit(bucketCount);
+		if (n < bucketCount) {
+			n <<= 1;
+		}
+		this.wheel = new Timeout[n];
+		this.mask = n - 1;
+		this.workers = workers;
+		this.startNanos = System.nanoTime();
+		this.timer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				timerLoop();
+			}
+		}, "TimerWheelScheduler-timer");
+		this.timer.setDaemon(true);
+		this.timer.start();
+	}
+	/**
+	 * Creates the default worker pool.
+	 * @param workerCount the number of threads
+	 * @return the executor
+	 */
+	static ExecutorService newWorkers(int workerCount) {
+		if (workerCount <= 0) {
+			throw new IllegalArgumentException("workerCount <= 0");
+		}
+		final AtomicInteger counter = new AtomicInteger();
+		return new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TimerWheelScheduler-worker-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	/**
+	 * A scheduled task, it is also its own cancel handler.
+	 */
+	final class Timeout implements Runnable, Closeable {
+		/** The task. */
+		final Runnable run;
+		/** The period in nanoseconds, zero for single executions. */
+		final long period;
+		/** The next execution time relative to startNanos. */
+		long deadline;
+		/** The remaining rounds of the wheel before the deadline. */
+		long rounds;
+		/** The next timeout in the same bucket. */
+		Timeout next;
+		/** Set when closed or when the task completed. */
+		volatile boolean cancelled;
+		/** The thread running the task. */
+		volatile Thread runner;
+		/**
+		 * Constructor.
+		 * @param run the task
+		 * @param deadline the first execution time relative to startNanos
+		 * @param period the period in nanoseconds, zero for single execution
+		 */
+		Timeout(Runnable run, long deadline, long period) {
+			this.run = run;
+			this.deadline = deadline;
+			this.period = period;
+		}
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			runner = Thread.currentThread();
+			boolean repeat = false;
+			try {
+				// clear any interrupt left over from a previous task
+				Thread.interrupted();
+				if (!cancelled) {
+					run.run();
+					repeat = period > 0;
+				}
+			} catch (Throwable ex) {
+				// any exception cancels the repetition
+			} finally {
+				runner = null;
+				Thread.interrupted();
+			}
+			if (repeat && !cancelled && !shutdown) {
+				deadline += period;
+				pending.offer(this);
+			} else {
+				cancelled = true;
+			}
+		}
+		@Override
+		public void close() {
+			cancelled = true;
+			Thread t = runner;
+			if (t != null) {
+				t.interrupt();
+			}
+		}
+	}
+	@Override
+	public Closeable schedule(Runnable run) {
+		Timeout t = new Timeout(run, 0, 0);
+		workers.execute(t);
+		return t;
+	}
+	@Override
+	public Closeable schedule(Runnable run, long delay, TimeUnit unit) {
+		Timeout t = new Timeout(run, now() + Math.max(0, unit.toNanos(delay)), 0);
+		pending.offer(t);
+		return t;
+	}
+	@Override
+	public Closeable schedule(Runnable run, long initialDelay,
+			long betweenDelay, TimeUnit unit) {
+		if (betweenDelay <= 0) {
+			throw new IllegalArgumentException("betweenDelay <= 0");
+		}
+		Timeout t = new Timeout(run, now() + Math.max(0, unit.toNanos(initialDelay)), unit.toNanos(betweenDelay));
+		pending.offer(t);
+		return t;
+	}
+	/** @return the current time relative to the wheel start */
+	long now() {
+		return System.nanoTime() - startNanos;
+	}
+	/** The timer thread main loop. */
+	void timerLoop() {
+		while (!shutdown) {
+			long deadline = (tick + 1) * tickNanos;
+			long wait;
+			while ((wait = deadline - now()) > 0) {
+				LockSupport.parkNanos(this, wait);
+				if (shutdown) {
+					return;
+				}
+			}
+			transferPending();
+			expire(tick);
+			tick++;
+		}
+	}
+	/** Moves the newly scheduled timeouts into their buckets. */
+	void transferPending() {
+		Timeout t;
+		while ((t = pending.poll()) != null) {
+			if (t.cancelled) {
+				continue;
+			}
+			// the tick which covers the deadline, rounded up
+			long target = (t.deadline + tickNanos - 1) / tickNanos;
+			if (target < tick) {
+				target = tick;
+			}
+			t.rounds = (target - tick) / wheel.length;
+			int idx = (int)(target & mask);
+			t.next = wheel[idx];
+			wheel[idx] = t;
+		}
+	}
+	/**
+	 * Hands the due timeouts of the bucket of the given tick to the workers.
+	 * @param currentTick the current tick
+	 */
+	void expire(long currentTick) {
+		int idx = (int)(currentTick & mask);
+		Timeout t = wheel[idx];
+		Timeout keep = null;
+		while (t != null) {
+			Timeout next = t.next;
+			if (!t.cancelled) {
+				if (t.rounds <= 0) {
+					t.next = null;
+					try {
+						workers.execute(t);
+					} catch (Throwable ex) {
+						// rejected after shutdown
+						t.cancelled = true;
+					}
+				} else {
+					t.rounds--;
+					t.next = keep;
+					keep = t;
+				}
+			}
+			t = next;
+		}
+		wheel[idx] = keep;
+	}
+	/** Stops the timer thread and the workers. */
+	public void shutdown() {
+		shutdown = true;
+		LockSupport.unpark(timer);
+		workers.shutdown();
+	}
+}
@@ -0,0 +1,171 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.reactive.Timestamped;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class TimerWheelSchedulerTest {
+
+	/**
+	 * tick() をタイマーホイール上で動かす
+	 */
+	@Test
+	public void testTick() throws InterruptedException {
+		TimerWheelScheduler wheel = new TimerWheelScheduler();
+		final List<Long> actual = new ArrayList<Long>();
+		try {
+			Reactive.run(
+				ObservableBuilder.tick(0, 5, 10, TimeUnit.MILLISECONDS, wheel)
+			, new Action1<Long>() {
+				@Override
+				public void invoke(Long value) {
+					actual.add(value);
+				}
+			});
+		} finally {
+			wheel.shutdown();
+		}
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), actual);
+	}
+
+	/**
+	 * buffer(time) のタイマーもタイマーホイールを使う
+	 */
+	@Test
+	public void testBufferTime() throws InterruptedException {
+		TimerWheelScheduler wheel = new TimerWheelScheduler();
+		final List<List<Long>> actual = new ArrayList<List<Long>>();
+		try {
+			Reactive.run(
+				ObservableBuilder.tick(0, Long.MAX_VALUE, 10, TimeUnit.MILLISECONDS, wheel)
+				.buffer(95, TimeUnit.MILLISECONDS, wheel)
+				.take(2)
+			, new Action1<List<Long>>() {
+				@Override
+				public void invoke(List<Long> value) {
+					System.out.println(value);
+					actual.add(value);
+				}
+			});
+		} finally {
+			wheel.shutdown();
+		}
+		assertEquals(2, actual.size());
+		assertFalse(actual.get(0).isEmpty());
+		assertEquals(Long.valueOf(0), actual.get(0).get(0));
+	}
+
+	/**
+	 * 値が来ない場合は timeout で TimeoutException になる
+	 */
+	@Test
+	public void testTimeout() throws InterruptedException {
+		TimerWheelScheduler wheel = new TimerWheelScheduler();
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		try {
+			Reactive.run(
+				ObservableBuilder.from(Reactive.<Integer>never())
+				.timeout(50, TimeUnit.MILLISECONDS, wheel)
+			, new Observer<Integer>() {
+				@Override
+				public void next(Integer value) { fail("next:" + value); }
+
+				@Override
+				public void error(Throwable ex) { errors.add(ex); }
+
+				@Override
+				public void finish() { fail("finish"); }
+			});
+		} finally {
+			wheel.shutdown();
+		}
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0) instanceof TimeoutException);
+	}
+
+	/**
+	 * generateTimed もタイマーホイール上で動かす
+	 */
+	@Test
+	public void testGenerateTimed() throws InterruptedException {
+		TimerWheelScheduler wheel = new TimerWheelScheduler();
+		final List<Integer> actual = new ArrayList<Integer>();
+		try {
+			Reactive.run(
+				ObservableBuilder.generateTimed(0
+				, new Func1<Integer, Boolean>() {
+					@Override
+					public Boolean invoke(Integer i) {
+						return i < 5;
+					}
+				}
+				, new Func1<Integer, Integer>() {
+					@Override
+					public Integer invoke(Integer i) {
+						return i + 1;
+					}
+				}
+				, new Func1<Integer, Integer>() {
+					@Override
+					public Integer invoke(Integer i) {
+						return i * i;
+					}
+				}
+				, new Func1<Integer, Long>() {
+					@Override
+					public Long invoke(Integer i) {
+						return i * 5L;
+					}
+				}
+				, wheel)
+			, new Action1<Timestamped<Integer>>() {
+				@Override
+				public void invoke(Timestamped<Integer> value) {
+					actual.add(value.value());
+				}
+			});
+		} finally {
+			wheel.shutdown();
+		}
+		assertEquals(Arrays.asList(0, 1, 4, 9, 16), actual);
+	}
+
+	/**
+	 * close() した繰り返しタスクはもう実行されない
+	 */
+	@Test
+	public void testCloseStopsRepeat() throws InterruptedException, IOException {
+		TimerWheelScheduler wheel = new TimerWheelScheduler();
+		final AtomicInteger count = new AtomicInteger();
+		try {
+			Closeable c = wheel.schedule(new Runnable() {
+				@Override
+				public void run() {
+					count.incrementAndGet();
+				}
+			}, 5, 5, TimeUnit.MILLISECONDS);
+			Thread.sleep(100);
+			c.close();
+			int n = count.get();
+			assertTrue("ran " + n, n > 0);
+			Thread.sleep(50);
+			assertTrue(count.get() <= n + 1);
+		} finally {
+			wheel.shutdown();
+		}
+	}
+}
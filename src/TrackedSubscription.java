@@ -0,0 +1,69 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The registration of {@link SubscriptionTracker#wrap(String, Observable)}:
+ * relays the events, records the termination of the source in its
+ * {@link SubscriptionTracker.Entry} and removes the entry when closed.
+ * @param <T> the element type
+ */
+final class TrackedSubscription<T> implements Observer<T>, Closeable {
+	/** The downstream. */
+	final Observer<? super T> observer;
+	/** The tracker. */
+	final SubscriptionTracker tracker;
+	/** The entry referring to this registration. */
+	final SubscriptionTracker.Entry entry;
+	/** The registration was closed. */
+	final AtomicBoolean closed = new AtomicBoolean();
+	/** The source registration. */
+	volatile Closeable upstream;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 * @param tracker the tracker
+	 * @param name the name of the tracked stage
+	 */
+	TrackedSubscription(Observer<? super T> observer, SubscriptionTracker tracker, String name) {
+		this.observer = observer;
+		this.tracker = tracker;
+		this.entry = tracker.add(this, name);
+	}
+	/**
+	 * Registers with the source.
+	 * @param source the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> source) {
+		upstream = source.register(this);
+		if (closed.get()) {
+			Closeables.close0(upstream);
+		}
+		return this;
+	}
+	@Override
+	public void next(T value) {
+		observer.next(value);
+	}
+	@Override
+	public void error(Throwable ex) {
+		tracker.terminated(entry);
+		observer.error(ex);
+	}
+	@Override
+	public void finish() {
+		tracker.terminated(entry);
+		observer.finish();
+	}
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			tracker.remove(entry);
+			Closeables.close0(upstream);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+import hu.akarnokd.reactive4java.base.Func0;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts many concurrent blocking {@code Reactive.start()} sources (each
+ * sleeps as in {@code sample_06b_start}) and reports the elapsed time and
+ * the peak number of additional platform threads.
+ * <p>Compared schedulers: a {@link DefaultScheduler} over a fixed platform
+ * pool and the {@link VirtualThreadScheduler}, which falls back to a platform
+ * thread per task before Java 21.</p>
+ * <p>Usage: {@code java VirtualThreadBenchmark [blockMillis [tasks...]]}</p>
+ */
+public class VirtualThreadBenchmark {
+	/** The size of the platform pool. */
+	static final int PLATFORM_THREADS = 200;
+
+	public static void main(String[] args) throws Exception {
+		long blockMillis = args.length > 0 ? Long.parseLong(args[0]) : 20;
+		int[] sizes = { 10000, 100000 };
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				sizes[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		System.out.printf("%-32s %8s %10s %12s %8s%n",
+				"Scheduler", "tasks", "elapsed ms", "tasks/s", "+threads");
+		for (int n : sizes) {
+			DefaultScheduler platform = new DefaultScheduler(Executors.newScheduledThreadPool(PLATFORM_THREADS));
+			run("platform pool (" + PLATFORM_THREADS + ")", platform, n, blockMillis);
+			platform.shutdown();
+
+			VirtualThreadScheduler virtual = new VirtualThreadScheduler();
+			run(VirtualThreadScheduler.isVirtual() ? "VirtualThreadScheduler"
+					: "VirtualThreadScheduler (fallback)", virtual, n, blockMillis);
+			virtual.shutdown();
+		}
+	}
+	/**
+	 * Runs the given number of blocking sources and prints the results.
+	 * @param name the scheduler name
+	 * @param pool the scheduler
+	 * @param tasks the number of sources
+	 * @param blockMillis the time each source blocks
+	 * @throws InterruptedException if interrupted
+	 */
+	static void run(String name, Scheduler pool, int tasks, final long blockMillis) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(tasks);
+		Func0<Long> blocking = new Func0<Long>() {
+			@Override
+			public Long invoke() {
+				try {
+					Thread.sleep(blockMillis);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return blockMillis;
+			}
+		};
+		Observer<Long> observer = new Observer<Long>() {
+			@Override
+			public void next(Long value) {
+				Benchmark.consume(value);
+			}
+
+			@Override
+			public void error(Throwable ex) {
+				ex.printStackTrace();
+				done.countDown();
+			}
+
+			@Override
+			public void finish() {
+				done.countDown();
+			}
+		};
+		int baseThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+		int maxThreads = baseThreads;
+		long t0 = System.nanoTime();
+		for (int i = 0; i < tasks; i++) {
+			Reactive.start(blocking, pool).register(observer);
+			if ((i & 1023) == 0) {
+				maxThreads = Math.max(maxThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+			}
+		}
+		while (!done.await(blockMillis, TimeUnit.MILLISECONDS)) {
+			maxThreads = Math.max(maxThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+		}
+		long elapsed = System.nanoTime() - t0;
+		System.out.printf("%-32s %8d %10.1f %12.0f %8d%n",
+				name, tasks, elapsed / 1e6, tasks * 1e9 / elapsed, maxThreads - baseThreads);
+	}
+}
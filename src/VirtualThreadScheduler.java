@@ -0,0 +1,62 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scheduler running every task on its own virtual thread, so sources
+ * which block (e.g., {@code Thread.sleep()} in {@code MyReactiveTest.testChain}
+ * or a {@code Reactive.start()} function) do not hold a platform thread, and
+ * 100k concurrent blocking tasks cost little more than 100k objects.
+ * <p>The delayed and periodic tasks wait in the timer wheel of
+ * {@link TimerWheelScheduler} and start their virtual thread when due.
+ * {@code Reactive.run()} waits on a {@code CountDownLatch}, which does not
+ * pin the carrier thread, so it may be called from these tasks as well.</p>
+ * <p>Virtual threads need Java 21; the executor is looked up reflectively
+ * and on older runtimes each task gets a new (or idle cached) platform
+ * daemon thread instead, see {@link #isVirtual()}.</p>
+ */
+public class VirtualThreadScheduler extends TimerWheelScheduler {
+	/** The {@code Executors.newVirtualThreadPerTaskExecutor()} method, null before Java 21. */
+	static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutor();
+	/** Creates a scheduler with 1 millisecond timer ticks. */
+	public VirtualThreadScheduler() {
+		super(1, TimeUnit.MILLISECONDS, 512, newExecutor());
+	}
+	/**
+	 * @return true if the tasks run on virtual threads, false if the runtime
+	 * does not support them and the tasks run on platform threads
+	 */
+	public static boolean isVirtual() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+	/** @return the virtual thread factory method or null */
+	static Method findVirtualExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+	/** @return the executor starting a thread per task */
+	static ExecutorService newExecutor() {
+		if (NEW_VIRTUAL_EXECUTOR != null) {
+			try {
+				return (ExecutorService)NEW_VIRTUAL_EXECUTOR.invoke(null);
+			} catch (Exception ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+		final AtomicInteger counter = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "VirtualThreadScheduler-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+}
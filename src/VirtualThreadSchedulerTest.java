@@ -0,0 +1,138 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Action1;
+import hu.akarnokd.reactive4java.base.Func0;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.query.ObservableBuilder;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class VirtualThreadSchedulerTest {
+
+	/**
+	 * sample_06b_start をバーチャルスレッドで動かす
+	 */
+	@Test
+	public void testStart() throws InterruptedException {
+		VirtualThreadScheduler pool = new VirtualThreadScheduler();
+		final List<Object> actual = new ArrayList<Object>();
+		try {
+			Reactive.run(Reactive.start(new Func0<Integer>() {
+				@Override
+				public Integer invoke() {
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException e) {
+						fail(e.getMessage());
+					}
+					return 1;
+				}
+			}, pool), new Observer<Integer>() {
+				@Override
+				public void next(Integer value) { actual.add(value); }
+
+				@Override
+				public void error(Throwable ex) { fail(ex.getMessage()); }
+
+				@Override
+				public void finish() { actual.add("finish!"); }
+			});
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(Arrays.<Object>asList(1, "finish!"), actual);
+	}
+
+	/**
+	 * ブロックするタスクを同時にたくさん動かしても、ほぼ 1 つ分の時間で終わる
+	 */
+	@Test
+	public void testManyBlockingTasks() throws InterruptedException {
+		VirtualThreadScheduler pool = new VirtualThreadScheduler();
+		final int n = 1000;
+		final CountDownLatch done = new CountDownLatch(n);
+		final AtomicInteger sum = new AtomicInteger();
+		long start = System.currentTimeMillis();
+		try {
+			for (int i = 0; i < n; i++) {
+				final int value = i;
+				Reactive.start(new Func0<Integer>() {
+					@Override
+					public Integer invoke() {
+						try {
+							Thread.sleep(200);
+						} catch (InterruptedException e) {
+							fail(e.getMessage());
+						}
+						return value;
+					}
+				}, pool).register(new Observer<Integer>() {
+					@Override
+					public void next(Integer value) { sum.addAndGet(value); }
+
+					@Override
+					public void error(Throwable ex) { fail(ex.getMessage()); }
+
+					@Override
+					public void finish() { done.countDown(); }
+				});
+			}
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		} finally {
+			pool.shutdown();
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		System.out.println("virtual: " + VirtualThreadScheduler.isVirtual() + ", elapsed: " + elapsed + " ms");
+		assertEquals(n * (n - 1) / 2, sum.get());
+		assertTrue(String.valueOf(elapsed), elapsed < 5000);
+	}
+
+	/**
+	 * testChain の sleep する内側のソースと tick() のタイマー
+	 */
+	@Test
+	public void testChainAndTick() throws InterruptedException {
+		final VirtualThreadScheduler pool = new VirtualThreadScheduler();
+		final List<Long> actual = new ArrayList<Long>();
+		try {
+			Reactive.run(
+				ObservableBuilder.tick(0, 3, 10, TimeUnit.MILLISECONDS, pool)
+				.selectMany(new Func1<Long, Observable<Long>>() {
+					@Override
+					public Observable<Long> invoke(final Long param1) {
+						return Reactive.start(new Func0<Long>() {
+							@Override
+							public Long invoke() {
+								try {
+									Thread.sleep(50);
+								} catch (InterruptedException e) {
+									fail(e.getMessage());
+								}
+								return param1 * 10;
+							}
+						}, pool);
+					}
+				})
+			, new Action1<Long>() {
+				@Override
+				public void invoke(Long value) {
+					actual.add(value);
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(3, actual.size());
+		assertTrue(actual.containsAll(Arrays.asList(0L, 10L, 20L)));
+	}
+}
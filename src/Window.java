@@ -0,0 +1,71 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A window of a {@link WindowOperator}: relays the elements to the observers
+ * registered with it through a {@link MulticastObserver}, without storing
+ * them.
+ * <p>The window holds a reference on the source registration of its operator
+ * until the operator closes it or its last observer leaves.</p>
+ * @param <T> the element type
+ */
+final class Window<T> implements Observable<T> {
+	/** The registered observers. */
+	final MulticastObserver<T> subject = new MulticastObserver<T>();
+	/** The operator. */
+	final WindowOperator<T> parent;
+	/** The reference on the source registration was released. */
+	final AtomicBoolean released = new AtomicBoolean();
+	/** The number of elements received, used by the operator. */
+	int count;
+	/**
+	 * Constructor.
+	 * @param parent the operator
+	 */
+	Window(WindowOperator<T> parent) {
+		this.parent = parent;
+	}
+	@Override
+	public Closeable register(Observer<? super T> observer) {
+		final Closeable c = subject.register(observer);
+		return new Closeable() {
+			@Override
+			public void close() {
+				Closeables.close0(c);
+				if (subject.observerCount() == 0) {
+					release();
+				}
+			}
+		};
+	}
+	/**
+	 * Relays an element.
+	 * @param value the element
+	 */
+	void next(T value) {
+		subject.next(value);
+	}
+	/**
+	 * Closes the window with an error, after releasing the reference.
+	 * @param ex the error
+	 */
+	void error(Throwable ex) {
+		release();
+		subject.error(ex);
+	}
+	/** Closes the window, after releasing the reference. */
+	void finish() {
+		release();
+		subject.finish();
+	}
+	/** Releases the reference on the source registration once. */
+	void release() {
+		if (released.compareAndSet(false, true)) {
+			parent.release();
+		}
+	}
+}
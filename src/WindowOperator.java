@@ -0,0 +1,73 @@
+import hu.akarnokd.reactive4java.base.Closeables;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The common part of the streaming window registrations of
+ * {@link ReactiveEx#window(Observable, int, int)} and its timed variants.
+ * <p>The source registration is reference counted: the downstream holds one
+ * reference and every open {@link Window} another, so closing the downstream
+ * early (e.g., by {@code take}) keeps the windows already emitted running
+ * until they are closed or abandoned, and then closes the source.</p>
+ * @param <T> the element type
+ */
+abstract class WindowOperator<T> implements Observer<T>, Closeable {
+	/** The downstream. */
+	final Observer<? super Observable<T>> observer;
+	/** The references on the source registration. */
+	final AtomicInteger refs = new AtomicInteger(1);
+	/** The downstream closed the registration, no new windows are emitted. */
+	volatile boolean closed;
+	/** The source registration. */
+	volatile Closeable source;
+	/**
+	 * Constructor.
+	 * @param observer the downstream
+	 */
+	WindowOperator(Observer<? super Observable<T>> observer) {
+		this.observer = observer;
+	}
+	/**
+	 * Registers with the source.
+	 * @param src the source
+	 * @return this
+	 */
+	Closeable registerWith(Observable<? extends T> src) {
+		Closeable s = src.register(this);
+		source = s;
+		if (refs.get() == 0) {
+			Closeables.close0(s);
+		}
+		return this;
+	}
+	/**
+	 * Creates a window holding a reference on the source registration and
+	 * emits it, unless the downstream is closed.
+	 * @return the window or null if the downstream is closed
+	 */
+	Window<T> openWindow() {
+		if (closed) {
+			return null;
+		}
+		refs.incrementAndGet();
+		Window<T> w = new Window<T>(this);
+		observer.next(w);
+		return w;
+	}
+	/** Releases a reference, closes the source registration with the last one. */
+	void release() {
+		if (refs.decrementAndGet() == 0) {
+			Closeables.close0(source);
+		}
+	}
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			release();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+import static org.junit.Assert.*;
+import hu.akarnokd.reactive4java.base.Func1;
+import hu.akarnokd.reactive4java.base.Scheduler;
+import hu.akarnokd.reactive4java.reactive.Observable;
+import hu.akarnokd.reactive4java.reactive.Observer;
+import hu.akarnokd.reactive4java.reactive.Reactive;
+import hu.akarnokd.reactive4java.util.CurrentThreadScheduler;
+import hu.akarnokd.reactive4java.util.DefaultScheduler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+public class WindowTest {
+	/** 同期実行用のスケジューラ */
+	final Scheduler current = new CurrentThreadScheduler();
+	/** ウィンドウを閉じるタイマー */
+	final Scheduler pool = new DefaultScheduler();
+
+	/**
+	 * ウィンドウをリストにする
+	 * @param <T> 値の型
+	 * @return ウィンドウをリストにする関数
+	 */
+	static <T> Func1<Observable<T>, Observable<List<T>>> toList() {
+		return new Func1<Observable<T>, Observable<List<T>>>() {
+			@Override
+			public Observable<List<T>> invoke(Observable<T> window) {
+				return Reactive.toList(window);
+			}
+		};
+	}
+
+	/**
+	 * 値を溜める
+	 * @param source ソース
+	 * @return 値と "finish!"
+	 */
+	static List<Object> collect(Observable<?> source) throws InterruptedException {
+		final List<Object> actual = new ArrayList<Object>();
+		Reactive.run(source, new Observer<Object>() {
+			@Override
+			public void next(Object value) { actual.add(value); }
+
+			@Override
+			public void error(Throwable ex) { actual.add("error:" + ex.getMessage()); }
+
+			@Override
+			public void finish() { actual.add("finish!"); }
+		});
+		return actual;
+	}
+
+	/**
+	 * 2 つおきに 3 つずつのウィンドウ (重なりあり)
+	 */
+	@Test
+	public void testWindowCountSkip() throws InterruptedException {
+		List<Object> actual = collect(ReactiveEx.window(Reactive.range(1, 10, current), 3, 2).selectMany(WindowTest.<Integer>toList()));
+
+		assertEquals(Arrays.<Object>asList(
+				Arrays.asList(1, 2, 3), Arrays.asList(3, 4, 5), Arrays.asList(5, 6, 7),
+				Arrays.asList(7, 8, 9), Arrays.asList(9, 10), "finish!"), actual);
+	}
+
+	/**
+	 * MyReactiveTest.testWindow と同じく take(1) しても、最初のウィンドウは最後まで届き、その後ソースは閉じられる
+	 */
+	@Test
+	public void testEarlyTake() throws InterruptedException {
+		final AtomicInteger emitted = new AtomicInteger();
+		final AtomicBoolean closed = new AtomicBoolean();
+		Observable<Integer> source = new Observable<Integer>() {
+			@Override
+			public Closeable register(final Observer<? super Integer> observer) {
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						while (!closed.get()) {
+							observer.next(emitted.incrementAndGet());
+						}
+					}
+				}).start();
+				return new Closeable() {
+					@Override
+					public void close() { closed.set(true); }
+				};
+			}
+		};
+		List<Object> actual = collect(ReactiveEx.window(source, 3, 3).take(1).selectMany(WindowTest.<Integer>toList()));
+
+		assertEquals(Arrays.<Object>asList(Arrays.asList(1, 2, 3), "finish!"), actual);
+		assertTrue(closed.get());
+	}
+
+	/**
+	 * 時間か個数の早い方でウィンドウを閉じる
+	 */
+	@Test
+	public void testWindowTimeOrCount() throws InterruptedException {
+		List<Object> byCount = collect(ReactiveEx.window(Reactive.tick(0, 20, 10, TimeUnit.MILLISECONDS), 5, 10, TimeUnit.SECONDS, pool).selectMany(WindowTest.<Long>toList()));
+		assertEquals(Arrays.<Object>asList(
+				Arrays.asList(0L, 1L, 2L, 3L, 4L), Arrays.asList(5L, 6L, 7L, 8L, 9L),
+				Arrays.asList(10L, 11L, 12L, 13L, 14L), Arrays.asList(15L, 16L, 17L, 18L, 19L),
+				Arrays.asList(), "finish!"), byCount);
+
+		List<Object> byTime = collect(ReactiveEx.window(Reactive.tick(0, 20, 10, TimeUnit.MILLISECONDS), 100, 50, TimeUnit.MILLISECONDS, pool).selectMany(WindowTest.<Long>toList()));
+		System.out.println(byTime);
+		// 50ms 毎に 5 個前後ずつに分かれ、全体の順序は変わらない
+		assertEquals("finish!", byTime.get(byTime.size() - 1));
+		List<Object> all = new ArrayList<Object>();
+		for (Object w : byTime.subList(0, byTime.size() - 1)) {
+			assertTrue(((List<?>)w).size() < 10);
+			all.addAll((List<?>)w);
+		}
+		assertEquals(20, all.size());
+		assertEquals(0L, all.get(0));
+		assertEquals(19L, all.get(19));
+		assertTrue(byTime.size() >= 4);
+	}
+}